@@ -1,9 +1,29 @@
 package com.emergencias;
 
+import com.emergencias.carga.FuenteLlamadas;
+import com.emergencias.carga.GeneradorCarga;
+import com.emergencias.carga.MezclaPrioridades;
+import com.emergencias.carga.ProcesoLlegadas;
+import com.emergencias.carga.ReproductorTrazas;
 import com.emergencias.hilos.*;
 import com.emergencias.gestores.*;
+import com.emergencias.modelos.Prioridad;
+import com.emergencias.persistencia.CatalogoRecursos;
+import com.emergencias.persistencia.DiarioEmergencias;
+import com.emergencias.persistencia.GrabadorTrazas;
+import com.emergencias.persistencia.LectorTrazas;
+import com.emergencias.registro.NivelRegistro;
+import com.emergencias.registro.Registro;
+import com.emergencias.rutas.MotorTiempos;
+import com.emergencias.simulacion.MotorEventos;
+import com.emergencias.simulacion.Reloj;
+import com.emergencias.simulacion.SimulacionDiscreta;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.concurrent.*;
 
@@ -19,6 +39,9 @@ public class Main {
     private static final int NUM_DESPACHADORES = 4;
     private static final int DURACION_SIMULACION_SEGUNDOS = 120; // 2 minutos
     
+    private ControladorDespachadores controlador;
+    private FuenteLlamadas generador;
+    
     public static void main(String[] args) {
         System.out.println("╔═══════════════════════════════════════════════════════════════════════════╗");
         System.out.println("║                                                                           ║");
@@ -38,40 +61,71 @@ public class Main {
      * Inicia y coordina todos los componentes del sistema.
      */
     public void iniciarSistema() {
+        // El reloj virtual debe estar antes de crear cualquier emergencia
+        MotorEventos motor = configurarSimulacion();
+        
         // Inicializar gestores (Singleton)
+        configurarFlota();
         GestorEmergencias gestorEmergencias = GestorEmergencias.getInstancia();
         GestorRecursos gestorRecursos = GestorRecursos.getInstancia();
+        configurarAdmision(gestorEmergencias);
+        configurarDiario(gestorEmergencias);
+        configurarGrabador(gestorEmergencias);
+        configurarRutas(gestorRecursos);
+        configurarDesvios(gestorRecursos);
+        configurarEsperaAmbulancias(gestorRecursos);
+        
+        if (motor != null) {
+            ejecutarSimulacion(motor);
+            return;
+        }
         
         System.out.println("\nIniciando Sistema de Emergencias Médicas...\n");
         
         // ExecutorService para manejo eficiente de hilos
-        ExecutorService executorOperadores = Executors.newFixedThreadPool(NUM_OPERADORES);
-        ExecutorService executorDespachadores = Executors.newFixedThreadPool(NUM_DESPACHADORES);
+        MezclaPrioridades mezcla = MezclaPrioridades.desdePropiedades();
+        generador = crearFuenteLlamadas(mezcla, Long.getLong("emergencias.carga.semilla", System.nanoTime()));
+        ExecutorService executorOperadores = generador != null ? Executors.newCachedThreadPool()
+                                                               : Executors.newFixedThreadPool(NUM_OPERADORES);
+        // Con despachadores elásticos el pool crece con ellos
+        ExecutorService executorDespachadores = Executors.newCachedThreadPool();
+        controlador = crearControlador(executorDespachadores);
         ExecutorService executorMonitor = Executors.newSingleThreadExecutor();
         
-        // Crear operadores de llamadas
+        // Crear operadores de llamadas, o la carga de lazo abierto o la traza en su lugar
         List<OperadorLlamadas> operadores = new ArrayList<>();
-        for (int i = 1; i <= NUM_OPERADORES; i++) {
-            OperadorLlamadas operador = new OperadorLlamadas("Operador-" + i);
-            operadores.add(operador);
-            executorOperadores.submit(operador);
+        if (generador != null) {
+            generador.iniciar(executorOperadores);
+        } else {
+            for (int i = 1; i <= NUM_OPERADORES; i++) {
+                OperadorLlamadas operador = new OperadorLlamadas("Operador-" + i, mezcla);
+                operadores.add(operador);
+                executorOperadores.submit(operador);
+            }
         }
         
-        // Crear despachadores
-        List<Despachador> despachadores = new ArrayList<>();
-        for (int i = 1; i <= NUM_DESPACHADORES; i++) {
-            Despachador despachador = new Despachador("Despachador-" + i);
-            despachadores.add(despachador);
-            executorDespachadores.submit(despachador);
+        // Crear despachadores repartidos entre las zonas de la ciudad
+        List<Despachador> despachadores;
+        if (controlador != null) {
+            controlador.arrancar(NUM_DESPACHADORES);
+            executorDespachadores.submit(controlador);
+            despachadores = controlador.getDespachadores();
+        } else {
+            despachadores = crearDespachadores(gestorEmergencias);
+            for (Despachador despachador : despachadores) {
+                executorDespachadores.submit(despachador);
+            }
         }
         
         // Crear monitor en tiempo real
-        MonitorTiempoReal monitor = new MonitorTiempoReal(10); // Actualiza cada 10 segundos
+        MonitorTiempoReal monitor = new MonitorTiempoReal(10, controlador); // Actualiza cada 10 segundos
         executorMonitor.submit(monitor);
         
         System.out.println("Sistema completamente inicializado\n");
-        System.out.println("  - " + NUM_OPERADORES + " operadores activos");
-        System.out.println("  - " + NUM_DESPACHADORES + " despachadores activos");
+        System.out.println(generador instanceof ReproductorTrazas ? "  - Reproducción de traza activa"
+                           : generador != null ? "  - Carga de lazo abierto activa"
+                           : "  - " + NUM_OPERADORES + " operadores activos");
+        System.out.println("  - " + despachadores.size() + " despachadores activos");
         System.out.println("  - Monitor en tiempo real activo");
         System.out.println("  - " + gestorRecursos.getAmbulanciasTotales() + " ambulancias disponibles");
         System.out.println("  - " + gestorRecursos.getMedicosTotales() + " médicos disponibles\n");
@@ -81,6 +135,342 @@ public class Main {
                                executorOperadores, executorDespachadores, executorMonitor);
     }
     
+    /**
+     * Crea los despachadores según {@code -Demergencias.despacho}: VORAZ (por
+     * defecto) reparte {@value #NUM_DESPACHADORES} despachadores entre las zonas y
+     * cada uno toma la ambulancia más cercana; LOTES usa un solo despachador que
+     * asigna por subasta cada {@code -Demergencias.lotes.ventanaMs} (300 por
+     * defecto) sin enviar ambulancias a más de
+     * {@code -Demergencias.lotes.distanciaMaxima} grados (10 por defecto);
+     * PROGRAMADO reparte las zonas como VORAZ pero programa el viaje y la
+     * atención en un reloj compartido en lugar de dormir, así que cuántas
+     * emergencias hay en curso solo depende de los recursos libres.
+     */
+    private List<Despachador> crearDespachadores(GestorEmergencias gestorEmergencias) {
+        List<Despachador> despachadores = new ArrayList<>();
+        String modo = System.getProperty("emergencias.despacho", "VORAZ");
+        if ("LOTES".equalsIgnoreCase(modo)) {
+            long ventana = Long.getLong("emergencias.lotes.ventanaMs", 300L);
+            double distanciaMaxima = Double.parseDouble(System.getProperty("emergencias.lotes.distanciaMaxima", "10"));
+            despachadores.add(new DespachadorLotes("Despachador-Lotes", ventana, distanciaMaxima));
+            return despachadores;
+        }
+        boolean programado = "PROGRAMADO".equalsIgnoreCase(modo);
+        int zonas = gestorEmergencias.getNumeroZonas();
+        for (int i = 1; i <= NUM_DESPACHADORES; i++) {
+            int zona = (int) ((long) (i - 1) * zonas / NUM_DESPACHADORES);
+            despachadores.add(crearDespachador(i, zona, programado));
+        }
+        return despachadores;
+    }
+    
+    private static Despachador crearDespachador(int numero, int zona, boolean programado) {
+        return programado ? new DespachadorProgramado("Despachador-" + numero, zona, Reloj.actual())
+                          : new Despachador("Despachador-" + numero, zona);
+    }
+    
+    /**
+     * Crea el controlador del pool elástico si se indicó
+     * {@code -Demergencias.despacho.maximo}: arranca con
+     * {@value #NUM_DESPACHADORES} despachadores y ajusta su número entre
+     * {@code -Demergencias.despacho.minimo} (1 por defecto) y el máximo según la
+     * cola, muestreando cada {@code -Demergencias.despacho.intervaloMs} (2000 por
+     * defecto). Cada despachador nuevo toma la zona siguiente. No aplica a
+     * LOTES, que usa un único despachador.
+     * @param ejecutor Dónde correr los despachadores que se creen
+     * @return controlador, o null si el número de despachadores es fijo
+     */
+    private ControladorDespachadores crearControlador(Executor ejecutor) {
+        Integer maximo = Integer.getInteger("emergencias.despacho.maximo");
+        String modo = System.getProperty("emergencias.despacho", "VORAZ");
+        if (maximo == null || "LOTES".equalsIgnoreCase(modo)) {
+            return null;
+        }
+        int minimo = Integer.getInteger("emergencias.despacho.minimo", 1);
+        long intervalo = Long.getLong("emergencias.despacho.intervaloMs", 2000L);
+        boolean programado = "PROGRAMADO".equalsIgnoreCase(modo);
+        int zonas = GestorEmergencias.getInstancia().getNumeroZonas();
+        System.out.println("Despachadores elásticos: entre " + minimo + " y " + maximo);
+        return new ControladorDespachadores(n -> crearDespachador(n, (n - 1) % zonas, programado),
+                                            ejecutor, minimo, maximo, intervalo);
+    }
+    
+    /**
+     * Activa la admisión acotada si se indicó {@code -Demergencias.admision.capacidad}.
+     * Reserva un 10% de la capacidad para CRÍTICO y otro 10% para GRAVE; la política
+     * se elige con {@code -Demergencias.admision.politica} (DESCARTAR_LEVE por defecto).
+     */
+    private void configurarAdmision(GestorEmergencias gestorEmergencias) {
+        Integer capacidad = Integer.getInteger("emergencias.admision.capacidad");
+        if (capacidad == null) {
+            return;
+        }
+        PoliticaSaturacion politica = PoliticaSaturacion.valueOf(
+            System.getProperty("emergencias.admision.politica", PoliticaSaturacion.DESCARTAR_LEVE.name()));
+        int reserva = Math.max(1, capacidad / 10);
+        Map<Prioridad, Integer> reservas = Map.of(Prioridad.CRITICO, reserva, Prioridad.GRAVE, reserva);
+        gestorEmergencias.configurarAdmision(new ControlAdmision(capacidad, reservas, politica, capacidad));
+        System.out.println("Admisión acotada: capacidad " + capacidad + ", política " + politica);
+    }
+    
+    /**
+     * Abre el diario de emergencias si se indicó {@code -Demergencias.diario.dir}
+     * y recupera de él las emergencias pendientes de una ejecución anterior.
+     * Toma instantáneas cada {@code -Demergencias.instantanea.segundos} (30 por defecto).
+     */
+    private void configurarDiario(GestorEmergencias gestorEmergencias) {
+        String directorio = System.getProperty("emergencias.diario.dir");
+        if (directorio == null) {
+            return;
+        }
+        try {
+            long inicio = System.nanoTime();
+            DiarioEmergencias diario = new DiarioEmergencias(Paths.get(directorio));
+            GestorRecursos gestorRecursos = GestorRecursos.getInstancia();
+            if (diario.getRecursosRecuperados() != null) {
+                gestorRecursos.restaurarRecursos(diario.getRecursosRecuperados());
+            }
+            int recuperadas = gestorEmergencias.configurarDiario(diario);
+            long periodo = Long.getLong("emergencias.instantanea.segundos", 30L);
+            diario.activarInstantaneas(gestorRecursos::capturarRecursos, periodo, TimeUnit.SECONDS);
+            System.out.println("Diario activo en " + directorio + ": " + recuperadas + " emergencias recuperadas en "
+                               + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio) + " ms");
+        } catch (IOException e) {
+            System.err.println("No se pudo abrir el diario en " + directorio + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Graba las llamadas y los eventos de recursos en la traza
+     * {@code -Demergencias.traza.grabar}, que se cierra al terminar. En tiempo
+     * virtual los instantes grabados son los del motor.
+     */
+    private void configurarGrabador(GestorEmergencias gestorEmergencias) {
+        String archivo = System.getProperty("emergencias.traza.grabar");
+        if (archivo == null) {
+            return;
+        }
+        try {
+            gestorEmergencias.configurarGrabador(new GrabadorTrazas(Paths.get(archivo)));
+            System.out.println("Grabando la traza de llamadas en " + archivo);
+        } catch (IOException e) {
+            System.err.println("No se pudo crear la traza " + archivo + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Pasa el sistema a tiempo virtual si se indicó
+     * {@code -Demergencias.simulacion.horas}: en lugar de correr
+     * {@value #DURACION_SIMULACION_SEGUNDOS} segundos reales, se simulan esas
+     * horas con un motor de eventos discretos tan rápido como se procesan.
+     * @return motor instalado como reloj del sistema, o null en tiempo real
+     */
+    private MotorEventos configurarSimulacion() {
+        String horas = System.getProperty("emergencias.simulacion.horas");
+        if (horas == null) {
+            return null;
+        }
+        MotorEventos motor = new MotorEventos(LocalDateTime.now());
+        Reloj.usar(motor);
+        return motor;
+    }
+    
+    /**
+     * Simula {@code -Demergencias.simulacion.horas} con la semilla
+     * {@code -Demergencias.simulacion.semilla} (1 por defecto), de modo que
+     * dos corridas con la misma semilla dan el mismo resultado. Si no se
+     * eligió un nivel de registro, solo se registran advertencias: a millones
+     * de eventos por segundo la consola sería el cuello de botella.
+     */
+    private void ejecutarSimulacion(MotorEventos motor) {
+        double horas = Double.parseDouble(System.getProperty("emergencias.simulacion.horas"));
+        long semilla = Long.getLong("emergencias.simulacion.semilla", 1L);
+        if (System.getProperty("emergencias.registro.nivel") == null) {
+            Registro.setNivelMinimo(NivelRegistro.ADVERTENCIA);
+        }
+        MezclaPrioridades mezcla = MezclaPrioridades.desdePropiedades();
+        FuenteLlamadas carga = crearFuenteLlamadas(mezcla, semilla);
+        SimulacionDiscreta simulacion = new SimulacionDiscreta(motor, carga != null ? 0 : NUM_OPERADORES,
+                                                               NUM_DESPACHADORES, semilla, mezcla);
+        simulacion.setCarga(carga);
+        System.out.println("\nSimulando " + horas + " h en tiempo virtual (semilla " + semilla + ")...\n");
+        
+        long inicio = System.nanoTime();
+        long eventos = simulacion.ejecutar((long) (horas * 3_600_000), TimeUnit.MILLISECONDS);
+        long duracionNanos = System.nanoTime() - inicio;
+        
+        GestorEmergencias.getInstancia().getBusEventos().detener();
+        DiarioEmergencias diario = GestorEmergencias.getInstancia().getDiario();
+        if (diario != null) {
+            diario.cerrar();
+        }
+        GrabadorTrazas grabador = GestorEmergencias.getInstancia().getGrabador();
+        if (grabador != null) {
+            grabador.cerrar();
+        }
+        Registro.vaciar(2, TimeUnit.SECONDS);
+        
+        new MonitorTiempoReal(0).mostrarResumenFinal();
+        System.out.printf("%nSimulación: %.1f h virtuales en %d ms reales, %d eventos (%.0f eventos/s)%n",
+                          TimeUnit.NANOSECONDS.toSeconds(motor.getTranscurridoNanos()) / 3600.0,
+                          TimeUnit.NANOSECONDS.toMillis(duracionNanos), eventos,
+                          eventos * 1e9 / Math.max(1L, duracionNanos));
+        for (OperadorLlamadas op : simulacion.getOperadores()) {
+            System.out.println("  • " + op.getId() + ": " + op.getLlamadasAtendidas() + " llamadas procesadas" +
+                             (op.getLlamadasRechazadas() > 0 ? ", " + op.getLlamadasRechazadas() + " rechazadas" : ""));
+        }
+        for (Despachador desp : simulacion.getDespachadores()) {
+            System.out.println("  - " + desp.getId() + ": " + desp.getEmergenciasDespachas() + " emergencias despachadas");
+        }
+        if (carga != null) {
+            System.out.print(carga.informe());
+        }
+    }
+    
+    /**
+     * Crea lo que reemplaza a los operadores: la reproducción de la traza
+     * {@code -Demergencias.traza.reproducir} a la velocidad
+     * {@code -Demergencias.traza.velocidad} (1, un factor como 10, o MAX para
+     * enviar sin esperar), o si no la carga de lazo abierto.
+     * @return fuente sin iniciar, o null si se usan los operadores
+     */
+    private FuenteLlamadas crearFuenteLlamadas(MezclaPrioridades mezcla, long semilla) {
+        String archivo = System.getProperty("emergencias.traza.reproducir");
+        if (archivo == null) {
+            return crearGeneradorCarga(mezcla, semilla);
+        }
+        try {
+            double velocidad = ReproductorTrazas.parseVelocidad(System.getProperty("emergencias.traza.velocidad", "1"));
+            LectorTrazas lector = LectorTrazas.abrir(Paths.get(archivo));
+            System.out.println("Reproduciendo la traza " + archivo + " (" + lector.getRegistros()
+                               + " registros, grabada el " + lector.getInicio().withNano(0) + ")");
+            return new ReproductorTrazas(lector, velocidad);
+        } catch (IOException e) {
+            System.err.println("No se pudo abrir la traza " + archivo + ": " + e.getMessage());
+            return crearGeneradorCarga(mezcla, semilla);
+        }
+    }
+    
+    /**
+     * Crea la carga de lazo abierto si se indicó {@code -Demergencias.carga.tasa}
+     * (llamadas por segundo), que reemplaza a los operadores. El proceso se
+     * elige con {@code -Demergencias.carga.proceso}:
+     * <ul>
+     *   <li>POISSON (por defecto): tasa constante;</li>
+     *   <li>RAFAGAS: la tasa se multiplica por {@code .rafaga.factor} (10)
+     *       durante {@code .rafaga.duracionMs} (2000) cada
+     *       {@code .rafaga.periodoMs} (30000);</li>
+     *   <li>DIURNO: la tasa oscila ± {@code .diurno.amplitud} (0.8) con un
+     *       periodo de {@code .diurno.periodoS} segundos (86400).</li>
+     * </ul>
+     * La tasa se reparte entre {@code -Demergencias.carga.emisores} hilos (uno
+     * cada 20000 llamadas/s por defecto).
+     * @param mezcla Proporción de cada prioridad
+     * @param semilla Semilla de las llamadas
+     * @return generador sin iniciar, o null si no se pidió carga
+     */
+    private GeneradorCarga crearGeneradorCarga(MezclaPrioridades mezcla, long semilla) {
+        String tasaTexto = System.getProperty("emergencias.carga.tasa");
+        if (tasaTexto == null) {
+            return null;
+        }
+        double tasa = Double.parseDouble(tasaTexto);
+        String tipo = System.getProperty("emergencias.carga.proceso", ProcesoLlegadas.Tipo.POISSON.name());
+        ProcesoLlegadas proceso;
+        switch (ProcesoLlegadas.Tipo.valueOf(tipo.toUpperCase())) {
+            case RAFAGAS:
+                proceso = ProcesoLlegadas.rafagas(tasa,
+                    Double.parseDouble(System.getProperty("emergencias.carga.rafaga.factor", "10")),
+                    Long.getLong("emergencias.carga.rafaga.duracionMs", 2000L),
+                    Long.getLong("emergencias.carga.rafaga.periodoMs", 30000L), TimeUnit.MILLISECONDS);
+                break;
+            case DIURNO:
+                proceso = ProcesoLlegadas.diurno(tasa,
+                    Double.parseDouble(System.getProperty("emergencias.carga.diurno.amplitud", "0.8")),
+                    Long.getLong("emergencias.carga.diurno.periodoS", 86400L), TimeUnit.SECONDS);
+                break;
+            default:
+                proceso = ProcesoLlegadas.poisson(tasa);
+                break;
+        }
+        int emisores = Integer.getInteger("emergencias.carga.emisores",
+                                          (int) Math.max(1L, (long) Math.ceil(proceso.getTasaMedia() / 20000)));
+        System.out.println("Carga de lazo abierto: " + proceso + ", " + emisores + " emisores, " + mezcla);
+        return new GeneradorCarga(proceso, mezcla, emisores, semilla);
+    }
+    
+    /**
+     * Carga la flota y la plantilla de {@code -Demergencias.flota} (CSV o
+     * binario, ver {@link CatalogoRecursos#cargar}). Sin esa propiedad, o si
+     * el archivo no se puede cargar, se usa la flota de demostración.
+     */
+    private void configurarFlota() {
+        String archivo = System.getProperty("emergencias.flota");
+        if (archivo == null) {
+            return;
+        }
+        try {
+            long inicio = System.nanoTime();
+            CatalogoRecursos catalogo = CatalogoRecursos.cargar(Paths.get(archivo));
+            GestorRecursos.inicializar(catalogo);
+            System.out.println("Flota " + archivo + ": " + catalogo.getAmbulancias().size() + " ambulancias y "
+                               + catalogo.getMedicos().size() + " médicos cargados en "
+                               + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio) + " ms");
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("No se pudo cargar la flota " + archivo + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Carga la red vial de {@code -Demergencias.rutas.grafo} para elegir
+     * ambulancias y estimar llegadas por tiempo de viaje. La matriz de tiempos
+     * usa una cuadrícula de {@code -Demergencias.rutas.lado} celdas por lado (32
+     * por defecto) y se guarda junto al grafo con extensión .tiempos.
+     */
+    private void configurarRutas(GestorRecursos gestorRecursos) {
+        String grafo = System.getProperty("emergencias.rutas.grafo");
+        if (grafo == null) {
+            return;
+        }
+        try {
+            long inicio = System.nanoTime();
+            int lado = Integer.getInteger("emergencias.rutas.lado", 32);
+            MotorTiempos motor = MotorTiempos.cargar(Paths.get(grafo), lado, Paths.get(grafo + ".tiempos"));
+            gestorRecursos.configurarRutas(motor);
+            System.out.println("Red vial " + grafo + ": matriz " + lado + "x" + lado + " lista en "
+                               + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio) + " ms");
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("No se pudo cargar la red vial " + grafo + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Permite desviar ambulancias en camino a emergencias menos graves si se
+     * indicó {@code -Demergencias.desvios} con la prioridad mínima que puede
+     * desviarlas (por ejemplo CRITICO).
+     */
+    private void configurarDesvios(GestorRecursos gestorRecursos) {
+        String minima = System.getProperty("emergencias.desvios");
+        if (minima == null) {
+            return;
+        }
+        Prioridad prioridad = Prioridad.valueOf(minima.toUpperCase());
+        gestorRecursos.configurarDesvios(prioridad);
+        System.out.println("Desvíos activos: " + prioridad + " o más grave puede desviar ambulancias");
+    }
+    
+    /**
+     * Acota la lista de espera de ambulancias si se indicó
+     * {@code -Demergencias.espera.ambulancias}; por omisión admite una
+     * emergencia en espera por ambulancia.
+     */
+    private void configurarEsperaAmbulancias(GestorRecursos gestorRecursos) {
+        Integer maximo = Integer.getInteger("emergencias.espera.ambulancias");
+        if (maximo != null) {
+            gestorRecursos.configurarEsperaAmbulancias(maximo);
+        }
+    }
+    
     /**
      * Ejecuta el sistema en modo automático por tiempo definido.
      */
@@ -136,6 +526,9 @@ public class Main {
         for (OperadorLlamadas op : operadores) {
             op.detener();
         }
+        if (generador != null) {
+            generador.detener();
+        }
         execOperadores.shutdown();
         
         try {
@@ -155,8 +548,11 @@ public class Main {
             Thread.currentThread().interrupt();
         }
         
-        // Paso 3: Detener despachadores
+        // Paso 3: Detener despachadores (y antes el controlador, para que no cree más)
         System.out.println("Deteniendo despachadores...");
+        if (controlador != null) {
+            despachadores = controlador.detener();
+        }
         for (Despachador desp : despachadores) {
             desp.detener();
         }
@@ -185,6 +581,18 @@ public class Main {
             Thread.currentThread().interrupt();
         }
         
+        // Paso 5: Detener consumidores del bus de eventos
+        GestorEmergencias.getInstancia().getBusEventos().detener();
+        DiarioEmergencias diario = GestorEmergencias.getInstancia().getDiario();
+        if (diario != null) {
+            diario.cerrar();
+        }
+        GrabadorTrazas grabador = GestorEmergencias.getInstancia().getGrabador();
+        if (grabador != null) {
+            grabador.cerrar();
+        }
+        Registro.vaciar(2, TimeUnit.SECONDS);
+        
         // Mostrar resumen final
         System.out.println("\nSistema detenido correctamente\n");
         monitor.mostrarResumenFinal();
@@ -192,13 +600,21 @@ public class Main {
         System.out.println("\nRESUMEN DE ACTIVIDAD POR COMPONENTE:");
         System.out.println("\nOperadores:");
         for (OperadorLlamadas op : operadores) {
-            System.out.println("  • " + op.getId() + ": " + op.getLlamadasAtendidas() + " llamadas procesadas");
+            System.out.println("  • " + op.getId() + ": " + op.getLlamadasAtendidas() + " llamadas procesadas" +
+                             (op.getLlamadasRechazadas() > 0 ? ", " + op.getLlamadasRechazadas() + " rechazadas" : ""));
+        }
+        if (generador != null) {
+            System.out.print(generador.informe());
         }
         
         System.out.println("\nDespachadores:");
         for (Despachador desp : despachadores) {
             System.out.println("  - " + desp.getId() + ": " + desp.getEmergenciasDespachas() + " emergencias despachadas");
         }
+        if (controlador != null && controlador.getDespachadoresRetirados() > 0) {
+            System.out.println("  - " + controlador.getDespachadoresRetirados() + " retirados por baja carga: " +
+                               controlador.getEmergenciasDespachadasRetirados() + " emergencias despachadas");
+        }
         
         System.out.println("\n" + "=".repeat(80));
         System.out.println("Gracias por usar el Sistema de Gestión de Emergencias Médicas");
@@ -0,0 +1,40 @@
+package com.emergencias.carga;
+
+import com.emergencias.simulacion.Reloj;
+import java.util.concurrent.Executor;
+
+/**
+ * Origen de llamadas que reemplaza a los operadores: una carga sintética o
+ * una traza grabada. Puede correr en hilos propios o como eventos de un
+ * {@link Reloj}.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public interface FuenteLlamadas {
+
+    /**
+     * Empieza a enviar llamadas en hilos del ejecutor.
+     * @param ejecutor Dónde correr los hilos de envío
+     */
+    void iniciar(Executor ejecutor);
+
+    /**
+     * Envía las llamadas como eventos de un reloj, por ejemplo en tiempo
+     * virtual.
+     * @param reloj Reloj donde se programan las llamadas
+     * @param alAdmitir Se ejecuta tras cada llamada admitida, por ejemplo para despacharla
+     */
+    void programarEn(Reloj reloj, Runnable alAdmitir);
+
+    /**
+     * Deja de enviar llamadas.
+     */
+    void detener();
+
+    /**
+     * Resumen de lo enviado, para mostrar al terminar.
+     * @return texto de varias líneas
+     */
+    String informe();
+}
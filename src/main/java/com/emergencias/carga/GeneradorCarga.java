@@ -0,0 +1,262 @@
+package com.emergencias.carga;
+
+import com.emergencias.gestores.GestorEmergencias;
+import com.emergencias.gestores.ResultadoAdmision;
+import com.emergencias.metricas.HistogramaLatencia;
+import com.emergencias.registro.Registro;
+import com.emergencias.simulacion.Reloj;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Generador de llamadas de lazo abierto. A diferencia de
+ * {@link com.emergencias.hilos.OperadorLlamadas}, que duerme un rato después
+ * de cada llamada, aquí los instantes de llegada se fijan de antemano con un
+ * {@link ProcesoLlegadas} y no dependen de lo que tarde el sistema: si una
+ * llamada se atrasa, las siguientes no se corren.
+ * <p>
+ * Cada emergencia se fecha en el instante en que debía llegar, no en el que
+ * se envió, así que los tiempos por etapa incluyen el atraso del propio
+ * generador y no se subestiman cuando el sistema se satura (omisión
+ * coordinada). El generador mide además cuánto se atrasó cada envío y cuánto
+ * tardó la admisión desde el instante previsto.
+ * <p>
+ * La tasa se reparte entre varios emisores, cada uno con su hilo y su
+ * semilla; para tasas altas conviene un emisor por cada pocas decenas de
+ * miles de llamadas por segundo. Los emisores admiten sin esperar
+ * ({@link GestorEmergencias#tryRegistrar}): una llamada que no cabe se
+ * cuenta como rechazada y se sigue con la próxima.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class GeneradorCarga implements FuenteLlamadas {
+    private static final long UMBRAL_GIRO_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final double[] PERCENTILES = {50.0, 99.0, 99.9};
+
+    private final ProcesoLlegadas proceso;
+    private final MezclaPrioridades mezcla;
+    private final List<Emisor> emisores;
+    private final GestorEmergencias gestorEmergencias;
+    private final LongAdder enviadas;
+    private final LongAdder rechazadas;
+    private final HistogramaLatencia retrasoEnvio;
+    private final HistogramaLatencia hastaAdmision;
+    private volatile boolean activo;
+    private volatile long inicioNanos;
+    private volatile long finNanos;
+
+    /**
+     * @param proceso Instantes de llegada de todas las llamadas juntas
+     * @param mezcla Proporción de cada prioridad
+     * @param numEmisores Emisores entre los que se reparte la tasa
+     * @param semilla Semilla de las llamadas; cada emisor deriva la suya
+     */
+    public GeneradorCarga(ProcesoLlegadas proceso, MezclaPrioridades mezcla, int numEmisores, long semilla) {
+        if (numEmisores < 1) {
+            throw new IllegalArgumentException("Se necesita al menos un emisor");
+        }
+        this.proceso = proceso;
+        this.mezcla = mezcla;
+        this.gestorEmergencias = GestorEmergencias.getInstancia();
+        this.enviadas = new LongAdder();
+        this.rechazadas = new LongAdder();
+        this.retrasoEnvio = new HistogramaLatencia();
+        this.hastaAdmision = new HistogramaLatencia();
+        this.activo = true;
+        ProcesoLlegadas porEmisor = proceso.dividido(numEmisores);
+        emisores = new ArrayList<>(numEmisores);
+        for (int i = 1; i <= numEmisores; i++) {
+            emisores.add(new Emisor("Carga-" + i, porEmisor, new Random(semilla + i)));
+        }
+    }
+
+    /**
+     * Una parte de la carga: sortea sus propios instantes y envía cada
+     * llamada al llegar su instante.
+     */
+    private final class Emisor implements Runnable {
+        private final String id;
+        private final ProcesoLlegadas proceso;
+        private final Random random;
+        private final GeneradorEmergencias generador;
+        private long desfaseNanos;
+
+        Emisor(String id, ProcesoLlegadas proceso, Random random) {
+            this.id = id;
+            this.proceso = proceso;
+            this.random = random;
+            this.generador = new GeneradorEmergencias(mezcla, random);
+        }
+
+        /**
+         * @return instante previsto de la llamada siguiente según el reloj
+         */
+        long proxima() {
+            desfaseNanos = proceso.siguiente(desfaseNanos, random);
+            return inicioNanos + desfaseNanos;
+        }
+
+        /**
+         * Envía una llamada prevista para un instante ya alcanzado.
+         * @return true si quedó registrada
+         */
+        boolean enviar(Reloj reloj, long previstoNanos) {
+            long envio = reloj.nanos();
+            ResultadoAdmision resultado = gestorEmergencias.tryRegistrar(generador.generar(previstoNanos));
+            long admitida = reloj.nanos();
+            enviadas.increment();
+            retrasoEnvio.registrarNanos(envio - previstoNanos);
+            hastaAdmision.registrarNanos(admitida - previstoNanos);
+            if (resultado == ResultadoAdmision.RECHAZADA) {
+                rechazadas.increment();
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            Reloj reloj = Reloj.actual();
+            Registro.info("{} iniciado: {}", id, proceso);
+            while (activo && !Thread.currentThread().isInterrupted()) {
+                long previsto = proxima();
+                esperarHasta(reloj, previsto, () -> activo);
+                if (!activo) {
+                    break;
+                }
+                enviar(reloj, previsto);
+            }
+            Registro.info("{} finalizado", id);
+        }
+    }
+
+    /**
+     * Duerme hasta poco antes del instante y gira el resto, porque dormir
+     * tiene una resolución de decenas de microsegundos. Si el instante ya
+     * pasó vuelve enseguida: el atraso se mide, no se recupera corriendo
+     * el calendario.
+     */
+    static void esperarHasta(Reloj reloj, long instanteNanos, BooleanSupplier seguir) {
+        long restante;
+        while (seguir.getAsBoolean() && (restante = instanteNanos - reloj.nanos()) > 0) {
+            if (restante > UMBRAL_GIRO_NANOS) {
+                LockSupport.parkNanos(restante - UMBRAL_GIRO_NANOS);
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Arranca un hilo por emisor.
+     * @param ejecutor Dónde correr los emisores; necesita un hilo por cada uno
+     */
+    @Override
+    public void iniciar(Executor ejecutor) {
+        inicioNanos = Reloj.actual().nanos();
+        for (Emisor emisor : emisores) {
+            ejecutor.execute(emisor);
+        }
+    }
+
+    /**
+     * Envía las llamadas como eventos de un reloj en lugar de en hilos
+     * propios, por ejemplo en tiempo virtual. Cada llamada se ejecuta en su
+     * instante exacto, así que el atraso medido es cero.
+     * @param reloj Reloj donde se programan las llamadas
+     * @param alAdmitir Se ejecuta tras cada llamada admitida, por ejemplo para despacharla
+     */
+    @Override
+    public void programarEn(Reloj reloj, Runnable alAdmitir) {
+        inicioNanos = reloj.nanos();
+        for (Emisor emisor : emisores) {
+            programarSiguiente(reloj, emisor, alAdmitir);
+        }
+    }
+
+    private void programarSiguiente(Reloj reloj, Emisor emisor, Runnable alAdmitir) {
+        long previsto = emisor.proxima();
+        reloj.programar(() -> {
+            if (!activo) {
+                return;
+            }
+            if (emisor.enviar(reloj, previsto)) {
+                alAdmitir.run();
+            }
+            programarSiguiente(reloj, emisor, alAdmitir);
+        }, Math.max(0L, previsto - reloj.nanos()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Deja de enviar llamadas. Los emisores en hilos terminan al volver de
+     * su espera.
+     */
+    @Override
+    public void detener() {
+        if (activo) {
+            activo = false;
+            finNanos = Reloj.actual().nanos();
+        }
+    }
+
+    public long getEnviadas() {
+        return enviadas.sum();
+    }
+
+    public long getRechazadas() {
+        return rechazadas.sum();
+    }
+
+    /**
+     * Atraso de cada envío respecto de su instante previsto.
+     */
+    public HistogramaLatencia getRetrasoEnvio() {
+        return retrasoEnvio;
+    }
+
+    /**
+     * Tiempo desde el instante previsto de cada llamada hasta que la
+     * admisión respondió.
+     */
+    public HistogramaLatencia getHastaAdmision() {
+        return hastaAdmision;
+    }
+
+    /**
+     * Tasa pedida y lograda, y atrasos del generador en milisegundos.
+     * @return texto de varias líneas
+     */
+    @Override
+    public String informe() {
+        long fin = activo ? Reloj.actual().nanos() : finNanos;
+        double segundos = Math.max(1e-9, (fin - inicioNanos) / 1e9);
+        long total = getEnviadas();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Carga de lazo abierto: %s, %d emisores%n", proceso, emisores.size()));
+        sb.append(String.format("  Mezcla: %s%n", mezcla));
+        sb.append(String.format("  Enviadas: %d en %.1f s (%.1f/s, pedidas %.1f/s), rechazadas: %d%n",
+                                total, segundos, total / segundos, proceso.getTasaMedia(), getRechazadas()));
+        sb.append(String.format("  %-30s %8s %8s %8s %8s%n", "(ms)", "p50", "p99", "p99.9", "max"));
+        agregarFila(sb, "Atraso del envío", retrasoEnvio.resumen());
+        agregarFila(sb, "Hasta admisión desde previsto", hastaAdmision.resumen());
+        return sb.toString();
+    }
+
+    private static void agregarFila(StringBuilder sb, String nombre, HistogramaLatencia.Resumen resumen) {
+        sb.append(String.format("  %-30s", nombre));
+        for (double percentil : PERCENTILES) {
+            sb.append(String.format(" %8.3f", resumen.percentil(percentil) / 1e3));
+        }
+        sb.append(String.format(" %8.3f%n", resumen.getMaximo() / 1e3));
+    }
+}
@@ -0,0 +1,84 @@
+package com.emergencias.carga;
+
+import com.emergencias.modelos.Emergencia;
+import com.emergencias.modelos.Prioridad;
+import java.util.Random;
+
+/**
+ * Emergencias con datos aleatorios realistas de Santa Marta: ubicación,
+ * descripción y coordenadas, con la prioridad según una
+ * {@link MezclaPrioridades}. No es thread-safe si se comparte el
+ * {@link Random}; cada productor usa el suyo.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public final class GeneradorEmergencias {
+    // Ubicaciones comunes de Santa Marta
+    private static final String[] UBICACIONES = {
+        "Calle 22 con Carrera 5",
+        "Rodadero Sur",
+        "El Centro Histórico",
+        "Mamatoco",
+        "Gaira",
+        "Bello Horizonte",
+        "Taganga",
+        "Pozos Colorados",
+        "Bastidas",
+        "Altos del Prado"
+    };
+
+    // Descripciones de emergencias
+    private static final String[] DESCRIPCIONES = {
+        "Dolor de pecho severo",
+        "Dificultad respiratoria",
+        "Traumatismo por accidente",
+        "Sangrado abundante",
+        "Pérdida de conciencia",
+        "Convulsiones",
+        "Fractura expuesta",
+        "Quemaduras graves",
+        "Intoxicación",
+        "Paro cardíaco"
+    };
+
+    private final MezclaPrioridades mezcla;
+    private final Random random;
+
+    public GeneradorEmergencias(MezclaPrioridades mezcla, Random random) {
+        this.mezcla = mezcla;
+        this.random = random;
+    }
+
+    /**
+     * Emergencia cuya llamada ocurre ahora.
+     */
+    public Emergencia generar() {
+        return generar(0L, false);
+    }
+
+    /**
+     * Emergencia cuya llamada debía ocurrir en un instante dado.
+     * @param marcaLlamadaNanos Instante previsto según el reloj del sistema
+     */
+    public Emergencia generar(long marcaLlamadaNanos) {
+        return generar(marcaLlamadaNanos, true);
+    }
+
+    private Emergencia generar(long marcaLlamadaNanos, boolean fechada) {
+        Prioridad prioridad = mezcla.elegir(random);
+        String ubicacion = UBICACIONES[random.nextInt(UBICACIONES.length)];
+        String descripcion = DESCRIPCIONES[random.nextInt(DESCRIPCIONES.length)];
+
+        // Coordenadas aleatorias dentro de Santa Marta
+        double latitud = 11.2 + (random.nextDouble() * 0.2); // Aproximado
+        double longitud = -74.2 + (random.nextDouble() * 0.2);
+
+        return fechada ? new Emergencia(ubicacion, prioridad, descripcion, latitud, longitud, marcaLlamadaNanos)
+                       : new Emergencia(ubicacion, prioridad, descripcion, latitud, longitud);
+    }
+
+    public MezclaPrioridades getMezcla() {
+        return mezcla;
+    }
+}
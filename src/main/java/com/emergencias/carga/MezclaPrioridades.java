@@ -0,0 +1,95 @@
+package com.emergencias.carga;
+
+import com.emergencias.modelos.Prioridad;
+import java.util.Random;
+
+/**
+ * Proporción de llamadas de cada prioridad. Se elige una prioridad con un
+ * único número aleatorio comparado contra los pesos acumulados.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public final class MezclaPrioridades {
+    private static final Prioridad[] PRIORIDADES = Prioridad.values();
+
+    /** Más leves que críticas: 10% CRÍTICO, 20% GRAVE, 30% MODERADO y 40% LEVE. */
+    public static final MezclaPrioridades PREDETERMINADA = new MezclaPrioridades(10, 20, 30, 40);
+
+    private final int[] pesos;
+    private final int[] acumulados;
+    private final int total;
+
+    /**
+     * @param pesos Peso de cada prioridad en el orden de {@link Prioridad#values()}
+     *              (de CRÍTICO a LEVE); no necesitan sumar 100
+     */
+    public MezclaPrioridades(int... pesos) {
+        if (pesos.length != PRIORIDADES.length) {
+            throw new IllegalArgumentException("Se esperaban " + PRIORIDADES.length + " pesos y hay " + pesos.length);
+        }
+        this.pesos = pesos.clone();
+        this.acumulados = new int[pesos.length];
+        int suma = 0;
+        for (int i = 0; i < pesos.length; i++) {
+            if (pesos[i] < 0) {
+                throw new IllegalArgumentException("Peso negativo para " + PRIORIDADES[i]);
+            }
+            suma += pesos[i];
+            acumulados[i] = suma;
+        }
+        if (suma == 0) {
+            throw new IllegalArgumentException("Todos los pesos son cero");
+        }
+        this.total = suma;
+    }
+
+    /**
+     * Lee una mezcla escrita como pesos separados por comas, de CRÍTICO a
+     * LEVE; por ejemplo {@code "10,20,30,40"}.
+     * @param texto Pesos separados por comas
+     * @return mezcla
+     */
+    public static MezclaPrioridades parse(String texto) {
+        String[] partes = texto.split(",");
+        int[] pesos = new int[partes.length];
+        for (int i = 0; i < partes.length; i++) {
+            pesos[i] = Integer.parseInt(partes[i].trim());
+        }
+        return new MezclaPrioridades(pesos);
+    }
+
+    /**
+     * Mezcla indicada en {@code -Demergencias.carga.mezcla}, o la
+     * predeterminada si no se indicó.
+     */
+    public static MezclaPrioridades desdePropiedades() {
+        String texto = System.getProperty("emergencias.carga.mezcla");
+        return texto == null ? PREDETERMINADA : parse(texto);
+    }
+
+    /**
+     * Prioridad de la próxima llamada.
+     */
+    public Prioridad elegir(Random random) {
+        int valor = random.nextInt(total);
+        int i = 0;
+        while (valor >= acumulados[i]) {
+            i++;
+        }
+        return PRIORIDADES[i];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < PRIORIDADES.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(PRIORIDADES[i].name()).append(' ')
+              .append(String.format("%.0f%%", 100.0 * pesos[i] / total));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,174 @@
+package com.emergencias.carga;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Proceso de llegada de llamadas: Poisson de tasa constante, con ráfagas
+ * periódicas o con un ciclo diurno. Los tres son procesos de Poisson cuya tasa
+ * depende del instante, y los tres se muestrean igual, por adelgazamiento: se
+ * sortean candidatas con la tasa máxima y cada una se acepta con probabilidad
+ * tasa(t) / tasa máxima. Con tasa constante se aceptan todas.
+ * <p>
+ * Los instantes se cuentan desde el inicio de la carga y no dependen de
+ * cuánto tarde el sistema en atender cada llamada (carga de lazo abierto).
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public final class ProcesoLlegadas {
+    private static final double NANOS_POR_SEGUNDO = 1e9;
+
+    public enum Tipo {
+        /** Tasa constante. */
+        POISSON,
+        /** Tasa base multiplicada durante una ventana al inicio de cada periodo. */
+        RAFAGAS,
+        /** Tasa que sigue un coseno: mínima al inicio del periodo, máxima a la mitad. */
+        DIURNO
+    }
+
+    private final Tipo tipo;
+    private final double tasa;
+    private final double factor;
+    private final long duracionNanos;
+    private final long periodoNanos;
+    private final double amplitud;
+    private final double tasaMaxima;
+
+    private ProcesoLlegadas(Tipo tipo, double tasa, double factor, long duracionNanos, long periodoNanos,
+                            double amplitud) {
+        if (!(tasa > 0)) {
+            throw new IllegalArgumentException("La tasa debe ser positiva: " + tasa);
+        }
+        this.tipo = tipo;
+        this.tasa = tasa;
+        this.factor = factor;
+        this.duracionNanos = duracionNanos;
+        this.periodoNanos = periodoNanos;
+        this.amplitud = amplitud;
+        switch (tipo) {
+            case RAFAGAS:
+                this.tasaMaxima = tasa * Math.max(1.0, factor);
+                break;
+            case DIURNO:
+                this.tasaMaxima = tasa * (1.0 + amplitud);
+                break;
+            default:
+                this.tasaMaxima = tasa;
+                break;
+        }
+    }
+
+    /**
+     * @param porSegundo Llamadas por segundo
+     */
+    public static ProcesoLlegadas poisson(double porSegundo) {
+        return new ProcesoLlegadas(Tipo.POISSON, porSegundo, 1.0, 0L, 0L, 0.0);
+    }
+
+    /**
+     * Ráfagas periódicas, por ejemplo un accidente múltiple cada tanto.
+     * @param porSegundo Llamadas por segundo fuera de las ráfagas
+     * @param factor Cuántas veces más llamadas durante una ráfaga
+     * @param duracion Duración de cada ráfaga
+     * @param periodo Tiempo entre el inicio de dos ráfagas
+     * @param unidad Unidad de {@code duracion} y {@code periodo}
+     */
+    public static ProcesoLlegadas rafagas(double porSegundo, double factor, long duracion, long periodo,
+                                          TimeUnit unidad) {
+        if (factor < 0 || duracion < 0 || periodo <= 0 || duracion > periodo) {
+            throw new IllegalArgumentException("Ráfaga inválida: factor " + factor + ", duración " + duracion
+                                               + ", periodo " + periodo);
+        }
+        return new ProcesoLlegadas(Tipo.RAFAGAS, porSegundo, factor, unidad.toNanos(duracion),
+                                   unidad.toNanos(periodo), 0.0);
+    }
+
+    /**
+     * Ciclo diurno: {@code porSegundo * (1 - amplitud * cos(2 pi t / periodo))}.
+     * @param porSegundo Llamadas por segundo en promedio
+     * @param amplitud Variación relativa, entre 0 (constante) y 1 (sin llamadas en el mínimo)
+     * @param periodo Duración del ciclo, normalmente un día
+     * @param unidad Unidad de {@code periodo}
+     */
+    public static ProcesoLlegadas diurno(double porSegundo, double amplitud, long periodo, TimeUnit unidad) {
+        if (amplitud < 0 || amplitud > 1 || periodo <= 0) {
+            throw new IllegalArgumentException("Ciclo inválido: amplitud " + amplitud + ", periodo " + periodo);
+        }
+        return new ProcesoLlegadas(Tipo.DIURNO, porSegundo, 1.0, 0L, unidad.toNanos(periodo), amplitud);
+    }
+
+    /**
+     * El mismo proceso con la tasa repartida entre varios emisores. Como
+     * sumar procesos de Poisson independientes da un proceso de Poisson,
+     * los emisores juntos reproducen el proceso original.
+     * @param partes Emisores
+     * @return proceso de cada emisor
+     */
+    public ProcesoLlegadas dividido(int partes) {
+        return new ProcesoLlegadas(tipo, tasa / partes, factor, duracionNanos, periodoNanos, amplitud);
+    }
+
+    /**
+     * Instante de la llamada siguiente.
+     * @param anteriorNanos Instante de la llamada anterior, desde el inicio de la carga
+     * @param random Generador del emisor
+     * @return instante de la siguiente, desde el inicio de la carga
+     */
+    public long siguiente(long anteriorNanos, Random random) {
+        double instante = anteriorNanos;
+        double maximaPorNano = tasaMaxima / NANOS_POR_SEGUNDO;
+        do {
+            instante += -Math.log(1.0 - random.nextDouble()) / maximaPorNano;
+        } while (tasaMaxima != tasa && random.nextDouble() * tasaMaxima > tasaEn((long) instante));
+        return Math.max(anteriorNanos, (long) instante);
+    }
+
+    /**
+     * Tasa instantánea.
+     * @param instanteNanos Instante desde el inicio de la carga
+     * @return llamadas por segundo
+     */
+    public double tasaEn(long instanteNanos) {
+        switch (tipo) {
+            case RAFAGAS:
+                return instanteNanos % periodoNanos < duracionNanos ? tasa * factor : tasa;
+            case DIURNO:
+                return tasa * (1.0 - amplitud * Math.cos(2 * Math.PI * instanteNanos / periodoNanos));
+            default:
+                return tasa;
+        }
+    }
+
+    /**
+     * Tasa promedio a lo largo de un periodo completo.
+     * @return llamadas por segundo
+     */
+    public double getTasaMedia() {
+        if (tipo == Tipo.RAFAGAS) {
+            double fraccion = (double) duracionNanos / periodoNanos;
+            return tasa * (1.0 - fraccion) + tasa * factor * fraccion;
+        }
+        return tasa;
+    }
+
+    public Tipo getTipo() {
+        return tipo;
+    }
+
+    @Override
+    public String toString() {
+        switch (tipo) {
+            case RAFAGAS:
+                return String.format("RAFAGAS %.1f llamadas/s, x%.1f durante %d ms cada %d ms", tasa, factor,
+                                     TimeUnit.NANOSECONDS.toMillis(duracionNanos),
+                                     TimeUnit.NANOSECONDS.toMillis(periodoNanos));
+            case DIURNO:
+                return String.format("DIURNO %.1f llamadas/s ±%.0f%% con periodo de %d s", tasa, amplitud * 100,
+                                     TimeUnit.NANOSECONDS.toSeconds(periodoNanos));
+            default:
+                return String.format("POISSON %.1f llamadas/s", tasa);
+        }
+    }
+}
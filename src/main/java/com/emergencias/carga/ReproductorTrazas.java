@@ -0,0 +1,247 @@
+package com.emergencias.carga;
+
+import com.emergencias.gestores.GestorEmergencias;
+import com.emergencias.gestores.ResultadoAdmision;
+import com.emergencias.metricas.EtapaAtencion;
+import com.emergencias.metricas.HistogramaLatencia;
+import com.emergencias.modelos.Emergencia;
+import com.emergencias.modelos.Prioridad;
+import com.emergencias.persistencia.LectorTrazas;
+import com.emergencias.persistencia.TipoTraza;
+import com.emergencias.registro.Registro;
+import com.emergencias.simulacion.Reloj;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vuelve a enviar las llamadas de una traza grabada, para comparar una
+ * versión del despacho con el día real o con otra versión. La traza se lee
+ * en orden de un archivo mapeado y cada llamada se envía en su instante
+ * original dividido por la velocidad: 1 reproduce el día tal cual, N lo
+ * comprime N veces y {@link Double#POSITIVE_INFINITY} envía sin esperar.
+ * <p>
+ * Igual que la carga sintética, cada emergencia se fecha en el instante en
+ * que debía llegar, así que el atraso del reproductor cuenta en los tiempos
+ * de respuesta. Los eventos de recursos de la traza no se reproducen (los
+ * decide el despacho bajo prueba); sirven para calcular el tiempo hasta la
+ * asignación de la corrida grabada y compararlo con el de esta. La
+ * comparación tiene sentido a velocidad 1. En tiempo virtual
+ * ({@link #programarEn}) dos reproducciones de la misma traza con el mismo
+ * despacho dan exactamente los mismos tiempos.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class ReproductorTrazas implements FuenteLlamadas {
+    private static final Prioridad[] PRIORIDADES = Prioridad.values();
+    private static final double[] PERCENTILES = {50.0, 90.0, 99.0};
+
+    private final LectorTrazas lector;
+    private final double velocidad;
+    private final GestorEmergencias gestorEmergencias;
+    private final HistogramaLatencia[] asignacionGrabada;
+    private final Map<Integer, Long> llamadasGrabadas;
+    private final HistogramaLatencia retrasoEnvio;
+    private volatile boolean activo;
+    private volatile boolean terminada;
+    private volatile long inicioNanos;
+    private volatile long finNanos;
+    private volatile long enviadas;
+    private volatile long rechazadas;
+
+    /**
+     * @param lector Traza abierta, antes del primer registro
+     * @param velocidad Factor de aceleración (mayor que 0), o
+     *                  {@link Double#POSITIVE_INFINITY} para la máxima
+     */
+    public ReproductorTrazas(LectorTrazas lector, double velocidad) {
+        if (!(velocidad > 0)) {
+            throw new IllegalArgumentException("Velocidad inválida: " + velocidad);
+        }
+        this.lector = lector;
+        this.velocidad = velocidad;
+        this.gestorEmergencias = GestorEmergencias.getInstancia();
+        this.asignacionGrabada = new HistogramaLatencia[PRIORIDADES.length];
+        for (int i = 0; i < asignacionGrabada.length; i++) {
+            asignacionGrabada[i] = new HistogramaLatencia();
+        }
+        this.llamadasGrabadas = new HashMap<>();
+        this.retrasoEnvio = new HistogramaLatencia();
+        this.activo = true;
+    }
+
+    /**
+     * Lee una velocidad escrita como factor ({@code "1"}, {@code "10"}) o
+     * como {@code "MAX"}.
+     */
+    public static double parseVelocidad(String texto) {
+        return "MAX".equalsIgnoreCase(texto.trim()) ? Double.POSITIVE_INFINITY : Double.parseDouble(texto);
+    }
+
+    private boolean isMaxima() {
+        return velocidad == Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Avanza hasta la próxima llamada, tomando nota de los eventos de
+     * recursos que haya en el camino.
+     * @return false si la traza terminó
+     */
+    private boolean avanzarALlamada() {
+        while (lector.siguiente()) {
+            TipoTraza tipo = lector.getTipo();
+            if (tipo == TipoTraza.LLAMADA) {
+                llamadasGrabadas.put(lector.getEmergenciaId(), lector.getDesfaseNanos());
+                return true;
+            }
+            if (tipo == TipoTraza.CANCELADA) {
+                llamadasGrabadas.remove(lector.getEmergenciaId());
+            } else if (tipo == TipoTraza.RECURSOS_ASIGNADOS) {
+                Long llamada = llamadasGrabadas.remove(lector.getEmergenciaId());
+                if (llamada != null) {
+                    asignacionGrabada[lector.getPrioridad().ordinal()]
+                        .registrarNanos(lector.getDesfaseNanos() - llamada);
+                }
+            }
+        }
+        terminada = true;
+        return false;
+    }
+
+    /**
+     * Instante en que debe enviarse la llamada actual.
+     */
+    private long previsto(Reloj reloj) {
+        return isMaxima() ? reloj.nanos() : inicioNanos + (long) (lector.getDesfaseNanos() / velocidad);
+    }
+
+    /**
+     * Envía la llamada actual de la traza.
+     * @return true si quedó registrada
+     */
+    private boolean enviar(Reloj reloj, long previstoNanos) {
+        Emergencia emergencia = new Emergencia(lector.getTexto1(), lector.getPrioridad(), lector.getTexto2(),
+                                               lector.getLatitud(), lector.getLongitud(), previstoNanos);
+        retrasoEnvio.registrarNanos(reloj.nanos() - previstoNanos);
+        ResultadoAdmision resultado = gestorEmergencias.tryRegistrar(emergencia);
+        enviadas++;
+        if (resultado == ResultadoAdmision.RECHAZADA) {
+            rechazadas++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reproduce la traza en un hilo del ejecutor.
+     */
+    @Override
+    public void iniciar(Executor ejecutor) {
+        inicioNanos = Reloj.actual().nanos();
+        ejecutor.execute(() -> {
+            Reloj reloj = Reloj.actual();
+            Registro.info("Reproduciendo {} ({} registros)", lector.getArchivo(), lector.getRegistros());
+            while (activo && !Thread.currentThread().isInterrupted() && avanzarALlamada()) {
+                long previsto = previsto(reloj);
+                GeneradorCarga.esperarHasta(reloj, previsto, () -> activo);
+                if (!activo) {
+                    break;
+                }
+                enviar(reloj, previsto);
+            }
+            finNanos = reloj.nanos();
+            Registro.info("Reproducción de {} terminada: {} llamadas", lector.getArchivo(), enviadas);
+        });
+    }
+
+    @Override
+    public void programarEn(Reloj reloj, Runnable alAdmitir) {
+        inicioNanos = reloj.nanos();
+        programarSiguiente(reloj, alAdmitir);
+    }
+
+    private void programarSiguiente(Reloj reloj, Runnable alAdmitir) {
+        if (!activo || !avanzarALlamada()) {
+            finNanos = reloj.nanos();
+            return;
+        }
+        long previsto = previsto(reloj);
+        // El lector no avanza hasta que se ejecuta el evento, así que la
+        // llamada actual sigue siendo esta
+        reloj.programar(() -> {
+            if (!activo) {
+                return;
+            }
+            if (enviar(reloj, previsto)) {
+                alAdmitir.run();
+            }
+            programarSiguiente(reloj, alAdmitir);
+        }, Math.max(0L, previsto - reloj.nanos()), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void detener() {
+        if (activo) {
+            activo = false;
+            if (!terminada) {
+                finNanos = Reloj.actual().nanos();
+            }
+        }
+    }
+
+    /**
+     * Si ya se enviaron todas las llamadas de la traza.
+     */
+    public boolean isTerminada() {
+        return terminada;
+    }
+
+    public long getEnviadas() {
+        return enviadas;
+    }
+
+    public long getRechazadas() {
+        return rechazadas;
+    }
+
+    /**
+     * Llamadas enviadas y, por prioridad, el tiempo hasta la asignación de la
+     * corrida grabada junto al de esta.
+     */
+    @Override
+    public String informe() {
+        long fin = finNanos != 0 ? finNanos : Reloj.actual().nanos();
+        double segundos = (fin - inicioNanos) / 1e9;
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Reproducción de %s (grabada el %s) a velocidad %s%n", lector.getArchivo(),
+                                lector.getInicio().withNano(0), isMaxima() ? "máxima" : velocidad + "x"));
+        // A velocidad máxima en tiempo virtual todas las llamadas caen en el mismo instante
+        String tasa = segundos >= 1e-3 ? String.format(" (%.1f/s)", enviadas / segundos) : "";
+        sb.append(String.format("  Enviadas: %d en %.1f s%s, rechazadas: %d%s%n", enviadas, segundos, tasa,
+                                rechazadas, terminada ? "" : " (traza incompleta)"));
+        sb.append(String.format("  Atraso del envío (ms): p50 %.3f, p99 %.3f, max %.3f%n",
+                                retrasoEnvio.resumen().percentil(50) / 1e3,
+                                retrasoEnvio.resumen().percentil(99) / 1e3,
+                                retrasoEnvio.resumen().getMaximo() / 1e3));
+        sb.append(String.format("  Hasta asignación (s), grabada | esta corrida:%n"));
+        sb.append(String.format("  %-9s %8s %7s %7s %7s | %8s %7s %7s %7s%n", "", "n", "p50", "p90", "p99",
+                                "n", "p50", "p90", "p99"));
+        for (Prioridad p : PRIORIDADES) {
+            sb.append(String.format("  %-9s", p.name()));
+            agregar(sb, asignacionGrabada[p.ordinal()].resumen());
+            sb.append(" |");
+            agregar(sb, gestorEmergencias.getMetricas().acumulado(p, EtapaAtencion.ASIGNACION));
+            sb.append(String.format("%n"));
+        }
+        return sb.toString();
+    }
+
+    private static void agregar(StringBuilder sb, HistogramaLatencia.Resumen resumen) {
+        sb.append(String.format(" %8d", resumen.getTotal()));
+        for (double percentil : PERCENTILES) {
+            sb.append(String.format(" %7.2f", resumen.percentil(percentil) / 1e6));
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.emergencias.estructuras;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Los k elementos más cercanos a un punto vistos en un recorrido: montículo
+ * de máximos de tamaño k sobre la distancia al cuadrado, para descartar en
+ * O(1) los que no mejoran al k-ésimo. Lo comparten las búsquedas de
+ * {@link IndiceAmbulancias}, {@link IndiceTraslados} y
+ * {@link com.emergencias.modelos.EstadoFlota}.
+ *
+ * @param <T> Tipo de los elementos
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public final class Cercanas<T> {
+    private final Object[] elementos;
+    private final double[] distancias;
+    private int cantidad;
+
+    /**
+     * @param k Número máximo de elementos que se guardan
+     */
+    public Cercanas(int k) {
+        this.elementos = new Object[k];
+        this.distancias = new double[k];
+    }
+
+    public boolean llena() {
+        return cantidad == elementos.length;
+    }
+
+    public int cantidad() {
+        return cantidad;
+    }
+
+    /**
+     * Distancia al cuadrado del k-ésimo, el más lejano de los guardados.
+     * Solo tiene sentido con al menos uno guardado.
+     */
+    public double peor() {
+        return distancias[0];
+    }
+
+    /**
+     * Si un elemento a esa distancia entraría entre los guardados.
+     */
+    public boolean admite(double distancia) {
+        return cantidad < elementos.length || distancia < distancias[0];
+    }
+
+    /**
+     * Si el elemento ya está guardado. Recorre los k guardados: es para
+     * recorridos que pueden ver el mismo elemento más de una vez.
+     */
+    public boolean contiene(T elemento) {
+        for (int i = 0; i < cantidad; i++) {
+            if (elementos[i] == elemento) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Guarda un elemento si está entre los k más cercanos vistos.
+     * @param elemento Elemento visto
+     * @param distancia Su distancia al cuadrado al punto
+     */
+    public void ofrecer(T elemento, double distancia) {
+        if (cantidad < elementos.length) {
+            int i = cantidad++;
+            while (i > 0) {
+                int padre = (i - 1) >>> 1;
+                if (distancias[padre] >= distancia) {
+                    break;
+                }
+                elementos[i] = elementos[padre];
+                distancias[i] = distancias[padre];
+                i = padre;
+            }
+            elementos[i] = elemento;
+            distancias[i] = distancia;
+        } else if (distancia < distancias[0]) {
+            hundir(elemento, distancia);
+        }
+    }
+
+    /**
+     * Coloca un elemento en la raíz y lo baja hasta su lugar.
+     */
+    private void hundir(Object elemento, double distancia) {
+        int i = 0;
+        int mitad = cantidad >>> 1;
+        while (i < mitad) {
+            int hijo = 2 * i + 1;
+            if (hijo + 1 < cantidad && distancias[hijo + 1] > distancias[hijo]) {
+                hijo++;
+            }
+            if (distancias[hijo] <= distancia) {
+                break;
+            }
+            elementos[i] = elementos[hijo];
+            distancias[i] = distancias[hijo];
+            i = hijo;
+        }
+        elementos[i] = elemento;
+        distancias[i] = distancia;
+    }
+
+    /**
+     * El k-ésimo guardado; con k = 1, el más cercano.
+     * @return elemento en la raíz, o null si no hay ninguno
+     */
+    @SuppressWarnings("unchecked")
+    public T kesima() {
+        return cantidad == 0 ? null : (T) elementos[0];
+    }
+
+    /**
+     * Vacía el montículo en orden de distancia creciente.
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> ordenadas() {
+        Object[] resultado = new Object[cantidad];
+        for (int j = cantidad - 1; j >= 0; j--) {
+            resultado[j] = elementos[0];
+            Object ultimo = elementos[j];
+            double distancia = distancias[j];
+            elementos[j] = null;
+            cantidad = j;
+            if (j > 0) {
+                hundir(ultimo, distancia);
+            }
+        }
+        return new ArrayList<>((List<T>) Arrays.asList(resultado));
+    }
+}
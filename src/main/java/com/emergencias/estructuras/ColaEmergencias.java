@@ -0,0 +1,518 @@
+package com.emergencias.estructuras;
+
+import com.emergencias.modelos.Emergencia;
+import com.emergencias.modelos.Prioridad;
+import com.emergencias.simulacion.Reloj;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cola bloqueante de emergencias con un carril por cada nivel de prioridad.
+ * Cada carril es un montículo indexado ordenado por antigüedad de la llamada, de
+ * modo que cancelar o reclasificar una emergencia cuesta O(log n) usando la
+ * posición que la propia emergencia guarda.
+ * El envejecimiento se aplica solo al extraer: se lee el reloj monotónico una vez
+ * y se compara la prioridad efectiva de la cabeza de cada carril. Como dentro de
+ * un carril la más antigua es siempre la de mayor prioridad efectiva, el orden
+ * global es correcto sin reordenar elementos mientras esperan.
+ * <p>
+ * Tras cada cambio la cola publica, sin locks para el lector, el instante de
+ * llamada de la cabeza de cada carril. Así otros hilos pueden estimar su mejor
+ * prioridad efectiva (por ejemplo, para robar trabajo entre colas) sin tomar el lock.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class ColaEmergencias {
+    private static final Prioridad[] PRIORIDADES = Prioridad.values();
+
+    private final MonticuloEmergencias[] carriles;
+    private final ReentrantLock lock;
+    private final Condition noVacia;
+    private int tamanio;
+    private final AtomicLongArray marcasCabeza;
+    private volatile int carrilesOcupados;
+
+    public ColaEmergencias(int capacidadInicial) {
+        carriles = new MonticuloEmergencias[PRIORIDADES.length];
+        int porCarril = capacidadInicial / PRIORIDADES.length;
+        for (int i = 0; i < carriles.length; i++) {
+            carriles[i] = new MonticuloEmergencias(porCarril);
+        }
+        lock = new ReentrantLock();
+        noVacia = lock.newCondition();
+        marcasCabeza = new AtomicLongArray(carriles.length);
+    }
+
+    /**
+     * Inserta una emergencia en el carril de su prioridad. O(log n).
+     * @param emergencia Emergencia a encolar
+     */
+    public void ofrecer(Emergencia emergencia) {
+        lock.lock();
+        try {
+            carriles[emergencia.getPrioridad().ordinal()].insertar(emergencia);
+            tamanio++;
+            publicarResumen();
+            noVacia.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserta varias emergencias tomando el lock una sola vez.
+     * @param emergencias Emergencias a encolar
+     */
+    public void ofrecerTodas(Collection<Emergencia> emergencias) {
+        if (emergencias.isEmpty()) {
+            return;
+        }
+        lock.lock();
+        try {
+            for (Emergencia emergencia : emergencias) {
+                carriles[emergencia.getPrioridad().ordinal()].insertar(emergencia);
+            }
+            tamanio += emergencias.size();
+            publicarResumen();
+            noVacia.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Extrae la emergencia de mayor prioridad efectiva, esperando si no hay.
+     * @return Siguiente emergencia a atender
+     */
+    public Emergencia tomar() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (tamanio == 0) {
+                noVacia.await();
+            }
+            return extraer();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Extrae la emergencia de mayor prioridad efectiva con tiempo máximo de espera.
+     * @param timeout Tiempo máximo de espera
+     * @param unit Unidad de tiempo
+     * @return Emergencia o null si se agotó el tiempo
+     */
+    public Emergencia sondear(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (tamanio == 0) {
+                if (nanos <= 0L) {
+                    return null;
+                }
+                nanos = noVacia.awaitNanos(nanos);
+            }
+            return extraer();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Extrae la emergencia de mayor prioridad efectiva si hay alguna, sin esperar.
+     * @return Emergencia o null si la cola está vacía
+     */
+    public Emergencia extraerSiHay() {
+        lock.lock();
+        try {
+            return tamanio == 0 ? null : extraer();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Extrae sin esperar hasta {@code maximo} emergencias en orden de atención,
+     * tomando el lock una sola vez.
+     * @param maximo Número máximo de emergencias
+     * @param destino Lista donde se agregan, en orden
+     * @return número de emergencias extraídas
+     */
+    public int drenar(int maximo, List<Emergencia> destino) {
+        return drenarMientrasPreceda(maximo, destino, Reloj.actual().nanos(), Double.NEGATIVE_INFINITY, -1, 0L);
+    }
+
+    /**
+     * Como {@link #drenar}, pero a partir de la segunda se detiene cuando la
+     * siguiente emergencia ya no precede a la cabeza de otra cola, descrita por
+     * su prioridad efectiva, su carril y su instante de llamada. Con carril
+     * rival -1 no hay rival.
+     */
+    int drenarMientrasPreceda(int maximo, List<Emergencia> destino, long ahora,
+                              double valorRival, int carrilRival, long marcaRival) {
+        lock.lock();
+        try {
+            int extraidas = 0;
+            while (extraidas < maximo && tamanio > 0) {
+                int carril = seleccionarCarril(ahora);
+                // La primera ya ganó la comparación del llamador; el rival decide desde la segunda
+                if (carrilRival >= 0 && extraidas > 0) {
+                    Emergencia cabeza = carriles[carril].cabeza();
+                    if (!precede(cabeza.calcularPrioridadEfectiva(ahora), carril, cabeza.getMarcaLlamadaNanos(),
+                                 valorRival, carrilRival, marcaRival)) {
+                        break;
+                    }
+                }
+                destino.add(carriles[carril].extraerCabeza());
+                tamanio--;
+                extraidas++;
+            }
+            if (extraidas > 0) {
+                publicarResumen();
+            }
+            return extraidas;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Orden de atención entre dos cabezas: mayor prioridad efectiva, luego la
+     * prioridad más grave y luego la llamada más antigua.
+     */
+    static boolean precede(double valor, int carril, long marca,
+                           double otroValor, int otroCarril, long otraMarca) {
+        if (valor != otroValor) {
+            return valor > otroValor;
+        }
+        if (carril != otroCarril) {
+            return carril < otroCarril;
+        }
+        return marca - otraMarca < 0;
+    }
+
+    /**
+     * Estima sin tomar el lock la mayor prioridad efectiva presente en la cola.
+     * El valor puede estar desactualizado; quien extraiga debe volver a evaluar.
+     * @param ahoraNanos Instante de referencia según {@link Reloj#nanos()}
+     * @return mejor prioridad efectiva, o {@link Double#NEGATIVE_INFINITY} si está vacía
+     */
+    public double mejorPrioridadEfectiva(long ahoraNanos) {
+        Cabeza cabeza = new Cabeza();
+        leerCabeza(ahoraNanos, cabeza);
+        return cabeza.vacia() ? Double.NEGATIVE_INFINITY : cabeza.valor;
+    }
+
+    /**
+     * Cabeza de una cola leída sin lock: su carril, su instante de llamada y
+     * su prioridad efectiva en el instante de la lectura. Carril -1 si la cola
+     * estaba vacía. Es mutable para reutilizarla entre lecturas.
+     */
+    static final class Cabeza {
+        int carril = -1;
+        long marca;
+        double valor;
+
+        boolean vacia() {
+            return carril < 0;
+        }
+
+        void vaciar() {
+            carril = -1;
+        }
+
+        void copiar(Cabeza otra) {
+            carril = otra.carril;
+            marca = otra.marca;
+            valor = otra.valor;
+        }
+
+        /**
+         * Si describe la misma cabeza que otra leída en el mismo instante.
+         */
+        boolean misma(Cabeza otra) {
+            return carril == otra.carril && (vacia() || marca == otra.marca);
+        }
+
+        /**
+         * Si esta cabeza, con su prioridad efectiva aumentada en
+         * {@code ventaja}, se atiende antes que otra.
+         */
+        boolean precede(double ventaja, Cabeza otra) {
+            return ColaEmergencias.precede(valor + ventaja, carril, marca, otra.valor, otra.carril, otra.marca);
+        }
+    }
+
+    /**
+     * Versión sin lock de {@link #seleccionarCarril()} sobre el resumen publicado.
+     * @param ahoraNanos Instante de referencia según {@link Reloj#nanos()}
+     * @param destino Dónde dejar la cabeza preferida; queda vacía si la cola lo está
+     */
+    void leerCabeza(long ahoraNanos, Cabeza destino) {
+        int ocupados = carrilesOcupados;
+        destino.vaciar();
+        double mejorValor = Double.NEGATIVE_INFINITY;
+        while (ocupados != 0) {
+            int i = Integer.numberOfTrailingZeros(ocupados);
+            ocupados &= ocupados - 1;
+            long marca = marcasCabeza.get(i);
+            double valor = Emergencia.calcularPrioridadEfectiva(PRIORIDADES[i], marca, ahoraNanos);
+            if (valor > mejorValor) {
+                mejorValor = valor;
+                destino.carril = i;
+                destino.marca = marca;
+                destino.valor = valor;
+            }
+        }
+    }
+
+    /**
+     * Marca de llamada de la emergencia que más lleva esperando, sin tomar el
+     * lock. Como cada carril está ordenado por antigüedad basta mirar sus
+     * cabezas.
+     * @return marca según {@link Reloj#nanos()}, o 0 si la cola está vacía
+     */
+    public long marcaMasAntigua() {
+        int ocupados = carrilesOcupados;
+        long masAntigua = 0L;
+        while (ocupados != 0) {
+            int i = Integer.numberOfTrailingZeros(ocupados);
+            ocupados &= ocupados - 1;
+            long marca = marcasCabeza.get(i);
+            if (masAntigua == 0L || marca - masAntigua < 0) {
+                masAntigua = marca;
+            }
+        }
+        return masAntigua;
+    }
+
+    /**
+     * Devuelve la emergencia que se extraería a continuación, sin retirarla.
+     * @return próxima emergencia o null si la cola está vacía
+     */
+    public Emergencia consultar() {
+        lock.lock();
+        try {
+            return tamanio == 0 ? null : carriles[seleccionarCarril()].cabeza();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retira una emergencia concreta de su carril. O(log n).
+     * @param emergencia Emergencia a retirar
+     * @return true si estaba en la cola
+     */
+    public boolean remover(Emergencia emergencia) {
+        lock.lock();
+        try {
+            boolean removida = carriles[emergencia.getPrioridad().ordinal()].retirar(emergencia);
+            if (removida) {
+                tamanio--;
+                publicarResumen();
+            }
+            return removida;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retira una emergencia reciente de un carril, para descartar carga en saturación.
+     * @param prioridad Carril del que retirar
+     * @return emergencia retirada o null si el carril está vacío
+     */
+    public Emergencia retirarReciente(Prioridad prioridad) {
+        lock.lock();
+        try {
+            Emergencia retirada = carriles[prioridad.ordinal()].extraerUltima();
+            if (retirada != null) {
+                tamanio--;
+                publicarResumen();
+            }
+            return retirada;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Eleva la prioridad de una emergencia, moviéndola de carril si está encolada.
+     * Conserva su instante de llamada, por lo que mantiene la espera acumulada. O(log n).
+     * @param emergencia Emergencia a reclasificar
+     * @param nueva Nueva prioridad, más grave que la actual
+     * @return prioridad anterior, o null si la nueva no era más grave
+     */
+    public Prioridad elevarPrioridad(Emergencia emergencia, Prioridad nueva) {
+        return elevar(emergencia, nueva, false);
+    }
+
+    /**
+     * Igual que {@link #elevarPrioridad}, pero solo actúa si la emergencia está en
+     * esta cola; útil cuando una emergencia puede estar en una de varias colas.
+     * @param emergencia Emergencia a reclasificar
+     * @param nueva Nueva prioridad, más grave que la actual
+     * @return prioridad anterior, o null si no estaba encolada o no era más grave
+     */
+    public Prioridad elevarPrioridadSiEncolada(Emergencia emergencia, Prioridad nueva) {
+        return elevar(emergencia, nueva, true);
+    }
+
+    private Prioridad elevar(Emergencia emergencia, Prioridad nueva, boolean soloSiEncolada) {
+        lock.lock();
+        try {
+            Prioridad anterior = emergencia.getPrioridad();
+            if (nueva.getValor() <= anterior.getValor()) {
+                return null;
+            }
+            boolean encolada = carriles[anterior.ordinal()].retirar(emergencia);
+            if (!encolada && soloSiEncolada) {
+                return null;
+            }
+            emergencia.setPrioridad(nueva);
+            if (encolada) {
+                carriles[nueva.ordinal()].insertar(emergencia);
+                publicarResumen();
+            }
+            return anterior;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Devuelve hasta {@code limite} emergencias en el orden en que serían atendidas.
+     * Recorre los montículos en orden con una cola auxiliar, en O(k log k), usando
+     * una única lectura del reloj.
+     * @param limite Número máximo de emergencias a devolver
+     * @return Lista ordenada (copia)
+     */
+    public List<Emergencia> primeras(int limite) {
+        lock.lock();
+        try {
+            int total = Math.min(limite, tamanio);
+            List<Emergencia> resultado = new ArrayList<>(total);
+            if (total == 0) {
+                return resultado;
+            }
+            long ahora = Reloj.actual().nanos();
+            PriorityQueue<Candidato> frontera = new PriorityQueue<>();
+            for (int i = 0; i < carriles.length; i++) {
+                if (carriles[i].tamanio() > 0) {
+                    frontera.add(new Candidato(i, 0, carriles[i].enPosicion(0), ahora));
+                }
+            }
+            while (resultado.size() < total) {
+                Candidato mejor = frontera.poll();
+                resultado.add(mejor.emergencia);
+                MonticuloEmergencias carril = carriles[mejor.carril];
+                for (int hijo = 2 * mejor.posicion + 1; hijo <= 2 * mejor.posicion + 2; hijo++) {
+                    if (hijo < carril.tamanio()) {
+                        frontera.add(new Candidato(mejor.carril, hijo, carril.enPosicion(hijo), ahora));
+                    }
+                }
+            }
+            return resultado;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int tamanio() {
+        lock.lock();
+        try {
+            return tamanio;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Extrae la cabeza ganadora. Debe llamarse con el lock tomado y la cola no vacía.
+     */
+    private Emergencia extraer() {
+        tamanio--;
+        Emergencia emergencia = carriles[seleccionarCarril()].extraerCabeza();
+        publicarResumen();
+        return emergencia;
+    }
+
+    /**
+     * Publica el instante de llamada de la cabeza de cada carril y qué carriles
+     * tienen elementos. Debe llamarse con el lock tomado tras cada cambio.
+     */
+    private void publicarResumen() {
+        int ocupados = 0;
+        for (int i = 0; i < carriles.length; i++) {
+            Emergencia cabeza = carriles[i].cabeza();
+            if (cabeza != null) {
+                marcasCabeza.lazySet(i, cabeza.getMarcaLlamadaNanos());
+                ocupados |= 1 << i;
+            }
+        }
+        carrilesOcupados = ocupados;
+    }
+
+    /**
+     * Índice del carril cuya cabeza tiene mayor prioridad efectiva ahora. Los
+     * carriles están ordenados de mayor a menor gravedad, así que en empate gana
+     * la más grave.
+     */
+    private int seleccionarCarril() {
+        return seleccionarCarril(Reloj.actual().nanos());
+    }
+
+    private int seleccionarCarril(long ahora) {
+        int mejor = -1;
+        double mejorValor = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < carriles.length; i++) {
+            Emergencia cabeza = carriles[i].cabeza();
+            if (cabeza != null) {
+                double valor = cabeza.calcularPrioridadEfectiva(ahora);
+                if (valor > mejorValor) {
+                    mejorValor = valor;
+                    mejor = i;
+                }
+            }
+        }
+        return mejor;
+    }
+
+    /**
+     * Nodo del recorrido ordenado de {@link #primeras(int)}. Ordena igual que
+     * {@link #extraer()}: prioridad efectiva, luego carril más grave, luego antigüedad.
+     */
+    private static final class Candidato implements Comparable<Candidato> {
+        final int carril;
+        final int posicion;
+        final Emergencia emergencia;
+        final double valor;
+
+        Candidato(int carril, int posicion, Emergencia emergencia, long ahora) {
+            this.carril = carril;
+            this.posicion = posicion;
+            this.emergencia = emergencia;
+            this.valor = emergencia.calcularPrioridadEfectiva(ahora);
+        }
+
+        @Override
+        public int compareTo(Candidato otro) {
+            int porValor = Double.compare(otro.valor, valor);
+            if (porValor != 0) {
+                return porValor;
+            }
+            if (carril != otro.carril) {
+                return Integer.compare(carril, otro.carril);
+            }
+            return Long.compare(emergencia.getMarcaLlamadaNanos() - otro.emergencia.getMarcaLlamadaNanos(), 0L);
+        }
+    }
+}
@@ -0,0 +1,530 @@
+package com.emergencias.estructuras;
+
+import com.emergencias.modelos.Emergencia;
+import com.emergencias.modelos.Prioridad;
+import com.emergencias.simulacion.Reloj;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cola de emergencias particionada por zona geográfica.
+ * <p>
+ * La ciudad se divide en una cuadrícula de zonas y cada zona tiene su propia
+ * {@link ColaEmergencias} con su propio lock, de modo que los despachadores no
+ * compiten por un único lock. Cada despachador tiene una zona propia y toma de
+ * ella mientras tenga trabajo; solo la deja si la cabeza de otra zona la supera
+ * en al menos un nivel de gravedad ({@link #BANDA_ROBO}), por lo que una
+ * CRÍTICA en otra zona gana a una LEVE o una GRAVE en la propia. Con la zona
+ * propia vacía roba la mejor cabeza ajena, y a igual urgencia la de la zona más
+ * cercana. Las cabezas se comparan sin locks, sobre el resumen que publica cada
+ * zona, así que con trabajo repartido cada despachador solo toma el lock de su
+ * zona.
+ * <p>
+ * Quien no tiene zona ({@link #SIN_ZONA}) recibe el mismo orden que daría una
+ * sola cola.
+ * <p>
+ * El lock global solo se usa para dormir cuando todas las zonas están vacías.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class ColaFragmentada {
+    private static final Prioridad[] PRIORIDADES = Prioridad.values();
+
+    /**
+     * Zona propia de quien extrae en orden global estricto, sin preferir ninguna.
+     */
+    public static final int SIN_ZONA = -1;
+
+    /**
+     * Ventaja de prioridad efectiva que debe tener otra zona para que un
+     * despachador deje la propia con trabajo: un nivel de gravedad, como una
+     * GRAVE ajena recién llegada frente a una MODERADA propia.
+     */
+    static final double BANDA_ROBO = 1.0;
+
+    private final ColaEmergencias[] zonas;
+    private final int[][] ordenRobo;
+    private final int[] todas;
+    private final double latitudMin;
+    private final double longitudMin;
+    private final double altoFila;
+    private final double anchoColumna;
+    private final int filas;
+    private final int columnas;
+    private final AtomicInteger total;
+    private final AtomicInteger esperando;
+    private final ReentrantLock lockEspera;
+    private final Condition hayTrabajo;
+
+    /**
+     * Crea la cola sobre un rectángulo geográfico. Las coordenadas fuera del
+     * rectángulo se asignan a la zona del borde más cercana.
+     * @param latitudMin Latitud mínima
+     * @param latitudMax Latitud máxima
+     * @param longitudMin Longitud mínima
+     * @param longitudMax Longitud máxima
+     * @param filas Zonas en sentido norte-sur
+     * @param columnas Zonas en sentido este-oeste
+     */
+    public ColaFragmentada(double latitudMin, double latitudMax, double longitudMin, double longitudMax,
+                           int filas, int columnas) {
+        this.latitudMin = latitudMin;
+        this.longitudMin = longitudMin;
+        this.filas = filas;
+        this.columnas = columnas;
+        this.altoFila = (latitudMax - latitudMin) / filas;
+        this.anchoColumna = (longitudMax - longitudMin) / columnas;
+        this.zonas = new ColaEmergencias[filas * columnas];
+        for (int i = 0; i < zonas.length; i++) {
+            zonas[i] = new ColaEmergencias(64);
+        }
+        this.ordenRobo = calcularOrdenRobo();
+        this.todas = new int[zonas.length];
+        for (int i = 0; i < todas.length; i++) {
+            todas[i] = i;
+        }
+        this.total = new AtomicInteger(0);
+        this.esperando = new AtomicInteger(0);
+        this.lockEspera = new ReentrantLock();
+        this.hayTrabajo = lockEspera.newCondition();
+    }
+
+    /**
+     * Para cada zona, el resto de zonas ordenadas por distancia en la cuadrícula.
+     */
+    private int[][] calcularOrdenRobo() {
+        int[][] orden = new int[zonas.length][];
+        for (int z = 0; z < zonas.length; z++) {
+            final int fila = z / columnas;
+            final int columna = z % columnas;
+            List<Integer> otras = new ArrayList<>();
+            for (int o = 0; o < zonas.length; o++) {
+                if (o != z) {
+                    otras.add(o);
+                }
+            }
+            otras.sort(Comparator.comparingInt(o ->
+                Math.max(Math.abs(o / columnas - fila), Math.abs(o % columnas - columna))));
+            orden[z] = otras.stream().mapToInt(Integer::intValue).toArray();
+        }
+        return orden;
+    }
+
+    /**
+     * Zona geográfica de una coordenada.
+     * @param latitud Latitud
+     * @param longitud Longitud
+     * @return índice de zona
+     */
+    public int zonaDe(double latitud, double longitud) {
+        int fila = (int) ((latitud - latitudMin) / altoFila);
+        int columna = (int) ((longitud - longitudMin) / anchoColumna);
+        fila = Math.min(filas - 1, Math.max(0, fila));
+        columna = Math.min(columnas - 1, Math.max(0, columna));
+        return fila * columnas + columna;
+    }
+
+    public int getNumeroZonas() {
+        return zonas.length;
+    }
+
+    /**
+     * Encola una emergencia en la zona de su ubicación.
+     * @param emergencia Emergencia a encolar
+     */
+    public void ofrecer(Emergencia emergencia) {
+        zonaPara(emergencia).ofrecer(emergencia);
+        total.incrementAndGet();
+        despertar(1);
+    }
+
+    /**
+     * Encola un lote tomando el lock de cada zona una sola vez.
+     * @param emergencias Emergencias a encolar
+     */
+    public void ofrecerTodas(Collection<Emergencia> emergencias) {
+        if (emergencias.isEmpty()) {
+            return;
+        }
+        List<List<Emergencia>> porZona = new ArrayList<>(zonas.length);
+        for (int i = 0; i < zonas.length; i++) {
+            porZona.add(new ArrayList<>());
+        }
+        for (Emergencia emergencia : emergencias) {
+            porZona.get(zonaDe(emergencia.getLatitud(), emergencia.getLongitud())).add(emergencia);
+        }
+        for (int i = 0; i < zonas.length; i++) {
+            zonas[i].ofrecerTodas(porZona.get(i));
+        }
+        total.addAndGet(emergencias.size());
+        despertar(emergencias.size());
+    }
+
+    /**
+     * Extrae la siguiente emergencia para un despachador, esperando si no hay.
+     * @param zonaPropia Zona del despachador, o {@link #SIN_ZONA}
+     * @return Siguiente emergencia a atender
+     */
+    public Emergencia tomar(int zonaPropia) throws InterruptedException {
+        Emergencia emergencia;
+        while ((emergencia = sondear(zonaPropia, 1, TimeUnit.SECONDS)) == null) {
+            // Seguir esperando
+        }
+        return emergencia;
+    }
+
+    /**
+     * Extrae la siguiente emergencia para un despachador con tiempo máximo.
+     * @param zonaPropia Zona del despachador, o {@link #SIN_ZONA}
+     * @param timeout Tiempo máximo de espera
+     * @param unit Unidad de tiempo
+     * @return Emergencia o null si se agotó el tiempo
+     */
+    public Emergencia sondear(int zonaPropia, long timeout, TimeUnit unit) throws InterruptedException {
+        long limite = System.nanoTime() + unit.toNanos(timeout);
+        int propia = normalizar(zonaPropia);
+        while (true) {
+            Emergencia emergencia = extraerMejor(propia);
+            if (emergencia != null) {
+                return emergencia;
+            }
+            long restante = limite - System.nanoTime();
+            if (restante <= 0L) {
+                return null;
+            }
+            esperarTrabajo(restante);
+        }
+    }
+
+    /**
+     * Extrae sin esperar, de la zona propia o robando si hace falta.
+     * @param zonaPropia Zona del despachador, o {@link #SIN_ZONA}
+     * @return Emergencia o null si todas las zonas están vacías
+     */
+    public Emergencia extraerSiHay(int zonaPropia) {
+        return extraerMejor(normalizar(zonaPropia));
+    }
+
+    /**
+     * Extrae un lote en orden de atención, esperando solo si no hay ninguna.
+     * @param zonaPropia Zona del despachador, o {@link #SIN_ZONA}
+     * @param maximo Número máximo de emergencias
+     * @param timeout Tiempo máximo de espera por la primera
+     * @param unit Unidad de tiempo
+     * @return Lista ordenada, vacía si se agotó el tiempo
+     */
+    public List<Emergencia> drenar(int zonaPropia, int maximo, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long limite = System.nanoTime() + unit.toNanos(timeout);
+        int propia = normalizar(zonaPropia);
+        List<Emergencia> lote = new ArrayList<>(Math.min(maximo, 64));
+        while (true) {
+            drenarMejores(propia, maximo, lote);
+            if (!lote.isEmpty()) {
+                return lote;
+            }
+            long restante = limite - System.nanoTime();
+            if (restante <= 0L) {
+                return lote;
+            }
+            esperarTrabajo(restante);
+        }
+    }
+
+    private int normalizar(int zonaPropia) {
+        return zonaPropia < 0 ? SIN_ZONA : zonaPropia % zonas.length;
+    }
+
+    /**
+     * Cabeza de la zona propia y las dos mejores cabezas ajenas en un
+     * instante, elegidas entre las cabezas de cada zona leídas sin locks de
+     * su resumen. Guarda lo leído de cada zona, para que un lote pueda volver
+     * a elegir leyendo solo las zonas que cambiaron.
+     */
+    private final class Vistazo {
+        final ColaEmergencias.Cabeza propia = new ColaEmergencias.Cabeza();
+        final ColaEmergencias.Cabeza mejor = new ColaEmergencias.Cabeza();
+        final ColaEmergencias.Cabeza segunda = new ColaEmergencias.Cabeza();
+        private final ColaEmergencias.Cabeza[] leidas = new ColaEmergencias.Cabeza[zonas.length];
+        private final ColaEmergencias.Cabeza leida = new ColaEmergencias.Cabeza();
+        int zonaMejor;
+
+        Vistazo() {
+            for (int i = 0; i < leidas.length; i++) {
+                leidas[i] = new ColaEmergencias.Cabeza();
+            }
+        }
+
+        /**
+         * Lee la cabeza de todas las zonas y elige.
+         */
+        void mirar(int zonaPropia, long ahora) {
+            for (int zona = 0; zona < zonas.length; zona++) {
+                zonas[zona].leerCabeza(ahora, leidas[zona]);
+            }
+            elegir(zonaPropia);
+        }
+
+        /**
+         * Vuelve a leer la cabeza de una zona.
+         * @return true si cambió desde la última lectura
+         */
+        boolean releer(int zona, long ahora) {
+            zonas[zona].leerCabeza(ahora, leida);
+            if (leida.misma(leidas[zona])) {
+                return false;
+            }
+            leidas[zona].copiar(leida);
+            return true;
+        }
+
+        /**
+         * Elige la cabeza propia y las dos mejores ajenas entre las ya leídas.
+         */
+        void elegir(int zonaPropia) {
+            propia.vaciar();
+            if (zonaPropia >= 0) {
+                propia.copiar(leidas[zonaPropia]);
+            }
+            mejor.vaciar();
+            segunda.vaciar();
+            zonaMejor = -1;
+            // Las zonas ajenas van de la más cercana a la más lejana: la cercana gana los empates
+            for (int zona : zonaPropia < 0 ? todas : ordenRobo[zonaPropia]) {
+                ColaEmergencias.Cabeza cabeza = leidas[zona];
+                if (cabeza.vacia()) {
+                    continue;
+                }
+                if (mejor.vacia() || cabeza.precede(0.0, mejor)) {
+                    segunda.copiar(mejor);
+                    mejor.copiar(cabeza);
+                    zonaMejor = zona;
+                } else if (segunda.vacia() || cabeza.precede(0.0, segunda)) {
+                    segunda.copiar(cabeza);
+                }
+            }
+        }
+
+        /**
+         * Si hay que tomar de la mejor zona ajena: la propia está vacía o esa
+         * cabeza la supera por al menos {@link #BANDA_ROBO}.
+         */
+        boolean robar() {
+            return zonaMejor >= 0 && (propia.vacia() || !propia.precede(BANDA_ROBO, mejor));
+        }
+    }
+
+    /**
+     * Toma de la zona elegida mientras su siguiente emergencia siga ganando
+     * al rival: desde la propia, a la mejor ajena descontada la banda de
+     * robo; desde una ajena, a la segunda ajena o a la propia con la banda a
+     * favor. Luego reevalúa. Cada tramo toma un solo lock.
+     * <p>
+     * Todo el lote se ordena con la prioridad efectiva de un mismo instante,
+     * y las cabezas de todas las zonas se leen una vez: después de cada tramo
+     * solo se vuelve a leer la zona drenada, y antes de drenar otra se
+     * comprueba que no la cambió otro hilo. Emergencias del mismo momento en
+     * varias zonas se alternan de a una, y sin esto cada una costaba leer
+     * todas las zonas.
+     */
+    private void drenarMejores(int propia, int maximo, List<Emergencia> lote) {
+        Vistazo vistazo = new Vistazo();
+        long ahora = Reloj.actual().nanos();
+        vistazo.mirar(propia, ahora);
+        int recienLeida = -1;
+        while (lote.size() < maximo && total.get() > 0) {
+            vistazo.elegir(propia);
+            int zona;
+            ColaEmergencias.Cabeza rival;
+            double ventajaRival;
+            if (vistazo.robar()) {
+                zona = vistazo.zonaMejor;
+                boolean propiaEsRival = !vistazo.propia.vacia()
+                    && (vistazo.segunda.vacia() || vistazo.propia.precede(BANDA_ROBO, vistazo.segunda));
+                rival = propiaEsRival ? vistazo.propia : vistazo.segunda;
+                ventajaRival = propiaEsRival ? BANDA_ROBO : 0.0;
+            } else if (!vistazo.propia.vacia()) {
+                zona = propia;
+                rival = vistazo.mejor;
+                ventajaRival = -BANDA_ROBO;
+            } else {
+                Thread.onSpinWait(); // Un productor aún no publica su resumen
+                ahora = Reloj.actual().nanos();
+                vistazo.mirar(propia, ahora);
+                recienLeida = -1;
+                continue;
+            }
+            if (zona != recienLeida && vistazo.releer(zona, ahora)) {
+                recienLeida = zona;
+                continue; // La cambió otro hilo desde que se leyó
+            }
+            int extraidas = zonas[zona].drenarMientrasPreceda(maximo - lote.size(), lote, ahora,
+                                                              rival.valor + ventajaRival, rival.carril, rival.marca);
+            if (extraidas > 0) {
+                total.addAndGet(-extraidas);
+            }
+            vistazo.releer(zona, ahora);
+            recienLeida = zona;
+        }
+    }
+
+    private Emergencia extraerMejor(int propia) {
+        Vistazo vistazo = new Vistazo();
+        while (total.get() > 0) {
+            vistazo.mirar(propia, Reloj.actual().nanos());
+            int zona;
+            if (vistazo.robar()) {
+                zona = vistazo.zonaMejor;
+            } else if (!vistazo.propia.vacia()) {
+                zona = propia;
+            } else {
+                Thread.onSpinWait(); // Un productor aún no publica su resumen
+                continue;
+            }
+            Emergencia emergencia = zonas[zona].extraerSiHay();
+            if (emergencia != null) {
+                total.decrementAndGet();
+                return emergencia;
+            }
+            // Otro despachador vació esa zona: reevaluar
+        }
+        return null;
+    }
+
+    private void esperarTrabajo(long nanos) throws InterruptedException {
+        lockEspera.lockInterruptibly();
+        esperando.incrementAndGet();
+        try {
+            if (total.get() == 0) {
+                hayTrabajo.awaitNanos(nanos);
+            }
+        } finally {
+            esperando.decrementAndGet();
+            lockEspera.unlock();
+        }
+    }
+
+    private void despertar(int nuevas) {
+        if (esperando.get() > 0) {
+            lockEspera.lock();
+            try {
+                if (nuevas == 1) {
+                    hayTrabajo.signal();
+                } else {
+                    hayTrabajo.signalAll();
+                }
+            } finally {
+                lockEspera.unlock();
+            }
+        }
+    }
+
+    /**
+     * Retira una emergencia concreta. O(log n) en su zona.
+     * @param emergencia Emergencia a retirar
+     * @return true si estaba encolada
+     */
+    public boolean remover(Emergencia emergencia) {
+        if (zonaPara(emergencia).remover(emergencia)) {
+            total.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Retira una emergencia reciente de una prioridad, de la zona más cargada.
+     * @param prioridad Prioridad a descartar
+     * @return emergencia retirada o null si no hay de esa prioridad
+     */
+    public Emergencia retirarReciente(Prioridad prioridad) {
+        Integer[] porCarga = new Integer[zonas.length];
+        for (int i = 0; i < zonas.length; i++) {
+            porCarga[i] = i;
+        }
+        Arrays.sort(porCarga, Comparator.comparingInt((Integer i) -> zonas[i].tamanio()).reversed());
+        for (int i : porCarga) {
+            Emergencia retirada = zonas[i].retirarReciente(prioridad);
+            if (retirada != null) {
+                total.decrementAndGet();
+                return retirada;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Eleva la prioridad de una emergencia en su zona. Ver {@link ColaEmergencias#elevarPrioridad}.
+     * @param emergencia Emergencia a escalar
+     * @param nueva Nueva prioridad
+     * @return prioridad anterior si estaba encolada, o null
+     */
+    public Prioridad elevarPrioridad(Emergencia emergencia, Prioridad nueva) {
+        return zonaPara(emergencia).elevarPrioridad(emergencia, nueva);
+    }
+
+    /**
+     * Próximas emergencias en orden global de atención.
+     * @param limite Número máximo de emergencias
+     * @return Lista ordenada (copia)
+     */
+    public List<Emergencia> primeras(int limite) {
+        List<Emergencia> candidatas = new ArrayList<>();
+        for (ColaEmergencias zona : zonas) {
+            candidatas.addAll(zona.primeras(limite));
+        }
+        long ahora = Reloj.actual().nanos();
+        candidatas.sort(Comparator
+            .comparingDouble((Emergencia e) -> -e.calcularPrioridadEfectiva(ahora))
+            .thenComparing(Comparator.naturalOrder()));
+        return candidatas.size() > limite ? new ArrayList<>(candidatas.subList(0, limite)) : candidatas;
+    }
+
+    /**
+     * Número de emergencias encoladas (sin locks).
+     * @return tamaño total
+     */
+    public int tamanio() {
+        return total.get();
+    }
+
+    /**
+     * Marca de llamada de la emergencia encolada más antigua de todas las
+     * zonas, sin tomar locks.
+     * @return marca según {@link Reloj#nanos()}, o 0 si no hay ninguna
+     */
+    public long marcaMasAntigua() {
+        long masAntigua = 0L;
+        for (ColaEmergencias zona : zonas) {
+            long marca = zona.marcaMasAntigua();
+            if (marca != 0L && (masAntigua == 0L || marca - masAntigua < 0)) {
+                masAntigua = marca;
+            }
+        }
+        return masAntigua;
+    }
+
+    /**
+     * Emergencias encoladas en cada zona, para monitoreo.
+     * @return arreglo con el tamaño de cada zona
+     */
+    public int[] tamaniosPorZona() {
+        int[] tamanios = new int[zonas.length];
+        for (int i = 0; i < zonas.length; i++) {
+            tamanios[i] = zonas[i].tamanio();
+        }
+        return tamanios;
+    }
+
+    private ColaEmergencias zonaPara(Emergencia emergencia) {
+        return zonas[zonaDe(emergencia.getLatitud(), emergencia.getLongitud())];
+    }
+}
@@ -0,0 +1,110 @@
+package com.emergencias.estructuras;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Cuadrícula uniforme sobre un rectángulo geográfico, compartida por los
+ * índices espaciales: ubica cada punto en una celda y recorre anillos de
+ * celdas alrededor de un punto. Las coordenadas fuera del rectángulo cuentan
+ * en la celda del borde más cercana.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+final class Cuadricula {
+    private final double latitudMin;
+    private final double longitudMin;
+    private final double altoFila;
+    private final double anchoColumna;
+    private final double ladoMinimo;
+    private final int filas;
+    private final int columnas;
+
+    /**
+     * @param latitudMin Latitud mínima
+     * @param latitudMax Latitud máxima
+     * @param longitudMin Longitud mínima
+     * @param longitudMax Longitud máxima
+     * @param filas Celdas en sentido norte-sur
+     * @param columnas Celdas en sentido este-oeste
+     */
+    Cuadricula(double latitudMin, double latitudMax, double longitudMin, double longitudMax,
+               int filas, int columnas) {
+        this.latitudMin = latitudMin;
+        this.longitudMin = longitudMin;
+        this.filas = filas;
+        this.columnas = columnas;
+        this.altoFila = Math.max(latitudMax - latitudMin, 1e-6) / filas;
+        this.anchoColumna = Math.max(longitudMax - longitudMin, 1e-6) / columnas;
+        this.ladoMinimo = Math.min(altoFila, anchoColumna);
+    }
+
+    int filaDe(double latitud) {
+        int fila = (int) Math.floor((latitud - latitudMin) / altoFila);
+        return Math.max(0, Math.min(filas - 1, fila));
+    }
+
+    int columnaDe(double longitud) {
+        int columna = (int) Math.floor((longitud - longitudMin) / anchoColumna);
+        return Math.max(0, Math.min(columnas - 1, columna));
+    }
+
+    /**
+     * Índice de la celda de un punto, por filas.
+     */
+    int celdaDe(double latitud, double longitud) {
+        return filaDe(latitud) * columnas + columnaDe(longitud);
+    }
+
+    int celdas() {
+        return filas * columnas;
+    }
+
+    int getFilas() {
+        return filas;
+    }
+
+    int getColumnas() {
+        return columnas;
+    }
+
+    /**
+     * Recorre anillos de celdas alrededor del punto y entrega cada celda
+     * existente a {@code revisar}. Toda celda del anillo r está separada de
+     * la celda del punto por al menos r - 1 celdas completas, así que se
+     * para cuando las candidatas están llenas y la k-ésima está más cerca que
+     * eso.
+     * @param revisar Recibe el índice de cada celda, en orden de anillo
+     */
+    void recorrerAnillos(double latitud, double longitud, Cercanas<?> candidatas, IntConsumer revisar) {
+        int fila = filaDe(latitud);
+        int columna = columnaDe(longitud);
+        int anilloMaximo = Math.max(Math.max(fila, filas - 1 - fila), Math.max(columna, columnas - 1 - columna));
+        for (int r = 0; r <= anilloMaximo; r++) {
+            if (candidatas.llena()) {
+                double cota = (r - 1) * ladoMinimo;
+                if (r > 0 && candidatas.peor() <= cota * cota) {
+                    return;
+                }
+            }
+            if (r == 0) {
+                revisar.accept(fila * columnas + columna);
+                continue;
+            }
+            for (int c = columna - r; c <= columna + r; c++) {
+                visitar(fila - r, c, revisar);
+                visitar(fila + r, c, revisar);
+            }
+            for (int f = fila - r + 1; f <= fila + r - 1; f++) {
+                visitar(f, columna - r, revisar);
+                visitar(f, columna + r, revisar);
+            }
+        }
+    }
+
+    private void visitar(int fila, int columna, IntConsumer revisar) {
+        if (fila >= 0 && fila < filas && columna >= 0 && columna < columnas) {
+            revisar.accept(fila * columnas + columna);
+        }
+    }
+}
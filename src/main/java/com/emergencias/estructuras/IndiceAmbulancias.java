@@ -0,0 +1,307 @@
+package com.emergencias.estructuras;
+
+import com.emergencias.modelos.Ambulancia;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Índice espacial de ambulancias disponibles sobre una cuadrícula uniforme.
+ * <p>
+ * Cada celda guarda sus ambulancias en arreglos paralelos (unidad, latitud,
+ * longitud) protegidos por el monitor de la celda, así que las actualizaciones
+ * en zonas distintas no compiten entre sí. La búsqueda de las k más cercanas
+ * recorre anillos de celdas alrededor del punto y se detiene en cuanto ningún
+ * anillo restante puede contener una ambulancia más cercana que la k-ésima
+ * encontrada; con la cuadrícula dimensionada a la flota el costo depende de la
+ * densidad local y no del tamaño de la flota.
+ * <p>
+ * El índice solo contiene ambulancias disponibles: quien las reserva las quita
+ * y quien las libera las vuelve a agregar en su nueva posición antes de
+ * marcarlas libres, así que una ambulancia libre siempre está indexada. Entre
+ * la reserva y la baja, o entre el alta y la liberación, otra búsqueda puede
+ * devolver la ambulancia ocupada, por lo que el llamador debe confirmar con
+ * {@link Ambulancia#reservar()}.
+ * Las coordenadas fuera del rectángulo cuentan en la celda del borde más cercana.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class IndiceAmbulancias {
+    private static final int CAPACIDAD_CELDA = 4;
+    private static final int LADO_MAXIMO = 1024;
+
+    private final Cuadricula cuadricula;
+    private final Celda[] celdas;
+    private final AtomicInteger total;
+
+    /**
+     * Ambulancias de una celda. Solo se accede bajo el monitor de la celda.
+     */
+    private static final class Celda {
+        private Ambulancia[] unidades = new Ambulancia[CAPACIDAD_CELDA];
+        private double[] latitudes = new double[CAPACIDAD_CELDA];
+        private double[] longitudes = new double[CAPACIDAD_CELDA];
+        private int cantidad;
+
+        void agregar(Ambulancia ambulancia, double latitud, double longitud) {
+            if (cantidad == unidades.length) {
+                int capacidad = cantidad * 2;
+                unidades = Arrays.copyOf(unidades, capacidad);
+                latitudes = Arrays.copyOf(latitudes, capacidad);
+                longitudes = Arrays.copyOf(longitudes, capacidad);
+            }
+            unidades[cantidad] = ambulancia;
+            latitudes[cantidad] = latitud;
+            longitudes[cantidad] = longitud;
+            cantidad++;
+        }
+
+        boolean quitar(Ambulancia ambulancia) {
+            for (int i = 0; i < cantidad; i++) {
+                if (unidades[i] == ambulancia) {
+                    int ultima = --cantidad;
+                    unidades[i] = unidades[ultima];
+                    latitudes[i] = latitudes[ultima];
+                    longitudes[i] = longitudes[ultima];
+                    unidades[ultima] = null;
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Crea el índice sobre un rectángulo geográfico.
+     * @param latitudMin Latitud mínima
+     * @param latitudMax Latitud máxima
+     * @param longitudMin Longitud mínima
+     * @param longitudMax Longitud máxima
+     * @param filas Celdas en sentido norte-sur
+     * @param columnas Celdas en sentido este-oeste
+     */
+    public IndiceAmbulancias(double latitudMin, double latitudMax, double longitudMin, double longitudMax,
+                             int filas, int columnas) {
+        this.cuadricula = new Cuadricula(latitudMin, latitudMax, longitudMin, longitudMax, filas, columnas);
+        this.celdas = new Celda[cuadricula.celdas()];
+        for (int i = 0; i < celdas.length; i++) {
+            celdas[i] = new Celda();
+        }
+        this.total = new AtomicInteger(0);
+    }
+
+    /**
+     * Crea un índice que cubre la posición actual de la flota con unas pocas
+     * ambulancias por celda. No agrega las ambulancias.
+     * @param flota Ambulancias que se van a indexar
+     * @return índice vacío dimensionado para la flota
+     */
+    public static IndiceAmbulancias paraFlota(Collection<Ambulancia> flota) {
+        double latMin = Double.POSITIVE_INFINITY;
+        double latMax = Double.NEGATIVE_INFINITY;
+        double lonMin = Double.POSITIVE_INFINITY;
+        double lonMax = Double.NEGATIVE_INFINITY;
+        for (Ambulancia ambulancia : flota) {
+            latMin = Math.min(latMin, ambulancia.getLatitud());
+            latMax = Math.max(latMax, ambulancia.getLatitud());
+            lonMin = Math.min(lonMin, ambulancia.getLongitud());
+            lonMax = Math.max(lonMax, ambulancia.getLongitud());
+        }
+        if (flota.isEmpty()) {
+            latMin = latMax = lonMin = lonMax = 0.0;
+        }
+        int lado = (int) Math.max(1, Math.min(LADO_MAXIMO, Math.round(Math.sqrt(flota.size() / 2.0))));
+        return new IndiceAmbulancias(latMin, latMax, lonMin, lonMax, lado, lado);
+    }
+
+    /**
+     * Crea un índice dimensionado para la flota y la agrega completa en una
+     * pasada: cuenta por celda, reparte con sumas prefijas y asigna cada celda
+     * ya con su tamaño final. Como el índice aún no es visible para otros
+     * hilos, no toma los monitores de las celdas ni de las ambulancias.
+     * @param flota Ambulancias disponibles
+     * @return índice con toda la flota
+     */
+    public static IndiceAmbulancias construir(List<Ambulancia> flota) {
+        IndiceAmbulancias indice = paraFlota(flota);
+        int[] celdaDe = new int[flota.size()];
+        int[] inicio = new int[indice.celdas.length + 1];
+        for (int i = 0; i < celdaDe.length; i++) {
+            Ambulancia ambulancia = flota.get(i);
+            celdaDe[i] = indice.cuadricula.celdaDe(ambulancia.getLatitud(), ambulancia.getLongitud());
+            inicio[celdaDe[i] + 1]++;
+        }
+        for (int c = 0; c < indice.celdas.length; c++) {
+            int cantidad = inicio[c + 1];
+            if (cantidad > CAPACIDAD_CELDA) {
+                Celda celda = indice.celdas[c];
+                celda.unidades = new Ambulancia[cantidad];
+                celda.latitudes = new double[cantidad];
+                celda.longitudes = new double[cantidad];
+            }
+            inicio[c + 1] += inicio[c];
+        }
+        for (int i = 0; i < celdaDe.length; i++) {
+            Ambulancia ambulancia = flota.get(i);
+            indice.celdas[celdaDe[i]].agregar(ambulancia, ambulancia.getLatitud(), ambulancia.getLongitud());
+            ambulancia.setCeldaIndice(celdaDe[i]);
+        }
+        indice.total.set(celdaDe.length);
+        return indice;
+    }
+
+    /**
+     * Agrega una ambulancia disponible en su posición actual.
+     * @param ambulancia Ambulancia a agregar
+     * @return false si ya estaba en el índice
+     */
+    public boolean agregar(Ambulancia ambulancia) {
+        synchronized (ambulancia) {
+            if (ambulancia.getCeldaIndice() >= 0) {
+                return false;
+            }
+            double latitud = ambulancia.getLatitud();
+            double longitud = ambulancia.getLongitud();
+            int indice = cuadricula.celdaDe(latitud, longitud);
+            Celda celda = celdas[indice];
+            synchronized (celda) {
+                celda.agregar(ambulancia, latitud, longitud);
+            }
+            ambulancia.setCeldaIndice(indice);
+            total.incrementAndGet();
+            return true;
+        }
+    }
+
+    /**
+     * Quita una ambulancia del índice, normalmente justo después de reservarla.
+     * @param ambulancia Ambulancia a quitar
+     * @return false si no estaba en el índice
+     */
+    public boolean quitar(Ambulancia ambulancia) {
+        synchronized (ambulancia) {
+            int indice = ambulancia.getCeldaIndice();
+            if (indice < 0) {
+                return false;
+            }
+            Celda celda = celdas[indice];
+            synchronized (celda) {
+                celda.quitar(ambulancia);
+            }
+            ambulancia.setCeldaIndice(-1);
+            total.decrementAndGet();
+            return true;
+        }
+    }
+
+    /**
+     * Reserva una ambulancia solo si sigue en el índice y la quita en el mismo
+     * paso. Sirve para confirmar una candidata elegida sobre una foto vieja del
+     * índice: si otro la reservó y la liberó mientras tanto, puede estar libre
+     * en otra posición pero no se toma una que el índice ya no tiene.
+     * @param ambulancia Ambulancia elegida
+     * @return true si estaba indexada y libre, y ahora es del llamador
+     */
+    public boolean reservar(Ambulancia ambulancia) {
+        synchronized (ambulancia) {
+            int indice = ambulancia.getCeldaIndice();
+            if (indice < 0) {
+                return false;
+            }
+            Celda celda = celdas[indice];
+            synchronized (celda) {
+                if (!ambulancia.reservar()) {
+                    return false;
+                }
+                celda.quitar(ambulancia);
+            }
+            ambulancia.setCeldaIndice(-1);
+            total.decrementAndGet();
+            return true;
+        }
+    }
+
+    /**
+     * Actualiza la posición de una ambulancia indexada que se movió estando
+     * disponible, por ejemplo al restaurar una instantánea.
+     * @param ambulancia Ambulancia movida
+     * @return false si no estaba en el índice
+     */
+    public boolean reubicar(Ambulancia ambulancia) {
+        synchronized (ambulancia) {
+            if (!quitar(ambulancia)) {
+                return false;
+            }
+            return agregar(ambulancia);
+        }
+    }
+
+    /**
+     * La ambulancia indexada más cercana a un punto.
+     * @param latitud Latitud del punto
+     * @param longitud Longitud del punto
+     * @return ambulancia más cercana, o null si el índice está vacío
+     */
+    public Ambulancia masCercana(double latitud, double longitud) {
+        if (total.get() == 0) {
+            return null;
+        }
+        Cercanas<Ambulancia> candidatas = new Cercanas<>(1);
+        buscar(latitud, longitud, candidatas);
+        return candidatas.kesima();
+    }
+
+    /**
+     * Las k ambulancias indexadas más cercanas a un punto.
+     * @param latitud Latitud del punto
+     * @param longitud Longitud del punto
+     * @param k Número máximo de ambulancias
+     * @return ambulancias en orden de distancia creciente; menos de k si no hay tantas
+     */
+    public List<Ambulancia> cercanas(double latitud, double longitud, int k) {
+        if (k <= 0 || total.get() == 0) {
+            return new ArrayList<>();
+        }
+        Cercanas<Ambulancia> candidatas = new Cercanas<>(k);
+        buscar(latitud, longitud, candidatas);
+        return candidatas.ordenadas();
+    }
+
+    private void buscar(double latitud, double longitud, Cercanas<Ambulancia> candidatas) {
+        cuadricula.recorrerAnillos(latitud, longitud, candidatas, indice -> {
+            Celda celda = celdas[indice];
+            synchronized (celda) {
+                for (int i = 0; i < celda.cantidad; i++) {
+                    double deltaLat = celda.latitudes[i] - latitud;
+                    double deltaLon = celda.longitudes[i] - longitud;
+                    candidatas.ofrecer(celda.unidades[i], deltaLat * deltaLat + deltaLon * deltaLon);
+                }
+            }
+        });
+    }
+
+    /**
+     * Número de ambulancias indexadas (disponibles).
+     */
+    public int tamanio() {
+        return total.get();
+    }
+
+    /**
+     * Cuadrícula del índice, para otros índices sobre las mismas celdas.
+     */
+    Cuadricula getCuadricula() {
+        return cuadricula;
+    }
+
+    public int getFilas() {
+        return cuadricula.getFilas();
+    }
+
+    public int getColumnas() {
+        return cuadricula.getColumnas();
+    }
+}
@@ -0,0 +1,154 @@
+package com.emergencias.estructuras;
+
+import com.emergencias.modelos.Traslado;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Índice espacial de ambulancias en camino, sobre la misma cuadrícula que el
+ * {@link IndiceAmbulancias} de disponibles.
+ * <p>
+ * Una ambulancia en camino se mueve, pero siempre sobre el segmento entre su
+ * salida y la emergencia. Cada viaje se guarda en todas las celdas del
+ * rectángulo que cubre ese segmento, así que la búsqueda por anillos puede
+ * parar con el mismo criterio que la de disponibles: un viaje que no está en
+ * ningún anillo recorrido tiene su posición actual, sea cual sea, fuera de
+ * ellos. Las distancias se miden a la posición estimada en el instante de la
+ * consulta. Los viajes suelen ser cortos, así que ocupan pocas celdas.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class IndiceTraslados {
+    private static final int CAPACIDAD_CELDA = 4;
+
+    private final Cuadricula cuadricula;
+    private final Celda[] celdas;
+    private final AtomicInteger total;
+
+    /**
+     * Viajes cuyo rectángulo toca una celda. Solo se accede bajo el monitor
+     * de la celda.
+     */
+    private static final class Celda {
+        private Traslado[] traslados = new Traslado[CAPACIDAD_CELDA];
+        private int cantidad;
+
+        void agregar(Traslado traslado) {
+            if (cantidad == traslados.length) {
+                traslados = Arrays.copyOf(traslados, cantidad * 2);
+            }
+            traslados[cantidad++] = traslado;
+        }
+
+        void quitar(Traslado traslado) {
+            for (int i = 0; i < cantidad; i++) {
+                if (traslados[i] == traslado) {
+                    traslados[i] = traslados[--cantidad];
+                    traslados[cantidad] = null;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Crea un índice vacío con la cuadrícula del índice de disponibles.
+     * @param disponibles Índice cuya cuadrícula se comparte
+     */
+    public IndiceTraslados(IndiceAmbulancias disponibles) {
+        this.cuadricula = disponibles.getCuadricula();
+        this.celdas = new Celda[cuadricula.celdas()];
+        for (int i = 0; i < celdas.length; i++) {
+            celdas[i] = new Celda();
+        }
+        this.total = new AtomicInteger(0);
+    }
+
+    /**
+     * Agrega un viaje recién iniciado en las celdas de su recorrido.
+     * @param traslado Viaje en camino
+     */
+    public void agregar(Traslado traslado) {
+        recorrerCeldas(traslado, true);
+        total.incrementAndGet();
+    }
+
+    /**
+     * Quita un viaje que llegó o se desvió.
+     * @param traslado Viaje agregado antes con {@link #agregar}
+     */
+    public void quitar(Traslado traslado) {
+        recorrerCeldas(traslado, false);
+        total.decrementAndGet();
+    }
+
+    private void recorrerCeldas(Traslado traslado, boolean agregar) {
+        double latitudDestino = traslado.getEmergencia().getLatitud();
+        double longitudDestino = traslado.getEmergencia().getLongitud();
+        int filaDesde = cuadricula.filaDe(Math.min(traslado.getLatitudSalida(), latitudDestino));
+        int filaHasta = cuadricula.filaDe(Math.max(traslado.getLatitudSalida(), latitudDestino));
+        int columnaDesde = cuadricula.columnaDe(Math.min(traslado.getLongitudSalida(), longitudDestino));
+        int columnaHasta = cuadricula.columnaDe(Math.max(traslado.getLongitudSalida(), longitudDestino));
+        int columnas = cuadricula.getColumnas();
+        for (int f = filaDesde; f <= filaHasta; f++) {
+            for (int c = columnaDesde; c <= columnaHasta; c++) {
+                Celda celda = celdas[f * columnas + c];
+                synchronized (celda) {
+                    if (agregar) {
+                        celda.agregar(traslado);
+                    } else {
+                        celda.quitar(traslado);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Los k viajes que cumplen un filtro con la ambulancia más cerca de un
+     * punto en este instante.
+     * @param latitud Latitud del punto
+     * @param longitud Longitud del punto
+     * @param k Número máximo de viajes
+     * @param ahoraNanos Instante para estimar las posiciones, según {@link com.emergencias.simulacion.Reloj}
+     * @param filtro Viajes que se pueden devolver
+     * @return viajes en orden de distancia creciente; menos de k si no hay tantos
+     */
+    public List<Traslado> cercanos(double latitud, double longitud, int k, long ahoraNanos,
+                                   Predicate<Traslado> filtro) {
+        if (k <= 0 || total.get() == 0) {
+            return new ArrayList<>();
+        }
+        Cercanas<Traslado> candidatos = new Cercanas<>(k);
+        cuadricula.recorrerAnillos(latitud, longitud, candidatos, indice -> {
+            Celda celda = celdas[indice];
+            synchronized (celda) {
+                for (int i = 0; i < celda.cantidad; i++) {
+                    Traslado traslado = celda.traslados[i];
+                    if (!filtro.test(traslado)) {
+                        continue;
+                    }
+                    double deltaLat = traslado.latitudEn(ahoraNanos) - latitud;
+                    double deltaLon = traslado.longitudEn(ahoraNanos) - longitud;
+                    double distancia = deltaLat * deltaLat + deltaLon * deltaLon;
+                    // Un viaje está en todas las celdas de su recorrido: se guarda una vez
+                    if (candidatos.admite(distancia) && !candidatos.contiene(traslado)) {
+                        candidatos.ofrecer(traslado, distancia);
+                    }
+                }
+            }
+        });
+        return candidatos.ordenadas();
+    }
+
+    /**
+     * Número de viajes indexados.
+     */
+    public int tamanio() {
+        return total.get();
+    }
+}
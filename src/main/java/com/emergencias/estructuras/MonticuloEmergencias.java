@@ -0,0 +1,164 @@
+package com.emergencias.estructuras;
+
+import com.emergencias.modelos.Emergencia;
+import java.util.Arrays;
+
+/**
+ * Montículo binario indexado de emergencias ordenado por antigüedad de la llamada.
+ * Cada emergencia guarda su posición en el arreglo, por lo que retirarla o moverla
+ * a otro montículo cuesta O(log n) sin recorrer la estructura.
+ * No es thread-safe: el llamador debe sincronizar el acceso.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+class MonticuloEmergencias {
+    private Emergencia[] elementos;
+    private int tamanio;
+
+    MonticuloEmergencias(int capacidadInicial) {
+        elementos = new Emergencia[Math.max(16, capacidadInicial)];
+    }
+
+    /**
+     * Inserta una emergencia. O(log n).
+     * @param emergencia Emergencia a insertar
+     */
+    void insertar(Emergencia emergencia) {
+        if (tamanio == elementos.length) {
+            elementos = Arrays.copyOf(elementos, tamanio + (tamanio >> 1));
+        }
+        colocar(tamanio, emergencia);
+        tamanio++;
+        subir(tamanio - 1);
+    }
+
+    /**
+     * Devuelve la emergencia más antigua sin retirarla.
+     * @return cabeza del montículo o null si está vacío
+     */
+    Emergencia cabeza() {
+        return tamanio == 0 ? null : elementos[0];
+    }
+
+    /**
+     * Retira la emergencia más antigua. O(log n).
+     * @return emergencia retirada o null si está vacío
+     */
+    Emergencia extraerCabeza() {
+        if (tamanio == 0) {
+            return null;
+        }
+        Emergencia cabeza = elementos[0];
+        retirarEn(0);
+        return cabeza;
+    }
+
+    /**
+     * Retira la emergencia de la última posición del arreglo. Es una hoja, por lo
+     * que suele ser de las llegadas más recientes, y retirarla cuesta O(1).
+     * @return emergencia retirada o null si está vacío
+     */
+    Emergencia extraerUltima() {
+        if (tamanio == 0) {
+            return null;
+        }
+        Emergencia ultima = elementos[--tamanio];
+        elementos[tamanio] = null;
+        ultima.setPosicionCola(-1);
+        return ultima;
+    }
+
+    /**
+     * Retira una emergencia usando la posición que ella misma guarda. O(log n).
+     * @param emergencia Emergencia a retirar
+     * @return true si pertenecía a este montículo
+     */
+    boolean retirar(Emergencia emergencia) {
+        int posicion = emergencia.getPosicionCola();
+        if (posicion < 0 || posicion >= tamanio || elementos[posicion] != emergencia) {
+            return false;
+        }
+        retirarEn(posicion);
+        return true;
+    }
+
+    /**
+     * Devuelve el elemento en una posición del arreglo interno (sin orden garantizado).
+     */
+    Emergencia enPosicion(int posicion) {
+        return elementos[posicion];
+    }
+
+    int tamanio() {
+        return tamanio;
+    }
+
+    private void retirarEn(int posicion) {
+        Emergencia retirada = elementos[posicion];
+        tamanio--;
+        if (posicion != tamanio) {
+            Emergencia ultima = elementos[tamanio];
+            elementos[tamanio] = null;
+            colocar(posicion, ultima);
+            if (!bajar(posicion)) {
+                subir(posicion);
+            }
+        } else {
+            elementos[tamanio] = null;
+        }
+        retirada.setPosicionCola(-1);
+    }
+
+    private void subir(int posicion) {
+        Emergencia elemento = elementos[posicion];
+        while (posicion > 0) {
+            int padre = (posicion - 1) >>> 1;
+            if (!precede(elemento, elementos[padre])) {
+                break;
+            }
+            colocar(posicion, elementos[padre]);
+            posicion = padre;
+        }
+        colocar(posicion, elemento);
+    }
+
+    /**
+     * @return true si el elemento se movió hacia abajo
+     */
+    private boolean bajar(int posicion) {
+        int inicial = posicion;
+        Emergencia elemento = elementos[posicion];
+        int mitad = tamanio >>> 1;
+        while (posicion < mitad) {
+            int hijo = 2 * posicion + 1;
+            int derecho = hijo + 1;
+            if (derecho < tamanio && precede(elementos[derecho], elementos[hijo])) {
+                hijo = derecho;
+            }
+            if (!precede(elementos[hijo], elemento)) {
+                break;
+            }
+            colocar(posicion, elementos[hijo]);
+            posicion = hijo;
+        }
+        colocar(posicion, elemento);
+        return posicion != inicial;
+    }
+
+    private void colocar(int posicion, Emergencia emergencia) {
+        elementos[posicion] = emergencia;
+        emergencia.setPosicionCola(posicion);
+    }
+
+    /**
+     * Orden FIFO por instante de llamada; a igual instante decide el id.
+     */
+    private static boolean precede(Emergencia a, Emergencia b) {
+        long diferencia = a.getMarcaLlamadaNanos() - b.getMarcaLlamadaNanos();
+        if (diferencia != 0) {
+            return diferencia < 0;
+        }
+        return a.getId() < b.getId();
+    }
+}
@@ -0,0 +1,109 @@
+package com.emergencias.estructuras;
+
+import com.emergencias.modelos.MedicoEmergencia;
+import com.emergencias.modelos.MedicoEmergencia.Especialidad;
+import com.emergencias.modelos.MezclaEspecialidades;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * Médicos libres agrupados por especialidad, cada grupo en una pila sin locks.
+ * Tomar un médico de una especialidad es un solo pop y devolverlo un solo
+ * push, sin recorrer el resto de médicos. Un médico sacado de la pila es del
+ * llamador hasta que lo devuelva.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class PoolMedicos {
+    private static final Especialidad[] ESPECIALIDADES = Especialidad.values();
+
+    private final EnumMap<Especialidad, ConcurrentLinkedDeque<MedicoEmergencia>> libres;
+
+    public PoolMedicos() {
+        libres = new EnumMap<>(Especialidad.class);
+        for (Especialidad e : ESPECIALIDADES) {
+            libres.put(e, new ConcurrentLinkedDeque<>());
+        }
+    }
+
+    /**
+     * Pone un médico libre en la pila de su especialidad.
+     * @param medico Médico disponible
+     */
+    public void devolver(MedicoEmergencia medico) {
+        libres.get(medico.getTipoEspecialidad()).offerFirst(medico);
+    }
+
+    /**
+     * Saca un médico libre de una especialidad.
+     * @param especialidad Especialidad requerida
+     * @return médico, o null si no hay libres de esa especialidad
+     */
+    public MedicoEmergencia tomar(Especialidad especialidad) {
+        return libres.get(especialidad).pollFirst();
+    }
+
+    /**
+     * Saca los médicos de una mezcla de especialidades. Si falta alguna
+     * especialidad, completa el equipo con médicos de otras especialidades
+     * en el orden del enum, así que solo queda corto si no hay suficientes
+     * médicos libres en total.
+     * @param mezcla Equipo requerido
+     * @return médicos sacados del pool, a lo sumo {@code mezcla.getTotal()}
+     */
+    public List<MedicoEmergencia> tomar(MezclaEspecialidades mezcla) {
+        return tomar(mezcla, mezcla.getTotal());
+    }
+
+    /**
+     * Saca parte de un equipo, por ejemplo los médicos que ya hay libres
+     * para una emergencia que espera el resto. Cubre las especialidades de
+     * la mezcla en el orden del enum hasta llegar al máximo.
+     * @param mezcla Equipo requerido
+     * @param maximo Médicos a sacar como mucho
+     * @return médicos sacados del pool, a lo sumo {@code maximo}
+     */
+    public List<MedicoEmergencia> tomar(MezclaEspecialidades mezcla, int maximo) {
+        List<MedicoEmergencia> equipo = new ArrayList<>(maximo);
+        int faltantes = 0;
+        int restantes = maximo;
+        for (Especialidad e : ESPECIALIDADES) {
+            ConcurrentLinkedDeque<MedicoEmergencia> pila = libres.get(e);
+            for (int i = Math.min(mezcla.getCantidad(e), restantes); i > 0; i--, restantes--) {
+                MedicoEmergencia medico = pila.pollFirst();
+                if (medico == null) {
+                    faltantes += i;
+                    restantes -= i;
+                    break;
+                }
+                equipo.add(medico);
+            }
+        }
+        for (int i = 0; i < ESPECIALIDADES.length && faltantes > 0; i++) {
+            ConcurrentLinkedDeque<MedicoEmergencia> pila = libres.get(ESPECIALIDADES[i]);
+            MedicoEmergencia sustituto;
+            while (faltantes > 0 && (sustituto = pila.pollFirst()) != null) {
+                equipo.add(sustituto);
+                faltantes--;
+            }
+        }
+        return equipo;
+    }
+
+    /**
+     * Médicos libres por especialidad. Recorre las pilas, así que es para
+     * consultas ocasionales y no para el camino de asignación.
+     * @return conteo por especialidad
+     */
+    public Map<Especialidad, Integer> contarLibres() {
+        Map<Especialidad, Integer> conteo = new EnumMap<>(Especialidad.class);
+        for (Especialidad e : ESPECIALIDADES) {
+            conteo.put(e, libres.get(e).size());
+        }
+        return conteo;
+    }
+}
@@ -0,0 +1,312 @@
+package com.emergencias.eventos;
+
+import com.emergencias.modelos.Emergencia;
+import com.emergencias.registro.Registro;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bus de eventos asíncrono sobre un buffer circular preasignado, al estilo del
+ * LMAX Disruptor. Los productores reclaman una secuencia y escriben en una ranura
+ * existente sin crear objetos; cada suscriptor consume en su propio hilo, por lotes,
+ * llevando su propia secuencia.
+ * <p>
+ * Cada ranura publica su estado en un arreglo atómico: {@code 2s + 2} cuando la
+ * secuencia {@code s} está publicada y {@code 2s + 1} mientras un productor la
+ * escribe. El consumidor valida el estado antes y después de leer, así que nunca
+ * entrega un evento a medio sobrescribir.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class BusEventos {
+    private final Ranura[] ranuras;
+    private final AtomicLongArray estados;
+    private final int mascara;
+    private final AtomicLong siguiente;
+    private final EstrategiaEspera estrategia;
+    private final PoliticaContrapresion politica;
+    private final AtomicLong eventosDescartados;
+    private volatile Consumidor[] consumidores;
+
+    /**
+     * Crea el bus.
+     * @param capacidad Número de ranuras (se redondea a potencia de 2)
+     * @param estrategia Estrategia de espera de consumidores y productores
+     * @param politica Política cuando un consumidor lento llena el buffer
+     */
+    public BusEventos(int capacidad, EstrategiaEspera estrategia, PoliticaContrapresion politica) {
+        int tamanio = Integer.highestOneBit(Math.max(2, capacidad - 1)) << 1;
+        this.ranuras = new Ranura[tamanio];
+        this.estados = new AtomicLongArray(tamanio); // 0: ranura nunca escrita
+        for (int i = 0; i < tamanio; i++) {
+            ranuras[i] = new Ranura();
+        }
+        this.mascara = tamanio - 1;
+        this.siguiente = new AtomicLong(0);
+        this.estrategia = estrategia;
+        this.politica = politica;
+        this.eventosDescartados = new AtomicLong(0);
+        this.consumidores = new Consumidor[0];
+    }
+
+    /**
+     * Publica un evento. No crea objetos y solo espera si la política es BLOQUEAR.
+     * @param tipo Transición ocurrida
+     * @param emergencia Emergencia afectada
+     */
+    public void publicar(TipoEvento tipo, Emergencia emergencia) {
+        long secuencia = siguiente.getAndIncrement();
+        if (politica == PoliticaContrapresion.BLOQUEAR) {
+            esperarEspacio(secuencia);
+        }
+        escribir(secuencia, tipo, emergencia, System.nanoTime());
+    }
+
+    /**
+     * Publica un evento por cada emergencia reclamando todas las secuencias con
+     * una sola operación atómica. Los consumidores reciben el lote seguido.
+     * @param tipo Transición ocurrida
+     * @param emergencias Emergencias afectadas, en orden
+     */
+    public void publicarLote(TipoEvento tipo, List<Emergencia> emergencias) {
+        int cantidad = emergencias.size();
+        if (cantidad == 0) {
+            return;
+        }
+        long primera = siguiente.getAndAdd(cantidad);
+        long marcaNanos = System.nanoTime();
+        for (int i = 0; i < cantidad; i++) {
+            long secuencia = primera + i;
+            if (politica == PoliticaContrapresion.BLOQUEAR) {
+                esperarEspacio(secuencia);
+            }
+            escribir(secuencia, tipo, emergencias.get(i), marcaNanos);
+        }
+    }
+
+    /**
+     * Escribe un evento en la ranura de una secuencia ya reclamada.
+     */
+    private void escribir(long secuencia, TipoEvento tipo, Emergencia emergencia, long marcaNanos) {
+        int indice = (int) secuencia & mascara;
+        while (true) {
+            long actual = estados.get(indice);
+            if (propietario(actual) > secuencia) {
+                // Un productor más reciente ya reclamó la ranura: este evento se pierde
+                eventosDescartados.incrementAndGet();
+                return;
+            }
+            if ((actual & 1L) != 0) {
+                estrategia.esperar(0); // Otro productor más antiguo está escribiendo
+                continue;
+            }
+            if (estados.compareAndSet(indice, actual, 2 * secuencia + 1)) {
+                break;
+            }
+        }
+        Ranura ranura = ranuras[indice];
+        ranura.tipo = tipo;
+        ranura.emergencia = emergencia;
+        ranura.marcaNanos = marcaNanos;
+        estados.set(indice, 2 * secuencia + 2);
+    }
+    
+    /**
+     * Secuencia dueña de una ranura según su estado, o -1 si nunca se escribió.
+     */
+    private static long propietario(long estado) {
+        return estado == 0 ? -1 : (estado - 1) >> 1;
+    }
+
+    /**
+     * Suscribe un manejador con su propio hilo consumidor. Solo recibe los eventos
+     * publicados a partir de este momento.
+     * @param nombre Nombre del hilo y de la métrica
+     * @param manejador Manejador de eventos
+     * @return Consumidor creado (expone métricas de retraso)
+     */
+    public synchronized Consumidor suscribir(String nombre, ManejadorEventos manejador) {
+        Consumidor consumidor = new Consumidor(nombre, manejador, siguiente.get());
+        Consumidor[] nuevos = Arrays.copyOf(consumidores, consumidores.length + 1);
+        nuevos[nuevos.length - 1] = consumidor;
+        consumidores = nuevos;
+        consumidor.hilo.start();
+        return consumidor;
+    }
+
+    /**
+     * Detiene todos los consumidores tras entregar los eventos ya publicados.
+     */
+    public void detener() {
+        for (Consumidor consumidor : consumidores) {
+            consumidor.detener();
+        }
+    }
+
+    public List<Consumidor> getConsumidores() {
+        return List.of(consumidores);
+    }
+
+    public long getEventosPublicados() {
+        return siguiente.get();
+    }
+
+    public long getEventosDescartados() {
+        return eventosDescartados.get();
+    }
+
+    public int getCapacidad() {
+        return ranuras.length;
+    }
+
+    private void esperarEspacio(long secuencia) {
+        long limite = secuencia - ranuras.length;
+        int intentos = 0;
+        while (minimoConsumido() <= limite) {
+            estrategia.esperar(intentos++);
+        }
+    }
+
+    private long minimoConsumido() {
+        long minimo = Long.MAX_VALUE;
+        for (Consumidor consumidor : consumidores) {
+            if (consumidor.activo) {
+                minimo = Math.min(minimo, consumidor.consumido);
+            }
+        }
+        return minimo;
+    }
+
+    /**
+     * Ranura preasignada del buffer. Los campos son volatile para que la doble
+     * validación de estado del consumidor detecte cualquier sobrescritura.
+     */
+    private static final class Ranura {
+        volatile TipoEvento tipo;
+        volatile Emergencia emergencia;
+        volatile long marcaNanos;
+    }
+
+    /**
+     * Hilo consumidor de un suscriptor con sus métricas de retraso.
+     */
+    public final class Consumidor implements Runnable {
+        private final String nombre;
+        private final ManejadorEventos manejador;
+        private final Thread hilo;
+        private volatile long consumido;
+        private volatile boolean activo;
+        private final AtomicLong perdidos;
+        private final AtomicLong lotes;
+
+        private Consumidor(String nombre, ManejadorEventos manejador, long inicio) {
+            this.nombre = nombre;
+            this.manejador = manejador;
+            this.consumido = inicio;
+            this.activo = true;
+            this.perdidos = new AtomicLong(0);
+            this.lotes = new AtomicLong(0);
+            this.hilo = new Thread(this, nombre);
+            this.hilo.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long proxima = consumido;
+            int intentos = 0;
+            while (activo || proxima < siguiente.get()) {
+                long disponible = siguiente.get();
+                long procesados = 0;
+                while (proxima < disponible) {
+                    int indice = (int) proxima & mascara;
+                    long publicada = 2 * proxima + 2;
+                    long estado = estados.get(indice);
+                    if (estado == publicada) {
+                        Ranura ranura = ranuras[indice];
+                        TipoEvento tipo = ranura.tipo;
+                        Emergencia emergencia = ranura.emergencia;
+                        long marca = ranura.marcaNanos;
+                        if (estados.get(indice) != publicada) {
+                            proxima = saltarPerdidos(proxima);
+                            continue;
+                        }
+                        entregar(tipo, emergencia, marca);
+                        proxima++;
+                        procesados++;
+                    } else if (propietario(estado) > proxima) {
+                        proxima = saltarPerdidos(proxima);
+                    } else {
+                        break; // Aún no publicada: cerrar el lote aquí
+                    }
+                }
+                if (procesados > 0) {
+                    consumido = proxima;
+                    lotes.incrementAndGet();
+                    try {
+                        manejador.alTerminarLote();
+                    } catch (RuntimeException e) {
+                        Registro.error("⚠ Error en {}: {}", nombre, e.getMessage());
+                    }
+                    intentos = 0;
+                } else if (!activo && proxima >= siguiente.get()) {
+                    break;
+                } else {
+                    estrategia.esperar(intentos++);
+                    if (!activo && intentos > 1_000) {
+                        break; // Un productor abandonó su ranura; no esperar indefinidamente
+                    }
+                }
+            }
+            consumido = proxima;
+        }
+
+        private void entregar(TipoEvento tipo, Emergencia emergencia, long marca) {
+            try {
+                manejador.alRecibir(tipo, emergencia, marca);
+            } catch (RuntimeException e) {
+                Registro.error("⚠ Error en {}: {}", nombre, e.getMessage());
+            }
+        }
+
+        /**
+         * Salta las secuencias ya sobrescritas y las contabiliza como perdidas.
+         */
+        private long saltarPerdidos(long proxima) {
+            long nueva = Math.max(proxima + 1, siguiente.get() - ranuras.length);
+            perdidos.addAndGet(nueva - proxima);
+            consumido = nueva;
+            return nueva;
+        }
+
+        private void detener() {
+            activo = false;
+        }
+
+        public String getNombre() {
+            return nombre;
+        }
+
+        /**
+         * Eventos publicados que este consumidor aún no ha procesado.
+         * @return retraso en número de eventos
+         */
+        public long getRetraso() {
+            return Math.max(0, siguiente.get() - consumido);
+        }
+
+        public long getConsumidos() {
+            return consumido;
+        }
+
+        public long getPerdidos() {
+            return perdidos.get();
+        }
+
+        public long getLotes() {
+            return lotes.get();
+        }
+    }
+}
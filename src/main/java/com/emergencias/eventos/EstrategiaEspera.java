@@ -0,0 +1,46 @@
+package com.emergencias.eventos;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Estrategias de espera para los consumidores (y productores con contrapresión)
+ * del bus de eventos cuando no hay trabajo disponible.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public enum EstrategiaEspera {
+    /** Giro activo: mínima latencia, ocupa un núcleo completo. */
+    OCUPADA {
+        @Override
+        public void esperar(int intentos) {
+            Thread.onSpinWait();
+        }
+    },
+    /** Cede el procesador en cada intento. */
+    CEDER {
+        @Override
+        public void esperar(int intentos) {
+            Thread.yield();
+        }
+    },
+    /** Gira, luego cede y finalmente duerme en intervalos cortos. */
+    DORMIR {
+        @Override
+        public void esperar(int intentos) {
+            if (intentos < 100) {
+                Thread.onSpinWait();
+            } else if (intentos < 200) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(100_000L);
+            }
+        }
+    };
+
+    /**
+     * Espera una vez antes de volver a comprobar si hay trabajo.
+     * @param intentos Número de intentos consecutivos sin trabajo
+     */
+    public abstract void esperar(int intentos);
+}
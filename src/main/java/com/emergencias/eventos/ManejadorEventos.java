@@ -0,0 +1,27 @@
+package com.emergencias.eventos;
+
+import com.emergencias.modelos.Emergencia;
+
+/**
+ * Receptor de eventos del bus. Cada manejador se ejecuta en su propio hilo.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public interface ManejadorEventos {
+
+    /**
+     * Procesa un evento.
+     * @param tipo Transición ocurrida
+     * @param emergencia Emergencia afectada
+     * @param marcaNanos Instante de publicación según System.nanoTime()
+     */
+    void alRecibir(TipoEvento tipo, Emergencia emergencia, long marcaNanos);
+
+    /**
+     * Se invoca al terminar cada lote de eventos disponibles, útil para agrupar
+     * escrituras costosas (refrescar un panel, vaciar un archivo de auditoría).
+     */
+    default void alTerminarLote() {
+    }
+}
@@ -0,0 +1,15 @@
+package com.emergencias.eventos;
+
+/**
+ * Comportamiento del productor cuando el buffer circular está lleno porque
+ * algún consumidor va atrasado.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public enum PoliticaContrapresion {
+    /** El productor nunca espera; el consumidor lento pierde los eventos más antiguos. */
+    SOBRESCRIBIR,
+    /** El productor espera a que el consumidor más lento libere la ranura. */
+    BLOQUEAR
+}
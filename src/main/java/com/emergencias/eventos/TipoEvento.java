@@ -0,0 +1,13 @@
+package com.emergencias.eventos;
+
+/**
+ * Transiciones del ciclo de vida de una emergencia publicadas en el bus.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public enum TipoEvento {
+    CREADA, ASIGNADA, ATENDIDA,
+    /** Cancelada por el operador o LEVE descartada por saturación. */
+    CANCELADA
+}
@@ -0,0 +1,356 @@
+package com.emergencias.gestores;
+
+import com.emergencias.modelos.Ambulancia;
+import com.emergencias.modelos.Emergencia;
+import com.emergencias.registro.Registro;
+import com.emergencias.simulacion.Reloj;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Asignación óptima por lotes de emergencias pendientes a ambulancias libres,
+ * con el algoritmo de subasta de Bertsekas.
+ * <p>
+ * Cada emergencia es un postor que valora cada ambulancia en
+ * {@code peso × (distanciaMaxima − distancia)}, donde el peso es el cuadrado de
+ * su prioridad efectiva: una CRÍTICA vale 16 veces una LEVE recién llegada, así
+ * que la solución no le quita la única ambulancia cercana a una CRÍTICA para
+ * dársela a una LEVE, como puede pasar despachando una por una. Cada postor
+ * tiene además la opción de quedarse sin ambulancia con valor 0.
+ * <p>
+ * La subasta es dispersa e incremental: cada emergencia empieza con sus
+ * {@value #CANDIDATAS_INICIALES} ambulancias más cercanas según el índice
+ * espacial y solo pide más (hasta {@value #CANDIDATAS_MAXIMAS}) cuando la mejor
+ * ambulancia que aún no conoce podría superar a sus candidatas, así que el costo
+ * depende del tamaño del lote y de la competencia local, no del tamaño de la
+ * flota. En cada ronda todos los postores sin asignar calculan su puja a la vez
+ * (en paralelo si son muchos) y luego se resuelven las pujas por ambulancia. El
+ * resultado está a lo sumo {@code n × ε} del óptimo entre las candidatas, con ε
+ * una diezmilésima del mayor beneficio del lote.
+ * <p>
+ * Las emergencias que terminan sin ambulancia toman, en orden de prioridad, la
+ * más cercana de las que sobraron; las que no alcanzan ninguna vuelven a la
+ * cola. Si la subasta excede su presupuesto de tiempo se descarta y todo el
+ * lote se despacha así, igual que los despachadores por zona.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class AsignadorLotes {
+    private static final int CANDIDATAS_INICIALES = 8;
+    private static final int CANDIDATAS_MAXIMAS = 256;
+    private static final int UMBRAL_PARALELO = 256;
+    private static final double EPSILON_RELATIVO = 1e-4;
+    private static final int SIN_ASIGNAR = -1;
+    private static final int DESCARTADA = -2;
+
+    private final GestorRecursos gestorRecursos;
+    private final double distanciaMaxima;
+    private final long presupuestoNanos;
+
+    /**
+     * Par emergencia-ambulancia ya reservado.
+     */
+    public static class Asignacion {
+        private final Emergencia emergencia;
+        private final Ambulancia ambulancia;
+
+        Asignacion(Emergencia emergencia, Ambulancia ambulancia) {
+            this.emergencia = emergencia;
+            this.ambulancia = ambulancia;
+        }
+
+        public Emergencia getEmergencia() { return emergencia; }
+        public Ambulancia getAmbulancia() { return ambulancia; }
+    }
+
+    /**
+     * Resultado de asignar un lote.
+     */
+    public static class Resultado {
+        private final List<Asignacion> asignaciones;
+        private final List<Emergencia> sinAsignar;
+        private final int rondas;
+        private final double beneficio;
+        private final long duracionNanos;
+
+        Resultado(List<Asignacion> asignaciones, List<Emergencia> sinAsignar, int rondas,
+                  double beneficio, long duracionNanos) {
+            this.asignaciones = asignaciones;
+            this.sinAsignar = sinAsignar;
+            this.rondas = rondas;
+            this.beneficio = beneficio;
+            this.duracionNanos = duracionNanos;
+        }
+
+        /** Asignaciones con la ambulancia ya reservada. */
+        public List<Asignacion> getAsignaciones() { return asignaciones; }
+        /** Emergencias que deben volver a la cola. */
+        public List<Emergencia> getSinAsignar() { return sinAsignar; }
+        public int getRondas() { return rondas; }
+        /** Beneficio total de la solución de la subasta, antes de reservar. */
+        public double getBeneficio() { return beneficio; }
+        public long getDuracionNanos() { return duracionNanos; }
+    }
+
+    /**
+     * @param gestorRecursos Gestor de recursos del que se toman y reservan ambulancias
+     * @param distanciaMaxima Distancia a partir de la cual una ambulancia no se considera
+     * @param presupuesto Tiempo máximo de la subasta por lote
+     * @param unidad Unidad del presupuesto
+     */
+    public AsignadorLotes(GestorRecursos gestorRecursos, double distanciaMaxima, long presupuesto, TimeUnit unidad) {
+        this.gestorRecursos = gestorRecursos;
+        this.distanciaMaxima = distanciaMaxima;
+        this.presupuestoNanos = unidad.toNanos(presupuesto);
+    }
+
+    /**
+     * Estado de una subasta. Los arreglos de ambulancias crecen a medida que
+     * los postores descubren candidatas nuevas.
+     */
+    private final class Subasta {
+        final List<Emergencia> lote;
+        final double[] pesos;
+        final double[][] beneficios;
+        final double[] cotas;
+        final int[] asignada;
+        final int[] pujaAmbulancia;
+        final double[] pujaPrecio;
+        final boolean[] ampliar;
+        final Map<Ambulancia, Integer> indices = new IdentityHashMap<>();
+        final List<Ambulancia> ambulancias = new ArrayList<>();
+        final int[][] candidatas;
+        double[] precios = new double[64];
+        int[] duenios = new int[64];
+        int[] mejorPostor = new int[64];
+        int[] rondaMejor = new int[64];
+        final double epsilon;
+
+        Subasta(List<Emergencia> lote) {
+            this.lote = lote;
+            int n = lote.size();
+            pesos = new double[n];
+            candidatas = new int[n][];
+            beneficios = new double[n][];
+            cotas = new double[n];
+            asignada = new int[n];
+            pujaAmbulancia = new int[n];
+            pujaPrecio = new double[n];
+            ampliar = new boolean[n];
+            Arrays.fill(duenios, SIN_ASIGNAR);
+            Arrays.fill(asignada, SIN_ASIGNAR);
+            long ahora = Reloj.actual().nanos();
+            double beneficioMaximo = 0.0;
+            for (int i = 0; i < n; i++) {
+                double efectiva = lote.get(i).calcularPrioridadEfectiva(ahora);
+                pesos[i] = efectiva * efectiva;
+                cargarCandidatas(i, CANDIDATAS_INICIALES);
+                beneficioMaximo = Math.max(beneficioMaximo, pesos[i] * distanciaMaxima);
+            }
+            epsilon = Math.max(beneficioMaximo * EPSILON_RELATIVO, Double.MIN_NORMAL);
+        }
+
+        /**
+         * Consulta las k + 1 ambulancias más cercanas: las k primeras son
+         * candidatas y la siguiente acota lo que vale cualquier otra.
+         */
+        void cargarCandidatas(int i, int k) {
+            k = Math.min(k, CANDIDATAS_MAXIMAS);
+            Emergencia emergencia = lote.get(i);
+            List<Ambulancia> cercanas = gestorRecursos.cercanasDisponibles(
+                emergencia.getLatitud(), emergencia.getLongitud(), k + 1);
+            int cantidad = Math.min(k, cercanas.size());
+            int[] unidades = new int[cantidad];
+            double[] valores = new double[cantidad];
+            int validas = 0;
+            for (int c = 0; c < cantidad; c++) {
+                Ambulancia ambulancia = cercanas.get(c);
+                double beneficio = beneficio(i, ambulancia);
+                if (beneficio <= 0.0) {
+                    break; // Las siguientes están aún más lejos
+                }
+                unidades[validas] = registrar(ambulancia);
+                valores[validas] = beneficio;
+                validas++;
+            }
+            candidatas[i] = Arrays.copyOf(unidades, validas);
+            beneficios[i] = Arrays.copyOf(valores, validas);
+            cotas[i] = cercanas.size() > k && validas == cantidad && k < CANDIDATAS_MAXIMAS
+                ? Math.max(0.0, beneficio(i, cercanas.get(k))) : 0.0;
+        }
+
+        double beneficio(int i, Ambulancia ambulancia) {
+            return pesos[i] * (distanciaMaxima - ambulancia.calcularDistancia(lote.get(i)));
+        }
+
+        int registrar(Ambulancia ambulancia) {
+            Integer indice = indices.get(ambulancia);
+            if (indice != null) {
+                return indice;
+            }
+            int nuevo = ambulancias.size();
+            ambulancias.add(ambulancia);
+            indices.put(ambulancia, nuevo);
+            if (nuevo == precios.length) {
+                precios = Arrays.copyOf(precios, nuevo * 2);
+                duenios = Arrays.copyOf(duenios, nuevo * 2);
+                mejorPostor = Arrays.copyOf(mejorPostor, nuevo * 2);
+                rondaMejor = Arrays.copyOf(rondaMejor, nuevo * 2);
+                Arrays.fill(duenios, nuevo, duenios.length, SIN_ASIGNAR);
+            }
+            return nuevo;
+        }
+
+        /**
+         * Calcula la puja de un postor sin asignar. Solo lee precios, así que
+         * puede correr en paralelo con las pujas de otros postores.
+         */
+        void pujar(int i) {
+            pujaAmbulancia[i] = SIN_ASIGNAR;
+            int[] unidades = candidatas[i];
+            double[] valores = beneficios[i];
+            double mejor = 0.0;        // Quedarse sin ambulancia vale 0
+            double segundo = 0.0;
+            int elegida = DESCARTADA;
+            for (int c = 0; c < unidades.length; c++) {
+                double valor = valores[c] - precios[unidades[c]];
+                if (valor > mejor) {
+                    segundo = mejor;
+                    mejor = valor;
+                    elegida = unidades[c];
+                } else if (valor > segundo) {
+                    segundo = valor;
+                }
+            }
+            if (cotas[i] > mejor) {
+                // Una ambulancia aún no consultada podría ser mejor
+                ampliar[i] = true;
+                return;
+            }
+            if (elegida == DESCARTADA) {
+                asignada[i] = DESCARTADA;
+                return;
+            }
+            segundo = Math.max(segundo, cotas[i]);
+            pujaAmbulancia[i] = elegida;
+            pujaPrecio[i] = precios[elegida] + (mejor - segundo) + epsilon;
+        }
+    }
+
+    /**
+     * Resuelve la subasta para el lote y reserva las ambulancias ganadoras.
+     * @param lote Emergencias sacadas de la cola
+     * @return asignaciones reservadas y emergencias que deben volver a la cola
+     */
+    public Resultado asignar(List<Emergencia> lote) {
+        long inicio = System.nanoTime();
+        Subasta subasta = new Subasta(lote);
+        int rondas = 0;
+        int[] pendientes = IntStream.range(0, lote.size()).toArray();
+        while (pendientes.length > 0) {
+            if (System.nanoTime() - inicio > presupuestoNanos) {
+                // Una subasta a medias puede haber dejado ambulancias en manos de
+                // emergencias leves: el lote se despacha por orden de prioridad
+                Registro.advertencia("⚠ Subasta cortada por tiempo tras {} rondas ({} sin resolver)",
+                                     rondas, pendientes.length);
+                Arrays.fill(subasta.asignada, SIN_ASIGNAR);
+                break;
+            }
+            rondas++;
+            if (pendientes.length >= UMBRAL_PARALELO) {
+                Arrays.stream(pendientes).parallel().forEach(subasta::pujar);
+            } else {
+                for (int i : pendientes) {
+                    subasta.pujar(i);
+                }
+            }
+            pendientes = resolverRonda(subasta, pendientes, rondas);
+        }
+        return reservar(subasta, rondas, inicio);
+    }
+
+    /**
+     * Aplica las pujas de una ronda en un solo hilo: cada ambulancia va a la
+     * puja más alta y su dueño anterior queda desplazado. Amplía las
+     * candidatas de quien lo pidió.
+     * @return postores que deben pujar en la siguiente ronda
+     */
+    private int[] resolverRonda(Subasta subasta, int[] ronda, int numeroRonda) {
+        for (int i : ronda) {
+            int ambulancia = subasta.pujaAmbulancia[i];
+            if (ambulancia >= 0 && (subasta.rondaMejor[ambulancia] != numeroRonda
+                    || subasta.pujaPrecio[i] > subasta.pujaPrecio[subasta.mejorPostor[ambulancia]])) {
+                subasta.rondaMejor[ambulancia] = numeroRonda;
+                subasta.mejorPostor[ambulancia] = i;
+            }
+        }
+        int[] siguientes = new int[ronda.length * 2];
+        int cantidad = 0;
+        for (int i : ronda) {
+            int ambulancia = subasta.pujaAmbulancia[i];
+            if (ambulancia >= 0 && subasta.mejorPostor[ambulancia] == i) {
+                int anterior = subasta.duenios[ambulancia];
+                if (anterior >= 0) {
+                    subasta.asignada[anterior] = SIN_ASIGNAR;
+                    siguientes[cantidad++] = anterior;
+                }
+                subasta.duenios[ambulancia] = i;
+                subasta.precios[ambulancia] = subasta.pujaPrecio[i];
+                subasta.asignada[i] = ambulancia;
+            } else if (subasta.asignada[i] == SIN_ASIGNAR) {
+                if (subasta.ampliar[i]) {
+                    subasta.ampliar[i] = false;
+                    subasta.cargarCandidatas(i, subasta.candidatas[i].length * 2 + 1);
+                }
+                siguientes[cantidad++] = i;
+            }
+        }
+        return Arrays.copyOf(siguientes, cantidad);
+    }
+
+    /**
+     * Reserva las ambulancias ganadoras. Las emergencias que quedaron sin
+     * ambulancia (porque ninguna de sus candidatas les convenía, la subasta se
+     * cortó u otro despachador tomó su ambulancia) se atienden después, en
+     * orden de prioridad, con la más cercana de las que sobraron.
+     */
+    private Resultado reservar(Subasta subasta, int rondas, long inicio) {
+        List<Asignacion> asignaciones = new ArrayList<>();
+        List<Emergencia> restantes = new ArrayList<>();
+        double beneficio = 0.0;
+        for (int i = 0; i < subasta.lote.size(); i++) {
+            Emergencia emergencia = subasta.lote.get(i);
+            int indice = subasta.asignada[i];
+            if (indice < 0) {
+                restantes.add(emergencia);
+                continue;
+            }
+            Ambulancia ambulancia = subasta.ambulancias.get(indice);
+            beneficio += subasta.beneficio(i, ambulancia);
+            if (gestorRecursos.reservarAmbulancia(ambulancia, emergencia)) {
+                asignaciones.add(new Asignacion(emergencia, ambulancia));
+            } else {
+                restantes.add(emergencia);
+            }
+        }
+        Collections.sort(restantes);
+        List<Emergencia> sinAsignar = new ArrayList<>();
+        for (Emergencia emergencia : restantes) {
+            Ambulancia ambulancia = sinAsignar.isEmpty()
+                ? gestorRecursos.intentarAsignarAmbulancia(emergencia) : null;
+            if (ambulancia != null) {
+                asignaciones.add(new Asignacion(emergencia, ambulancia));
+            } else {
+                sinAsignar.add(emergencia);
+            }
+        }
+        return new Resultado(asignaciones, sinAsignar, rondas, beneficio, System.nanoTime() - inicio);
+    }
+}
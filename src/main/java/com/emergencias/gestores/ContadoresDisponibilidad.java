@@ -0,0 +1,166 @@
+package com.emergencias.gestores;
+
+import com.emergencias.modelos.Ambulancia;
+import com.emergencias.modelos.Ambulancia.TipoAmbulancia;
+import com.emergencias.modelos.MedicoEmergencia;
+import com.emergencias.modelos.MedicoEmergencia.Especialidad;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recursos libres por tipo de ambulancia y por especialidad, mantenidos al
+ * reservar y liberar para que consultarlos no recorra los recursos.
+ * <p>
+ * Los contadores son {@link LongAdder}: los despachadores no compiten por una
+ * misma línea de caché. Cada cambio se encierra entre un contador de cambios
+ * iniciados y otro de terminados, como un seqlock: una {@link VistaRecursos}
+ * solo se publica si no empezó ningún cambio mientras se leían los conteos, y
+ * se reutiliza mientras no termine ninguno nuevo.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+class ContadoresDisponibilidad {
+    private static final TipoAmbulancia[] TIPOS = TipoAmbulancia.values();
+    private static final Especialidad[] ESPECIALIDADES = Especialidad.values();
+    private static final int INTENTOS_VISTA = 64;
+
+    private final LongAdder[] ambulanciasLibres;
+    private final LongAdder[] medicosLibres;
+    private final int[] ambulanciasTotales;
+    private final int[] medicosTotales;
+    private final LongAdder iniciados;
+    private final LongAdder terminados;
+    private volatile VistaRecursos ultima;
+
+    ContadoresDisponibilidad() {
+        ambulanciasLibres = adders(TIPOS.length);
+        medicosLibres = adders(ESPECIALIDADES.length);
+        ambulanciasTotales = new int[TIPOS.length];
+        medicosTotales = new int[ESPECIALIDADES.length];
+        iniciados = new LongAdder();
+        terminados = new LongAdder();
+        ultima = new VistaRecursos(0, new int[TIPOS.length], new int[TIPOS.length],
+                                   new int[ESPECIALIDADES.length], new int[ESPECIALIDADES.length]);
+    }
+
+    private static LongAdder[] adders(int cantidad) {
+        LongAdder[] adders = new LongAdder[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * Cuenta la flota y la plantilla, todas libres, en una sola pasada.
+     */
+    synchronized void registrarRecursos(List<Ambulancia> ambulancias, List<MedicoEmergencia> medicos) {
+        iniciados.increment();
+        for (Ambulancia ambulancia : ambulancias) {
+            ambulanciasTotales[ambulancia.getTipo().ordinal()]++;
+        }
+        for (MedicoEmergencia medico : medicos) {
+            medicosTotales[medico.getTipoEspecialidad().ordinal()]++;
+        }
+        for (int t = 0; t < TIPOS.length; t++) {
+            ambulanciasLibres[t].add(ambulanciasTotales[t]);
+        }
+        for (int e = 0; e < ESPECIALIDADES.length; e++) {
+            medicosLibres[e].add(medicosTotales[e]);
+        }
+        terminados.increment();
+    }
+
+    void ambulanciaReservada(TipoAmbulancia tipo) {
+        cambiar(ambulanciasLibres[tipo.ordinal()], -1);
+    }
+
+    void ambulanciaLiberada(TipoAmbulancia tipo) {
+        cambiar(ambulanciasLibres[tipo.ordinal()], 1);
+    }
+
+    void medicoAsignado(Especialidad especialidad) {
+        cambiar(medicosLibres[especialidad.ordinal()], -1);
+    }
+
+    void medicoLiberado(Especialidad especialidad) {
+        cambiar(medicosLibres[especialidad.ordinal()], 1);
+    }
+
+    private void cambiar(LongAdder contador, int delta) {
+        iniciados.increment();
+        contador.add(delta);
+        terminados.increment();
+    }
+
+    int ambulanciasLibres() {
+        return suma(ambulanciasLibres);
+    }
+
+    int ambulanciasLibres(TipoAmbulancia tipo) {
+        return (int) ambulanciasLibres[tipo.ordinal()].sum();
+    }
+
+    int medicosLibres() {
+        return suma(medicosLibres);
+    }
+
+    Map<Especialidad, Integer> medicosLibresPorEspecialidad() {
+        Map<Especialidad, Integer> conteo = new EnumMap<>(Especialidad.class);
+        for (Especialidad e : ESPECIALIDADES) {
+            conteo.put(e, (int) medicosLibres[e.ordinal()].sum());
+        }
+        return conteo;
+    }
+
+    private static int suma(LongAdder[] contadores) {
+        long total = 0;
+        for (LongAdder contador : contadores) {
+            total += contador.sum();
+        }
+        return (int) total;
+    }
+
+    /**
+     * Vista consistente de la disponibilidad. Si nada terminó desde la vista
+     * anterior se devuelve la misma sin leer los contadores; si los cambios no
+     * dan tregua en {@value #INTENTOS_VISTA} intentos se devuelve la última
+     * vista consistente, algo atrasada.
+     */
+    VistaRecursos vista() {
+        VistaRecursos anterior = ultima;
+        for (int intento = 0; intento < INTENTOS_VISTA; intento++) {
+            long version = terminados.sum();
+            if (version == anterior.getVersion()) {
+                return anterior;
+            }
+            int[] ambulancias = leer(ambulanciasLibres);
+            int[] medicos = leer(medicosLibres);
+            int[] totalesAmbulancias = ambulanciasTotales.clone();
+            int[] totalesMedicos = medicosTotales.clone();
+            // Cada cambio suma a iniciados antes de tocar un conteo: si no hay
+            // más iniciados que los terminados leídos, ninguno quedó a medias
+            if (iniciados.sum() == version) {
+                VistaRecursos vista = new VistaRecursos(version, ambulancias, totalesAmbulancias,
+                                                        medicos, totalesMedicos);
+                if (version > ultima.getVersion()) {
+                    ultima = vista; // Otro lector pudo publicar una más nueva
+                }
+                return vista;
+            }
+            Thread.onSpinWait();
+        }
+        return anterior;
+    }
+
+    private static int[] leer(LongAdder[] contadores) {
+        int[] conteos = new int[contadores.length];
+        for (int i = 0; i < contadores.length; i++) {
+            conteos[i] = (int) contadores[i].sum();
+        }
+        return conteos;
+    }
+}
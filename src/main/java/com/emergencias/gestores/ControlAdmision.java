@@ -0,0 +1,201 @@
+package com.emergencias.gestores;
+
+import com.emergencias.modelos.Prioridad;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Control de admisión de la cola de emergencias con capacidad acotada.
+ * Cada prioridad puede reservar una parte de la capacidad que las prioridades
+ * menos graves no pueden ocupar: una emergencia de prioridad p solo entra si la
+ * ocupación está por debajo de la capacidad menos las reservas de las
+ * prioridades más graves que p. CRÍTICO puede usar toda la capacidad.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class ControlAdmision {
+    private final int capacidad;
+    private final int[] limitePorPrioridad;
+    private final PoliticaSaturacion politica;
+    private final int capacidadDiferidas;
+    private final AtomicInteger ocupacion;
+    private final AtomicInteger diferidas;
+    private final AtomicInteger esperando;
+    private final EnumMap<ResultadoAdmision, LongAdder> contadores;
+    private final ReentrantLock lock;
+    private final Condition hayEspacio;
+
+    /**
+     * Crea el control de admisión.
+     * @param capacidad Máximo de emergencias en cola
+     * @param reservas Capacidad reservada por prioridad (las no indicadas reservan 0)
+     * @param politica Qué hacer con las no críticas cuando no hay espacio
+     * @param capacidadDiferidas Máximo de emergencias retenidas con la política DIFERIR
+     */
+    public ControlAdmision(int capacidad, Map<Prioridad, Integer> reservas,
+                           PoliticaSaturacion politica, int capacidadDiferidas) {
+        this.capacidad = capacidad;
+        this.politica = politica;
+        this.capacidadDiferidas = capacidadDiferidas;
+        this.limitePorPrioridad = new int[Prioridad.values().length];
+        // Prioridad.values() va de más a menos grave: se acumulan las reservas superiores
+        int reservadoSuperior = 0;
+        for (Prioridad p : Prioridad.values()) {
+            limitePorPrioridad[p.ordinal()] = Math.max(0, capacidad - reservadoSuperior);
+            reservadoSuperior += reservas.getOrDefault(p, 0);
+        }
+        this.ocupacion = new AtomicInteger(0);
+        this.diferidas = new AtomicInteger(0);
+        this.esperando = new AtomicInteger(0);
+        this.contadores = new EnumMap<>(ResultadoAdmision.class);
+        for (ResultadoAdmision r : ResultadoAdmision.values()) {
+            contadores.put(r, new LongAdder());
+        }
+        this.lock = new ReentrantLock();
+        this.hayEspacio = lock.newCondition();
+    }
+
+    /**
+     * Intenta ocupar un lugar en la cola sin esperar.
+     * @param prioridad Prioridad de la emergencia
+     * @return true si había capacidad para esa prioridad
+     */
+    boolean intentarOcupar(Prioridad prioridad) {
+        int limite = limitePorPrioridad[prioridad.ordinal()];
+        while (true) {
+            int actual = ocupacion.get();
+            if (actual >= limite) {
+                return false;
+            }
+            if (ocupacion.compareAndSet(actual, actual + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Espera hasta que haya capacidad para la prioridad o se agote el tiempo.
+     * @return true si se ocupó un lugar
+     */
+    boolean esperarYOcupar(Prioridad prioridad, long timeout, TimeUnit unit) throws InterruptedException {
+        if (intentarOcupar(prioridad)) {
+            return true;
+        }
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        esperando.incrementAndGet();
+        try {
+            while (!intentarOcupar(prioridad)) {
+                if (nanos <= 0L) {
+                    return false;
+                }
+                nanos = hayEspacio.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            esperando.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ocupa un lugar aunque se supere la capacidad (reencolados y CRÍTICAS).
+     */
+    void ocuparForzado() {
+        ocuparForzado(1);
+    }
+
+    void ocuparForzado(int cantidad) {
+        ocupacion.addAndGet(cantidad);
+    }
+
+    /**
+     * Libera un lugar cuando una emergencia sale de la cola.
+     */
+    void liberar() {
+        liberar(1);
+    }
+
+    /**
+     * Libera varios lugares a la vez (extracción por lotes).
+     * @param cantidad Emergencias que salieron de la cola
+     */
+    void liberar(int cantidad) {
+        ocupacion.addAndGet(-cantidad);
+        if (esperando.get() > 0) {
+            lock.lock();
+            try {
+                hayEspacio.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    boolean intentarDiferir() {
+        while (true) {
+            int actual = diferidas.get();
+            if (actual >= capacidadDiferidas) {
+                return false;
+            }
+            if (diferidas.compareAndSet(actual, actual + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void liberarDiferida() {
+        diferidas.decrementAndGet();
+    }
+
+    void contar(ResultadoAdmision resultado) {
+        contadores.get(resultado).increment();
+    }
+
+    /**
+     * Fracción de la capacidad ocupada; mayor que 1 indica sobrecupo de CRÍTICAS.
+     * @return nivel de presión sobre la cola
+     */
+    public double getPresion() {
+        return (double) ocupacion.get() / capacidad;
+    }
+
+    /**
+     * Indica si una prioridad ya no tiene capacidad propia disponible.
+     * @param prioridad Prioridad a consultar
+     * @return true si una emergencia de esa prioridad no entraría sin esperar
+     */
+    public boolean estaSaturada(Prioridad prioridad) {
+        return ocupacion.get() >= limitePorPrioridad[prioridad.ordinal()];
+    }
+
+    public Map<ResultadoAdmision, Long> getContadores() {
+        Map<ResultadoAdmision, Long> copia = new EnumMap<>(ResultadoAdmision.class);
+        for (Map.Entry<ResultadoAdmision, LongAdder> entry : contadores.entrySet()) {
+            copia.put(entry.getKey(), entry.getValue().sum());
+        }
+        return copia;
+    }
+
+    public int getCapacidad() {
+        return capacidad;
+    }
+
+    public int getOcupacion() {
+        return ocupacion.get();
+    }
+
+    public int getDiferidas() {
+        return diferidas.get();
+    }
+
+    public PoliticaSaturacion getPolitica() {
+        return politica;
+    }
+}
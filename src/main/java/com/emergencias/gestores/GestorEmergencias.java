@@ -1,6 +1,21 @@
 package com.emergencias.gestores;
 
+import com.emergencias.estructuras.ColaEmergencias;
+import com.emergencias.estructuras.ColaFragmentada;
+import com.emergencias.eventos.BusEventos;
+import com.emergencias.eventos.EstrategiaEspera;
+import com.emergencias.eventos.ManejadorEventos;
+import com.emergencias.eventos.PoliticaContrapresion;
+import com.emergencias.eventos.TipoEvento;
+import com.emergencias.metricas.EtapaAtencion;
+import com.emergencias.metricas.HistogramaLatencia;
+import com.emergencias.metricas.MetricasRespuesta;
 import com.emergencias.modelos.*;
+import com.emergencias.persistencia.DiarioEmergencias;
+import com.emergencias.persistencia.EstadoDiario;
+import com.emergencias.persistencia.GrabadorTrazas;
+import com.emergencias.registro.Registro;
+import com.emergencias.simulacion.Reloj;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.*;
@@ -13,33 +28,55 @@ import java.util.*;
  * @version 1.0
  */
 public class GestorEmergencias {
+    private static final int CAPACIDAD_BUS_EVENTOS = 4096;
+    // Área de cobertura (Santa Marta) dividida en zonas de despacho
+    private static final double LATITUD_MIN = 11.2;
+    private static final double LATITUD_MAX = 11.4;
+    private static final double LONGITUD_MIN = -74.2;
+    private static final double LONGITUD_MAX = -74.0;
+    private static final int LADO_CUADRICULA = Integer.getInteger("emergencias.zonas.lado", 4);
+    
     private static GestorEmergencias instancia;
-    private final PriorityBlockingQueue<Emergencia> colaEmergencias;
+    private final ColaFragmentada colaEmergencias;
+    private final ColaEmergencias colaDiferidas;
+    private volatile ControlAdmision controlAdmision;
     private final ConcurrentHashMap<Integer, Emergencia> emergenciasActivas;
+    private final ConcurrentHashMap<Integer, Emergencia> esperandoAmbulancia;
     private final AtomicInteger emergenciasAtendidas;
     private final AtomicInteger emergenciasCanceladas;
-    private final CopyOnWriteArrayList<EmergenciaListener> listeners;
+    private final BusEventos busEventos;
+    private volatile DiarioEmergencias diario;
+    private volatile GrabadorTrazas grabador;
     
     // Estadísticas
     private final ConcurrentHashMap<Prioridad, AtomicInteger> estadisticasPorPrioridad;
-    private volatile long tiempoPromedioRespuesta;
+    private final MetricasRespuesta metricas;
     
     /**
      * Interface para notificaciones de cambios en emergencias.
+     * Las notificaciones se entregan de forma asíncrona en un hilo propio por listener.
      */
     public interface EmergenciaListener {
         void onEmergenciaCreada(Emergencia emergencia);
         void onEmergenciaAsignada(Emergencia emergencia);
         void onEmergenciaAtendida(Emergencia emergencia);
+        /** Cancelada por el operador o descartada por saturación. */
+        default void onEmergenciaCancelada(Emergencia emergencia) {
+        }
     }
     
     private GestorEmergencias() {
-        colaEmergencias = new PriorityBlockingQueue<>(100);
+        colaEmergencias = new ColaFragmentada(LATITUD_MIN, LATITUD_MAX, LONGITUD_MIN, LONGITUD_MAX,
+                                              LADO_CUADRICULA, LADO_CUADRICULA);
+        colaDiferidas = new ColaEmergencias(16);
         emergenciasActivas = new ConcurrentHashMap<>();
+        esperandoAmbulancia = new ConcurrentHashMap<>();
         emergenciasAtendidas = new AtomicInteger(0);
         emergenciasCanceladas = new AtomicInteger(0);
-        listeners = new CopyOnWriteArrayList<>();
+        busEventos = new BusEventos(CAPACIDAD_BUS_EVENTOS, EstrategiaEspera.DORMIR,
+                                    PoliticaContrapresion.SOBRESCRIBIR);
         estadisticasPorPrioridad = new ConcurrentHashMap<>();
+        metricas = new MetricasRespuesta();
         
         // Inicializar estadísticas para cada prioridad
         for (Prioridad p : Prioridad.values()) {
@@ -55,19 +92,372 @@ public class GestorEmergencias {
     }
     
     /**
-     * Registra una nueva emergencia en el sistema.
+     * Activa la admisión acotada de emergencias. Las emergencias ya encoladas
+     * o esperando ambulancia cuentan desde este momento contra la capacidad.
+     * @param control Configuración de capacidad, reservas y política de saturación
+     */
+    public void configurarAdmision(ControlAdmision control) {
+        for (int i = colaEmergencias.tamanio() + esperandoAmbulancia.size(); i > 0; i--) {
+            control.ocuparForzado();
+        }
+        this.controlAdmision = control;
+    }
+    
+    /**
+     * Restaura desde el diario las emergencias vivas y los contadores, y desde
+     * ese momento anota en él cada transición. Las emergencias que estaban en
+     * proceso al caer el sistema vuelven a la cola: sus recursos no sobrevivieron.
+     * Debe llamarse al iniciar, antes de registrar emergencias.
+     * @param diario Diario ya abierto
+     * @return número de emergencias devueltas a la cola
+     */
+    public int configurarDiario(DiarioEmergencias diario) {
+        EstadoDiario estado = diario.getEstadoRecuperado();
+        Emergencia.reservarIdsHasta(estado.getUltimoId());
+        emergenciasAtendidas.set(estado.getAtendidas());
+        emergenciasCanceladas.set(estado.getCanceladas());
+        for (Map.Entry<Prioridad, Integer> entry : estado.getRegistradasPorPrioridad().entrySet()) {
+            estadisticasPorPrioridad.get(entry.getKey()).set(entry.getValue());
+        }
+        ControlAdmision control = controlAdmision;
+        int recuperadas = 0;
+        for (EstadoDiario.EmergenciaRegistrada registrada : estado.getVivas()) {
+            Emergencia emergencia = registrada.reconstruir();
+            if (control != null) {
+                control.ocuparForzado();
+            }
+            emergenciasActivas.put(emergencia.getId(), emergencia);
+            colaEmergencias.ofrecer(emergencia);
+            recuperadas++;
+        }
+        this.diario = diario;
+        Registro.info("📓 Recuperadas {} emergencias del diario ({} atendidas, {} canceladas)",
+                      recuperadas, estado.getAtendidas(), estado.getCanceladas());
+        return recuperadas;
+    }
+    
+    public DiarioEmergencias getDiario() {
+        return diario;
+    }
+    
+    /**
+     * Desde este momento graba en una traza cada llamada recibida, se
+     * admita o no, cada asignación y liberación de recursos y cada cancelación.
+     * @param grabador Traza ya abierta
+     */
+    public void configurarGrabador(GrabadorTrazas grabador) {
+        this.grabador = grabador;
+    }
+    
+    public GrabadorTrazas getGrabador() {
+        return grabador;
+    }
+    
+    private void grabarLlamada(Emergencia emergencia) {
+        GrabadorTrazas g = grabador;
+        if (g != null) {
+            g.anotarLlamada(emergencia);
+        }
+    }
+    
+    /**
+     * Registra una nueva emergencia en el sistema sin control de admisión.
+     * Si la admisión acotada está activa, la emergencia cuenta contra la capacidad
+     * aunque la supere.
      * @param emergencia Emergencia a registrar
      */
     public void registrarEmergencia(Emergencia emergencia) {
+        grabarLlamada(emergencia);
+        ControlAdmision control = controlAdmision;
+        if (control != null) {
+            control.ocuparForzado();
+        }
+        registrarEnCola(emergencia, false);
+    }
+    
+    /**
+     * Registra un lote de emergencias, por ejemplo una ráfaga desde una central
+     * telefónica. A diferencia de registrar una por una, toma el lock de cada zona
+     * de la cola una sola vez, anota el lote en el diario con un solo lock,
+     * actualiza cada estadística una vez y publica los eventos reclamando todas
+     * las secuencias del bus de una vez. Igual que {@link #registrarEmergencia},
+     * no aplica control de admisión: el lote cuenta contra la capacidad aunque la supere.
+     * @param emergencias Emergencias a registrar
+     * @return número de emergencias registradas
+     */
+    public int registrarEmergencias(Collection<Emergencia> emergencias) {
+        if (emergencias.isEmpty()) {
+            return 0;
+        }
+        List<Emergencia> lote = new ArrayList<>(emergencias);
+        GrabadorTrazas g = grabador;
+        if (g != null) {
+            for (Emergencia emergencia : lote) {
+                g.anotarLlamada(emergencia);
+            }
+        }
+        ControlAdmision control = controlAdmision;
+        if (control != null) {
+            control.ocuparForzado(lote.size());
+        }
+        DiarioEmergencias d = diario;
+        if (d != null) {
+            d.anotarCreadas(lote);
+        }
+        int[] porPrioridad = new int[Prioridad.values().length];
+        for (Emergencia emergencia : lote) {
+            emergenciasActivas.put(emergencia.getId(), emergencia);
+            porPrioridad[emergencia.getPrioridad().ordinal()]++;
+        }
+        colaEmergencias.ofrecerTodas(lote);
+        for (Prioridad p : Prioridad.values()) {
+            if (porPrioridad[p.ordinal()] > 0) {
+                estadisticasPorPrioridad.get(p).addAndGet(porPrioridad[p.ordinal()]);
+            }
+        }
+        
+        Registro.info("📞 {} NUEVAS EMERGENCIAS en lote ({} críticas)",
+                      lote.size(), porPrioridad[Prioridad.CRITICO.ordinal()]);
+        
+        busEventos.publicarLote(TipoEvento.CREADA, lote);
+        return lote.size();
+    }
+    
+    /**
+     * Devuelve a la cola una emergencia que salió de ella pero no pudo
+     * despacharse, por ejemplo por falta de ambulancias. No cuenta como
+     * emergencia nueva ni se anota en el diario, donde sigue pendiente;
+     * conserva su hora de llamada, así que sigue envejeciendo.
+     * @param emergencia Emergencia a reencolar
+     */
+    public void reencolar(Emergencia emergencia) {
+        ControlAdmision control = controlAdmision;
+        if (control != null) {
+            control.ocuparForzado();
+        }
+        colaEmergencias.ofrecer(emergencia);
+    }
+    
+    /**
+     * Devuelve a la cola una emergencia cuya ambulancia se desvió a otra más
+     * grave. Vuelve a estar pendiente con su hora de llamada original; el
+     * diario la sigue teniendo como asignada hasta la próxima asignación, y
+     * al recuperar las asignadas vuelven a la cola igual que las pendientes.
+     * Su próxima asignación no vuelve a medir la espera en cola ni la
+     * asignación, que ya se midieron con la primera.
+     * @param emergencia Emergencia desplazada
+     */
+    public void devolverDesplazada(Emergencia emergencia) {
+        emergencia.setEstado(Emergencia.EstadoEmergencia.PENDIENTE);
+        emergencia.setMarcaAsignacionNanos(0);
+        emergencia.marcarDesplazada();
+        Registro.info("↩ DESPLAZADA: {} [{}] vuelve a la cola", emergencia.getCodigo(), emergencia.getPrioridad());
+        reencolar(emergencia);
+    }
+    
+    /**
+     * Devuelve a la cola un lote de emergencias no despachadas.
+     * @param emergencias Emergencias a reencolar
+     */
+    public void reencolar(Collection<Emergencia> emergencias) {
+        if (emergencias.isEmpty()) {
+            return;
+        }
+        ControlAdmision control = controlAdmision;
+        if (control != null) {
+            control.ocuparForzado(emergencias.size());
+        }
+        colaEmergencias.ofrecerTodas(emergencias);
+    }
+    
+    /**
+     * Intenta registrar una emergencia sin esperar. Si su prioridad no tiene
+     * capacidad se aplica la política de saturación; las CRÍTICAS nunca se rechazan.
+     * @param emergencia Emergencia a registrar
+     * @return Resultado de la admisión
+     */
+    public ResultadoAdmision tryRegistrar(Emergencia emergencia) {
+        grabarLlamada(emergencia);
+        ControlAdmision control = controlAdmision;
+        if (control == null) {
+            registrarEnCola(emergencia, false);
+            return ResultadoAdmision.ADMITIDA;
+        }
+        ResultadoAdmision resultado;
+        if (control.intentarOcupar(emergencia.getPrioridad())) {
+            registrarEnCola(emergencia, false);
+            resultado = ResultadoAdmision.ADMITIDA;
+        } else {
+            resultado = resolverSaturacion(emergencia, control);
+        }
+        control.contar(resultado);
+        return resultado;
+    }
+    
+    /**
+     * Registra una emergencia esperando hasta que su prioridad tenga capacidad.
+     * Al agotarse el tiempo se aplica la política de saturación.
+     * @param emergencia Emergencia a registrar
+     * @param timeout Tiempo máximo de espera
+     * @param unit Unidad de tiempo
+     * @return Resultado de la admisión
+     */
+    public ResultadoAdmision registrar(Emergencia emergencia, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        grabarLlamada(emergencia);
+        ControlAdmision control = controlAdmision;
+        if (control == null) {
+            registrarEnCola(emergencia, false);
+            return ResultadoAdmision.ADMITIDA;
+        }
+        ResultadoAdmision resultado;
+        if (emergencia.getPrioridad() != Prioridad.CRITICO
+                && control.esperarYOcupar(emergencia.getPrioridad(), timeout, unit)) {
+            registrarEnCola(emergencia, false);
+            resultado = ResultadoAdmision.ADMITIDA;
+        } else if (control.intentarOcupar(emergencia.getPrioridad())) {
+            registrarEnCola(emergencia, false);
+            resultado = ResultadoAdmision.ADMITIDA;
+        } else {
+            resultado = resolverSaturacion(emergencia, control);
+        }
+        control.contar(resultado);
+        return resultado;
+    }
+    
+    /**
+     * Decide qué hacer con una emergencia que no cabe en la cola.
+     */
+    private ResultadoAdmision resolverSaturacion(Emergencia emergencia, ControlAdmision control) {
+        Prioridad prioridad = emergencia.getPrioridad();
+        if (prioridad == Prioridad.CRITICO) {
+            boolean descarto = descartarLeve(control);
+            if (!descarto) {
+                control.ocuparForzado();
+            }
+            registrarEnCola(emergencia, false);
+            return descarto ? ResultadoAdmision.ADMITIDA_CON_DESCARTE : ResultadoAdmision.ADMITIDA_SOBRECUPO;
+        }
+        switch (control.getPolitica()) {
+            case DESCARTAR_LEVE:
+                if (prioridad != Prioridad.LEVE && descartarLeve(control)) {
+                    registrarEnCola(emergencia, false);
+                    return ResultadoAdmision.ADMITIDA_CON_DESCARTE;
+                }
+                break;
+            case DIFERIR:
+                if (control.intentarDiferir()) {
+                    registrarEnCola(emergencia, true);
+                    return ResultadoAdmision.DIFERIDA;
+                }
+                break;
+            default:
+                break;
+        }
+        Registro.advertencia("⛔ RECHAZADA por saturación: {} [{}]", emergencia.getCodigo(), prioridad);
+        return ResultadoAdmision.RECHAZADA;
+    }
+    
+    /**
+     * Descarta una emergencia LEVE reciente de la cola para hacer espacio. Su
+     * lugar en la admisión pasa directamente a la emergencia que entra, sin
+     * liberarlo: una LEVE que espera en {@link ControlAdmision#esperarYOcupar}
+     * podría tomarlo antes y la ocupación superaría la capacidad.
+     * @return true si había una LEVE que descartar; el llamador hereda su lugar
+     */
+    private boolean descartarLeve(ControlAdmision control) {
+        Emergencia descartada = colaEmergencias.retirarReciente(Prioridad.LEVE);
+        if (descartada == null) {
+            return false;
+        }
+        descartada.setEstado(Emergencia.EstadoEmergencia.CANCELADA);
+        emergenciasActivas.remove(descartada.getId());
+        DiarioEmergencias d = diario;
+        if (d != null) {
+            d.anotarDescartada(descartada);
+        }
+        GrabadorTrazas g = grabador;
+        if (g != null) {
+            g.anotarCancelada(descartada);
+        }
+        control.contar(ResultadoAdmision.DESCARTADA);
+        Registro.advertencia("⛔ DESCARTADA por saturación: {} [{}]",
+                             descartada.getCodigo(), descartada.getPrioridad());
+        busEventos.publicar(TipoEvento.CANCELADA, descartada);
+        return true;
+    }
+    
+    private void registrarEnCola(Emergencia emergencia, boolean diferida) {
+        DiarioEmergencias d = diario;
+        if (d != null) {
+            d.anotarCreada(emergencia);
+        }
         emergenciasActivas.put(emergencia.getId(), emergencia);
-        colaEmergencias.offer(emergencia);
+        if (diferida) {
+            colaDiferidas.ofrecer(emergencia);
+        } else {
+            colaEmergencias.ofrecer(emergencia);
+        }
         estadisticasPorPrioridad.get(emergencia.getPrioridad()).incrementAndGet();
         
-        System.out.println("📞 NUEVA EMERGENCIA: " + emergencia);
+        Registro.info("📞 NUEVA EMERGENCIA: {} [{}] {}",
+                      emergencia.getCodigo(), emergencia.getPrioridad(), emergencia.getUbicacion());
         
-        // Notificar a listeners
-        for (EmergenciaListener listener : listeners) {
-            listener.onEmergenciaCreada(emergencia);
+        // Notificar a listeners (asíncrono)
+        busEventos.publicar(TipoEvento.CREADA, emergencia);
+    }
+    
+    /**
+     * Libera el lugar de una emergencia que salió de la cola y promueve diferidas
+     * mientras haya capacidad para ellas.
+     */
+    private void alSalirDeCola() {
+        alSalirDeCola(1);
+    }
+    
+    private void alSalirDeCola(int cantidad) {
+        ControlAdmision control = controlAdmision;
+        if (control == null) {
+            return;
+        }
+        control.liberar(cantidad);
+        while (control.getDiferidas() > 0) {
+            Emergencia diferida = colaDiferidas.consultar();
+            if (diferida == null || !control.intentarOcupar(diferida.getPrioridad())) {
+                return;
+            }
+            if (colaDiferidas.remover(diferida)) {
+                control.liberarDiferida();
+                colaEmergencias.ofrecer(diferida);
+            } else {
+                control.liberar(); // Otro hilo la promovió o se canceló
+            }
+        }
+    }
+    
+    /**
+     * Anota que una emergencia que salió de la cola espera en la lista de
+     * espera de ambulancias. Hasta {@link #finEsperaAmbulancia} sigue contando
+     * contra la capacidad de admisión, entre las pendientes y en la espera más
+     * antigua: para la contrapresión sigue sin atender.
+     * @param emergencia Emergencia sin ambulancia
+     */
+    public void esperaAmbulancia(Emergencia emergencia) {
+        ControlAdmision control = controlAdmision;
+        if (control != null) {
+            control.ocuparForzado();
+        }
+        esperandoAmbulancia.put(emergencia.getId(), emergencia);
+    }
+    
+    /**
+     * La emergencia dejó la lista de espera de ambulancias: recibió una,
+     * volvió a la cola o se canceló. Libera su lugar en la admisión.
+     * @param emergencia Emergencia anotada con {@link #esperaAmbulancia}
+     */
+    public void finEsperaAmbulancia(Emergencia emergencia) {
+        if (esperandoAmbulancia.remove(emergencia.getId()) != null) {
+            alSalirDeCola();
         }
     }
     
@@ -77,7 +467,10 @@ public class GestorEmergencias {
      * @return Siguiente emergencia a atender
      */
     public Emergencia obtenerSiguienteEmergencia() throws InterruptedException {
-        return colaEmergencias.take();
+        Emergencia emergencia = colaEmergencias.tomar(ColaFragmentada.SIN_ZONA);
+        emergencia.setMarcaSalidaColaNanos(Reloj.actual().nanos());
+        alSalirDeCola();
+        return emergencia;
     }
     
     /**
@@ -88,7 +481,81 @@ public class GestorEmergencias {
      */
     public Emergencia obtenerSiguienteEmergencia(long timeout, TimeUnit unit) 
             throws InterruptedException {
-        return colaEmergencias.poll(timeout, unit);
+        return obtenerSiguienteEmergencia(ColaFragmentada.SIN_ZONA, timeout, unit);
+    }
+    
+    /**
+     * Obtiene la siguiente emergencia para un despachador de una zona. Se toma
+     * de la zona propia salvo que otra tenga una emergencia al menos un nivel
+     * de gravedad más urgente, o que la propia esté vacía; entre las ajenas se
+     * prefieren las vecinas.
+     * @param zona Zona del despachador (ver {@link #getNumeroZonas()}), o
+     *             {@link ColaFragmentada#SIN_ZONA} para el orden global estricto
+     * @param timeout Tiempo máximo de espera
+     * @param unit Unidad de tiempo
+     * @return Emergencia o null si timeout
+     */
+    public Emergencia obtenerSiguienteEmergencia(int zona, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        Emergencia emergencia = colaEmergencias.sondear(zona, timeout, unit);
+        if (emergencia != null) {
+            emergencia.setMarcaSalidaColaNanos(Reloj.actual().nanos());
+            alSalirDeCola();
+        }
+        return emergencia;
+    }
+    
+    /**
+     * Obtiene la siguiente emergencia para un despachador de una zona sin
+     * esperar, para despachadores que se activan por eventos.
+     * @param zona Zona del despachador
+     * @return Emergencia o null si la cola está vacía
+     */
+    public Emergencia obtenerSiguienteSiHay(int zona) {
+        Emergencia emergencia = colaEmergencias.extraerSiHay(zona);
+        if (emergencia != null) {
+            emergencia.setMarcaSalidaColaNanos(Reloj.actual().nanos());
+            alSalirDeCola();
+        }
+        return emergencia;
+    }
+    
+    public int getNumeroZonas() {
+        return colaEmergencias.getNumeroZonas();
+    }
+    
+    /**
+     * Entrega a un despachador un lote de emergencias en orden de atención.
+     * Espera solo hasta que haya al menos una.
+     * @param maximo Número máximo de emergencias
+     * @param timeout Tiempo máximo de espera
+     * @param unit Unidad de tiempo
+     * @return Lista ordenada, vacía si se agotó el tiempo
+     */
+    public List<Emergencia> drenarHasta(int maximo, long timeout, TimeUnit unit) throws InterruptedException {
+        return drenarHasta(ColaFragmentada.SIN_ZONA, maximo, timeout, unit);
+    }
+    
+    /**
+     * Entrega un lote en orden de atención a un despachador de una zona, con
+     * el mismo criterio de zona propia que {@link #obtenerSiguienteEmergencia(int, long, TimeUnit)}.
+     * @param zona Zona del despachador, o {@link ColaFragmentada#SIN_ZONA}
+     * @param maximo Número máximo de emergencias
+     * @param timeout Tiempo máximo de espera
+     * @param unit Unidad de tiempo
+     * @return Lista ordenada, vacía si se agotó el tiempo
+     */
+    public List<Emergencia> drenarHasta(int zona, int maximo, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        List<Emergencia> lote = colaEmergencias.drenar(zona, maximo, timeout, unit);
+        if (!lote.isEmpty()) {
+            long ahora = Reloj.actual().nanos();
+            for (Emergencia emergencia : lote) {
+                emergencia.setMarcaSalidaColaNanos(ahora);
+            }
+            alSalirDeCola(lote.size());
+        }
+        return lote;
     }
     
     /**
@@ -96,13 +563,44 @@ public class GestorEmergencias {
      * @param emergencia Emergencia siendo procesada
      */
     public void marcarEnProceso(Emergencia emergencia) {
+        long ahora = Reloj.actual().nanos();
         emergencia.setEstado(Emergencia.EstadoEmergencia.EN_PROCESO);
-        System.out.println("🚑 EN CAMINO: EMG-" + String.format("%03d", emergencia.getId()) + 
-                         " - " + emergencia.getUbicacion());
+        emergencia.setMarcaAsignacionNanos(ahora);
+        if (!emergencia.isDesplazada()) {
+            Prioridad prioridad = emergencia.getPrioridad();
+            long salidaCola = emergencia.getMarcaSalidaColaNanos();
+            if (salidaCola != 0) {
+                metricas.registrar(prioridad, EtapaAtencion.ESPERA_COLA,
+                                   salidaCola - emergencia.getMarcaLlamadaNanos());
+            }
+            metricas.registrar(prioridad, EtapaAtencion.ASIGNACION, ahora - emergencia.getMarcaLlamadaNanos());
+        }
+        DiarioEmergencias d = diario;
+        if (d != null) {
+            d.anotarAsignada(emergencia);
+        }
+        GrabadorTrazas g = grabador;
+        if (g != null) {
+            g.anotarAsignados(emergencia);
+        }
+        Registro.info("🚑 EN CAMINO: {} - {}", emergencia.getCodigo(), emergencia.getUbicacion());
         
-        for (EmergenciaListener listener : listeners) {
-            listener.onEmergenciaAsignada(emergencia);
+        busEventos.publicar(TipoEvento.ASIGNADA, emergencia);
+    }
+    
+    /**
+     * Registra la llegada de la ambulancia al sitio de la emergencia. Solo
+     * alimenta las métricas de traslado y atención; no cambia el estado.
+     * @param emergencia Emergencia en proceso
+     */
+    public void marcarEnSitio(Emergencia emergencia) {
+        long ahora = Reloj.actual().nanos();
+        emergencia.setMarcaEnSitioNanos(ahora);
+        long asignacion = emergencia.getMarcaAsignacionNanos();
+        if (asignacion != 0) {
+            metricas.registrar(emergencia.getPrioridad(), EtapaAtencion.TRASLADO, ahora - asignacion);
         }
+        Registro.depuracion("📍 EN SITIO: {}", emergencia.getCodigo());
     }
     
     /**
@@ -110,21 +608,31 @@ public class GestorEmergencias {
      * @param emergencia Emergencia completada
      */
     public void marcarAtendida(Emergencia emergencia) {
+        long ahora = Reloj.actual().nanos();
         emergencia.setEstado(Emergencia.EstadoEmergencia.ATENDIDA);
+        DiarioEmergencias d = diario;
+        if (d != null) {
+            d.anotarAtendida(emergencia);
+        }
+        GrabadorTrazas g = grabador;
+        if (g != null) {
+            g.anotarLiberados(emergencia);
+        }
         emergenciasActivas.remove(emergencia.getId());
         emergenciasAtendidas.incrementAndGet();
         
-        long tiempoRespuesta = java.time.Duration.between(
-            emergencia.getHoraLlamada(), 
-            java.time.LocalDateTime.now()
-        ).toMinutes();
+        Prioridad prioridad = emergencia.getPrioridad();
+        long enSitio = emergencia.getMarcaEnSitioNanos();
+        if (enSitio != 0) {
+            metricas.registrar(prioridad, EtapaAtencion.ATENCION, ahora - enSitio);
+        }
+        long tiempoRespuesta = ahora - emergencia.getMarcaLlamadaNanos();
+        metricas.registrar(prioridad, EtapaAtencion.TOTAL, tiempoRespuesta);
         
-        System.out.println(" -COMPLETADA: EMG-" + String.format("%03d", emergencia.getId()) + 
-                         " (Tiempo: " + tiempoRespuesta + " mins)");
+        Registro.info(" -COMPLETADA: {} (Tiempo: {} s)", emergencia.getCodigo(),
+                      TimeUnit.NANOSECONDS.toSeconds(tiempoRespuesta));
         
-        for (EmergenciaListener listener : listeners) {
-            listener.onEmergenciaAtendida(emergencia);
-        }
+        busEventos.publicar(TipoEvento.ATENDIDA, emergencia);
     }
     
     /**
@@ -136,22 +644,138 @@ public class GestorEmergencias {
         if (emergencia != null) {
             emergencia.setEstado(Emergencia.EstadoEmergencia.CANCELADA);
             emergenciasActivas.remove(emergenciaId);
-            colaEmergencias.remove(emergencia);
+            DiarioEmergencias d = diario;
+            if (d != null) {
+                d.anotarCancelada(emergencia);
+            }
+            GrabadorTrazas g = grabador;
+            if (g != null) {
+                g.anotarCancelada(emergencia);
+            }
+            if (colaEmergencias.remover(emergencia)) {
+                alSalirDeCola();
+            } else if (colaDiferidas.remover(emergencia)) {
+                controlAdmision.liberarDiferida();
+            }
             emergenciasCanceladas.incrementAndGet();
+            busEventos.publicar(TipoEvento.CANCELADA, emergencia);
         }
     }
     
     /**
-     * Registra un listener para eventos de emergencias.
+     * Eleva la prioridad de una emergencia activa (por ejemplo, LEVE a GRAVE tras
+     * una nueva llamada). Si sigue en cola cambia de carril en O(log n) conservando
+     * su tiempo de espera.
+     * @param emergenciaId ID de la emergencia
+     * @param nuevaPrioridad Prioridad más grave que la actual
+     * @return true si la prioridad se elevó
+     */
+    public boolean escalarPrioridad(int emergenciaId, Prioridad nuevaPrioridad) {
+        Emergencia emergencia = emergenciasActivas.get(emergenciaId);
+        if (emergencia == null) {
+            return false;
+        }
+        Prioridad anterior = colaDiferidas.elevarPrioridadSiEncolada(emergencia, nuevaPrioridad);
+        if (anterior == null) {
+            anterior = colaEmergencias.elevarPrioridad(emergencia, nuevaPrioridad);
+        }
+        if (anterior == null) {
+            return false;
+        }
+        DiarioEmergencias d = diario;
+        if (d != null) {
+            d.anotarEscalada(emergencia, nuevaPrioridad);
+        }
+        estadisticasPorPrioridad.get(anterior).decrementAndGet();
+        estadisticasPorPrioridad.get(nuevaPrioridad).incrementAndGet();
+        
+        Registro.info("⬆ ESCALADA: {} {} → {}", emergencia.getCodigo(), anterior, nuevaPrioridad);
+        return true;
+    }
+    
+    /**
+     * Registra un listener para eventos de emergencias. Cada listener consume el
+     * bus de eventos en su propio hilo, así que uno lento no retrasa el registro
+     * ni el despacho.
      * @param listener Listener a registrar
+     * @return Consumidor asociado, con métricas de retraso
+     */
+    public BusEventos.Consumidor agregarListener(EmergenciaListener listener) {
+        ManejadorEventos manejador = (tipo, emergencia, marcaNanos) -> {
+            switch (tipo) {
+                case CREADA -> listener.onEmergenciaCreada(emergencia);
+                case ASIGNADA -> listener.onEmergenciaAsignada(emergencia);
+                case ATENDIDA -> listener.onEmergenciaAtendida(emergencia);
+                case CANCELADA -> listener.onEmergenciaCancelada(emergencia);
+            }
+        };
+        String nombre = "Listener-" + (busEventos.getConsumidores().size() + 1);
+        return busEventos.suscribir(nombre, manejador);
+    }
+    
+    /**
+     * Suscribe un manejador directamente al bus de eventos.
+     * @param nombre Nombre del consumidor
+     * @param manejador Manejador de eventos
+     * @return Consumidor asociado, con métricas de retraso
      */
-    public void agregarListener(EmergenciaListener listener) {
-        listeners.add(listener);
+    public BusEventos.Consumidor suscribir(String nombre, ManejadorEventos manejador) {
+        return busEventos.suscribir(nombre, manejador);
+    }
+    
+    public BusEventos getBusEventos() {
+        return busEventos;
     }
     
     // Métodos de consulta
+    /**
+     * Emergencias sin ambulancia: en cola, diferidas o en la lista de espera
+     * de ambulancias.
+     */
     public int getEmergenciasPendientes() {
-        return colaEmergencias.size();
+        return colaEmergencias.tamanio() + colaDiferidas.tamanio() + esperandoAmbulancia.size();
+    }
+    
+    /**
+     * Cuánto lleva esperando la emergencia sin ambulancia más antigua,
+     * incluidas las diferidas y las de la lista de espera de ambulancias.
+     * @return espera en nanosegundos, o 0 si no hay emergencias pendientes
+     */
+    public long getEsperaMasAntiguaNanos() {
+        long marca = masAntigua(colaEmergencias.marcaMasAntigua(), colaDiferidas.marcaMasAntigua());
+        // La lista de espera está acotada, así que recorrerla es barato
+        for (Emergencia emergencia : esperandoAmbulancia.values()) {
+            marca = masAntigua(marca, emergencia.getMarcaLlamadaNanos());
+        }
+        return marca == 0L ? 0L : Math.max(0L, Reloj.actual().nanos() - marca);
+    }
+    
+    /**
+     * La más antigua de dos marcas de llamada, donde 0 indica que no hay.
+     */
+    private static long masAntigua(long marca, long otra) {
+        return marca == 0L || (otra != 0L && otra - marca < 0) ? otra : marca;
+    }
+    
+    public int getEmergenciasDiferidas() {
+        return colaDiferidas.tamanio();
+    }
+    
+    /**
+     * Devuelve el control de admisión activo.
+     * @return control de admisión, o null si la cola no está acotada
+     */
+    public ControlAdmision getControlAdmision() {
+        return controlAdmision;
+    }
+    
+    /**
+     * Nivel de presión sobre la cola que los operadores pueden observar.
+     * @return ocupación relativa a la capacidad, o 0 si la cola no está acotada
+     */
+    public double getPresionAdmision() {
+        ControlAdmision control = controlAdmision;
+        return control == null ? 0.0 : control.getPresion();
     }
     
     public int getEmergenciasActivas() {
@@ -166,8 +790,29 @@ public class GestorEmergencias {
         return emergenciasCanceladas.get();
     }
     
+    /**
+     * Histogramas de latencia por prioridad y etapa de atención.
+     * @return métricas de tiempos de respuesta
+     */
+    public MetricasRespuesta getMetricas() {
+        return metricas;
+    }
+    
+    /**
+     * Devuelve la cola en el orden en que serían atendidas las emergencias.
+     * @return Copia ordenada de la cola
+     */
     public List<Emergencia> getColaEmergencias() {
-        return new ArrayList<>(colaEmergencias);
+        return colaEmergencias.primeras(Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Devuelve las próximas emergencias a atender sin copiar toda la cola.
+     * @param limite Número máximo de emergencias
+     * @return Copia ordenada de las primeras emergencias
+     */
+    public List<Emergencia> getProximasEmergencias(int limite) {
+        return colaEmergencias.primeras(limite);
     }
     
     public List<Emergencia> getEmergenciasActivasList() {
@@ -193,7 +838,7 @@ public class GestorEmergencias {
         sb.append("╠════════════════════════════════════════════╣\n");
         sb.append(String.format("║ Emergencias Atendidas:     %15d ║\n", emergenciasAtendidas.get()));
         sb.append(String.format("║ Emergencias Activas:       %15d ║\n", emergenciasActivas.size()));
-        sb.append(String.format("║ En Cola de Espera:         %15d ║\n", colaEmergencias.size()));
+        sb.append(String.format("║ En Cola de Espera:         %15d ║\n", colaEmergencias.tamanio()));
         sb.append(String.format("║ Canceladas:                %15d ║\n", emergenciasCanceladas.get()));
         sb.append("╠════════════════════════════════════════════╣\n");
         sb.append("║ Por Prioridad:                             ║\n");
@@ -201,6 +846,21 @@ public class GestorEmergencias {
             sb.append(String.format("║   %-10s:               %15d ║\n", 
                 p.name(), estadisticasPorPrioridad.get(p).get()));
         }
+        sb.append("╠════════════════════════════════════════════╣\n");
+        sb.append("║ Tiempo total (s):    p50     p90     p99   ║\n");
+        for (Prioridad p : Prioridad.values()) {
+            HistogramaLatencia.Resumen total = metricas.acumulado(p, EtapaAtencion.TOTAL);
+            sb.append(String.format("║   %-10s:    %7.1f %7.1f %7.1f   ║\n", p.name(),
+                total.percentil(50) / 1e6, total.percentil(90) / 1e6, total.percentil(99) / 1e6));
+        }
+        ControlAdmision control = controlAdmision;
+        if (control != null) {
+            sb.append("╠════════════════════════════════════════════╣\n");
+            sb.append(String.format("║ Admisión (capacidad %-6d):               ║\n", control.getCapacidad()));
+            for (Map.Entry<ResultadoAdmision, Long> entry : control.getContadores().entrySet()) {
+                sb.append(String.format("║   %-22s   %15d ║\n", entry.getKey().name(), entry.getValue()));
+            }
+        }
         sb.append("╚════════════════════════════════════════════╝\n");
         return sb.toString();
     }
@@ -1,11 +1,26 @@
 package com.emergencias.gestores;
 
+import com.emergencias.estructuras.IndiceAmbulancias;
+import com.emergencias.estructuras.IndiceTraslados;
+import com.emergencias.estructuras.PoolMedicos;
 import com.emergencias.modelos.*;
+import com.emergencias.persistencia.CatalogoRecursos;
+import com.emergencias.persistencia.RecursosInstantanea;
+import com.emergencias.registro.Registro;
+import com.emergencias.simulacion.Reloj;
+import com.emergencias.rutas.MotorTiempos;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.List;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.stream.Collectors;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
 
 /**
  * Gestor centralizado de recursos médicos (ambulancias y médicos).
@@ -15,155 +30,952 @@ import java.util.stream.Collectors;
  * @version 1.0
  */
 public class GestorRecursos {
+    private static final int CANDIDATAS_RESERVA = 4;
+    private static final int CANDIDATAS_TIEMPO = 8;
+    private static final int RONDAS_MAXIMAS_RESERVA = 1000;
+    private static final int INTENTOS_DESVIO = 3;
+    private static final int CANDIDATAS_DESVIO = 8;
+    private static final int LIBRES_POR_CANDIDATA_RECORRIDO = 64;
+    private static final long SEMILLA_DEMOSTRACION = 2024;
+    
     private static GestorRecursos instancia;
     private final ConcurrentHashMap<String, Ambulancia> ambulancias;
     private final ConcurrentHashMap<String, MedicoEmergencia> medicos;
     private final Semaphore semaforoAmbulancias;
     private final Semaphore semaforoMedicos;
+    private final IndiceAmbulancias indiceDisponibles;
+    private final PoolMedicos medicosLibres;
+    private final AtomicLong reservasExitosas;
+    private final AtomicLong reservasFallidas;
+    private final ListaEspera<ListaEspera.Solicitud<Ambulancia>> esperaAmbulancias;
+    private volatile int capacidadEsperaAmbulancias;
+    private final ListaEspera<SolicitudMedicos> esperaMedicos;
+    private final EnumMap<MedicoEmergencia.Especialidad, ListaEspera<SolicitudMedicos>> esperaPorEspecialidad;
+    private final AtomicLong entregasDirectas;
+    private final ContadoresDisponibilidad disponibilidad;
+    private final ConcurrentHashMap<String, Traslado> enCamino;
+    private final IndiceTraslados indiceEnCamino;
+    private final AtomicLong desvios;
+    private volatile Prioridad prioridadDesvio;
+    private final List<Ambulancia> flota;
+    private final EstadoFlota estadoFlota;
+    private final List<MedicoEmergencia> plantilla;
+    private volatile MotorTiempos motorTiempos;
+    
+    /**
+     * Equipo de médicos en espera: los que ya tiene y cuántos le faltan de
+     * cada especialidad. El equipo solo se modifica bajo el monitor de la
+     * lista.
+     */
+    private static final class SolicitudMedicos extends ListaEspera.Solicitud<List<MedicoEmergencia>> {
+        final MezclaEspecialidades mezcla;
+        final List<MedicoEmergencia> equipo;
+        private final int[] faltantes;
+        /** Fuera de la lista de médicos: ya no recibe más, aunque siga en las de especialidad. */
+        boolean retirada;
+
+        SolicitudMedicos(Emergencia emergencia, MezclaEspecialidades mezcla) {
+            super(emergencia);
+            this.mezcla = mezcla;
+            this.equipo = new ArrayList<>(mezcla.getTotal());
+            this.faltantes = new int[MedicoEmergencia.Especialidad.values().length];
+            for (MedicoEmergencia.Especialidad e : MedicoEmergencia.Especialidad.values()) {
+                faltantes[e.ordinal()] = mezcla.getCantidad(e);
+            }
+        }
+
+        /**
+         * Suma un médico al equipo; si es de una especialidad que faltaba,
+         * cuenta como uno menos de ella y no como sustituto.
+         */
+        void sumar(MedicoEmergencia medico) {
+            equipo.add(medico);
+            int especialidad = medico.getTipoEspecialidad().ordinal();
+            if (faltantes[especialidad] > 0) {
+                faltantes[especialidad]--;
+            }
+        }
+
+        boolean falta(MedicoEmergencia.Especialidad especialidad) {
+            return faltantes[especialidad.ordinal()] > 0;
+        }
+
+        boolean completa() {
+            return equipo.size() >= mezcla.getTotal();
+        }
+
+        @Override
+        boolean descartada() {
+            return retirada || super.descartada();
+        }
+    }
     
-    private GestorRecursos() {
-        ambulancias = new ConcurrentHashMap<>();
-        medicos = new ConcurrentHashMap<>();
-        semaforoAmbulancias = new Semaphore(0);
-        semaforoMedicos = new Semaphore(0);
-        inicializarRecursos();
+    private GestorRecursos(CatalogoRecursos catalogo) {
+        long inicio = System.nanoTime();
+        List<Ambulancia> listaAmbulancias = catalogo.getAmbulancias();
+        List<MedicoEmergencia> listaMedicos = catalogo.getMedicos();
+        ambulancias = new ConcurrentHashMap<>(listaAmbulancias.size() * 2);
+        medicos = new ConcurrentHashMap<>(listaMedicos.size() * 2);
+        medicosLibres = new PoolMedicos();
+        estadoFlota = catalogo.getEstadoFlota();
+        // Mapas y pool en paralelo; el gestor aún no es visible para otros hilos
+        listaAmbulancias.parallelStream().forEach(ambulancia -> {
+            if (!estadoFlota.contiene(ambulancia)) {
+                throw new IllegalArgumentException("Ambulancia de otro estado de flota: " + ambulancia.getId());
+            }
+            if (ambulancias.putIfAbsent(ambulancia.getId(), ambulancia) != null) {
+                throw new IllegalArgumentException("Ambulancia repetida: " + ambulancia.getId());
+            }
+        });
+        listaMedicos.parallelStream().forEach(medico -> {
+            if (medicos.putIfAbsent(medico.getId(), medico) != null) {
+                throw new IllegalArgumentException("Médico repetido: " + medico.getId());
+            }
+            medicosLibres.devolver(medico);
+        });
+        flota = List.copyOf(listaAmbulancias);
+        plantilla = List.copyOf(listaMedicos);
+        indiceDisponibles = IndiceAmbulancias.construir(flota);
+        disponibilidad = new ContadoresDisponibilidad();
+        disponibilidad.registrarRecursos(flota, plantilla);
+        // Un permiso por recurso ya indexado o en el pool
+        semaforoAmbulancias = new Semaphore(flota.size());
+        semaforoMedicos = new Semaphore(plantilla.size());
+        reservasExitosas = new AtomicLong(0);
+        reservasFallidas = new AtomicLong(0);
+        esperaAmbulancias = new ListaEspera<>();
+        capacidadEsperaAmbulancias = Math.max(1, flota.size());
+        esperaMedicos = new ListaEspera<>();
+        esperaPorEspecialidad = new EnumMap<>(MedicoEmergencia.Especialidad.class);
+        for (MedicoEmergencia.Especialidad e : MedicoEmergencia.Especialidad.values()) {
+            esperaPorEspecialidad.put(e, new ListaEspera<>());
+        }
+        entregasDirectas = new AtomicLong(0);
+        enCamino = new ConcurrentHashMap<>();
+        indiceEnCamino = new IndiceTraslados(indiceDisponibles);
+        desvios = new AtomicLong(0);
+        Registro.info("✓ Sistema inicializado: {} ambulancias, {} médicos en {} ms", flota.size(), plantilla.size(),
+                      TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
     }
     
     /**
-     * Obtiene la instancia única del gestor (Singleton thread-safe).
+     * Obtiene la instancia única del gestor (Singleton thread-safe). Si no se
+     * inicializó con {@link #inicializar}, crea la flota de demostración.
      * @return instancia del gestor
      */
     public static synchronized GestorRecursos getInstancia() {
         if (instancia == null) {
-            instancia = new GestorRecursos();
+            instancia = new GestorRecursos(recursosDemostracion());
+        }
+        return instancia;
+    }
+    
+    /**
+     * Crea la instancia única con la flota y la plantilla de un catálogo.
+     * Debe llamarse antes del primer {@link #getInstancia}.
+     * @param catalogo Recursos cargados
+     * @return instancia del gestor
+     * @throws IllegalStateException si el gestor ya estaba creado
+     * @throws IllegalArgumentException si hay ids repetidos o ambulancias
+     *         creadas en otro {@link EstadoFlota}
+     */
+    public static synchronized GestorRecursos inicializar(CatalogoRecursos catalogo) {
+        if (instancia != null) {
+            throw new IllegalStateException("El gestor de recursos ya está inicializado");
         }
+        instancia = new GestorRecursos(catalogo);
         return instancia;
     }
     
     /**
-     * Inicializa el pool de recursos del sistema.
+     * Crea un gestor independiente de la instancia única, con su propia flota,
+     * por ejemplo para mediciones o pruebas.
+     * @param catalogo Recursos del gestor
+     * @return gestor nuevo
+     * @throws IllegalArgumentException si hay ids repetidos o ambulancias
+     *         creadas en otro {@link EstadoFlota}
+     */
+    public static GestorRecursos crear(CatalogoRecursos catalogo) {
+        return new GestorRecursos(catalogo);
+    }
+    
+    /**
+     * Flota de demostración: 10 ambulancias en ubicaciones al azar y 20 médicos.
+     * Las ubicaciones salen de una semilla fija para que una simulación con
+     * la misma semilla de llamadas se repita igual.
      */
-    private void inicializarRecursos() {
-        // Crear 10 ambulancias en diferentes ubicaciones
+    private static CatalogoRecursos recursosDemostracion() {
+        Random aleatorio = new Random(SEMILLA_DEMOSTRACION);
+        EstadoFlota estado = new EstadoFlota();
+        List<Ambulancia> ambulancias = new ArrayList<>();
         for (int i = 1; i <= 10; i++) {
             Ambulancia.TipoAmbulancia tipo = i <= 3 ? Ambulancia.TipoAmbulancia.UCI_MOVIL :
                                              i <= 6 ? Ambulancia.TipoAmbulancia.AVANZADA :
                                                      Ambulancia.TipoAmbulancia.BASICA;
-            double lat = 6.0 + (Math.random() * 0.5);
-            double lon = -75.0 + (Math.random() * 0.5);
-            Ambulancia ambulancia = new Ambulancia("AMB-" + String.format("%03d", i), tipo, lat, lon);
-            ambulancias.put(ambulancia.getId(), ambulancia);
-            semaforoAmbulancias.release();
+            double lat = 6.0 + (aleatorio.nextDouble() * 0.5);
+            double lon = -75.0 + (aleatorio.nextDouble() * 0.5);
+            ambulancias.add(new Ambulancia("AMB-" + String.format("%03d", i), tipo, lat, lon, estado));
         }
         
-        // Crear 20 médicos de emergencia
-        String[] especialidades = {"Paramédico", "Médico General", "Urgenciólogo", "Cardiólogo", "Traumatólogo"};
+        List<MedicoEmergencia> medicos = new ArrayList<>();
+        MedicoEmergencia.Especialidad[] especialidades = MedicoEmergencia.Especialidad.values();
         for (int i = 1; i <= 20; i++) {
-            String especialidad = especialidades[(i - 1) % especialidades.length];
-            MedicoEmergencia medico = new MedicoEmergencia(
+            MedicoEmergencia.Especialidad especialidad = especialidades[(i - 1) % especialidades.length];
+            medicos.add(new MedicoEmergencia(
                 "MED-" + String.format("%03d", i),
                 "Dr. Médico " + i,
                 especialidad
-            );
-            medicos.put(medico.getId(), medico);
-            semaforoMedicos.release();
+            ));
+        }
+        return new CatalogoRecursos(estado, ambulancias, medicos);
+    }
+    
+    /**
+     * Pide la ambulancia más cercana disponible para una emergencia sin
+     * bloquear al llamador. Si no hay ninguna libre, la emergencia queda en la
+     * lista de espera y la próxima ambulancia que se libere pasa directamente a
+     * la de mayor prioridad efectiva, sin volver a la cola de emergencias.
+     * <p>
+     * La lista está acotada ({@link #configurarEsperaAmbulancias}): llena, la
+     * emergencia debe volver a la cola, donde la ven el control de admisión y
+     * el envejecimiento de la cola.
+     * @param emergencia Emergencia que requiere ambulancia
+     * @return futuro con la ambulancia reservada y movida a la emergencia, ya
+     *         completado si había una libre; se completa con null si la lista
+     *         de espera está llena o si no se pudo reservar ninguna teniendo
+     *         permiso, y se cancela si la emergencia se cancela mientras espera
+     */
+    public CompletableFuture<Ambulancia> solicitarAmbulancia(Emergencia emergencia) {
+        while (true) {
+            Ambulancia ambulancia = intentarAsignarAmbulancia(emergencia);
+            if (ambulancia != null) {
+                return CompletableFuture.completedFuture(ambulancia);
+            }
+            synchronized (esperaAmbulancias) {
+                // Los permisos solo vuelven al semáforo bajo este monitor: si no
+                // queda ninguno, quien libere la próxima ambulancia verá la solicitud
+                if (semaforoAmbulancias.availablePermits() == 0) {
+                    if (esperaAmbulancias.tamanio() >= capacidadEsperaAmbulancias) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    ListaEspera.Solicitud<Ambulancia> solicitud = new ListaEspera.Solicitud<>(emergencia);
+                    esperaAmbulancias.agregar(solicitud);
+                    return solicitud.futuro;
+                }
+            }
         }
-        
-        System.out.println("✓ Sistema inicializado: " + ambulancias.size() + 
-                          " ambulancias, " + medicos.size() + " médicos");
     }
     
     /**
-     * Asigna la ambulancia más cercana disponible a una emergencia.
+     * Asigna la ambulancia más cercana disponible sin esperar a que se libere
+     * una.
      * @param emergencia Emergencia que requiere ambulancia
      * @return Ambulancia asignada o null si no hay disponibles
      */
-    public Ambulancia asignarAmbulancia(Emergencia emergencia) {
-        try {
-            // Intenta adquirir permiso (espera si no hay ambulancias)
-            if (semaforoAmbulancias.tryAcquire(5, TimeUnit.SECONDS)) {
-                // Busca la ambulancia disponible más cercana
-                Ambulancia mejorAmbulancia = ambulancias.values().stream()
-                    .filter(Ambulancia::isDisponible)
-                    .min(Comparator.comparingDouble(a -> a.calcularDistancia(emergencia)))
-                    .orElse(null);
-                
-                if (mejorAmbulancia != null && mejorAmbulancia.reservar()) {
-                    mejorAmbulancia.moverA(emergencia);
-                    emergencia.setAmbulanciaAsignada(mejorAmbulancia.getId());
-                    System.out.println("  → " + mejorAmbulancia.getId() + 
-                                     " asignada a EMG-" + String.format("%03d", emergencia.getId()));
-                    return mejorAmbulancia;
-                } else {
-                    semaforoAmbulancias.release(); // Devolver permiso si falló
+    public Ambulancia intentarAsignarAmbulancia(Emergencia emergencia) {
+        if (!semaforoAmbulancias.tryAcquire()) {
+            return null;
+        }
+        return asignarConPermiso(emergencia);
+    }
+    
+    private Ambulancia asignarConPermiso(Emergencia emergencia) {
+        Ambulancia mejorAmbulancia = reservarYMover(emergencia);
+        if (mejorAmbulancia == null) {
+            devolverPermisoAmbulancia(); // Devolver permiso si falló
+        }
+        return mejorAmbulancia;
+    }
+    
+    /**
+     * Reserva la ambulancia más cercana con un permiso ya tomado y la mueve a
+     * la emergencia. Si falla, el permiso sigue en manos del llamador.
+     * @return ambulancia asignada, o null
+     */
+    private Ambulancia reservarYMover(Emergencia emergencia) {
+        Ambulancia mejorAmbulancia = reservarCercana(emergencia);
+        if (mejorAmbulancia != null) {
+            mejorAmbulancia.moverA(emergencia);
+            emergencia.setAmbulanciaAsignada(mejorAmbulancia.getId());
+            Registro.info("  → {} asignada a {}", mejorAmbulancia.getId(), emergencia.getCodigo());
+        }
+        return mejorAmbulancia;
+    }
+    
+    /**
+     * Devuelve un permiso tomado sin llegar a reservar. Si hay emergencias
+     * esperando, el permiso pasa a la primera en lugar de volver al semáforo;
+     * si con él tampoco se reserva, pasa a la siguiente en el mismo bucle, sin
+     * anidar una llamada por cada emergencia de la lista.
+     */
+    private void devolverPermisoAmbulancia() {
+        while (true) {
+            ListaEspera.Solicitud<Ambulancia> solicitud;
+            synchronized (esperaAmbulancias) {
+                solicitud = sacarPrimeraEsperando();
+                if (solicitud == null) {
+                    semaforoAmbulancias.release();
+                    return;
+                }
+            }
+            Ambulancia ambulancia = reservarYMover(solicitud.emergencia);
+            if (ambulancia == null) {
+                solicitud.futuro.complete(null);
+                continue;
+            }
+            if (!solicitud.futuro.complete(ambulancia)) {
+                liberarAmbulancia(ambulancia);
+            }
+            return;
+        }
+    }
+    
+    /**
+     * Saca de la lista la primera emergencia que espera ambulancia y avisa a
+     * los despachadores que esperan lugar en ella. Se llama bajo el monitor
+     * de la lista.
+     * @return solicitud vigente, o null si no queda ninguna
+     */
+    private ListaEspera.Solicitud<Ambulancia> sacarPrimeraEsperando() {
+        int antes = esperaAmbulancias.tamanio();
+        ListaEspera.Solicitud<Ambulancia> solicitud = esperaAmbulancias.primeraVigente(GestorRecursos::cancelar);
+        if (solicitud != null) {
+            esperaAmbulancias.quitar(solicitud);
+        }
+        if (esperaAmbulancias.tamanio() < antes) {
+            esperaAmbulancias.notifyAll();
+        }
+        return solicitud;
+    }
+    
+    private static void cancelar(ListaEspera.Solicitud<?> solicitud) {
+        solicitud.futuro.cancel(false);
+    }
+    
+    /**
+     * Espera hasta que la lista de espera de ambulancias tenga lugar, para que
+     * un despachador en su propio hilo no saque de la cola emergencias que
+     * solo volverían a ella.
+     * @param timeout Tiempo máximo de espera
+     * @param unidad Unidad de {@code timeout}
+     * @return true si hay lugar
+     */
+    public boolean esperarLugarEnEspera(long timeout, TimeUnit unidad) throws InterruptedException {
+        long limite = System.nanoTime() + unidad.toNanos(timeout);
+        synchronized (esperaAmbulancias) {
+            while (esperaAmbulancias.tamanio() >= capacidadEsperaAmbulancias) {
+                long restante = limite - System.nanoTime();
+                if (restante <= 0) {
+                    return false;
                 }
+                TimeUnit.NANOSECONDS.timedWait(esperaAmbulancias, restante);
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.err.println("⚠ Interrupción al asignar ambulancia");
+            return true;
+        }
+    }
+    
+    /**
+     * Si la lista de espera de ambulancias está llena: una emergencia más que
+     * no encuentre ambulancia libre vuelve a la cola.
+     */
+    public boolean isEsperaAmbulanciasLlena() {
+        synchronized (esperaAmbulancias) {
+            return esperaAmbulancias.tamanio() >= capacidadEsperaAmbulancias;
+        }
+    }
+    
+    /**
+     * Ambulancias disponibles más cercanas a un punto, sin reservarlas. Sirve
+     * para planificar asignaciones; la reserva se confirma con
+     * {@link #reservarAmbulancia}.
+     * @param latitud Latitud del punto
+     * @param longitud Longitud del punto
+     * @param k Número máximo de ambulancias
+     * @return ambulancias en orden de distancia creciente
+     */
+    public List<Ambulancia> cercanasDisponibles(double latitud, double longitud, int k) {
+        if (indiceDisponibles.tamanio() <= k * LIBRES_POR_CANDIDATA_RECORRIDO) {
+            // Con pocas libres el índice recorre casi todas sus celdas vacías;
+            // los bits de disponibilidad se leen de a 64 unidades
+            return estadoFlota.cercanasDisponibles(latitud, longitud, k);
+        }
+        return indiceDisponibles.cercanas(latitud, longitud, k);
+    }
+    
+    /**
+     * Reserva una ambulancia concreta para una emergencia sin esperar. La
+     * candidata suele venir de {@link #cercanasDisponibles}, que puede estar
+     * vieja: solo se reserva si sigue en el índice de disponibles, comprobado
+     * en el mismo paso que la reserva.
+     * @param ambulancia Ambulancia elegida
+     * @param emergencia Emergencia a atender
+     * @return false si la ambulancia ya no estaba libre o no quedaban permisos
+     */
+    public boolean reservarAmbulancia(Ambulancia ambulancia, Emergencia emergencia) {
+        if (!semaforoAmbulancias.tryAcquire()) {
+            return false;
+        }
+        if (!indiceDisponibles.reservar(ambulancia)) {
+            reservasFallidas.incrementAndGet();
+            devolverPermisoAmbulancia();
+            return false;
         }
+        contarReserva(ambulancia);
+        ambulancia.moverA(emergencia);
+        emergencia.setAmbulanciaAsignada(ambulancia.getId());
+        Registro.info("  → {} asignada a {}", ambulancia.getId(), emergencia.getCodigo());
+        return true;
+    }
+    
+    /**
+     * Reserva con CAS la ambulancia indexada más cercana, probando las k más
+     * cercanas en orden y ampliando k si otros despachadores ganaron todas.
+     * Con red vial configurada, las k más cercanas en línea recta se prueban en
+     * orden de tiempo de viaje por carretera. Las candidatas salen de
+     * {@link #cercanasDisponibles}: del índice, o de los bits del
+     * {@link EstadoFlota} cuando quedan pocas libres.
+     * <p>
+     * El llamador tiene un permiso del semáforo y los permisos se devuelven
+     * solo después de volver a indexar la ambulancia liberada, así que el índice
+     * siempre tiene al menos una ambulancia libre por cada permiso tomado y sin
+     * usar: la búsqueda termina aunque pierda varias carreras. El límite de
+     * rondas solo protege contra reservas hechas fuera de este gestor.
+     * @return ambulancia reservada y ya quitada del índice, o null
+     */
+    private Ambulancia reservarCercana(Emergencia emergencia) {
+        double latitud = emergencia.getLatitud();
+        double longitud = emergencia.getLongitud();
+        MotorTiempos motor = motorTiempos;
+        int k = motor == null ? CANDIDATAS_RESERVA : CANDIDATAS_TIEMPO;
+        for (int ronda = 0; ronda < RONDAS_MAXIMAS_RESERVA; ronda++) {
+            List<Ambulancia> candidatas = cercanasDisponibles(latitud, longitud, k);
+            if (motor != null) {
+                ordenarPorTiempo(candidatas, emergencia, motor);
+            }
+            for (Ambulancia candidata : candidatas) {
+                // Solo se toma si sigue indexada: una libre fuera del índice
+                // solo puede venir de una liberación hecha fuera del gestor
+                if (indiceDisponibles.reservar(candidata)) {
+                    contarReserva(candidata);
+                    return candidata;
+                }
+                // Reservada por otro despachador después de la búsqueda
+                reservasFallidas.incrementAndGet();
+            }
+            if (candidatas.size() < k) {
+                Thread.onSpinWait();
+            } else {
+                k *= 2;
+            }
+        }
+        Registro.advertencia("⚠ No se pudo reservar ambulancia para {} con permiso disponible",
+                             emergencia.getCodigo());
         return null;
     }
     
+    private void contarReserva(Ambulancia ambulancia) {
+        disponibilidad.ambulanciaReservada(ambulancia.getTipo());
+        reservasExitosas.incrementAndGet();
+    }
+    
     /**
-     * Asigna médicos disponibles a una ambulancia.
-     * @param cantidad Número de médicos requeridos
-     * @return Lista de médicos asignados
+     * Ordena las candidatas por tiempo de viaje, calculando cada tiempo una vez.
      */
-    public List<MedicoEmergencia> asignarMedicos(int cantidad, Emergencia emergencia) {
-        List<MedicoEmergencia> medicosAsignados = new ArrayList<>();
-        
-        try {
-            if (semaforoMedicos.tryAcquire(cantidad, 3, TimeUnit.SECONDS)) {
-                List<MedicoEmergencia> disponibles = medicos.values().stream()
-                    .filter(MedicoEmergencia::isDisponible)
-                    .limit(cantidad)
-                    .collect(Collectors.toList());
-                
-                for (MedicoEmergencia medico : disponibles) {
-                    if (medico.asignar(emergencia)) {
-                        medicosAsignados.add(medico);
-                    } else {
-                        semaforoMedicos.release();
+    private static void ordenarPorTiempo(List<Ambulancia> candidatas, Emergencia emergencia, MotorTiempos motor) {
+        Map<Ambulancia, Double> tiempos = new IdentityHashMap<>();
+        for (Ambulancia candidata : candidatas) {
+            tiempos.put(candidata, motor.segundos(candidata, emergencia));
+        }
+        candidatas.sort(Comparator.comparingDouble(tiempos::get));
+    }
+    
+    /**
+     * Pide un equipo de médicos sin bloquear al llamador. Los que haya libres
+     * se toman enseguida; si falta alguno, la emergencia espera en la lista de
+     * médicos y cada médico que se libera pasa directamente al equipo de mayor
+     * prioridad hasta completarlo. Cada médico sale en O(1) de la pila de su
+     * especialidad; si una especialidad no tiene libres, el equipo se completa
+     * con otras para no dejar la emergencia sin médicos.
+     * @param mezcla Médicos requeridos por especialidad
+     * @param emergencia Emergencia a atender
+     * @param espera Tiempo máximo de espera; al vencer se entrega el equipo incompleto
+     * @param unidad Unidad de {@code espera}
+     * @return futuro con los médicos asignados, ya completado si estaban todos libres
+     */
+    public CompletableFuture<List<MedicoEmergencia>> solicitarMedicos(MezclaEspecialidades mezcla,
+                                                                      Emergencia emergencia,
+                                                                      long espera, TimeUnit unidad) {
+        int cantidad = mezcla.getTotal();
+        if (cantidad == 0) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        // Cada permiso corresponde a un médico que ya está en el pool
+        if (semaforoMedicos.tryAcquire(cantidad)) {
+            return CompletableFuture.completedFuture(tomarMedicos(mezcla, cantidad, emergencia));
+        }
+        SolicitudMedicos solicitud = new SolicitudMedicos(emergencia, mezcla);
+        int libres;
+        synchronized (esperaMedicos) {
+            // Como con las ambulancias, los permisos solo vuelven bajo este
+            // monitor: si hay equipos esperando, no queda ninguno libre
+            libres = semaforoMedicos.drainPermits();
+            if (libres >= cantidad) {
+                semaforoMedicos.release(libres - cantidad);
+            } else {
+                for (MedicoEmergencia medico : tomarMedicos(mezcla, libres, emergencia)) {
+                    solicitud.sumar(medico);
+                }
+                esperaMedicos.agregar(solicitud);
+                // También en la lista de cada especialidad que le falta, para
+                // que un médico liberado vaya antes a quien lo necesita
+                for (Map.Entry<MedicoEmergencia.Especialidad, ListaEspera<SolicitudMedicos>> lista
+                        : esperaPorEspecialidad.entrySet()) {
+                    if (solicitud.falta(lista.getKey())) {
+                        lista.getValue().agregar(solicitud);
                     }
                 }
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.err.println("⚠ Interrupción al asignar médicos");
         }
-        
+        if (libres >= cantidad) {
+            return CompletableFuture.completedFuture(tomarMedicos(mezcla, cantidad, emergencia));
+        }
+        Reloj.actual().programar(() -> vencer(solicitud), espera, unidad);
+        return solicitud.futuro;
+    }
+    
+    /**
+     * Saca del pool médicos cuyos permisos ya tiene el llamador.
+     */
+    private List<MedicoEmergencia> tomarMedicos(MezclaEspecialidades mezcla, int cantidad, Emergencia emergencia) {
+        List<MedicoEmergencia> medicosAsignados = new ArrayList<>(cantidad);
+        for (MedicoEmergencia medico : medicosLibres.tomar(mezcla, cantidad)) {
+            // Un médico ocupado en el pool solo puede venir de una asignación
+            // hecha fuera del gestor: se descarta y lo devolverá quien lo libere
+            if (medico.asignar(emergencia)) {
+                disponibilidad.medicoAsignado(medico.getTipoEspecialidad());
+                medicosAsignados.add(medico);
+            }
+        }
+        if (medicosAsignados.size() < cantidad) {
+            semaforoMedicos.release(cantidad - medicosAsignados.size());
+        }
         return medicosAsignados;
     }
     
+    /**
+     * Entrega incompleto un equipo que sigue esperando al vencer su plazo.
+     */
+    private void vencer(SolicitudMedicos solicitud) {
+        synchronized (esperaMedicos) {
+            if (!esperaMedicos.quitar(solicitud)) {
+                return; // Ya se completó o se descartó
+            }
+            solicitud.retirada = true;
+        }
+        if (!solicitud.futuro.complete(solicitud.equipo)) {
+            liberarMedicos(solicitud.equipo);
+        }
+    }
+    
+    /**
+     * Registra el viaje de una ambulancia con su equipo. Con desvíos activos
+     * queda a disposición de {@link #desviarHacia} hasta que llegue.
+     * @param ambulancia Ambulancia reservada y ya movida a la emergencia
+     * @param emergencia Emergencia de destino
+     * @param medicos Equipo a bordo
+     * @param duracionNanos Duración prevista del viaje
+     * @return viaje en curso; su dueño espera la llegada con {@link Traslado#esperarLlegada}
+     */
+    public Traslado iniciarTraslado(Ambulancia ambulancia, Emergencia emergencia,
+                                    List<MedicoEmergencia> medicos, long duracionNanos) {
+        Traslado traslado = new Traslado(ambulancia, emergencia, medicos, duracionNanos);
+        if (prioridadDesvio != null) {
+            // Indexado antes de registrarlo: quien lo saque del mapa lo encuentra en el índice
+            indiceEnCamino.agregar(traslado);
+            enCamino.put(ambulancia.getId(), traslado);
+        }
+        return traslado;
+    }
+    
+    /**
+     * Da por terminado un viaje, haya llegado o no, para que ya no se desvíe.
+     * @param traslado Viaje iniciado con {@link #iniciarTraslado}
+     */
+    public void terminarTraslado(Traslado traslado) {
+        traslado.terminar();
+        dejarDeSeguir(traslado);
+    }
+
+    /**
+     * Saca un viaje del mapa y del índice de viajes en camino. Lo llaman el
+     * dueño del viaje y quien lo desvía; solo el primero lo quita del índice.
+     */
+    private void dejarDeSeguir(Traslado traslado) {
+        if (enCamino.remove(traslado.getAmbulancia().getId(), traslado)) {
+            indiceEnCamino.quitar(traslado);
+        }
+    }
+    
+    /**
+     * Desvía hacia una emergencia la ambulancia en camino a otra menos grave
+     * que llegaría antes que la ambulancia libre más cercana. Solo estima el
+     * tiempo de viaje de las {@value #CANDIDATAS_DESVIO} ambulancias en camino
+     * más cercanas en línea recta, buscadas en el índice de viajes con la
+     * posición de cada una estimada en este instante, así que decide sin
+     * esperar ni bloquear a nadie.
+     * <p>
+     * La ambulancia y sus médicos pasan a la nueva emergencia en un solo CAS
+     * sobre el viaje: el despachador original ve el desvío al despertar y ya no
+     * los libera. La emergencia desplazada queda sin ambulancia; devolverla a
+     * la cola es responsabilidad del llamador.
+     * @param emergencia Emergencia que necesita ambulancia
+     * @return viaje desviado, con la emergencia desplazada y los médicos a
+     *         bordo, o null si no conviene desviar
+     */
+    public Traslado desviarHacia(Emergencia emergencia) {
+        Prioridad minima = prioridadDesvio;
+        Prioridad prioridad = emergencia.getPrioridad();
+        if (minima == null || prioridad.getValor() < minima.getValor() || enCamino.isEmpty()) {
+            return null;
+        }
+        MotorTiempos motor = motorTiempos;
+        double tiempoLibre = Double.POSITIVE_INFINITY;
+        List<Ambulancia> libres = indiceDisponibles.cercanas(emergencia.getLatitud(), emergencia.getLongitud(), 1);
+        if (!libres.isEmpty()) {
+            Ambulancia libre = libres.get(0);
+            tiempoLibre = estimarViaje(motor, libre.getLatitud(), libre.getLongitud(), emergencia);
+        }
+        for (int intento = 0; intento < INTENTOS_DESVIO; intento++) {
+            long ahora = Reloj.actual().nanos();
+            Traslado mejor = null;
+            double mejorTiempo = tiempoLibre;
+            List<Traslado> candidatos = indiceEnCamino.cercanos(
+                emergencia.getLatitud(), emergencia.getLongitud(), CANDIDATAS_DESVIO, ahora,
+                traslado -> traslado.isEnCamino()
+                            && traslado.getEmergencia().getPrioridad().getValor() < prioridad.getValor());
+            for (Traslado traslado : candidatos) {
+                double tiempo = estimarViaje(motor, traslado.latitudEn(ahora), traslado.longitudEn(ahora), emergencia);
+                if (tiempo < mejorTiempo) {
+                    mejorTiempo = tiempo;
+                    mejor = traslado;
+                }
+            }
+            if (mejor == null) {
+                return null;
+            }
+            if (mejor.desviar()) {
+                dejarDeSeguir(mejor);
+                entregar(mejor, emergencia, ahora);
+                return mejor;
+            }
+            // Llegó o la desvió otro despachador mientras se comparaba
+        }
+        return null;
+    }
+    
+    /**
+     * Pasa la ambulancia y los médicos de un viaje desviado a la nueva emergencia.
+     */
+    private void entregar(Traslado desviado, Emergencia emergencia, long ahoraNanos) {
+        Ambulancia ambulancia = desviado.getAmbulancia();
+        Emergencia desplazada = desviado.getEmergencia();
+        ambulancia.ubicarEn(desviado.latitudEn(ahoraNanos), desviado.longitudEn(ahoraNanos));
+        ambulancia.moverA(emergencia);
+        emergencia.setAmbulanciaAsignada(ambulancia.getId());
+        desplazada.setAmbulanciaAsignada(null);
+        for (MedicoEmergencia medico : desviado.getMedicos()) {
+            medico.transferirA(emergencia);
+        }
+        desvios.incrementAndGet();
+        Registro.info("  ↪ {} desviada de {} a {}", ambulancia.getId(),
+                      desplazada.getCodigo(), emergencia.getCodigo());
+    }
+    
+    /**
+     * Tiempo de viaje por la red vial si está configurada; si no, distancia en
+     * línea recta. Solo sirve para comparar viajes entre sí.
+     */
+    private static double estimarViaje(MotorTiempos motor, double latitud, double longitud, Emergencia emergencia) {
+        if (motor != null) {
+            return motor.segundos(latitud, longitud, emergencia.getLatitud(), emergencia.getLongitud());
+        }
+        double deltaLat = emergencia.getLatitud() - latitud;
+        double deltaLon = emergencia.getLongitud() - longitud;
+        return Math.sqrt(deltaLat * deltaLat + deltaLon * deltaLon);
+    }
+    
     /**
      * Libera una ambulancia después de completar una emergencia.
      * @param ambulancia Ambulancia a liberar
      */
     public void liberarAmbulancia(Ambulancia ambulancia) {
-        ambulancia.liberar();
-        semaforoAmbulancias.release();
-        System.out.println("  ← " + ambulancia.getId() + " liberada y disponible");
+        while (true) {
+            ListaEspera.Solicitud<Ambulancia> solicitud;
+            synchronized (esperaAmbulancias) {
+                solicitud = sacarPrimeraEsperando();
+                if (solicitud == null) {
+                    // Indexar antes de marcarla libre: una reserva hecha entre las dos
+                    // cosas encontraría una ambulancia libre fuera del índice, y antes
+                    // de devolver el permiso, porque quien lo tome debe poder encontrarla
+                    indiceDisponibles.agregar(ambulancia);
+                    ambulancia.liberar();
+                    disponibilidad.ambulanciaLiberada(ambulancia.getTipo());
+                    semaforoAmbulancias.release();
+                }
+            }
+            if (solicitud == null) {
+                Registro.info("  ← {} liberada y disponible", ambulancia.getId());
+                return;
+            }
+            // Sigue reservada: pasa a la emergencia en espera sin volver al índice
+            Emergencia emergencia = solicitud.emergencia;
+            ambulancia.moverA(emergencia);
+            emergencia.setAmbulanciaAsignada(ambulancia.getId());
+            reservasExitosas.incrementAndGet();
+            entregasDirectas.incrementAndGet();
+            Registro.info("  ⇢ {} pasa directamente a {} en espera", ambulancia.getId(), emergencia.getCodigo());
+            if (solicitud.futuro.complete(ambulancia)) {
+                return;
+            }
+            // Se canceló mientras tanto: la ambulancia pasa a la siguiente
+        }
     }
     
     /**
-     * Libera médicos después de atender una emergencia.
+     * Libera médicos después de atender una emergencia. Si hay equipos en
+     * espera, cada médico pasa directamente sin volver al pool: al de mayor
+     * prioridad que todavía necesita su especialidad y, si ninguno la
+     * necesita, como sustituto al de mayor prioridad.
      * @param medicos Lista de médicos a liberar
      */
     public void liberarMedicos(List<MedicoEmergencia> medicos) {
-        for (MedicoEmergencia medico : medicos) {
-            medico.liberar();
-            semaforoMedicos.release();
+        Deque<MedicoEmergencia> pendientes = new ArrayDeque<>(medicos);
+        List<SolicitudMedicos> completas = new ArrayList<>();
+        Consumer<SolicitudMedicos> devolverEquipo = descartada -> {
+            descartada.retirada = true;
+            cancelar(descartada);
+            pendientes.addAll(descartada.equipo);
+        };
+        // Las retiradas de la lista de médicos ya devolvieron o entregaron su equipo
+        Consumer<SolicitudMedicos> devolverSiSigue = descartada -> {
+            if (!descartada.retirada && esperaMedicos.quitar(descartada)) {
+                devolverEquipo.accept(descartada);
+            }
+        };
+        synchronized (esperaMedicos) {
+            MedicoEmergencia medico;
+            while ((medico = pendientes.poll()) != null) {
+                MedicoEmergencia.Especialidad especialidad = medico.getTipoEspecialidad();
+                ListaEspera<SolicitudMedicos> necesitan = esperaPorEspecialidad.get(especialidad);
+                SolicitudMedicos solicitud = necesitan.primeraVigente(devolverSiSigue);
+                boolean laNecesita = solicitud != null;
+                if (!laNecesita) {
+                    solicitud = esperaMedicos.primeraVigente(devolverEquipo);
+                }
+                if (solicitud == null) {
+                    medico.liberar();
+                    disponibilidad.medicoLiberado(medico.getTipoEspecialidad());
+                    // Volver al pool antes de devolver el permiso
+                    medicosLibres.devolver(medico);
+                    semaforoMedicos.release();
+                    continue;
+                }
+                medico.transferirA(solicitud.emergencia);
+                solicitud.sumar(medico);
+                entregasDirectas.incrementAndGet();
+                if (laNecesita && !solicitud.falta(especialidad)) {
+                    necesitan.quitar(solicitud); // Es la primera de su carril: O(log n)
+                }
+                if (solicitud.completa()) {
+                    // Sale de las listas de especialidad cuando llegue a su cabeza
+                    esperaMedicos.quitar(solicitud);
+                    solicitud.retirada = true;
+                    completas.add(solicitud);
+                }
+            }
+        }
+        for (SolicitudMedicos solicitud : completas) {
+            if (!solicitud.futuro.complete(solicitud.equipo)) {
+                liberarMedicos(solicitud.equipo);
+            }
+        }
+    }
+    
+    /**
+     * Captura el estado de los recursos para una instantánea sin detener las
+     * asignaciones: cada recurso se lee por separado.
+     * @return ubicación, disponibilidad y emergencia asignada de cada recurso
+     */
+    public RecursosInstantanea capturarRecursos() {
+        List<RecursosInstantanea.AmbulanciaRegistrada> estadoAmbulancias = new ArrayList<>(ambulancias.size());
+        for (Ambulancia ambulancia : ambulancias.values()) {
+            Emergencia actual = ambulancia.getEmergenciaActual();
+            estadoAmbulancias.add(new RecursosInstantanea.AmbulanciaRegistrada(
+                ambulancia.getId(), ambulancia.getLatitud(), ambulancia.getLongitud(),
+                ambulancia.isDisponible(), actual == null ? 0 : actual.getId()));
+        }
+        List<RecursosInstantanea.MedicoRegistrado> estadoMedicos = new ArrayList<>(medicos.size());
+        for (MedicoEmergencia medico : medicos.values()) {
+            Emergencia asignada = medico.getEmergenciaAsignada();
+            estadoMedicos.add(new RecursosInstantanea.MedicoRegistrado(
+                medico.getId(), medico.isDisponible(), asignada == null ? 0 : asignada.getId()));
+        }
+        return new RecursosInstantanea(estadoAmbulancias, estadoMedicos);
+    }
+    
+    /**
+     * Restaura las posiciones de las ambulancias desde una instantánea. Las
+     * asignaciones no se restauran: se llama al arrancar, con todos los
+     * recursos libres, y las emergencias que estaban en proceso vuelven a la
+     * cola para reasignarse. Las asignaciones de la instantánea que se
+     * descartan así solo se cuentan en el registro.
+     * @param recursos Estado capturado en la instantánea
+     * @return número de ambulancias reubicadas
+     */
+    public int restaurarRecursos(RecursosInstantanea recursos) {
+        int reubicadas = 0;
+        int descartadas = 0;
+        for (RecursosInstantanea.AmbulanciaRegistrada registrada : recursos.getAmbulancias()) {
+            Ambulancia ambulancia = ambulancias.get(registrada.getId());
+            if (ambulancia != null) {
+                ambulancia.ubicarEn(registrada.getLatitud(), registrada.getLongitud());
+                indiceDisponibles.reubicar(ambulancia);
+                reubicadas++;
+                if (!registrada.isDisponible() && ambulancia.isDisponible()) {
+                    descartadas++;
+                }
+            }
+        }
+        for (RecursosInstantanea.MedicoRegistrado registrado : recursos.getMedicos()) {
+            MedicoEmergencia medico = medicos.get(registrado.getId());
+            if (!registrado.isDisponible() && medico != null && medico.isDisponible()) {
+                descartadas++;
+            }
         }
+        Registro.info("✓ Recursos restaurados: {} ambulancias reubicadas, {} asignaciones de la instantánea "
+                      + "descartadas (esos recursos siguen libres)", reubicadas, descartadas);
+        return reubicadas;
     }
     
     // Métodos de consulta
+    /**
+     * Activa la elección de ambulancias por tiempo de viaje en la red vial.
+     * @param motor Motor de tiempos, o null para volver a la línea recta
+     */
+    public void configurarRutas(MotorTiempos motor) {
+        this.motorTiempos = motor;
+    }
+    
+    /**
+     * Acota la lista de emergencias que esperan que se libere una ambulancia.
+     * Las que no caben se quedan en la cola de emergencias. Por omisión, una
+     * por ambulancia de la flota.
+     * @param maximo Emergencias en espera como máximo (al menos 1)
+     */
+    public void configurarEsperaAmbulancias(int maximo) {
+        if (maximo < 1) {
+            throw new IllegalArgumentException("Capacidad de espera inválida: " + maximo);
+        }
+        synchronized (esperaAmbulancias) {
+            capacidadEsperaAmbulancias = maximo;
+            esperaAmbulancias.notifyAll();
+        }
+    }
+    
+    /**
+     * Permite desviar ambulancias en camino a emergencias menos graves.
+     * @param minima Prioridad mínima que puede desviar una ambulancia, o null
+     *               para no desviar nunca
+     */
+    public void configurarDesvios(Prioridad minima) {
+        this.prioridadDesvio = minima;
+    }
+    
+    /**
+     * Ambulancias desviadas a una emergencia más grave.
+     */
+    public long getDesvios() {
+        return desvios.get();
+    }
+    
+    /**
+     * @return motor de tiempos configurado, o null si se usa la línea recta
+     */
+    public MotorTiempos getMotorTiempos() {
+        return motorTiempos;
+    }
+    
     public int getAmbulanciasTotales() {
         return ambulancias.size();
     }
     
     public int getAmbulanciasDisponibles() {
-        return (int) ambulancias.values().stream().filter(Ambulancia::isDisponible).count();
+        return disponibilidad.ambulanciasLibres();
+    }
+    
+    public int getAmbulanciasDisponibles(Ambulancia.TipoAmbulancia tipo) {
+        return disponibilidad.ambulanciasLibres(tipo);
+    }
+    
+    /**
+     * Disponibilidad de todos los recursos en un mismo instante, sin recorrerlos
+     * ni copiarlos. Pensada para paneles que consultan con mucha frecuencia:
+     * mientras no haya reservas ni liberaciones devuelve la misma vista.
+     * @return vista de solo lectura con su versión
+     */
+    public VistaRecursos getVista() {
+        return disponibilidad.vista();
+    }
+    
+    /**
+     * Ambulancias reservadas por {@link #solicitarAmbulancia}, incluidas las
+     * que pasaron directamente a una emergencia en espera.
+     */
+    public long getReservasExitosas() {
+        return reservasExitosas.get();
+    }
+    
+    /**
+     * Emergencias esperando que se libere una ambulancia.
+     */
+    public int getEsperandoAmbulancia() {
+        synchronized (esperaAmbulancias) {
+            return esperaAmbulancias.tamanio();
+        }
+    }
+    
+    /**
+     * Emergencias con el equipo de médicos incompleto, esperando que se
+     * liberen más.
+     */
+    public int getEsperandoMedicos() {
+        synchronized (esperaMedicos) {
+            return esperaMedicos.tamanio();
+        }
+    }
+    
+    /**
+     * Recursos (ambulancias y médicos) que pasaron al liberarse directamente a
+     * una emergencia en espera, sin volver a quedar disponibles.
+     */
+    public long getEntregasDirectas() {
+        return entregasDirectas.get();
+    }
+    
+    /**
+     * Intentos de reserva que perdieron la carrera contra otro despachador.
+     * Cada uno costó un CAS, no una asignación fallida.
+     */
+    public long getReservasFallidas() {
+        return reservasFallidas.get();
+    }
+    
+    /**
+     * Médicos libres por especialidad.
+     * @return conteo por especialidad
+     */
+    public Map<MedicoEmergencia.Especialidad, Integer> getMedicosLibresPorEspecialidad() {
+        return disponibilidad.medicosLibresPorEspecialidad();
     }
     
     public int getMedicosTotales() {
@@ -171,14 +983,35 @@ public class GestorRecursos {
     }
     
     public int getMedicosDisponibles() {
-        return (int) medicos.values().stream().filter(MedicoEmergencia::isDisponible).count();
+        return disponibilidad.medicosLibres();
     }
     
+    /**
+     * Ambulancias ocupadas, buscadas en los bits de disponibilidad del
+     * {@link EstadoFlota} sin recorrer los objetos de la flota.
+     * @param limite Máximo de ambulancias a devolver
+     * @return primeras ambulancias ocupadas
+     */
+    public List<Ambulancia> getAmbulanciasEnServicio(int limite) {
+        int[] posiciones = estadoFlota.ocupadas(limite);
+        List<Ambulancia> enServicio = new ArrayList<>(posiciones.length);
+        for (int posicion : posiciones) {
+            enServicio.add(estadoFlota.unidad(posicion));
+        }
+        return enServicio;
+    }
+    
+    /**
+     * @return flota completa, de solo lectura y sin copiar
+     */
     public List<Ambulancia> getAmbulancias() {
-        return new ArrayList<>(ambulancias.values());
+        return flota;
     }
     
+    /**
+     * @return médicos registrados, de solo lectura y sin copiar
+     */
     public List<MedicoEmergencia> getMedicos() {
-        return new ArrayList<>(medicos.values());
+        return plantilla;
     }
 }
\ No newline at end of file
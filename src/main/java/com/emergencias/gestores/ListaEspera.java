@@ -0,0 +1,149 @@
+package com.emergencias.gestores;
+
+import com.emergencias.modelos.Emergencia;
+import com.emergencias.modelos.Prioridad;
+import com.emergencias.simulacion.Reloj;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Emergencias que esperan un recurso, en el mismo orden que la cola de
+ * emergencias: un carril por prioridad ordenado por hora de llamada, y entre
+ * las cabezas de los carriles la de mayor prioridad efectiva en este momento.
+ * Así una emergencia que espera sigue envejeciendo, y una LEVE que lleva mucho
+ * esperando puede pasar delante de una MODERADA recién llegada. Quien libera
+ * un recurso se lo entrega a la primera solicitud completando su futuro, sin
+ * pasar por la cola ni por el semáforo.
+ * <p>
+ * No es thread-safe: el gestor la usa bajo el monitor de la lista, que también
+ * protege la decisión de devolver un permiso al semáforo cuando no hay nadie
+ * esperando.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+final class ListaEspera<S extends ListaEspera.Solicitud<?>> {
+    private static final Prioridad[] PRIORIDADES = Prioridad.values();
+
+    private final PriorityQueue<S>[] carriles;
+    private int tamanio;
+    private long secuencia;
+
+    /**
+     * Pedido de un recurso para una emergencia. El carril se fija al pedirlo;
+     * una escalada posterior no lo cambia mientras espera.
+     */
+    static class Solicitud<T> implements Comparable<Solicitud<?>> {
+        final Emergencia emergencia;
+        final CompletableFuture<T> futuro;
+        final Prioridad prioridad;
+        final long marcaLlamada;
+        long orden = -1;
+
+        Solicitud(Emergencia emergencia) {
+            this.emergencia = emergencia;
+            this.futuro = new CompletableFuture<>();
+            this.prioridad = emergencia.getPrioridad();
+            this.marcaLlamada = emergencia.getMarcaLlamadaNanos();
+        }
+
+        /**
+         * Si ya no tiene sentido entregarle un recurso (cancelada o vencida).
+         */
+        boolean descartada() {
+            return futuro.isDone() || emergencia.getEstado() == Emergencia.EstadoEmergencia.CANCELADA;
+        }
+
+        /**
+         * Orden dentro de un carril: la llamada más antigua primero y, a igual
+         * hora, la que pidió antes.
+         */
+        @Override
+        public int compareTo(Solicitud<?> otra) {
+            int porLlamada = Long.compare(marcaLlamada - otra.marcaLlamada, 0L);
+            return porLlamada != 0 ? porLlamada : Long.compare(orden, otra.orden);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    ListaEspera() {
+        carriles = new PriorityQueue[PRIORIDADES.length];
+        for (int i = 0; i < carriles.length; i++) {
+            carriles[i] = new PriorityQueue<>();
+        }
+    }
+
+    /**
+     * Agrega una solicitud. Una solicitud puede estar en varias listas a la
+     * vez: conserva el orden que le dio la primera, para no cambiar su lugar
+     * en las demás.
+     */
+    void agregar(S solicitud) {
+        if (solicitud.orden < 0) {
+            solicitud.orden = secuencia++;
+        }
+        carriles[solicitud.prioridad.ordinal()].add(solicitud);
+        tamanio++;
+    }
+
+    /**
+     * Primera solicitud, sin sacarla: la cabeza de carril con mayor prioridad
+     * efectiva ahora; a igual valor, la más grave y luego la más antigua.
+     * @return solicitud, o null si no hay ninguna
+     */
+    S primera() {
+        if (tamanio == 0) {
+            return null;
+        }
+        long ahora = Reloj.actual().nanos();
+        S mejor = null;
+        double mejorValor = Double.NEGATIVE_INFINITY;
+        for (PriorityQueue<S> carril : carriles) {
+            S cabeza = carril.peek();
+            if (cabeza == null) {
+                continue;
+            }
+            double valor = Emergencia.calcularPrioridadEfectiva(cabeza.prioridad, cabeza.marcaLlamada, ahora);
+            // Los carriles van de más a menos grave: a igual valor gana el anterior
+            if (valor > mejorValor) {
+                mejor = cabeza;
+                mejorValor = valor;
+            }
+        }
+        return mejor;
+    }
+
+    /**
+     * Primera solicitud que todavía espera, sin sacarla. Las descartadas que
+     * encuentra delante se sacan de la lista.
+     * @param alDescartar Recibe cada solicitud descartada, para devolver lo
+     *                    que ya se le hubiera entregado
+     * @return solicitud vigente, o null si no queda ninguna
+     */
+    S primeraVigente(Consumer<? super S> alDescartar) {
+        S primera;
+        while ((primera = primera()) != null && primera.descartada()) {
+            quitar(primera);
+            alDescartar.accept(primera);
+        }
+        return primera;
+    }
+
+    /**
+     * Saca una solicitud, por ejemplo la devuelta por {@link #primera}. Si es
+     * la cabeza de su carril cuesta O(log n).
+     * @return false si ya no estaba
+     */
+    boolean quitar(S solicitud) {
+        if (carriles[solicitud.prioridad.ordinal()].remove(solicitud)) {
+            tamanio--;
+            return true;
+        }
+        return false;
+    }
+
+    int tamanio() {
+        return tamanio;
+    }
+}
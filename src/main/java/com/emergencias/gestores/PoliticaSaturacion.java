@@ -0,0 +1,17 @@
+package com.emergencias.gestores;
+
+/**
+ * Qué hacer con una emergencia no crítica cuando su prioridad no tiene capacidad
+ * disponible en la cola. Las CRÍTICAS nunca se rechazan.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public enum PoliticaSaturacion {
+    /** Descartar una LEVE encolada para hacer espacio; una LEVE entrante se rechaza. */
+    DESCARTAR_LEVE,
+    /** Retener la emergencia en un buffer acotado hasta que se libere espacio. */
+    DIFERIR,
+    /** Rechazar la emergencia. */
+    RECHAZAR
+}
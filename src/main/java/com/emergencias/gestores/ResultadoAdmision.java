@@ -0,0 +1,25 @@
+package com.emergencias.gestores;
+
+/**
+ * Resultado de intentar registrar una emergencia con control de admisión.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public enum ResultadoAdmision {
+    /** Entró a la cola dentro de la capacidad de su prioridad. */
+    ADMITIDA,
+    /** Entró a la cola tras descartar una emergencia LEVE encolada. */
+    ADMITIDA_CON_DESCARTE,
+    /** CRÍTICO admitido por encima de la capacidad porque no había LEVE que descartar. */
+    ADMITIDA_SOBRECUPO,
+    /** Registrada pero retenida fuera de la cola hasta que haya espacio. */
+    DIFERIDA,
+    /** No se registró; el llamador debe reintentar o derivar la llamada. */
+    RECHAZADA,
+    /**
+     * LEVE ya admitida que se sacó de la cola para hacer espacio a una más
+     * grave. Se cuenta aparte de las canceladas por el operador.
+     */
+    DESCARTADA
+}
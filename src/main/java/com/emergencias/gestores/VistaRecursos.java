@@ -0,0 +1,79 @@
+package com.emergencias.gestores;
+
+import com.emergencias.modelos.Ambulancia.TipoAmbulancia;
+import com.emergencias.modelos.MedicoEmergencia.Especialidad;
+
+/**
+ * Disponibilidad de recursos en un instante, de solo lectura. Todos los
+ * conteos de una vista corresponden al mismo estado: ninguna reserva o
+ * liberación quedó contada a medias.
+ * <p>
+ * La versión cambia con cada reserva o liberación, así que un panel puede
+ * comparar versiones para saber si algo cambió sin comparar los conteos.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public final class VistaRecursos {
+    private final long version;
+    private final int[] ambulanciasLibres;
+    private final int[] ambulanciasTotales;
+    private final int[] medicosLibres;
+    private final int[] medicosTotales;
+
+    VistaRecursos(long version, int[] ambulanciasLibres, int[] ambulanciasTotales,
+                  int[] medicosLibres, int[] medicosTotales) {
+        this.version = version;
+        this.ambulanciasLibres = ambulanciasLibres;
+        this.ambulanciasTotales = ambulanciasTotales;
+        this.medicosLibres = medicosLibres;
+        this.medicosTotales = medicosTotales;
+    }
+
+    /**
+     * Número de cambios de disponibilidad contados hasta esta vista.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getAmbulanciasDisponibles() {
+        return suma(ambulanciasLibres);
+    }
+
+    public int getAmbulanciasDisponibles(TipoAmbulancia tipo) {
+        return ambulanciasLibres[tipo.ordinal()];
+    }
+
+    public int getAmbulanciasTotales() {
+        return suma(ambulanciasTotales);
+    }
+
+    public int getAmbulanciasTotales(TipoAmbulancia tipo) {
+        return ambulanciasTotales[tipo.ordinal()];
+    }
+
+    public int getMedicosDisponibles() {
+        return suma(medicosLibres);
+    }
+
+    public int getMedicosDisponibles(Especialidad especialidad) {
+        return medicosLibres[especialidad.ordinal()];
+    }
+
+    public int getMedicosTotales() {
+        return suma(medicosTotales);
+    }
+
+    public int getMedicosTotales(Especialidad especialidad) {
+        return medicosTotales[especialidad.ordinal()];
+    }
+
+    private static int suma(int[] conteos) {
+        int total = 0;
+        for (int conteo : conteos) {
+            total += conteo;
+        }
+        return total;
+    }
+}
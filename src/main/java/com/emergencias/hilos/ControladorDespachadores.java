@@ -0,0 +1,383 @@
+package com.emergencias.hilos;
+
+import com.emergencias.gestores.GestorEmergencias;
+import com.emergencias.gestores.GestorRecursos;
+import com.emergencias.metricas.EtapaAtencion;
+import com.emergencias.metricas.HistogramaLatencia;
+import com.emergencias.registro.Registro;
+import com.emergencias.simulacion.Reloj;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * Hilo que ajusta en caliente cuántos despachadores hay según la carga. En
+ * cada muestra mira las emergencias pendientes por despachador, cuánto lleva
+ * esperando la más antigua y si hay ambulancias libres:
+ * <ul>
+ *   <li>amplía si la cola o la espera superan su umbral alto durante
+ *       {@value #MUESTRAS_PARA_AMPLIAR} muestras seguidas y hay ambulancias
+ *       libres (sin ellas un despachador más solo alarga la lista de espera);</li>
+ *   <li>reduce de a uno si ambas quedan bajo su umbral bajo durante
+ *       {@value #MUESTRAS_PARA_REDUCIR} muestras seguidas.</li>
+ * </ul>
+ * Entre los umbrales altos y bajos no se cambia nada (histéresis), y tras cada
+ * cambio se dejan pasar {@value #MUESTRAS_ENFRIAMIENTO} muestras antes de
+ * volver a decidir. Un despachador sobrante se retira con
+ * {@link Despachador#detener()}: termina la emergencia que tenga entre manos y
+ * sale del bucle al vencer su espera en la cola. Al salir deja de estar en la
+ * lista de despachadores, para que él y su pool de atenciones se puedan
+ * recolectar, y solo queda sumado en los contadores de retirados.
+ * <p>
+ * Cada decisión queda registrada con el p99 de espera en cola de las
+ * {@value #VENTANA_EFECTO} muestras anteriores y, cuando se completan, el de
+ * las {@value #VENTANA_EFECTO} siguientes, para ver si el cambio sirvió.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class ControladorDespachadores implements Runnable {
+    private static final int PENDIENTES_ALTO_POR_DESPACHADOR = 4;
+    private static final int PENDIENTES_BAJO_POR_DESPACHADOR = 1;
+    private static final long ESPERA_ALTA_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long ESPERA_BAJA_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int MUESTRAS_PARA_AMPLIAR = 2;
+    private static final int MUESTRAS_PARA_REDUCIR = 5;
+    private static final int MUESTRAS_ENFRIAMIENTO = 3;
+    private static final int VENTANA_EFECTO = 5;
+    private static final int HISTORIAL = 32;
+    private static final double PERCENTIL = 99.0;
+
+    private final IntFunction<Despachador> fabrica;
+    private final Executor ejecutor;
+    private final int minimo;
+    private final int maximo;
+    private final long intervaloMillis;
+    private final GestorEmergencias gestorEmergencias;
+    private final GestorRecursos gestorRecursos;
+    private volatile boolean activo;
+
+    // Solo los toca el hilo del controlador (y arrancar, antes de que corra)
+    private final Deque<Despachador> activos;
+    private final Deque<HistogramaLatencia.Resumen> muestras;
+    private final List<Decision> sinEfecto;
+    private int creados;
+    private int muestrasAltas;
+    private int muestrasBajas;
+    private int enfriamiento;
+
+    // Despachadores que siguen corriendo y lo que hicieron los ya retirados, bajo this
+    private final List<Despachador> despachadores;
+    private int retirados;
+    private long despachadasRetirados;
+
+    private final Deque<Decision> decisiones;
+    private volatile int tamanio;
+    private volatile long ampliaciones;
+    private volatile long reducciones;
+    private volatile long p99EsperaMicros;
+    private volatile long esperaMasAntiguaNanos;
+
+    /**
+     * Resultado de una decisión de escalado.
+     */
+    public static final class Decision {
+        private final LocalDateTime instante;
+        private final int desde;
+        private final int hasta;
+        private final int pendientes;
+        private final long esperaMasAntiguaNanos;
+        private final int ambulanciasLibres;
+        private final long p99AntesMicros;
+        private final HistogramaLatencia.Resumen resumenAlDecidir;
+        private int muestrasDespues;
+        private volatile long p99DespuesMicros = -1L;
+
+        private Decision(LocalDateTime instante, int desde, int hasta, int pendientes, long esperaMasAntiguaNanos,
+                         int ambulanciasLibres, long p99AntesMicros, HistogramaLatencia.Resumen resumenAlDecidir) {
+            this.instante = instante;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.pendientes = pendientes;
+            this.esperaMasAntiguaNanos = esperaMasAntiguaNanos;
+            this.ambulanciasLibres = ambulanciasLibres;
+            this.p99AntesMicros = p99AntesMicros;
+            this.resumenAlDecidir = resumenAlDecidir;
+        }
+
+        public LocalDateTime getInstante() { return instante; }
+        public int getDesde() { return desde; }
+        public int getHasta() { return hasta; }
+        public int getPendientes() { return pendientes; }
+        public long getEsperaMasAntiguaNanos() { return esperaMasAntiguaNanos; }
+        public int getAmbulanciasLibres() { return ambulanciasLibres; }
+
+        /**
+         * p99 de espera en cola en las muestras previas a la decisión.
+         * @return microsegundos, o 0 si nadie salió de la cola en ese lapso
+         */
+        public long getP99AntesMicros() { return p99AntesMicros; }
+
+        /**
+         * p99 de espera en cola en las muestras posteriores a la decisión.
+         * @return microsegundos, o -1 si todavía no se completó la ventana
+         */
+        public long getP99DespuesMicros() { return p99DespuesMicros; }
+
+        @Override
+        public String toString() {
+            String despues = p99DespuesMicros < 0 ? "midiendo" : String.format("%.1fs", p99DespuesMicros / 1e6);
+            return String.format("%s %d -> %d (pendientes %d, más antigua %.1fs, %d ambulancias libres; " +
+                                 "p99 espera %.1fs -> %s)", instante.toLocalTime().withNano(0), desde, hasta,
+                                 pendientes, esperaMasAntiguaNanos / 1e9, ambulanciasLibres,
+                                 p99AntesMicros / 1e6, despues);
+        }
+    }
+
+    /**
+     * @param fabrica Crea el despachador número {@code n} (desde 1); cada uno
+     *                que se cree recibe un número nuevo
+     * @param ejecutor Dónde correr los despachadores creados; debe admitir
+     *                 hasta {@code maximo} a la vez, además de este controlador
+     *                 si corre en el mismo
+     * @param minimo Despachadores que quedan aunque no haya carga (al menos 1)
+     * @param maximo Tope de despachadores
+     * @param intervaloMillis Tiempo entre muestras
+     */
+    public ControladorDespachadores(IntFunction<Despachador> fabrica, Executor ejecutor,
+                                    int minimo, int maximo, long intervaloMillis) {
+        if (minimo < 1 || maximo < minimo) {
+            throw new IllegalArgumentException("Límites inválidos: mínimo " + minimo + ", máximo " + maximo);
+        }
+        this.fabrica = fabrica;
+        this.ejecutor = ejecutor;
+        this.minimo = minimo;
+        this.maximo = maximo;
+        this.intervaloMillis = intervaloMillis;
+        this.gestorEmergencias = GestorEmergencias.getInstancia();
+        this.gestorRecursos = GestorRecursos.getInstancia();
+        this.activo = true;
+        this.activos = new ArrayDeque<>();
+        this.muestras = new ArrayDeque<>();
+        this.sinEfecto = new ArrayList<>();
+        this.despachadores = new ArrayList<>();
+        this.decisiones = new ArrayDeque<>();
+    }
+
+    /**
+     * Crea y pone a correr los despachadores iniciales. Debe llamarse antes de
+     * ejecutar el controlador.
+     * @param iniciales Cantidad inicial, acotada a los límites
+     */
+    public void arrancar(int iniciales) {
+        ampliar(Math.max(minimo, Math.min(maximo, iniciales)));
+        muestras.addLast(gestorEmergencias.getMetricas().acumulado(EtapaAtencion.ESPERA_COLA));
+    }
+
+    @Override
+    public void run() {
+        Registro.info("Controlador de despachadores iniciado ({} a {}, muestra cada {} ms)",
+                      minimo, maximo, intervaloMillis);
+        try {
+            while (activo && !Thread.currentThread().isInterrupted()) {
+                TimeUnit.MILLISECONDS.sleep(intervaloMillis);
+                if (activo) {
+                    evaluar();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            Registro.error("Error en el controlador de despachadores: {}", e.getMessage());
+        } finally {
+            Registro.info("Controlador de despachadores finalizado con {} despachadores", tamanio);
+        }
+    }
+
+    /**
+     * Toma una muestra y decide si ampliar, reducir o esperar.
+     */
+    private void evaluar() {
+        int n = activos.size();
+        int pendientes = gestorEmergencias.getEmergenciasPendientes();
+        long espera = gestorEmergencias.getEsperaMasAntiguaNanos();
+        int libres = gestorRecursos.getAmbulanciasDisponibles();
+        esperaMasAntiguaNanos = espera;
+
+        HistogramaLatencia.Resumen actual = gestorEmergencias.getMetricas().acumulado(EtapaAtencion.ESPERA_COLA);
+        long p99Antes = actual.desde(muestras.peekFirst()).percentil(PERCENTIL);
+        p99EsperaMicros = p99Antes;
+        muestras.addLast(actual);
+        if (muestras.size() > VENTANA_EFECTO) {
+            muestras.removeFirst();
+        }
+        medirEfecto(actual);
+
+        boolean alta = pendientes > n * PENDIENTES_ALTO_POR_DESPACHADOR || espera > ESPERA_ALTA_NANOS;
+        boolean baja = pendientes <= n * PENDIENTES_BAJO_POR_DESPACHADOR && espera < ESPERA_BAJA_NANOS;
+        muestrasAltas = alta && libres > 0 ? muestrasAltas + 1 : 0;
+        muestrasBajas = baja ? muestrasBajas + 1 : 0;
+        if (enfriamiento > 0) {
+            enfriamiento--;
+            return;
+        }
+
+        int objetivo = n;
+        if (muestrasAltas >= MUESTRAS_PARA_AMPLIAR && n < maximo) {
+            // Crece a saltos proporcionales, sin pasar de las ambulancias que esperan trabajo
+            objetivo = n + Math.min(maximo - n, Math.min(libres, Math.max(1, n / 2)));
+        } else if (muestrasBajas >= MUESTRAS_PARA_REDUCIR && n > minimo) {
+            objetivo = n - 1;
+        }
+        if (objetivo == n) {
+            return;
+        }
+
+        if (objetivo > n) {
+            ampliar(objetivo - n);
+            ampliaciones++;
+        } else {
+            retirar(n - objetivo);
+            reducciones++;
+        }
+        Decision decision = new Decision(Reloj.actual().ahora(), n, objetivo, pendientes, espera, libres,
+                                         p99Antes, actual);
+        sinEfecto.add(decision);
+        synchronized (decisiones) {
+            decisiones.addLast(decision);
+            if (decisiones.size() > HISTORIAL) {
+                decisiones.removeFirst();
+            }
+        }
+        Registro.info("Despachadores: {}", decision);
+        muestrasAltas = 0;
+        muestrasBajas = 0;
+        enfriamiento = MUESTRAS_ENFRIAMIENTO;
+    }
+
+    /**
+     * Completa el p99 posterior de las decisiones cuya ventana ya pasó.
+     */
+    private void medirEfecto(HistogramaLatencia.Resumen actual) {
+        for (Iterator<Decision> it = sinEfecto.iterator(); it.hasNext(); ) {
+            Decision decision = it.next();
+            if (++decision.muestrasDespues >= VENTANA_EFECTO) {
+                decision.p99DespuesMicros = actual.desde(decision.resumenAlDecidir).percentil(PERCENTIL);
+                it.remove();
+            }
+        }
+    }
+
+    private void ampliar(int cantidad) {
+        for (int i = 0; i < cantidad; i++) {
+            Despachador despachador = fabrica.apply(++creados);
+            activos.addLast(despachador);
+            synchronized (this) {
+                despachadores.add(despachador);
+            }
+            ejecutor.execute(() -> {
+                try {
+                    despachador.run();
+                } finally {
+                    alTerminar(despachador);
+                }
+            });
+        }
+        tamanio = activos.size();
+    }
+
+    /**
+     * Retira los últimos despachadores creados. No se interrumpen: terminan
+     * lo que tengan entre manos y salen solos.
+     */
+    private void retirar(int cantidad) {
+        for (int i = 0; i < cantidad; i++) {
+            Despachador despachador = activos.removeLast();
+            despachador.detener();
+            Registro.info("{} retirado por baja carga", despachador.getId());
+        }
+        tamanio = activos.size();
+    }
+
+    /**
+     * Saca de la lista a un despachador cuyo bucle terminó. Mientras el
+     * controlador está activo solo terminan los retirados, que quedan en los
+     * contadores; después de {@link #detener} los que terminan ya están en la
+     * lista que devolvió.
+     */
+    private synchronized void alTerminar(Despachador despachador) {
+        despachadores.remove(despachador);
+        if (activo) {
+            retirados++;
+            despachadasRetirados += despachador.getEmergenciasDespachas();
+        }
+    }
+
+    /**
+     * Deja de ajustar el número de despachadores.
+     * @return despachadores que siguen corriendo, para detenerlos e informar
+     *         sobre ellos; los retirados antes solo están en
+     *         {@link #getDespachadoresRetirados()}
+     */
+    public synchronized List<Despachador> detener() {
+        activo = false;
+        return new ArrayList<>(despachadores);
+    }
+
+    /**
+     * Despachadores que siguen corriendo, incluidos los retirados que todavía
+     * no terminaron su última emergencia.
+     * @return copia de la lista
+     */
+    public synchronized List<Despachador> getDespachadores() {
+        return new ArrayList<>(despachadores);
+    }
+
+    /**
+     * Despachadores retirados por baja carga que ya terminaron.
+     */
+    public synchronized int getDespachadoresRetirados() {
+        return retirados;
+    }
+
+    /**
+     * Emergencias despachadas en total por los despachadores retirados.
+     */
+    public synchronized long getEmergenciasDespachadasRetirados() {
+        return despachadasRetirados;
+    }
+
+    /**
+     * Últimas decisiones, de la más antigua a la más reciente.
+     * @return copia de hasta {@value #HISTORIAL} decisiones
+     */
+    public List<Decision> getDecisiones() {
+        synchronized (decisiones) {
+            return new ArrayList<>(decisiones);
+        }
+    }
+
+    public int getDespachadoresActivos() { return tamanio; }
+    public int getMinimo() { return minimo; }
+    public int getMaximo() { return maximo; }
+    public long getAmpliaciones() { return ampliaciones; }
+    public long getReducciones() { return reducciones; }
+
+    /**
+     * p99 de espera en cola en las últimas {@value #VENTANA_EFECTO} muestras.
+     * @return microsegundos
+     */
+    public long getP99EsperaMicros() { return p99EsperaMicros; }
+
+    /**
+     * Espera de la emergencia pendiente más antigua en la última muestra.
+     * @return nanosegundos
+     */
+    public long getEsperaMasAntiguaNanos() { return esperaMasAntiguaNanos; }
+}
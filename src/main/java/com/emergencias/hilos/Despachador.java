@@ -2,49 +2,104 @@ package com.emergencias.hilos;
 
 import com.emergencias.modelos.*;
 import com.emergencias.gestores.*;
+import com.emergencias.registro.Registro;
+import com.emergencias.rutas.MotorTiempos;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Hilo que asigna recursos (ambulancias y médicos) a emergencias.
  * Implementa patrón Consumer procesando la cola de prioridad.
+ * <p>
+ * El hilo nunca se queda esperando recursos: si no hay ambulancia o médicos
+ * libres, la emergencia entra en la lista de espera del gestor y su atención
+ * sigue en un hilo de atenciones cuando le entregan lo que faltaba.
  * 
  * @author Equipo Emergencias
  * @version 1.0
  */
 public class Despachador implements Runnable {
+    private static final double SEGUNDOS_REALES_POR_SIMULADO = 60.0; // Un minuto de viaje por segundo
+    private static final int ESPERA_MEDICOS_SEGUNDOS = 3;
+    
     private final String id;
-    private final GestorEmergencias gestorEmergencias;
-    private final GestorRecursos gestorRecursos;
+    private final int zona;
+    protected final GestorEmergencias gestorEmergencias;
+    protected final GestorRecursos gestorRecursos;
     private volatile boolean activo;
-    private int emergenciasDespachas;
+    private final AtomicInteger emergenciasDespachas;
+    protected final Executor atenciones;
     
     public Despachador(String id) {
+        this(id, 0);
+    }
+    
+    /**
+     * Crea un despachador con zona propia. Atiende primero su zona y toma de
+     * otras zonas cuando allí espera una emergencia más urgente.
+     * @param id Identificador del despachador
+     * @param zona Zona de despacho propia
+     */
+    public Despachador(String id, int zona) {
+        this(id, zona, null);
+    }
+    
+    /**
+     * @param id Identificador del despachador
+     * @param zona Zona de despacho propia
+     * @param atenciones Dónde sigue la atención de una emergencia cuando le
+     *                   entregan los recursos que esperaba; null para un pool
+     *                   propio de hilos
+     */
+    protected Despachador(String id, int zona, Executor atenciones) {
         this.id = id;
+        this.zona = zona;
         this.gestorEmergencias = GestorEmergencias.getInstancia();
         this.gestorRecursos = GestorRecursos.getInstancia();
         this.activo = true;
-        this.emergenciasDespachas = 0;
+        this.emergenciasDespachas = new AtomicInteger(0);
+        if (atenciones == null) {
+            // Sin shutdown: una emergencia en espera puede recibir sus recursos después
+            // de detenerse el despachador; los hilos ociosos terminan solos
+            AtomicInteger contador = new AtomicInteger();
+            atenciones = Executors.newCachedThreadPool(r -> {
+                Thread hilo = new Thread(r, id + "-Atencion-" + contador.incrementAndGet());
+                hilo.setDaemon(true);
+                return hilo;
+            });
+        }
+        this.atenciones = atenciones;
     }
     
     @Override
     public void run() {
-        System.out.println(id + " iniciado y esperando emergencias...");
+        Registro.info("{} (zona {}) iniciado y esperando emergencias...", id, zona);
         
         try {
             while (activo && !Thread.currentThread().isInterrupted()) {
+                // Con la lista de espera de ambulancias llena, las emergencias
+                // se quedan en la cola, donde las ve el control de admisión
+                if (!gestorRecursos.esperarLugarEnEspera(3, TimeUnit.SECONDS)) {
+                    continue;
+                }
                 // Obtener siguiente emergencia (bloquea si no hay)
-                Emergencia emergencia = gestorEmergencias.obtenerSiguienteEmergencia(3, TimeUnit.SECONDS);
+                Emergencia emergencia = gestorEmergencias.obtenerSiguienteEmergencia(zona, 3, TimeUnit.SECONDS);
                 
                 if (emergencia != null) {
                     procesarEmergencia(emergencia);
                 }
             }
         } catch (InterruptedException e) {
-            System.out.println(id + " interrumpido");
+            Registro.info("{} interrumpido", id);
             Thread.currentThread().interrupt();
         } finally {
-            System.out.println(id + " finalizado. Total despachadas: " + emergenciasDespachas);
+            Registro.info("{} finalizado. Total despachadas: {}", id, emergenciasDespachas.get());
         }
     }
     
@@ -52,42 +107,111 @@ public class Despachador implements Runnable {
      * Procesa una emergencia asignando recursos necesarios.
      * @param emergencia Emergencia a procesar
      */
-    private void procesarEmergencia(Emergencia emergencia) {
-        System.out.println("\n" + id + " procesando: " + emergencia);
+    protected void procesarEmergencia(Emergencia emergencia) {
+        Registro.info("\n{} procesando: {} [{}]", id, emergencia.getCodigo(), emergencia.getPrioridad());
         
         try {
-            // Paso 1: Asignar ambulancia
-            Ambulancia ambulancia = gestorRecursos.asignarAmbulancia(emergencia);
-            
-            if (ambulancia == null) {
-                System.out.println(id + ": No hay ambulancias disponibles para EMG-" +
-                                 String.format("%03d", emergencia.getId()));
-                // Reencolar la emergencia
-                gestorEmergencias.registrarEmergencia(emergencia);
+            // Paso 0: Desviar una ambulancia que va a una emergencia menos grave
+            Traslado desviado = gestorRecursos.desviarHacia(emergencia);
+            if (desviado != null) {
+                gestorEmergencias.devolverDesplazada(desviado.getEmergencia());
+                atenderConEquipo(emergencia, desviado.getAmbulancia(), desviado.getMedicos());
                 return;
             }
             
-            // Paso 2: Asignar médicos según capacidad de la ambulancia
-            int medicosRequeridos = calcularMedicosRequeridos(emergencia, ambulancia);
-            List<MedicoEmergencia> medicos = gestorRecursos.asignarMedicos(medicosRequeridos, emergencia);
-            
-            if (medicos.size() < medicosRequeridos) {
-                System.out.println(id + ": Médicos insuficientes. Se asignaron " +
-                                 medicos.size() + " de " + medicosRequeridos);
+            // Paso 1: Pedir ambulancia; si no hay, la emergencia espera la próxima que se libere
+            CompletableFuture<Ambulancia> ambulancia = gestorRecursos.solicitarAmbulancia(emergencia);
+            if (!ambulancia.isDone()) {
+                Registro.info("{}: No hay ambulancias disponibles; {} queda en espera", id, emergencia.getCodigo());
+                gestorEmergencias.esperaAmbulancia(emergencia);
+                ambulancia.whenComplete((asignada, error) -> gestorEmergencias.finEsperaAmbulancia(emergencia));
             }
-            
-            // Paso 3: Marcar emergencia como en proceso
-            gestorEmergencias.marcarEnProceso(emergencia);
-            emergenciasDespachas++;
-            
-            // Paso 4: Simular tiempo de atención y traslado
-            simularAtencion(emergencia, ambulancia, medicos);
+            continuar(ambulancia, asignada -> {
+                if (asignada == null) {
+                    gestorEmergencias.reencolar(emergencia);
+                } else {
+                    atender(emergencia, asignada);
+                }
+            });
             
         } catch (Exception e) {
-            System.err.println("Error en " + id + " procesando emergencia: " + e.getMessage());
+            Registro.error("Error en {} procesando emergencia: {}", id, e.getMessage());
+        }
+    }
+    
+    /**
+     * Completa el despacho de una emergencia que ya tiene ambulancia reservada:
+     * asigna médicos, la marca en proceso y simula la atención. Puede llamarse
+     * desde varios hilos a la vez.
+     * @param emergencia Emergencia a atender
+     * @param ambulancia Ambulancia ya reservada para ella
+     */
+    protected void atender(Emergencia emergencia, Ambulancia ambulancia) {
+        // Paso 2: Asignar médicos según capacidad de la ambulancia
+        int medicosRequeridos = calcularMedicosRequeridos(emergencia, ambulancia);
+        MezclaEspecialidades equipo = MezclaEspecialidades.para(emergencia, medicosRequeridos);
+        continuar(gestorRecursos.solicitarMedicos(equipo, emergencia, ESPERA_MEDICOS_SEGUNDOS, TimeUnit.SECONDS),
+                  medicos -> {
+            if (medicos.size() < medicosRequeridos) {
+                Registro.info("{}: Médicos insuficientes. Se asignaron {} de {}",
+                              id, medicos.size(), medicosRequeridos);
+            }
+            despachar(emergencia, ambulancia, medicos);
+        });
+    }
+    
+    /**
+     * Atiende una emergencia con una ambulancia desviada, que llega con los
+     * médicos de la emergencia desplazada; si la nueva necesita más, se
+     * completan con médicos libres.
+     * @param emergencia Emergencia a atender
+     * @param ambulancia Ambulancia desviada
+     * @param aBordo Médicos que viajaban en ella
+     */
+    private void atenderConEquipo(Emergencia emergencia, Ambulancia ambulancia, List<MedicoEmergencia> aBordo) {
+        List<MedicoEmergencia> medicos = new ArrayList<>(aBordo);
+        int faltantes = calcularMedicosRequeridos(emergencia, ambulancia) - medicos.size();
+        if (faltantes <= 0) {
+            despachar(emergencia, ambulancia, medicos);
+            return;
+        }
+        MezclaEspecialidades mezcla = MezclaEspecialidades.para(emergencia, faltantes);
+        continuar(gestorRecursos.solicitarMedicos(mezcla, emergencia, ESPERA_MEDICOS_SEGUNDOS, TimeUnit.SECONDS),
+                  extra -> {
+            medicos.addAll(extra);
+            despachar(emergencia, ambulancia, medicos);
+        });
+    }
+    
+    /**
+     * Sigue con la atención en este hilo si los recursos ya están entregados;
+     * si no, en un hilo de atenciones cuando lleguen. Una solicitud cancelada
+     * (la emergencia se canceló mientras esperaba) no sigue.
+     */
+    private <T> void continuar(CompletableFuture<T> recursos, Consumer<T> paso) {
+        Consumer<T> protegido = valor -> {
+            try {
+                paso.accept(valor);
+            } catch (RuntimeException e) {
+                Registro.error("Error en {} procesando emergencia: {}", id, e.getMessage());
+            }
+        };
+        if (!recursos.isDone()) {
+            recursos.thenAcceptAsync(protegido, atenciones);
+        } else if (!recursos.isCancelled()) {
+            protegido.accept(recursos.join());
         }
     }
     
+    private void despachar(Emergencia emergencia, Ambulancia ambulancia, List<MedicoEmergencia> medicos) {
+        // Paso 3: Marcar emergencia como en proceso
+        gestorEmergencias.marcarEnProceso(emergencia);
+        emergenciasDespachas.incrementAndGet();
+        
+        // Paso 4: Simular tiempo de atención y traslado
+        simularAtencion(emergencia, ambulancia, medicos);
+    }
+    
     /**
      * Calcula cantidad de médicos necesarios según gravedad.
      * @param emergencia Emergencia a evaluar
@@ -107,32 +231,58 @@ public class Despachador implements Runnable {
     }
     
     /**
-     * Simula el proceso completo de atención de la emergencia.
+     * Segundos simulados de viaje según distancia (o red vial) desde donde
+     * salió la ambulancia.
+     */
+    protected int calcularTiempoLlegada(Emergencia emergencia, Ambulancia ambulancia) {
+        MotorTiempos motor = gestorRecursos.getMotorTiempos();
+        return motor == null
+            ? (int) (ambulancia.calcularDistanciaViaje() * 2) + 1
+            : (int) Math.ceil(motor.segundos(ambulancia.getLatitudSalida(), ambulancia.getLongitudSalida(),
+                                             emergencia.getLatitud(), emergencia.getLongitud())
+                              / SEGUNDOS_REALES_POR_SIMULADO);
+    }
+    
+    /**
+     * Segundos simulados de atención en el sitio según la prioridad.
+     */
+    protected int calcularTiempoAtencion(Emergencia emergencia) {
+        return switch (emergencia.getPrioridad()) {
+            case CRITICO -> 8;
+            case GRAVE -> 5;
+            case MODERADO -> 3;
+            case LEVE -> 2;
+        };
+    }
+    
+    /**
+     * Simula el proceso completo de atención de la emergencia, durmiendo en
+     * este hilo durante el viaje y la atención.
      * @param emergencia Emergencia atendida
      * @param ambulancia Ambulancia asignada
      * @param medicos Médicos asignados
      */
-    private void simularAtencion(Emergencia emergencia, Ambulancia ambulancia, 
-                                 List<MedicoEmergencia> medicos) {
+    protected void simularAtencion(Emergencia emergencia, Ambulancia ambulancia, 
+                                   List<MedicoEmergencia> medicos) {
+        Traslado traslado = null;
         try {
-            // Calcular tiempos según distancia y prioridad
-            double distancia = ambulancia.calcularDistancia(emergencia);
-            int tiempoLlegada = (int) (distancia * 2) + 1; // Segundos simulados
-            int tiempoAtencion = switch (emergencia.getPrioridad()) {
-                case CRITICO -> 8;
-                case GRAVE -> 5;
-                case MODERADO -> 3;
-                case LEVE -> 2;
-            };
+            // Calcular tiempos según distancia (o red vial) desde donde salió y prioridad
+            int tiempoLlegada = calcularTiempoLlegada(emergencia, ambulancia);
+            int tiempoAtencion = calcularTiempoAtencion(emergencia);
             
-            // Simular llegada
-            System.out.println("  🚑 " + ambulancia.getId() + " en camino... " +
-                             "(~" + tiempoLlegada + "s)");
-            TimeUnit.SECONDS.sleep(tiempoLlegada);
+            // Simular llegada; si la desvían, los recursos ya son de otro despachador
+            Registro.info("  🚑 {} en camino... (~{}s)", ambulancia.getId(), tiempoLlegada);
+            traslado = gestorRecursos.iniciarTraslado(ambulancia, emergencia, medicos,
+                                                      TimeUnit.SECONDS.toNanos(tiempoLlegada));
+            boolean llego = traslado.esperarLlegada();
+            gestorRecursos.terminarTraslado(traslado);
+            if (!llego) {
+                return;
+            }
+            gestorEmergencias.marcarEnSitio(emergencia);
             
             // Simular atención médica
-            System.out.println("  Atendiendo EMG-" + String.format("%03d", emergencia.getId()) +
-                             " con " + medicos.size() + " médicos...");
+            Registro.info("  Atendiendo {} con {} médicos...", emergencia.getCodigo(), medicos.size());
             TimeUnit.SECONDS.sleep(tiempoAtencion);
             
             // Completar emergencia
@@ -143,8 +293,11 @@ public class Despachador implements Runnable {
             gestorRecursos.liberarMedicos(medicos);
             
         } catch (InterruptedException e) {
+            if (traslado != null) {
+                gestorRecursos.terminarTraslado(traslado);
+            }
             Thread.currentThread().interrupt();
-            System.err.println("⚠ Atención interrumpida para EMG-" + emergencia.getId());
+            Registro.advertencia("⚠ Atención interrumpida para {}", emergencia.getCodigo());
         }
     }
     
@@ -152,11 +305,19 @@ public class Despachador implements Runnable {
         activo = false;
     }
     
+    protected boolean isActivo() {
+        return activo;
+    }
+    
     public String getId() {
         return id;
     }
     
+    public int getZona() {
+        return zona;
+    }
+    
     public int getEmergenciasDespachas() {
-        return emergenciasDespachas;
+        return emergenciasDespachas.get();
     }
 }
\ No newline at end of file
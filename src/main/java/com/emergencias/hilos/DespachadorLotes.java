@@ -0,0 +1,86 @@
+package com.emergencias.hilos;
+
+import com.emergencias.gestores.AsignadorLotes;
+import com.emergencias.modelos.Emergencia;
+import com.emergencias.registro.Registro;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Despachador que asigna ambulancias por lotes en lugar de una emergencia a la
+ * vez. Cada ventana junta las emergencias pendientes, resuelve con
+ * {@link AsignadorLotes} la asignación que mejor reparte la flota libre según
+ * prioridad y distancia, y atiende cada par en un hilo propio. Las emergencias
+ * que quedan sin ambulancia vuelven a la cola para la siguiente ventana.
+ * <p>
+ * A cambio de mejores asignaciones, cada emergencia espera hasta una ventana
+ * antes de despacharse; conviene una ventana de pocos cientos de milisegundos.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class DespachadorLotes extends Despachador {
+    private static final int MAXIMO_LOTE = 4096;
+
+    private final long ventanaMillis;
+    private final AsignadorLotes asignador;
+
+    /**
+     * @param id Identificador del despachador
+     * @param ventanaMillis Duración de cada ventana de asignación
+     * @param distanciaMaxima Distancia a partir de la cual no se envía una ambulancia
+     */
+    public DespachadorLotes(String id, long ventanaMillis, double distanciaMaxima) {
+        super(id);
+        this.ventanaMillis = ventanaMillis;
+        // La subasta puede usar media ventana; el resto queda para reservar y juntar el lote
+        this.asignador = new AsignadorLotes(gestorRecursos, distanciaMaxima, ventanaMillis / 2, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void run() {
+        Registro.info("{} iniciado (ventana de {} ms)", getId(), ventanaMillis);
+
+        try {
+            while (isActivo() && !Thread.currentThread().isInterrupted()) {
+                List<Emergencia> lote = juntarLote();
+                if (!lote.isEmpty()) {
+                    despacharLote(lote);
+                }
+            }
+        } catch (InterruptedException e) {
+            Registro.info("{} interrumpido", getId());
+            Thread.currentThread().interrupt();
+        } finally {
+            Registro.info("{} finalizado. Total despachadas: {}", getId(), getEmergenciasDespachas());
+        }
+    }
+
+    /**
+     * Espera la primera emergencia y deja correr la ventana para que se
+     * acumulen las que lleguen detrás.
+     */
+    private List<Emergencia> juntarLote() throws InterruptedException {
+        List<Emergencia> lote = new ArrayList<>(gestorEmergencias.drenarHasta(MAXIMO_LOTE, 3, TimeUnit.SECONDS));
+        if (lote.isEmpty()) {
+            return lote;
+        }
+        TimeUnit.MILLISECONDS.sleep(ventanaMillis);
+        if (lote.size() < MAXIMO_LOTE) {
+            lote.addAll(gestorEmergencias.drenarHasta(MAXIMO_LOTE - lote.size(), 0, TimeUnit.MILLISECONDS));
+        }
+        return lote;
+    }
+
+    private void despacharLote(List<Emergencia> lote) {
+        AsignadorLotes.Resultado resultado = asignador.asignar(lote);
+        for (AsignadorLotes.Asignacion asignacion : resultado.getAsignaciones()) {
+            atenciones.execute(() -> atender(asignacion.getEmergencia(), asignacion.getAmbulancia()));
+        }
+        gestorEmergencias.reencolar(resultado.getSinAsignar());
+        Registro.info("{}: lote de {} → {} asignadas", getId(), lote.size(), resultado.getAsignaciones().size());
+        Registro.depuracion("  Subasta: {} rondas, {} µs", resultado.getRondas(),
+                            TimeUnit.NANOSECONDS.toMicros(resultado.getDuracionNanos()));
+    }
+}
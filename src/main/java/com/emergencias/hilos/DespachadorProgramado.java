@@ -0,0 +1,124 @@
+package com.emergencias.hilos;
+
+import com.emergencias.modelos.Ambulancia;
+import com.emergencias.modelos.Emergencia;
+import com.emergencias.modelos.MedicoEmergencia;
+import com.emergencias.modelos.Traslado;
+import com.emergencias.registro.Registro;
+import com.emergencias.simulacion.MotorEventos;
+import com.emergencias.simulacion.Reloj;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Despachador que no duerme durante la atención: la llegada y el fin de la
+ * atención de cada emergencia son tareas programadas en un {@link Reloj}.
+ * El hilo del despachador solo asigna recursos y vuelve a la cola, así que las
+ * emergencias en curso ya no están limitadas por los hilos de despacho sino
+ * por las ambulancias y los médicos libres.
+ * <p>
+ * Equivale a dar a cada emergencia su propio hilo, pero como máquina de
+ * estados: una emergencia en viaje o en atención es una entrada en la cola del
+ * reloj y no ocupa un hilo. Con un {@link MotorEventos} como reloj, el
+ * despachador no corre en un hilo propio: el motor lo activa con
+ * {@link #despacharPendientes} y la misma lógica corre en tiempo virtual.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class DespachadorProgramado extends Despachador {
+    private final Reloj reloj;
+
+    /**
+     * @param id Identificador del despachador
+     * @param zona Zona de despacho propia
+     * @param reloj Reloj donde se programan llegadas y fines de atención;
+     *              puede compartirse entre despachadores
+     */
+    public DespachadorProgramado(String id, int zona, Reloj reloj) {
+        super(id, zona);
+        this.reloj = reloj;
+    }
+
+    /**
+     * @param atenciones Dónde sigue una emergencia cuando le entregan los
+     *                   recursos que esperaba; con un motor de eventos, en el
+     *                   mismo hilo ({@code Runnable::run}) para que el orden
+     *                   sea determinista
+     */
+    public DespachadorProgramado(String id, int zona, Reloj reloj, Executor atenciones) {
+        super(id, zona, atenciones);
+        this.reloj = reloj;
+    }
+
+    /**
+     * Despacha las emergencias en cola sin esperar a que lleguen más. Se
+     * detiene si la lista de espera de ambulancias se llena: las que quedan
+     * siguen en la cola hasta que se libere una ambulancia.
+     * @return emergencias despachadas
+     */
+    public int despacharPendientes() {
+        int despachadas = 0;
+        Emergencia emergencia;
+        while (!gestorRecursos.isEsperaAmbulanciasLlena()
+               && (emergencia = gestorEmergencias.obtenerSiguienteSiHay(getZona())) != null) {
+            procesarEmergencia(emergencia);
+            despachadas++;
+        }
+        return despachadas;
+    }
+
+    @Override
+    protected void simularAtencion(Emergencia emergencia, Ambulancia ambulancia,
+                                   List<MedicoEmergencia> medicos) {
+        int tiempoLlegada = calcularTiempoLlegada(emergencia, ambulancia);
+        Registro.info("  🚑 {} en camino... (~{}s)", ambulancia.getId(), tiempoLlegada);
+        Traslado traslado = gestorRecursos.iniciarTraslado(ambulancia, emergencia, medicos,
+                                                          TimeUnit.SECONDS.toNanos(tiempoLlegada));
+        programar(() -> llegar(traslado), tiempoLlegada);
+    }
+
+    /**
+     * Hora prevista de llegada. Si la ambulancia se desvió, sus recursos ya
+     * son de otra emergencia y aquí no queda nada por hacer.
+     */
+    private void llegar(Traslado traslado) {
+        boolean llego = traslado.terminar();
+        gestorRecursos.terminarTraslado(traslado);
+        if (!llego) {
+            return;
+        }
+        Emergencia emergencia = traslado.getEmergencia();
+        gestorEmergencias.marcarEnSitio(emergencia);
+        Registro.info("  Atendiendo {} con {} médicos...", emergencia.getCodigo(), traslado.getMedicos().size());
+        programar(() -> terminarAtencion(traslado), calcularTiempoAtencion(emergencia));
+    }
+
+    private void terminarAtencion(Traslado traslado) {
+        gestorEmergencias.marcarAtendida(traslado.getEmergencia());
+        gestorRecursos.liberarAmbulancia(traslado.getAmbulancia());
+        gestorRecursos.liberarMedicos(traslado.getMedicos());
+        // La ambulancia, o el lugar que dejó en la lista de espera, puede
+        // servir a una emergencia que quedó en la cola con la lista llena.
+        // Se despacha en los hilos de atenciones y no en el del reloj, que
+        // comparten todos los despachadores; uno detenido ya no despacha
+        if (isActivo()) {
+            atenciones.execute(this::despacharPendientes);
+        }
+    }
+
+    /**
+     * Programa un paso de la atención. Un error se registra en lugar de
+     * perderse en el futuro de la tarea.
+     */
+    private void programar(Runnable paso, int segundos) {
+        reloj.programar(() -> {
+            try {
+                paso.run();
+            } catch (RuntimeException e) {
+                Registro.error("Error en {} atendiendo emergencia: {}", getId(), e.getMessage());
+            }
+        }, segundos, TimeUnit.SECONDS);
+    }
+}
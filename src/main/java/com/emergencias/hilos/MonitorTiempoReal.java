@@ -1,7 +1,11 @@
 package com.emergencias.hilos;
 
 import com.emergencias.gestores.*;
+import com.emergencias.metricas.EtapaAtencion;
+import com.emergencias.metricas.HistogramaLatencia;
+import com.emergencias.metricas.MetricasRespuesta;
 import com.emergencias.modelos.*;
+import com.emergencias.rutas.MotorTiempos;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -17,8 +21,19 @@ public class MonitorTiempoReal implements Runnable {
     private final GestorRecursos gestorRecursos;
     private volatile boolean activo;
     private final int intervaloSegundos;
+    private final ControladorDespachadores controlador;
     
     public MonitorTiempoReal(int intervaloSegundos) {
+        this(intervaloSegundos, null);
+    }
+    
+    /**
+     * @param intervaloSegundos Tiempo entre actualizaciones del panel
+     * @param controlador Controlador del pool elástico de despachadores, o null
+     *                    si el número de despachadores es fijo
+     */
+    public MonitorTiempoReal(int intervaloSegundos, ControladorDespachadores controlador) {
+        this.controlador = controlador;
         this.gestorEmergencias = GestorEmergencias.getInstancia();
         this.gestorRecursos = GestorRecursos.getInstancia();
         this.activo = true;
@@ -69,18 +84,20 @@ public class MonitorTiempoReal implements Runnable {
         display.append("╠══════════════════════════════════════════════════════════════════════════╣\n");
         
         // Sección de Recursos
+        VistaRecursos recursos = gestorRecursos.getVista();
         display.append("║ RECURSOS DISPONIBLES:                                                    ║\n");
         display.append(String.format("║   Ambulancias:  %d / %d disponibles                                   ║\n",
-            gestorRecursos.getAmbulanciasDisponibles(),
-            gestorRecursos.getAmbulanciasTotales()));
+            recursos.getAmbulanciasDisponibles(),
+            recursos.getAmbulanciasTotales()));
         display.append(String.format("║   Medicos:      %d / %d disponibles                                   ║\n",
-            gestorRecursos.getMedicosDisponibles(),
-            gestorRecursos.getMedicosTotales()));
+            recursos.getMedicosDisponibles(),
+            recursos.getMedicosTotales()));
         
         display.append("╠══════════════════════════════════════════════════════════════════════════╣\n");
         
         // Cola de emergencias pendientes (top 5)
-        List<Emergencia> cola = gestorEmergencias.getColaEmergencias();
+        List<Emergencia> cola = gestorEmergencias.getProximasEmergencias(5);
+        int pendientes = gestorEmergencias.getEmergenciasPendientes();
         if (!cola.isEmpty()) {
             display.append("║ PRÓXIMAS EMERGENCIAS (Top 5 por Prioridad):                              ║\n");
             int count = 0;
@@ -89,9 +106,9 @@ public class MonitorTiempoReal implements Runnable {
                 display.append(String.format("║   %d. EMG-%03d [%-8s] %-44s ║\n", 
                     ++count, e.getId(), e.getPrioridad(), e.getUbicacion()));
             }
-            if (cola.size() > 5) {
+            if (pendientes > 5) {
                 display.append(String.format("║   ... y %d más en cola                                                    ║\n", 
-                    cola.size() - 5));
+                    pendientes - 5));
             }
         } else {
             display.append("║ PRÓXIMAS EMERGENCIAS: [Sin emergencias pendientes]                      ║\n");
@@ -100,10 +117,7 @@ public class MonitorTiempoReal implements Runnable {
         display.append("╠══════════════════════════════════════════════════════════════════════════╣\n");
         
         // Ambulancias en servicio
-        List<Ambulancia> ambulanciasOcupadas = gestorRecursos.getAmbulancias().stream()
-            .filter(a -> !a.isDisponible())
-            .limit(5)
-            .toList();
+        List<Ambulancia> ambulanciasOcupadas = gestorRecursos.getAmbulanciasEnServicio(5);
         
         if (!ambulanciasOcupadas.isEmpty()) {
             display.append("║ AMBULANCIAS EN SERVICIO:                                                 ║\n");
@@ -126,6 +140,26 @@ public class MonitorTiempoReal implements Runnable {
         display.append(String.format("║   🟡 MODERADO:   %-56d ║\n", stats.getOrDefault(Prioridad.MODERADO, 0)));
         display.append(String.format("║   🟢 LEVE:       %-56d ║\n", stats.getOrDefault(Prioridad.LEVE, 0)));
         
+        display.append("╠══════════════════════════════════════════════════════════════════════════╣\n");
+        
+        // Tiempo hasta asignación en el último intervalo
+        display.append("║ TIEMPO HASTA ASIGNACIÓN (último intervalo, s):   n     p50    p90    p99 ║\n");
+        MetricasRespuesta metricas = gestorEmergencias.getMetricas();
+        for (Prioridad p : Prioridad.values()) {
+            HistogramaLatencia.Resumen intervalo = metricas.intervalo(p, EtapaAtencion.ASIGNACION);
+            display.append(String.format("║   %-10s %37d %7.1f %6.1f %6.1f ║\n", p.name(), intervalo.getTotal(),
+                intervalo.percentil(50) / 1e6, intervalo.percentil(90) / 1e6, intervalo.percentil(99) / 1e6));
+        }
+        
+        if (controlador != null) {
+            display.append("╠══════════════════════════════════════════════════════════════════════════╣\n");
+            display.append(String.format("║ DESPACHADORES: %d activos (%d a %d), +%d / -%d cambios%-24s ║\n",
+                controlador.getDespachadoresActivos(), controlador.getMinimo(), controlador.getMaximo(),
+                controlador.getAmpliaciones(), controlador.getReducciones(), ""));
+            display.append(String.format("║   Espera más antigua: %6.1fs   p99 espera en cola: %6.1fs %15s ║\n",
+                controlador.getEsperaMasAntiguaNanos() / 1e9, controlador.getP99EsperaMicros() / 1e6, ""));
+        }
+        
         display.append("╚══════════════════════════════════════════════════════════════════════════╝\n");
         
         System.out.print(display.toString());
@@ -139,11 +173,34 @@ public class MonitorTiempoReal implements Runnable {
         System.out.println("RESUMEN FINAL DEL SISTEMA");
         System.out.println("=".repeat(80));
         System.out.println(gestorEmergencias.getEstadisticas());
+        System.out.println("\nTIEMPOS POR ETAPA:");
+        for (EtapaAtencion etapa : EtapaAtencion.values()) {
+            System.out.print(gestorEmergencias.getMetricas().informe(etapa));
+        }
         System.out.println("\nRECURSOS FINALES:");
         System.out.println("  Ambulancias disponibles: " + gestorRecursos.getAmbulanciasDisponibles() + 
                          " / " + gestorRecursos.getAmbulanciasTotales());
         System.out.println("  Médicos disponibles: " + gestorRecursos.getMedicosDisponibles() + 
                          " / " + gestorRecursos.getMedicosTotales());
+        System.out.println("  Reservas de ambulancia: " + gestorRecursos.getReservasExitosas() +
+                         " (" + gestorRecursos.getReservasFallidas() + " carreras perdidas)");
+        System.out.println("  Ambulancias desviadas: " + gestorRecursos.getDesvios());
+        System.out.println("  Entregas directas a emergencias en espera: " + gestorRecursos.getEntregasDirectas() +
+                         " (en espera: " + gestorRecursos.getEsperandoAmbulancia() + " de ambulancia, " +
+                         gestorRecursos.getEsperandoMedicos() + " de médicos)");
+        MotorTiempos motor = gestorRecursos.getMotorTiempos();
+        if (motor != null) {
+            System.out.println("  Rutas cercanas: " + motor.getConsultasCercanas() + " consultas (" +
+                             motor.getAciertosCache() + " con fila precalculada)");
+        }
+        if (controlador != null) {
+            System.out.println("\nDESPACHADORES ELÁSTICOS: " + controlador.getDespachadoresActivos() + " activos al final, " +
+                             controlador.getAmpliaciones() + " ampliaciones, " +
+                             controlador.getReducciones() + " reducciones");
+            for (ControladorDespachadores.Decision decision : controlador.getDecisiones()) {
+                System.out.println("  " + decision);
+            }
+        }
         System.out.println("=".repeat(80));
     }
     
@@ -1,13 +1,19 @@
 package com.emergencias.hilos;
 
-import com.emergencias.modelos.*;
+import com.emergencias.carga.GeneradorEmergencias;
+import com.emergencias.carga.MezclaPrioridades;
 import com.emergencias.gestores.GestorEmergencias;
+import com.emergencias.gestores.ResultadoAdmision;
+import com.emergencias.modelos.Emergencia;
+import com.emergencias.registro.Registro;
+import com.emergencias.simulacion.Reloj;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Hilo que simula un operador recibiendo llamadas de emergencia.
- * Implementa patrón Producer para generar emergencias.
+ * Implementa patrón Producer para generar emergencias. También puede recibir
+ * las llamadas como eventos de un {@link Reloj} (ver {@link #programarEn}).
  * 
  * @author Equipo Emergencias
  * @version 1.0
@@ -16,97 +22,121 @@ public class OperadorLlamadas implements Runnable {
     private final String id;
     private final GestorEmergencias gestorEmergencias;
     private final Random random;
+    private final GeneradorEmergencias generador;
     private volatile boolean activo;
     private int llamadasAtendidas;
+    private int llamadasRechazadas;
     
-    // Ubicaciones comunes de Santa Marta
-    private static final String[] UBICACIONES = {
-        "Calle 22 con Carrera 5",
-        "Rodadero Sur",
-        "El Centro Histórico",
-        "Mamatoco",
-        "Gaira",
-        "Bello Horizonte",
-        "Taganga",
-        "Pozos Colorados",
-        "Bastidas",
-        "Altos del Prado"
-    };
-    
-    // Descripciones de emergencias
-    private static final String[] DESCRIPCIONES = {
-        "Dolor de pecho severo",
-        "Dificultad respiratoria",
-        "Traumatismo por accidente",
-        "Sangrado abundante",
-        "Pérdida de conciencia",
-        "Convulsiones",
-        "Fractura expuesta",
-        "Quemaduras graves",
-        "Intoxicación",
-        "Paro cardíaco"
-    };
+    // Espera máxima para registrar una llamada cuando la cola está saturada
+    private static final long ESPERA_ADMISION_MS = 2000;
     
     public OperadorLlamadas(String id) {
+        this(id, MezclaPrioridades.PREDETERMINADA);
+    }
+    
+    /**
+     * @param id Identificador del operador
+     * @param mezcla Proporción de llamadas de cada prioridad
+     */
+    public OperadorLlamadas(String id, MezclaPrioridades mezcla) {
+        this(id, new Random(), mezcla);
+    }
+    
+    /**
+     * Crea un operador que genera siempre la misma secuencia de llamadas.
+     * @param id Identificador del operador
+     * @param semilla Semilla del generador de llamadas
+     */
+    public OperadorLlamadas(String id, long semilla) {
+        this(id, semilla, MezclaPrioridades.PREDETERMINADA);
+    }
+    
+    /**
+     * @param id Identificador del operador
+     * @param semilla Semilla del generador de llamadas
+     * @param mezcla Proporción de llamadas de cada prioridad
+     */
+    public OperadorLlamadas(String id, long semilla, MezclaPrioridades mezcla) {
+        this(id, new Random(semilla), mezcla);
+    }
+    
+    private OperadorLlamadas(String id, Random random, MezclaPrioridades mezcla) {
         this.id = id;
         this.gestorEmergencias = GestorEmergencias.getInstancia();
-        this.random = new Random();
+        this.random = random;
+        this.generador = new GeneradorEmergencias(mezcla, random);
         this.activo = true;
         this.llamadasAtendidas = 0;
+        this.llamadasRechazadas = 0;
     }
     
     @Override
     public void run() {
-        System.out.println("👤 " + id + " iniciado y esperando llamadas...");
+        Registro.info("👤 {} iniciado y esperando llamadas...", id);
         
         try {
             while (activo && !Thread.currentThread().isInterrupted()) {
-                // Simular tiempo entre llamadas (0.5-3 segundos) para más emergencias
-                TimeUnit.MILLISECONDS.sleep(500 + random.nextInt(2500));
+                TimeUnit.MILLISECONDS.sleep(calcularPausaMillis());
                 
                 // Generar emergencia aleatoria
-                Emergencia emergencia = generarEmergenciaAleatoria();
-                
-                // Registrar en el sistema
-                gestorEmergencias.registrarEmergencia(emergencia);
-                llamadasAtendidas++;
+                Emergencia emergencia = generador.generar();
                 
-                System.out.println("  " + id + " registró llamada #" + llamadasAtendidas);
+                // Registrar en el sistema (espera acotada si la cola está saturada)
+                contarLlamada(gestorEmergencias.registrar(emergencia, ESPERA_ADMISION_MS, TimeUnit.MILLISECONDS));
             }
         } catch (InterruptedException e) {
-            System.out.println("⚠ " + id + " interrumpido");
+            Registro.info("⚠ {} interrumpido", id);
             Thread.currentThread().interrupt();
         } finally {
-            System.out.println("👤 " + id + " finalizado. Total llamadas: " + llamadasAtendidas);
+            Registro.info("👤 {} finalizado. Total llamadas: {}", id, llamadasAtendidas);
         }
     }
     
     /**
-     * Genera una emergencia con datos aleatorios realistas.
-     * @return Emergencia generada
+     * Recibe llamadas como eventos de un reloj en lugar de en un hilo propio:
+     * cada llamada programa la siguiente. La admisión no espera, así que una
+     * llamada que no cabe en la cola se rechaza.
+     * @param reloj Reloj donde se programan las llamadas
+     * @param alAdmitir Se ejecuta tras cada llamada admitida, por ejemplo para despacharla
      */
-    private Emergencia generarEmergenciaAleatoria() {
-        // Distribución realista de prioridades (más leves que críticas)
-        Prioridad prioridad;
-        int valor = random.nextInt(100);
-        if (valor < 10) {
-            prioridad = Prioridad.CRITICO;
-        } else if (valor < 30) {
-            prioridad = Prioridad.GRAVE;
-        } else if (valor < 60) {
-            prioridad = Prioridad.MODERADO;
-        } else {
-            prioridad = Prioridad.LEVE;
+    public void programarEn(Reloj reloj, Runnable alAdmitir) {
+        reloj.programar(() -> {
+            if (!activo) {
+                return;
+            }
+            if (contarLlamada(gestorEmergencias.tryRegistrar(generador.generar()))) {
+                alAdmitir.run();
+            }
+            programarEn(reloj, alAdmitir);
+        }, calcularPausaMillis(), TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Tiempo hasta la próxima llamada (0.5-3 segundos). Con la cola bajo
+     * presión se espacian las llamadas en lugar de producir a ciegas.
+     */
+    private long calcularPausaMillis() {
+        long pausa = 500 + random.nextInt(2500);
+        double presion = gestorEmergencias.getPresionAdmision();
+        if (presion >= 0.9) {
+            pausa += (long) (1000 * presion);
         }
-        
-        String ubicacion = UBICACIONES[random.nextInt(UBICACIONES.length)];
-        String descripcion = DESCRIPCIONES[random.nextInt(DESCRIPCIONES.length)];
-        
-        // Coordenadas aleatorias dentro de Santa Marta
-        double latitud = 11.2 + (random.nextDouble() * 0.2); // Aproximado
-        double longitud = -74.2 + (random.nextDouble() * 0.2);
-        
-        return new Emergencia(ubicacion, prioridad, descripcion, latitud, longitud);
+        return pausa;
+    }
+    
+    /**
+     * @return true si la llamada quedó registrada
+     */
+    private boolean contarLlamada(ResultadoAdmision resultado) {
+        if (resultado == ResultadoAdmision.RECHAZADA) {
+            llamadasRechazadas++;
+            Registro.advertencia("  {} no pudo registrar llamada: cola saturada ({} rechazadas)",
+                                 id, llamadasRechazadas);
+            return false;
+        }
+        llamadasAtendidas++;
+        Registro.info("  {} registró llamada #{} ({})", id, llamadasAtendidas, resultado);
+        return true;
     }
     
     /**
@@ -123,4 +153,8 @@ public class OperadorLlamadas implements Runnable {
     public int getLlamadasAtendidas() {
         return llamadasAtendidas;
     }
+    
+    public int getLlamadasRechazadas() {
+        return llamadasRechazadas;
+    }
 }
\ No newline at end of file
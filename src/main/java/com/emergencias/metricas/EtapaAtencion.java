@@ -0,0 +1,30 @@
+package com.emergencias.metricas;
+
+/**
+ * Etapas del ciclo de vida de una emergencia cuya duración se mide.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public enum EtapaAtencion {
+    /** Desde la llamada hasta que un despachador la saca de la cola. */
+    ESPERA_COLA("Espera en cola"),
+    /** Desde la llamada hasta que tiene recursos asignados. */
+    ASIGNACION("Hasta asignación"),
+    /** Desde la asignación hasta que la ambulancia llega al sitio. */
+    TRASLADO("Traslado"),
+    /** Desde la llegada al sitio hasta que se marca atendida. */
+    ATENCION("Atención"),
+    /** Desde la llamada hasta que se marca atendida. */
+    TOTAL("Total");
+
+    private final String descripcion;
+
+    EtapaAtencion(String descripcion) {
+        this.descripcion = descripcion;
+    }
+
+    public String getDescripcion() {
+        return descripcion;
+    }
+}
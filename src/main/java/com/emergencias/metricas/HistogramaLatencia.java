@@ -0,0 +1,224 @@
+package com.emergencias.metricas;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de latencias de memoria fija y sin locks, al estilo HdrHistogram.
+ * Los valores se guardan en microsegundos en cubetas log-lineales: cada potencia
+ * de dos se divide en {@value #SUBCUBETAS_MITAD} cubetas, así que el error
+ * relativo de cualquier percentil es menor al 1%. Cubre de 1 µs a unos 12 días
+ * (los valores mayores se acumulan en la última cubeta).
+ * <p>
+ * Registrar es un incremento atómico sobre un arreglo, seguro desde cualquier
+ * número de hilos. Las lecturas se hacen sobre un {@link Resumen} inmutable;
+ * un resumen tomado mientras otros hilos registran puede omitir los valores
+ * que estaban en vuelo, pero nunca cuenta uno dos veces.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class HistogramaLatencia {
+    private static final int BITS_SUBCUBETA = 7;
+    private static final int SUBCUBETAS = 1 << BITS_SUBCUBETA;          // 128
+    private static final int SUBCUBETAS_MITAD = SUBCUBETAS >> 1;        // 64
+    private static final int BITS_MAXIMOS = 40;                         // 2^40 µs ≈ 12,7 días
+    private static final long VALOR_MAXIMO = (1L << BITS_MAXIMOS) - 1;
+    private static final int CUBETAS = SUBCUBETAS + (BITS_MAXIMOS - BITS_SUBCUBETA) * SUBCUBETAS_MITAD;
+
+    private final AtomicLongArray cuentas;
+    private final AtomicLong total;
+    private final AtomicLong suma;
+    private final AtomicLong maximo;
+
+    public HistogramaLatencia() {
+        this.cuentas = new AtomicLongArray(CUBETAS);
+        this.total = new AtomicLong();
+        this.suma = new AtomicLong();
+        this.maximo = new AtomicLong();
+    }
+
+    /**
+     * Registra una latencia.
+     * @param duracion Duración medida; los valores negativos cuentan como 0
+     * @param unidad Unidad de la duración
+     */
+    public void registrar(long duracion, TimeUnit unidad) {
+        registrarMicros(unidad.toMicros(Math.max(0L, duracion)));
+    }
+
+    /**
+     * Registra una latencia medida con System.nanoTime().
+     * @param nanos Duración en nanosegundos
+     */
+    public void registrarNanos(long nanos) {
+        registrarMicros(Math.max(0L, nanos) / 1_000L);
+    }
+
+    private void registrarMicros(long micros) {
+        long valor = Math.min(micros, VALOR_MAXIMO);
+        cuentas.incrementAndGet(indice(valor));
+        total.incrementAndGet();
+        suma.addAndGet(valor);
+        long actual = maximo.get();
+        while (valor > actual && !maximo.compareAndSet(actual, valor)) {
+            actual = maximo.get();
+        }
+    }
+
+    /**
+     * Número de valores registrados desde la creación.
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * Copia inmutable de las cuentas acumuladas.
+     * @return resumen acumulado
+     */
+    public Resumen resumen() {
+        long[] copia = new long[CUBETAS];
+        long cantidad = 0;
+        for (int i = 0; i < CUBETAS; i++) {
+            copia[i] = cuentas.get(i);
+            cantidad += copia[i];
+        }
+        return new Resumen(copia, cantidad, suma.get(), maximo.get());
+    }
+
+    /**
+     * Cubeta de un valor: los menores a {@value #SUBCUBETAS} tienen cubeta
+     * propia; a partir de ahí cada potencia de dos se reparte en 64 cubetas.
+     */
+    static int indice(long valor) {
+        if (valor < SUBCUBETAS) {
+            return (int) valor;
+        }
+        int desplazamiento = 64 - Long.numberOfLeadingZeros(valor) - BITS_SUBCUBETA;
+        int subcubeta = (int) (valor >>> desplazamiento);                  // [64, 128)
+        return SUBCUBETAS + (desplazamiento - 1) * SUBCUBETAS_MITAD + (subcubeta - SUBCUBETAS_MITAD);
+    }
+
+    /**
+     * Mayor valor que cae en la cubeta indicada.
+     */
+    static long limiteSuperior(int indice) {
+        if (indice < SUBCUBETAS) {
+            return indice;
+        }
+        int relativo = indice - SUBCUBETAS;
+        int desplazamiento = relativo / SUBCUBETAS_MITAD + 1;
+        long subcubeta = SUBCUBETAS_MITAD + relativo % SUBCUBETAS_MITAD;
+        return ((subcubeta + 1) << desplazamiento) - 1;
+    }
+
+    /**
+     * Distribución de latencias congelada en un instante. Todos los valores
+     * están en microsegundos.
+     */
+    public static class Resumen {
+        private final long[] cuentas;
+        private final long total;
+        private final long suma;
+        private final long maximo;
+
+        private Resumen(long[] cuentas, long total, long suma, long maximo) {
+            this.cuentas = cuentas;
+            this.total = total;
+            this.suma = suma;
+            this.maximo = maximo;
+        }
+
+        /**
+         * Valores registrados entre un resumen anterior y este, para reportar
+         * por intervalos. El máximo del intervalo se aproxima por su cubeta.
+         * @param anterior Resumen tomado antes sobre el mismo histograma
+         * @return resumen del intervalo
+         */
+        public Resumen desde(Resumen anterior) {
+            long[] diferencia = new long[cuentas.length];
+            long cantidad = 0;
+            int ultima = -1;
+            for (int i = 0; i < cuentas.length; i++) {
+                diferencia[i] = Math.max(0L, cuentas[i] - anterior.cuentas[i]);
+                cantidad += diferencia[i];
+                if (diferencia[i] > 0) {
+                    ultima = i;
+                }
+            }
+            long maximoIntervalo = ultima < 0 ? 0L : Math.min(maximo, limiteSuperior(ultima));
+            return new Resumen(diferencia, cantidad, Math.max(0L, suma - anterior.suma), maximoIntervalo);
+        }
+
+        /**
+         * Une dos resúmenes de histogramas distintos, por ejemplo los de todas
+         * las prioridades de una misma etapa.
+         * @param otro Resumen a sumar
+         * @return resumen con los valores de ambos
+         */
+        public Resumen mas(Resumen otro) {
+            long[] union = new long[cuentas.length];
+            for (int i = 0; i < cuentas.length; i++) {
+                union[i] = cuentas[i] + otro.cuentas[i];
+            }
+            return new Resumen(union, total + otro.total, suma + otro.suma, Math.max(maximo, otro.maximo));
+        }
+
+        /**
+         * Valor bajo el cual cae el porcentaje indicado de las latencias.
+         * @param percentil Percentil entre 0 y 100 (por ejemplo 99.9)
+         * @return latencia en microsegundos, o 0 si no hay valores
+         */
+        public long percentil(double percentil) {
+            if (total == 0) {
+                return 0L;
+            }
+            double acotado = Math.min(100.0, Math.max(0.0, percentil));
+            long objetivo = Math.max(1L, (long) Math.ceil(acotado / 100.0 * total));
+            long acumulado = 0;
+            for (int i = 0; i < cuentas.length; i++) {
+                acumulado += cuentas[i];
+                if (acumulado >= objetivo) {
+                    return Math.min(limiteSuperior(i), maximo);
+                }
+            }
+            return maximo;
+        }
+
+        /**
+         * Fracción de latencias que no superan un límite, por ejemplo el tiempo
+         * máximo de respuesta comprometido para una prioridad.
+         * @param limite Límite
+         * @param unidad Unidad del límite
+         * @return fracción entre 0 y 1, o 1 si no hay valores
+         */
+        public double fraccionHasta(long limite, TimeUnit unidad) {
+            if (total == 0) {
+                return 1.0;
+            }
+            long limiteMicros = unidad.toMicros(limite);
+            long dentro = 0;
+            for (int i = 0; i < cuentas.length && limiteSuperior(i) <= limiteMicros; i++) {
+                dentro += cuentas[i];
+            }
+            return (double) dentro / total;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getMaximo() {
+            return maximo;
+        }
+
+        /**
+         * Media exacta de los valores registrados, en microsegundos.
+         */
+        public double getMedia() {
+            return total == 0 ? 0.0 : (double) suma / total;
+        }
+    }
+}
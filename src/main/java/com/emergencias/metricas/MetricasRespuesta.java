@@ -0,0 +1,109 @@
+package com.emergencias.metricas;
+
+import com.emergencias.modelos.Prioridad;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Histogramas de latencia por prioridad y etapa de atención. Permite verificar
+ * bajo carga si cada prioridad cumple su tiempo de respuesta comprometido,
+ * tanto en lo acumulado como en el último intervalo.
+ * <p>
+ * Registrar no toma locks. Las vistas por intervalo recuerdan el resumen
+ * anterior de cada histograma, así que conviene que las pida un solo lector
+ * (por ejemplo, el monitor).
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class MetricasRespuesta {
+    private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9};
+
+    private final HistogramaLatencia[][] histogramas;
+    private final HistogramaLatencia.Resumen[][] anteriores;
+
+    public MetricasRespuesta() {
+        int prioridades = Prioridad.values().length;
+        int etapas = EtapaAtencion.values().length;
+        histogramas = new HistogramaLatencia[prioridades][etapas];
+        anteriores = new HistogramaLatencia.Resumen[prioridades][etapas];
+        for (int p = 0; p < prioridades; p++) {
+            for (int e = 0; e < etapas; e++) {
+                histogramas[p][e] = new HistogramaLatencia();
+                anteriores[p][e] = histogramas[p][e].resumen();
+            }
+        }
+    }
+
+    /**
+     * Registra la duración de una etapa.
+     * @param prioridad Prioridad de la emergencia al terminar la etapa
+     * @param etapa Etapa medida
+     * @param nanos Duración según System.nanoTime()
+     */
+    public void registrar(Prioridad prioridad, EtapaAtencion etapa, long nanos) {
+        histogramas[prioridad.ordinal()][etapa.ordinal()].registrarNanos(nanos);
+    }
+
+    public HistogramaLatencia getHistograma(Prioridad prioridad, EtapaAtencion etapa) {
+        return histogramas[prioridad.ordinal()][etapa.ordinal()];
+    }
+
+    /**
+     * Distribución acumulada desde el arranque.
+     */
+    public HistogramaLatencia.Resumen acumulado(Prioridad prioridad, EtapaAtencion etapa) {
+        return getHistograma(prioridad, etapa).resumen();
+    }
+
+    /**
+     * Distribución acumulada de una etapa sumando todas las prioridades. No
+     * toca el estado de {@link #intervalo}: quien quiera sus propios
+     * intervalos guarda el resumen anterior y usa
+     * {@link HistogramaLatencia.Resumen#desde}.
+     */
+    public HistogramaLatencia.Resumen acumulado(EtapaAtencion etapa) {
+        HistogramaLatencia.Resumen total = null;
+        for (Prioridad p : Prioridad.values()) {
+            HistogramaLatencia.Resumen resumen = acumulado(p, etapa);
+            total = total == null ? resumen : total.mas(resumen);
+        }
+        return total;
+    }
+
+    /**
+     * Distribución de los valores registrados desde la llamada anterior a este
+     * método para la misma prioridad y etapa.
+     */
+    public synchronized HistogramaLatencia.Resumen intervalo(Prioridad prioridad, EtapaAtencion etapa) {
+        HistogramaLatencia.Resumen actual = acumulado(prioridad, etapa);
+        HistogramaLatencia.Resumen anterior = anteriores[prioridad.ordinal()][etapa.ordinal()];
+        anteriores[prioridad.ordinal()][etapa.ordinal()] = actual;
+        return actual.desde(anterior);
+    }
+
+    /**
+     * Tabla de percentiles acumulados de una etapa, una fila por prioridad.
+     * @param etapa Etapa a reportar
+     * @return texto con total, media, p50, p90, p99, p99.9 y máximo en segundos
+     */
+    public String informe(EtapaAtencion etapa) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%s (s):%n", etapa.getDescripcion()));
+        sb.append(String.format("  %-9s %8s %8s %8s %8s %8s %8s %8s%n",
+            "", "n", "media", "p50", "p90", "p99", "p99.9", "max"));
+        for (Prioridad p : Prioridad.values()) {
+            HistogramaLatencia.Resumen resumen = acumulado(p, etapa);
+            sb.append(String.format("  %-9s %8d %8.2f", p.name(), resumen.getTotal(),
+                segundos(resumen.getMedia())));
+            for (double percentil : PERCENTILES) {
+                sb.append(String.format(" %8.2f", segundos(resumen.percentil(percentil))));
+            }
+            sb.append(String.format(" %8.2f%n", segundos(resumen.getMaximo())));
+        }
+        return sb.toString();
+    }
+
+    private static double segundos(double micros) {
+        return micros / (double) TimeUnit.SECONDS.toMicros(1);
+    }
+}
@@ -1,21 +1,24 @@
 package com.emergencias.modelos;
 
-import java.util.concurrent.atomic.AtomicBoolean;
-
 /**
  * Representa una ambulancia del sistema de emergencias.
  * Incluye información sobre disponibilidad, ubicación y capacidad.
+ * <p>
+ * La posición y la disponibilidad viven en un {@link EstadoFlota}; el objeto
+ * solo guarda lo que no se recorre en masa (id, tipo, emergencia actual).
  * 
  * @author Equipo Emergencias
  * @version 1.0
  */
 public class Ambulancia {
     private final String id;
-    private final AtomicBoolean disponible;
-    private double latitud;
-    private double longitud;
+    private final EstadoFlota flota;
+    private final int posicion;
+    private double latitudSalida;
+    private double longitudSalida;
     private Emergencia emergenciaActual;
     private final int capacidadMedicos;
+    private int celdaIndice = -1;
     
     public enum TipoAmbulancia {
         BASICA(2), AVANZADA(4), UCI_MOVIL(6);
@@ -27,13 +30,18 @@ public class Ambulancia {
     
     private final TipoAmbulancia tipo;
     
-    public Ambulancia(String id, TipoAmbulancia tipo, double latitud, double longitud) {
+    /**
+     * Crea una ambulancia disponible con su estado en el almacén de su flota.
+     * @param flota Almacén del estado de la flota
+     */
+    public Ambulancia(String id, TipoAmbulancia tipo, double latitud, double longitud, EstadoFlota flota) {
         this.id = id;
         this.tipo = tipo;
         this.capacidadMedicos = tipo.getCapacidad();
-        this.latitud = latitud;
-        this.longitud = longitud;
-        this.disponible = new AtomicBoolean(true);
+        this.latitudSalida = latitud;
+        this.longitudSalida = longitud;
+        this.flota = flota;
+        this.posicion = flota.registrar(this, tipo, latitud, longitud);
     }
     
     /**
@@ -41,7 +49,7 @@ public class Ambulancia {
      * @return true si se pudo reservar, false si ya estaba ocupada
      */
     public boolean reservar() {
-        return disponible.compareAndSet(true, false);
+        return flota.reservar(posicion);
     }
     
     /**
@@ -49,7 +57,7 @@ public class Ambulancia {
      */
     public void liberar() {
         this.emergenciaActual = null;
-        disponible.set(true);
+        flota.liberar(posicion);
     }
     
     /**
@@ -58,33 +66,76 @@ public class Ambulancia {
      * @return distancia calculada
      */
     public double calcularDistancia(Emergencia emergencia) {
-        double deltaLat = emergencia.getLatitud() - this.latitud;
-        double deltaLon = emergencia.getLongitud() - this.longitud;
+        return calcularDistancia(getLatitud(), getLongitud(), emergencia);
+    }
+    
+    /**
+     * Distancia recorrida o por recorrer desde la posición de salida hasta la
+     * emergencia actual, que {@link #moverA} ya usa como posición.
+     * @return distancia calculada
+     */
+    public double calcularDistanciaViaje() {
+        Emergencia actual = emergenciaActual;
+        return actual == null ? 0.0 : calcularDistancia(latitudSalida, longitudSalida, actual);
+    }
+    
+    private static double calcularDistancia(double latitud, double longitud, Emergencia emergencia) {
+        double deltaLat = emergencia.getLatitud() - latitud;
+        double deltaLon = emergencia.getLongitud() - longitud;
         return Math.sqrt(deltaLat * deltaLat + deltaLon * deltaLon);
     }
     
     /**
-     * Mueve la ambulancia a la ubicación de la emergencia.
+     * Mueve la ambulancia a la ubicación de la emergencia, recordando desde
+     * dónde salió para estimar el viaje.
      * @param emergencia Emergencia destino
      */
     public void moverA(Emergencia emergencia) {
-        this.latitud = emergencia.getLatitud();
-        this.longitud = emergencia.getLongitud();
+        this.latitudSalida = getLatitud();
+        this.longitudSalida = getLongitud();
+        flota.mover(posicion, emergencia.getLatitud(), emergencia.getLongitud());
         this.emergenciaActual = emergencia;
     }
     
+    /**
+     * Sitúa la ambulancia en una posición conocida, por ejemplo al restaurar
+     * una instantánea tras un reinicio.
+     * @param latitud Latitud
+     * @param longitud Longitud
+     */
+    public void ubicarEn(double latitud, double longitud) {
+        flota.mover(posicion, latitud, longitud);
+        this.latitudSalida = latitud;
+        this.longitudSalida = longitud;
+    }
+    
     // Getters
     public String getId() { return id; }
-    public boolean isDisponible() { return disponible.get(); }
-    public double getLatitud() { return latitud; }
-    public double getLongitud() { return longitud; }
+    public boolean isDisponible() { return flota.isDisponible(posicion); }
+    public double getLatitud() { return flota.latitud(posicion); }
+    public double getLongitud() { return flota.longitud(posicion); }
     public Emergencia getEmergenciaActual() { return emergenciaActual; }
+    public double getLatitudSalida() { return latitudSalida; }
+    public double getLongitudSalida() { return longitudSalida; }
     public TipoAmbulancia getTipo() { return tipo; }
     public int getCapacidadMedicos() { return capacidadMedicos; }
     
+    /**
+     * Posición de la ambulancia en su {@link EstadoFlota}.
+     */
+    public int getPosicionFlota() { return posicion; }
+    
+    /**
+     * Celda del índice espacial de disponibles donde está la ambulancia.
+     * Solo la modifica el índice, bajo el monitor de la ambulancia; -1 si no está indexada.
+     * @return índice de la celda o -1
+     */
+    public int getCeldaIndice() { return celdaIndice; }
+    public void setCeldaIndice(int celdaIndice) { this.celdaIndice = celdaIndice; }
+    
     @Override
     public String toString() {
         return String.format("%s [%s] - %s", id, tipo, 
-            disponible.get() ? "DISPONIBLE" : "OCUPADA");
+            isDisponible() ? "DISPONIBLE" : "OCUPADA");
     }
 }
\ No newline at end of file
@@ -1,6 +1,9 @@
 package com.emergencias.modelos;
 
+import com.emergencias.simulacion.Reloj;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -12,16 +15,25 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class Emergencia implements Comparable<Emergencia> {
     private static final AtomicInteger contadorId = new AtomicInteger(0);
+    // Divisor constante: el JIT lo convierte en multiplicación, a diferencia de TimeUnit.toMinutes
+    private static final long NANOS_POR_MINUTO = TimeUnit.MINUTES.toNanos(1);
     
     private final int id;
+    private final String codigo;
     private final String ubicacion;
-    private final Prioridad prioridad;
+    private volatile Prioridad prioridad;
     private final String descripcion;
     private final LocalDateTime horaLlamada;
+    private final long marcaLlamadaNanos;
+    private volatile long marcaSalidaColaNanos;
+    private volatile long marcaAsignacionNanos;
+    private volatile long marcaEnSitioNanos;
+    private volatile boolean desplazada;
     private final double latitud;
     private final double longitud;
     private EstadoEmergencia estado;
     private String ambulanciaAsignada;
+    private int posicionCola = -1;
     
     public enum EstadoEmergencia {
         PENDIENTE, EN_PROCESO, ATENDIDA, CANCELADA
@@ -30,21 +42,107 @@ public class Emergencia implements Comparable<Emergencia> {
     public Emergencia(String ubicacion, Prioridad prioridad, String descripcion, 
                       double latitud, double longitud) {
         this.id = contadorId.incrementAndGet();
+        this.codigo = String.format("EMG-%03d", id);
         this.ubicacion = ubicacion;
         this.prioridad = prioridad;
         this.descripcion = descripcion;
-        this.horaLlamada = LocalDateTime.now();
+        Reloj reloj = Reloj.actual();
+        this.horaLlamada = reloj.ahora();
+        this.marcaLlamadaNanos = reloj.nanos();
         this.latitud = latitud;
         this.longitud = longitud;
         this.estado = EstadoEmergencia.PENDIENTE;
     }
     
+    /**
+     * Crea una emergencia cuya llamada ocurrió en un instante ya pasado del
+     * reloj. Un generador de carga la fecha en el instante en que debía
+     * llegar, así que si se atrasó el retraso cuenta en los tiempos de
+     * respuesta en lugar de esconderse.
+     * @param marcaLlamadaNanos Instante de la llamada según {@link Reloj#nanos()}
+     */
+    public Emergencia(String ubicacion, Prioridad prioridad, String descripcion,
+                      double latitud, double longitud, long marcaLlamadaNanos) {
+        this.id = contadorId.incrementAndGet();
+        this.codigo = String.format("EMG-%03d", id);
+        this.ubicacion = ubicacion;
+        this.prioridad = prioridad;
+        this.descripcion = descripcion;
+        Reloj reloj = Reloj.actual();
+        long ahora = reloj.nanos();
+        long atraso = Math.max(0L, ahora - marcaLlamadaNanos);
+        this.horaLlamada = reloj.ahora().minusNanos(atraso);
+        this.marcaLlamadaNanos = ahora - atraso;
+        this.latitud = latitud;
+        this.longitud = longitud;
+        this.estado = EstadoEmergencia.PENDIENTE;
+    }
+
+    /**
+     * Reconstruye una emergencia registrada anteriormente, por ejemplo al
+     * recuperarla del diario tras un reinicio. Conserva el id y la hora de la
+     * llamada original, así que el envejecimiento continúa donde quedó, y
+     * garantiza que las emergencias nuevas reciban ids mayores.
+     * @param id Id original
+     * @param ubicacion Ubicación
+     * @param prioridad Prioridad vigente
+     * @param descripcion Descripción
+     * @param horaLlamada Hora original de la llamada
+     * @param latitud Latitud
+     * @param longitud Longitud
+     */
+    public Emergencia(int id, String ubicacion, Prioridad prioridad, String descripcion,
+                      LocalDateTime horaLlamada, double latitud, double longitud) {
+        contadorId.accumulateAndGet(id, Math::max);
+        this.id = id;
+        this.codigo = String.format("EMG-%03d", id);
+        this.ubicacion = ubicacion;
+        this.prioridad = prioridad;
+        this.descripcion = descripcion;
+        this.horaLlamada = horaLlamada;
+        Reloj reloj = Reloj.actual();
+        long esperaNanos = Math.max(0L, Duration.between(horaLlamada, reloj.ahora()).toNanos());
+        this.marcaLlamadaNanos = reloj.nanos() - esperaNanos;
+        this.latitud = latitud;
+        this.longitud = longitud;
+        this.estado = EstadoEmergencia.PENDIENTE;
+    }
+    
+    /**
+     * Garantiza que las emergencias creadas a partir de ahora tengan id mayor que el indicado.
+     * @param id Último id usado
+     */
+    public static void reservarIdsHasta(int id) {
+        contadorId.accumulateAndGet(id, Math::max);
+    }
+    
     /**
      * Calcula la prioridad efectiva considerando gravedad y tiempo de espera.
      * @return valor de prioridad calculado
      */
     public double calcularPrioridadEfectiva() {
-        long minutosEspera = java.time.Duration.between(horaLlamada, LocalDateTime.now()).toMinutes();
+        return calcularPrioridadEfectiva(Reloj.actual().nanos());
+    }
+    
+    /**
+     * Calcula la prioridad efectiva en un instante dado del reloj monotónico.
+     * Permite evaluar varias emergencias con una sola lectura del reloj.
+     * @param ahoraNanos Instante de referencia según {@link Reloj#nanos()}
+     * @return valor de prioridad calculado
+     */
+    public double calcularPrioridadEfectiva(long ahoraNanos) {
+        return calcularPrioridadEfectiva(prioridad, marcaLlamadaNanos, ahoraNanos);
+    }
+    
+    /**
+     * Prioridad efectiva de una llamada de gravedad dada hecha en un instante dado.
+     * @param prioridad Gravedad base
+     * @param marcaLlamadaNanos Instante de la llamada según {@link Reloj#nanos()}
+     * @param ahoraNanos Instante de referencia según {@link Reloj#nanos()}
+     * @return valor de prioridad calculado
+     */
+    public static double calcularPrioridadEfectiva(Prioridad prioridad, long marcaLlamadaNanos, long ahoraNanos) {
+        long minutosEspera = (ahoraNanos - marcaLlamadaNanos) / NANOS_POR_MINUTO;
         // Factor de urgencia aumenta con el tiempo de espera
         double factorTiempo = 1 + (minutosEspera * 0.1);
         return prioridad.getValor() * factorTiempo;
@@ -60,20 +158,31 @@ public class Emergencia implements Comparable<Emergencia> {
         return Math.sqrt(Math.pow(latitud - lat, 2) + Math.pow(longitud - lon, 2));
     }
     
+    /**
+     * Orden estable por gravedad base y, a igual gravedad, por antigüedad.
+     * No consulta el reloj: el envejecimiento se aplica en la cola al extraer.
+     */
     @Override
     public int compareTo(Emergencia otra) {
         // Comparación inversa para que mayor prioridad vaya primero
-        return Double.compare(otra.calcularPrioridadEfectiva(), this.calcularPrioridadEfectiva());
+        int porGravedad = Integer.compare(otra.prioridad.getValor(), this.prioridad.getValor());
+        if (porGravedad != 0) {
+            return porGravedad;
+        }
+        return Long.compare(this.marcaLlamadaNanos - otra.marcaLlamadaNanos, 0L);
     }
     
     // Getters y Setters
     public int getId() { return id; }
+    public String getCodigo() { return codigo; }
     public String getUbicacion() { return ubicacion; }
     public Prioridad getPrioridad() { return prioridad; }
     public String getDescripcion() { return descripcion; }
     public LocalDateTime getHoraLlamada() { return horaLlamada; }
+    public long getMarcaLlamadaNanos() { return marcaLlamadaNanos; }
     public double getLatitud() { return latitud; }
     public double getLongitud() { return longitud; }
+    public void setPrioridad(Prioridad prioridad) { this.prioridad = prioridad; }
     public EstadoEmergencia getEstado() { return estado; }
     public void setEstado(EstadoEmergencia estado) { this.estado = estado; }
     public String getAmbulanciaAsignada() { return ambulanciaAsignada; }
@@ -81,10 +190,38 @@ public class Emergencia implements Comparable<Emergencia> {
         this.ambulanciaAsignada = ambulanciaAsignada; 
     }
     
+    /**
+     * Posición de la emergencia dentro del montículo de su carril en la cola.
+     * Solo la modifica la cola bajo su propio lock; -1 si no está encolada.
+     * @return índice en el montículo o -1
+     */
+    public int getPosicionCola() { return posicionCola; }
+    public void setPosicionCola(int posicionCola) { this.posicionCola = posicionCola; }
+    
+    /**
+     * Instantes ({@link Reloj#nanos()}) de cada etapa de atención, para medir
+     * latencias. Valen 0 mientras la etapa no ha ocurrido; un reencolado
+     * sobrescribe la salida de cola anterior.
+     */
+    public long getMarcaSalidaColaNanos() { return marcaSalidaColaNanos; }
+    public void setMarcaSalidaColaNanos(long marca) { this.marcaSalidaColaNanos = marca; }
+    public long getMarcaAsignacionNanos() { return marcaAsignacionNanos; }
+    public void setMarcaAsignacionNanos(long marca) { this.marcaAsignacionNanos = marca; }
+    public long getMarcaEnSitioNanos() { return marcaEnSitioNanos; }
+    public void setMarcaEnSitioNanos(long marca) { this.marcaEnSitioNanos = marca; }
+    
+    /**
+     * Si alguna vez le desviaron la ambulancia. Su espera en cola y su
+     * asignación ya se midieron con la primera asignación; la espera extra
+     * queda en el tiempo total de respuesta.
+     */
+    public boolean isDesplazada() { return desplazada; }
+    public void marcarDesplazada() { this.desplazada = true; }
+    
     @Override
     public String toString() {
         return String.format("EMG-%03d [%s] %s - %s (%.2f mins espera)", 
             id, prioridad, ubicacion, estado, 
-            java.time.Duration.between(horaLlamada, LocalDateTime.now()).toMinutes() / 1.0);
+            java.time.Duration.between(horaLlamada, Reloj.actual().ahora()).toMinutes() / 1.0);
     }
 }
\ No newline at end of file
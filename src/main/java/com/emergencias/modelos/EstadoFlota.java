@@ -0,0 +1,243 @@
+package com.emergencias.modelos;
+
+import com.emergencias.estructuras.Cercanas;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Estado de la flota en arreglos paralelos (estructura de arreglos): posición,
+ * tipo y disponibilidad de cada ambulancia en arreglos primitivos, y las
+ * {@link Ambulancia} como vistas delgadas sobre una posición de estos
+ * arreglos. Un recorrido de toda la flota lee memoria contigua en lugar de
+ * saltar de objeto en objeto: buscar las libres lee una palabra de 64 bits por
+ * cada 64 unidades y solo calcula distancias para los bits encendidos.
+ * <p>
+ * Cada {@link com.emergencias.persistencia.CatalogoRecursos} crea el suyo para
+ * su flota, y el gestor que la administra lo recibe con ella; el almacén vive
+ * lo que vive la flota.
+ * <p>
+ * Los arreglos se reparten en bloques de tamaño fijo que no se mueven al
+ * crecer la flota. La disponibilidad es un bit por unidad que se reserva con
+ * CAS. Cada posición tiene un contador de versión (seqlock): quien mueve la
+ * ambulancia lo deja impar mientras escribe latitud y longitud, así que
+ * {@link #leerPosicion} nunca mezcla coordenadas de dos posiciones. Los
+ * recorridos masivos leen sin versión y pueden ver una unidad a medio mover;
+ * sirven para elegir candidatas, que se confirman al reservarlas.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class EstadoFlota {
+    private static final int BITS_BLOQUE = 12;
+    private static final int TAMANIO_BLOQUE = 1 << BITS_BLOQUE;
+    private static final int MASCARA_BLOQUE = TAMANIO_BLOQUE - 1;
+    private static final VarHandle DOUBLES = MethodHandles.arrayElementVarHandle(double[].class);
+    private static final VarHandle VERSIONES = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private static final class Bloque {
+        final double[] latitudes = new double[TAMANIO_BLOQUE];
+        final double[] longitudes = new double[TAMANIO_BLOQUE];
+        final byte[] tipos = new byte[TAMANIO_BLOQUE];
+        final int[] versiones = new int[TAMANIO_BLOQUE];
+        final AtomicLongArray libres = new AtomicLongArray(TAMANIO_BLOQUE / Long.SIZE);
+        final Ambulancia[] unidades = new Ambulancia[TAMANIO_BLOQUE];
+    }
+
+    private volatile Bloque[] bloques;
+    private volatile int tamanio;
+
+    public EstadoFlota() {
+        this.bloques = new Bloque[0];
+    }
+
+    /**
+     * Da una posición a una ambulancia nueva, disponible.
+     * @return posición de la ambulancia en los arreglos
+     */
+    synchronized int registrar(Ambulancia ambulancia, Ambulancia.TipoAmbulancia tipo,
+                               double latitud, double longitud) {
+        int posicion = tamanio;
+        int b = posicion >>> BITS_BLOQUE;
+        Bloque[] actuales = bloques;
+        if (b == actuales.length) {
+            actuales = Arrays.copyOf(actuales, b + 1);
+            actuales[b] = new Bloque();
+            bloques = actuales;
+        }
+        Bloque bloque = actuales[b];
+        int i = posicion & MASCARA_BLOQUE;
+        bloque.latitudes[i] = latitud;
+        bloque.longitudes[i] = longitud;
+        bloque.tipos[i] = (byte) tipo.ordinal();
+        bloque.unidades[i] = ambulancia;
+        bloque.libres.getAndAccumulate(i >>> 6, 1L << i, (palabra, bit) -> palabra | bit);
+        tamanio = posicion + 1; // Publica la posición ya escrita
+        return posicion;
+    }
+
+    private Bloque bloque(int posicion) {
+        return bloques[posicion >>> BITS_BLOQUE];
+    }
+
+    /**
+     * Reserva una unidad libre.
+     * @return true si estaba libre y ahora es del llamador
+     */
+    boolean reservar(int posicion) {
+        AtomicLongArray libres = bloque(posicion).libres;
+        int palabra = (posicion & MASCARA_BLOQUE) >>> 6;
+        long bit = 1L << posicion;
+        long actual;
+        do {
+            actual = libres.get(palabra);
+            if ((actual & bit) == 0) {
+                return false;
+            }
+        } while (!libres.compareAndSet(palabra, actual, actual & ~bit));
+        return true;
+    }
+
+    void liberar(int posicion) {
+        long bit = 1L << posicion;
+        bloque(posicion).libres.getAndAccumulate((posicion & MASCARA_BLOQUE) >>> 6, bit,
+                                                 (palabra, b) -> palabra | b);
+    }
+
+    boolean isDisponible(int posicion) {
+        return (bloque(posicion).libres.get((posicion & MASCARA_BLOQUE) >>> 6) & (1L << posicion)) != 0;
+    }
+
+    /**
+     * Mueve una unidad. Solo la mueve quien la tiene reservada (o quien
+     * restaura el estado antes del despacho), así que hay un escritor por
+     * posición.
+     */
+    void mover(int posicion, double latitud, double longitud) {
+        Bloque bloque = bloque(posicion);
+        int i = posicion & MASCARA_BLOQUE;
+        int version = (int) VERSIONES.getOpaque(bloque.versiones, i);
+        VERSIONES.setOpaque(bloque.versiones, i, version + 1);
+        VarHandle.storeStoreFence();
+        DOUBLES.setOpaque(bloque.latitudes, i, latitud);
+        DOUBLES.setOpaque(bloque.longitudes, i, longitud);
+        VERSIONES.setRelease(bloque.versiones, i, version + 2);
+    }
+
+    /**
+     * Latitud vigente. Las lecturas sueltas son lecturas simples del arreglo
+     * (baratas aun antes de que el JIT compile); para un par consistente con
+     * la longitud usar {@link #leerPosicion}.
+     */
+    double latitud(int posicion) {
+        return bloque(posicion).latitudes[posicion & MASCARA_BLOQUE];
+    }
+
+    double longitud(int posicion) {
+        return bloque(posicion).longitudes[posicion & MASCARA_BLOQUE];
+    }
+
+    /**
+     * Lee latitud y longitud de la misma posición, reintentando si la unidad
+     * se estaba moviendo.
+     * @param destino Arreglo de dos elementos donde se dejan latitud y longitud
+     */
+    public void leerPosicion(int posicion, double[] destino) {
+        Bloque bloque = bloque(posicion);
+        int i = posicion & MASCARA_BLOQUE;
+        while (true) {
+            int antes = (int) VERSIONES.getAcquire(bloque.versiones, i);
+            double latitud = (double) DOUBLES.getOpaque(bloque.latitudes, i);
+            double longitud = (double) DOUBLES.getOpaque(bloque.longitudes, i);
+            VarHandle.loadLoadFence();
+            if ((antes & 1) == 0 && antes == (int) VERSIONES.getOpaque(bloque.versiones, i)) {
+                destino[0] = latitud;
+                destino[1] = longitud;
+                return;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    public int getTamanio() {
+        return tamanio;
+    }
+
+    public Ambulancia unidad(int posicion) {
+        return bloque(posicion).unidades[posicion & MASCARA_BLOQUE];
+    }
+
+    /**
+     * Si la ambulancia tiene su estado en este almacén.
+     */
+    public boolean contiene(Ambulancia ambulancia) {
+        int posicion = ambulancia.getPosicionFlota();
+        return posicion < tamanio && unidad(posicion) == ambulancia;
+    }
+
+    /**
+     * Unidades ocupadas, recorriendo solo los bits de disponibilidad.
+     * @param limite Máximo de unidades a devolver
+     * @return posiciones de las primeras unidades ocupadas
+     */
+    public int[] ocupadas(int limite) {
+        int[] resultado = new int[limite];
+        int encontradas = 0;
+        int total = tamanio;
+        Bloque[] actuales = bloques;
+        for (int base = 0; base < total && encontradas < limite; base += Long.SIZE) {
+            Bloque bloque = actuales[base >>> BITS_BLOQUE];
+            int validos = Math.min(Long.SIZE, total - base);
+            long mascara = validos == Long.SIZE ? -1L : (1L << validos) - 1;
+            long ocupadas = ~bloque.libres.get((base & MASCARA_BLOQUE) >>> 6) & mascara;
+            while (ocupadas != 0 && encontradas < limite) {
+                resultado[encontradas++] = base + Long.numberOfTrailingZeros(ocupadas);
+                ocupadas &= ocupadas - 1;
+            }
+        }
+        return Arrays.copyOf(resultado, encontradas);
+    }
+
+    /**
+     * Las k unidades libres más cercanas a un punto, en línea recta, sin
+     * reservarlas. Recorre las palabras de disponibilidad y calcula la
+     * distancia solo de las unidades libres, así que con pocas libres cuesta
+     * una lectura por cada 64 unidades de la flota. Una unidad puede ocuparse
+     * o moverse durante el recorrido: la reserva se confirma aparte.
+     * @param k Número máximo de unidades
+     * @return unidades en orden de distancia creciente; menos de k si no hay tantas libres
+     */
+    public List<Ambulancia> cercanasDisponibles(double latitud, double longitud, int k) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        Cercanas<Ambulancia> candidatas = new Cercanas<>(k);
+        double cota = Double.POSITIVE_INFINITY;
+        int total = tamanio;
+        Bloque[] actuales = bloques;
+        for (int base = 0; base < total; base += Long.SIZE) {
+            Bloque bloque = actuales[base >>> BITS_BLOQUE];
+            int validos = Math.min(Long.SIZE, total - base);
+            long mascara = validos == Long.SIZE ? -1L : (1L << validos) - 1;
+            long libres = bloque.libres.get((base & MASCARA_BLOQUE) >>> 6) & mascara;
+            while (libres != 0) {
+                int i = (base & MASCARA_BLOQUE) + Long.numberOfTrailingZeros(libres);
+                libres &= libres - 1;
+                double deltaLat = bloque.latitudes[i] - latitud;
+                double deltaLon = bloque.longitudes[i] - longitud;
+                double distancia = deltaLat * deltaLat + deltaLon * deltaLon;
+                // La cota va en una variable y la unidad solo se lee si entra
+                if (distancia < cota) {
+                    candidatas.ofrecer(bloque.unidades[i], distancia);
+                    if (candidatas.llena()) {
+                        cota = candidatas.peor();
+                    }
+                }
+            }
+        }
+        return candidatas.ordenadas();
+    }
+}
@@ -12,6 +12,7 @@ public class MedicoEmergencia {
     private final String id;
     private final String nombre;
     private final String especialidad;
+    private final Especialidad tipoEspecialidad;
     private final AtomicBoolean disponible;
     private Emergencia emergenciaAsignada;
     
@@ -25,12 +26,35 @@ public class MedicoEmergencia {
         private final String nombre;
         Especialidad(String nombre) { this.nombre = nombre; }
         public String getNombre() { return nombre; }
+        
+        /**
+         * Especialidad cuyo nombre coincide con el texto, sin distinguir mayúsculas.
+         * @param nombre Nombre legible (por ejemplo "Cardiólogo")
+         * @return especialidad, o MEDICO_GENERAL si el nombre no corresponde a ninguna
+         */
+        public static Especialidad desdeNombre(String nombre) {
+            for (Especialidad e : values()) {
+                if (e.nombre.equalsIgnoreCase(nombre) || e.name().equalsIgnoreCase(nombre)) {
+                    return e;
+                }
+            }
+            return MEDICO_GENERAL;
+        }
     }
     
     public MedicoEmergencia(String id, String nombre, String especialidad) {
         this.id = id;
         this.nombre = nombre;
         this.especialidad = especialidad;
+        this.tipoEspecialidad = Especialidad.desdeNombre(especialidad);
+        this.disponible = new AtomicBoolean(true);
+    }
+    
+    public MedicoEmergencia(String id, String nombre, Especialidad especialidad) {
+        this.id = id;
+        this.nombre = nombre;
+        this.especialidad = especialidad.getNombre();
+        this.tipoEspecialidad = especialidad;
         this.disponible = new AtomicBoolean(true);
     }
     
@@ -47,6 +71,15 @@ public class MedicoEmergencia {
         return false;
     }
     
+    /**
+     * Pasa un médico ya asignado a otra emergencia sin liberarlo, cuando su
+     * ambulancia se desvía. Solo debe llamarlo quien tiene al médico asignado.
+     * @param emergencia Nueva emergencia
+     */
+    public void transferirA(Emergencia emergencia) {
+        this.emergenciaAsignada = emergencia;
+    }
+    
     /**
      * Libera al médico después de atender una emergencia.
      */
@@ -59,6 +92,7 @@ public class MedicoEmergencia {
     public String getId() { return id; }
     public String getNombre() { return nombre; }
     public String getEspecialidad() { return especialidad; }
+    public Especialidad getTipoEspecialidad() { return tipoEspecialidad; }
     public boolean isDisponible() { return disponible.get(); }
     public Emergencia getEmergenciaAsignada() { return emergenciaAsignada; }
     
@@ -0,0 +1,107 @@
+package com.emergencias.modelos;
+
+import com.emergencias.modelos.MedicoEmergencia.Especialidad;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Equipo médico requerido por una emergencia: cuántos médicos de cada
+ * especialidad. Es inmutable; {@link #con} devuelve una mezcla nueva.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public final class MezclaEspecialidades {
+    private static final Especialidad[] ESPECIALIDADES = Especialidad.values();
+
+    private final int[] cantidades;
+    private final int total;
+
+    private MezclaEspecialidades(int[] cantidades) {
+        this.cantidades = cantidades;
+        this.total = Arrays.stream(cantidades).sum();
+    }
+
+    /**
+     * Mezcla sin médicos.
+     */
+    public static MezclaEspecialidades vacia() {
+        return new MezclaEspecialidades(new int[ESPECIALIDADES.length]);
+    }
+
+    /**
+     * Mezcla con médicos de una sola especialidad.
+     * @param especialidad Especialidad requerida
+     * @param cantidad Número de médicos
+     */
+    public static MezclaEspecialidades de(Especialidad especialidad, int cantidad) {
+        return vacia().con(especialidad, cantidad);
+    }
+
+    /**
+     * Equipo sugerido para una emergencia según su descripción y gravedad: un
+     * especialista al frente (cardiólogo para cuadros cardíacos, traumatólogo
+     * para traumas, urgenciólogo o médico general en otro caso) y paramédicos
+     * para completar.
+     * @param emergencia Emergencia a atender
+     * @param cantidad Tamaño total del equipo
+     * @return mezcla de especialidades
+     */
+    public static MezclaEspecialidades para(Emergencia emergencia, int cantidad) {
+        if (cantidad <= 0) {
+            return vacia();
+        }
+        return de(especialistaPara(emergencia), 1).con(Especialidad.PARAMEDICO, cantidad - 1);
+    }
+
+    private static Especialidad especialistaPara(Emergencia emergencia) {
+        String descripcion = emergencia.getDescripcion() == null
+            ? "" : emergencia.getDescripcion().toLowerCase(Locale.ROOT);
+        if (descripcion.contains("card") || descripcion.contains("pecho")) {
+            return Especialidad.CARDIOLOGO;
+        }
+        if (descripcion.contains("trauma") || descripcion.contains("fractura")) {
+            return Especialidad.TRAUMATOLOGO;
+        }
+        Prioridad prioridad = emergencia.getPrioridad();
+        return prioridad == Prioridad.CRITICO || prioridad == Prioridad.GRAVE
+            ? Especialidad.URGENCIOLOGO : Especialidad.MEDICO_GENERAL;
+    }
+
+    /**
+     * Mezcla con más médicos de una especialidad.
+     * @param especialidad Especialidad
+     * @param cantidad Médicos adicionales (se ignoran los valores no positivos)
+     * @return mezcla nueva
+     */
+    public MezclaEspecialidades con(Especialidad especialidad, int cantidad) {
+        if (cantidad <= 0) {
+            return this;
+        }
+        int[] copia = cantidades.clone();
+        copia[especialidad.ordinal()] += cantidad;
+        return new MezclaEspecialidades(copia);
+    }
+
+    public int getCantidad(Especialidad especialidad) {
+        return cantidades[especialidad.ordinal()];
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (Especialidad e : ESPECIALIDADES) {
+            if (cantidades[e.ordinal()] > 0) {
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                sb.append(cantidades[e.ordinal()]).append(' ').append(e.getNombre());
+            }
+        }
+        return sb.append(']').toString();
+    }
+}
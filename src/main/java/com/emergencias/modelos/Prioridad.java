@@ -28,4 +28,18 @@ public enum Prioridad {
     public String getDescripcion() {
         return descripcion;
     }
+    
+    /**
+     * Prioridad correspondiente a un valor numérico.
+     * @param valor Valor de la prioridad (1 a 4)
+     * @return prioridad, o null si el valor no corresponde a ninguna
+     */
+    public static Prioridad desdeValor(int valor) {
+        for (Prioridad p : values()) {
+            if (p.valor == valor) {
+                return p;
+            }
+        }
+        return null;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,120 @@
+package com.emergencias.modelos;
+
+import com.emergencias.simulacion.Reloj;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Viaje de una ambulancia con su equipo hacia una emergencia. Mientras está
+ * en camino puede desviarse a una emergencia más grave; llegar y desviarse
+ * compiten por el mismo CAS, así que exactamente uno de los dos gana y la
+ * ambulancia y los médicos pasan enteros a quien ganó.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class Traslado {
+    private static final int EN_CAMINO = 0;
+    private static final int EN_SITIO = 1;
+    private static final int DESVIADO = 2;
+
+    private final Ambulancia ambulancia;
+    private final Emergencia emergencia;
+    private final List<MedicoEmergencia> medicos;
+    private final double latitudSalida;
+    private final double longitudSalida;
+    private final long salidaNanos;
+    private final long duracionNanos;
+    private final AtomicInteger estado;
+    private final CountDownLatch desvio;
+
+    /**
+     * @param ambulancia Ambulancia que viaja, ya movida a la emergencia
+     * @param emergencia Emergencia de destino
+     * @param medicos Equipo a bordo
+     * @param duracionNanos Duración prevista del viaje
+     */
+    public Traslado(Ambulancia ambulancia, Emergencia emergencia, List<MedicoEmergencia> medicos,
+                    long duracionNanos) {
+        this.ambulancia = ambulancia;
+        this.emergencia = emergencia;
+        this.medicos = medicos;
+        this.latitudSalida = ambulancia.getLatitudSalida();
+        this.longitudSalida = ambulancia.getLongitudSalida();
+        this.salidaNanos = Reloj.actual().nanos();
+        this.duracionNanos = Math.max(1L, duracionNanos);
+        this.estado = new AtomicInteger(EN_CAMINO);
+        this.desvio = new CountDownLatch(1);
+    }
+
+    /**
+     * Espera hasta la hora prevista de llegada o hasta que la ambulancia se
+     * desvíe, lo que ocurra antes. Espera en tiempo real, así que solo sirve
+     * con el reloj del sistema; en tiempo virtual la llegada se programa y se
+     * confirma con {@link #terminar}.
+     * @return true si llegó; false si se desvió y sus recursos ya no son del llamador
+     */
+    public boolean esperarLlegada() throws InterruptedException {
+        long restante = salidaNanos + duracionNanos - Reloj.actual().nanos();
+        if (restante > 0 && desvio.await(restante, TimeUnit.NANOSECONDS)) {
+            return false;
+        }
+        return estado.compareAndSet(EN_CAMINO, EN_SITIO);
+    }
+
+    /**
+     * Da el viaje por terminado sin llegar (por ejemplo, si se interrumpe la
+     * espera) para que ya no pueda desviarse.
+     * @return true si estaba en camino
+     */
+    public boolean terminar() {
+        return estado.compareAndSet(EN_CAMINO, EN_SITIO);
+    }
+
+    /**
+     * Quita la ambulancia y su equipo a este viaje y despierta a quien espera
+     * la llegada.
+     * @return true si estaba en camino; quien recibe true es dueño de los recursos
+     */
+    public boolean desviar() {
+        if (!estado.compareAndSet(EN_CAMINO, DESVIADO)) {
+            return false;
+        }
+        desvio.countDown();
+        return true;
+    }
+
+    public boolean isEnCamino() {
+        return estado.get() == EN_CAMINO;
+    }
+
+    /**
+     * Posición estimada en un instante, interpolando en línea recta entre la
+     * salida y la emergencia según el tiempo transcurrido.
+     * @param ahoraNanos Instante según {@link Reloj#nanos()}
+     * @return latitud
+     */
+    public double latitudEn(long ahoraNanos) {
+        return latitudSalida + (emergencia.getLatitud() - latitudSalida) * avance(ahoraNanos);
+    }
+
+    /**
+     * @see #latitudEn
+     * @return longitud
+     */
+    public double longitudEn(long ahoraNanos) {
+        return longitudSalida + (emergencia.getLongitud() - longitudSalida) * avance(ahoraNanos);
+    }
+
+    private double avance(long ahoraNanos) {
+        return Math.min(1.0, Math.max(0.0, (double) (ahoraNanos - salidaNanos) / duracionNanos));
+    }
+
+    public Ambulancia getAmbulancia() { return ambulancia; }
+    public double getLatitudSalida() { return latitudSalida; }
+    public double getLongitudSalida() { return longitudSalida; }
+    public Emergencia getEmergencia() { return emergencia; }
+    public List<MedicoEmergencia> getMedicos() { return medicos; }
+}
@@ -0,0 +1,275 @@
+package com.emergencias.persistencia;
+
+import com.emergencias.modelos.Ambulancia;
+import com.emergencias.modelos.EstadoFlota;
+import com.emergencias.modelos.MedicoEmergencia;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Flota de ambulancias y plantilla de médicos cargadas de un archivo.
+ * <p>
+ * Se importa de un CSV con una entrada por línea:
+ * <pre>
+ * # comentario
+ * A,&lt;id&gt;,&lt;tipo&gt;,&lt;latitud&gt;,&lt;longitud&gt;       (tipo: BASICA, AVANZADA, UCI_MOVIL)
+ * M,&lt;id&gt;,&lt;especialidad&gt;,&lt;nombre&gt;              (el nombre puede tener comas)
+ * </pre>
+ * y se guarda en un formato binario de registros de tamaño fijo que se mapea
+ * en memoria al arrancar. Como cada registro está en una posición conocida,
+ * tanto las líneas del CSV como los registros binarios se decodifican en
+ * paralelo.
+ * <p>
+ * El catálogo es dueño del {@link EstadoFlota} de sus ambulancias; el gestor
+ * que administra la flota lo recibe con ella.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class CatalogoRecursos {
+    private static final int MAGICO = 0x464C4F54; // "FLOT"
+    private static final int VERSION = 1;
+    private static final int CABECERA = 16;
+    private static final int REGISTRO_AMBULANCIA = 40;
+    private static final int ID_AMBULANCIA_MAXIMO = 22;
+    private static final int REGISTRO_MEDICO = 64;
+    private static final int ID_MEDICO_MAXIMO = 20;
+    private static final int NOMBRE_MAXIMO = 40;
+    private static final String EXTENSION_BINARIA = ".bin";
+
+    private static final Ambulancia.TipoAmbulancia[] TIPOS = Ambulancia.TipoAmbulancia.values();
+    private static final MedicoEmergencia.Especialidad[] ESPECIALIDADES = MedicoEmergencia.Especialidad.values();
+
+    private final EstadoFlota estadoFlota;
+    private final List<Ambulancia> ambulancias;
+    private final List<MedicoEmergencia> medicos;
+
+    /**
+     * @param estadoFlota Almacén donde se crearon las ambulancias
+     * @param ambulancias Flota
+     * @param medicos Plantilla
+     */
+    public CatalogoRecursos(EstadoFlota estadoFlota, List<Ambulancia> ambulancias, List<MedicoEmergencia> medicos) {
+        this.estadoFlota = estadoFlota;
+        this.ambulancias = ambulancias;
+        this.medicos = medicos;
+    }
+
+    /**
+     * Carga un catálogo. Un CSV se importa y se guarda a su lado en binario
+     * ({@code .bin}); mientras el binario sea más nuevo que el CSV, los
+     * arranques siguientes lo mapean en lugar de volver a importar.
+     * @param archivo CSV o binario escrito por {@link #escribirBinario}
+     * @return catálogo cargado
+     * @throws IOException si el archivo no existe o tiene una entrada inválida
+     */
+    public static CatalogoRecursos cargar(Path archivo) throws IOException {
+        if (!archivo.getFileName().toString().toLowerCase().endsWith(".csv")) {
+            return leerBinario(archivo);
+        }
+        Path binario = archivo.resolveSibling(archivo.getFileName() + EXTENSION_BINARIA);
+        if (Files.exists(binario)
+            && Files.getLastModifiedTime(binario).compareTo(Files.getLastModifiedTime(archivo)) > 0) {
+            return leerBinario(binario);
+        }
+        CatalogoRecursos catalogo = importarCsv(archivo);
+        catalogo.escribirBinario(binario);
+        return catalogo;
+    }
+
+    /**
+     * Lee un catálogo en CSV, decodificando las líneas en paralelo.
+     * @param csv Archivo CSV
+     * @return catálogo importado
+     */
+    public static CatalogoRecursos importarCsv(Path csv) throws IOException {
+        List<String> lineas = Files.readAllLines(csv, StandardCharsets.UTF_8);
+        EstadoFlota estadoFlota = new EstadoFlota();
+        Object[] entradas = new Object[lineas.size()];
+        try {
+            IntStream.range(0, lineas.size()).parallel().forEach(i -> {
+                try {
+                    entradas[i] = decodificarLinea(lineas.get(i).trim(), estadoFlota);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(csv + ":" + (i + 1) + ": " + e.getMessage(), e);
+                } catch (IllegalArgumentException e) {
+                    throw new UncheckedIOException(csv + ":" + (i + 1) + ": valor inválido",
+                                                   new IOException(e.getMessage(), e));
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw new IOException(e.getMessage(), e.getCause());
+        }
+        List<Ambulancia> ambulancias = new ArrayList<>();
+        List<MedicoEmergencia> medicos = new ArrayList<>();
+        for (Object entrada : entradas) {
+            if (entrada instanceof Ambulancia ambulancia) {
+                ambulancias.add(ambulancia);
+            } else if (entrada instanceof MedicoEmergencia medico) {
+                medicos.add(medico);
+            }
+        }
+        return new CatalogoRecursos(estadoFlota, ambulancias, medicos);
+    }
+
+    /**
+     * @return ambulancia, médico o null si la línea está vacía o es un comentario
+     */
+    private static Object decodificarLinea(String linea, EstadoFlota estadoFlota) throws IOException {
+        if (linea.isEmpty() || linea.startsWith("#")) {
+            return null;
+        }
+        if (linea.startsWith("A,")) {
+            String[] partes = linea.split(",", -1);
+            if (partes.length != 5) {
+                throw new IOException("ambulancia mal formada");
+            }
+            return new Ambulancia(partes[1].trim(), Ambulancia.TipoAmbulancia.valueOf(partes[2].trim()),
+                                  Double.parseDouble(partes[3].trim()), Double.parseDouble(partes[4].trim()),
+                                  estadoFlota);
+        }
+        if (linea.startsWith("M,")) {
+            String[] partes = linea.split(",", 4);
+            if (partes.length != 4) {
+                throw new IOException("médico mal formado");
+            }
+            return new MedicoEmergencia(partes[1].trim(), partes[3].trim(), partes[2].trim());
+        }
+        throw new IOException("tipo de línea desconocido");
+    }
+
+    /**
+     * Mapea un catálogo binario y decodifica sus registros en paralelo.
+     * @param archivo Archivo escrito por {@link #escribirBinario}
+     * @return catálogo cargado
+     */
+    public static CatalogoRecursos leerBinario(Path archivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            long tamanio = canal.size();
+            if (tamanio < CABECERA) {
+                throw new IOException(archivo + ": catálogo truncado");
+            }
+            MappedByteBuffer datos = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamanio);
+            if (datos.getInt(0) != MAGICO || datos.getInt(4) != VERSION) {
+                throw new IOException(archivo + ": no es un catálogo de recursos");
+            }
+            int numAmbulancias = datos.getInt(8);
+            int numMedicos = datos.getInt(12);
+            long esperado = CABECERA + (long) numAmbulancias * REGISTRO_AMBULANCIA
+                            + (long) numMedicos * REGISTRO_MEDICO;
+            if (numAmbulancias < 0 || numMedicos < 0 || tamanio != esperado) {
+                throw new IOException(archivo + ": catálogo truncado o corrupto");
+            }
+            int inicioMedicos = CABECERA + numAmbulancias * REGISTRO_AMBULANCIA;
+            EstadoFlota estadoFlota = new EstadoFlota();
+            Ambulancia[] ambulancias = new Ambulancia[numAmbulancias];
+            MedicoEmergencia[] medicos = new MedicoEmergencia[numMedicos];
+            try {
+                IntStream.range(0, numAmbulancias).parallel().forEach(i ->
+                    ambulancias[i] = leerAmbulancia(datos, CABECERA + i * REGISTRO_AMBULANCIA, estadoFlota));
+                IntStream.range(0, numMedicos).parallel().forEach(i ->
+                    medicos[i] = leerMedico(datos, inicioMedicos + i * REGISTRO_MEDICO));
+            } catch (IndexOutOfBoundsException | NegativeArraySizeException e) {
+                throw new IOException(archivo + ": registro corrupto", e);
+            }
+            return new CatalogoRecursos(estadoFlota, Arrays.asList(ambulancias), Arrays.asList(medicos));
+        }
+    }
+
+    private static Ambulancia leerAmbulancia(ByteBuffer datos, int posicion, EstadoFlota estadoFlota) {
+        double latitud = datos.getDouble(posicion);
+        double longitud = datos.getDouble(posicion + 8);
+        Ambulancia.TipoAmbulancia tipo = TIPOS[datos.get(posicion + 16)];
+        String id = leerTexto(datos, posicion + 18, datos.get(posicion + 17));
+        return new Ambulancia(id, tipo, latitud, longitud, estadoFlota);
+    }
+
+    private static MedicoEmergencia leerMedico(ByteBuffer datos, int posicion) {
+        MedicoEmergencia.Especialidad especialidad = ESPECIALIDADES[datos.get(posicion)];
+        String id = leerTexto(datos, posicion + 4, datos.get(posicion + 1));
+        String nombre = leerTexto(datos, posicion + 4 + ID_MEDICO_MAXIMO, datos.get(posicion + 2));
+        return new MedicoEmergencia(id, nombre, especialidad);
+    }
+
+    private static String leerTexto(ByteBuffer datos, int posicion, byte longitud) {
+        byte[] bytes = new byte[longitud];
+        datos.get(posicion, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Guarda el catálogo en binario. Se escribe en un temporal y se renombra
+     * de forma atómica, así que un arranque nunca ve un archivo a medias.
+     * @param destino Archivo binario
+     * @throws IOException si un id o nombre no cabe en su registro
+     */
+    public void escribirBinario(Path destino) throws IOException {
+        long tamanio = CABECERA + (long) ambulancias.size() * REGISTRO_AMBULANCIA
+                       + (long) medicos.size() * REGISTRO_MEDICO;
+        if (tamanio > Integer.MAX_VALUE) {
+            throw new IOException("Catálogo demasiado grande para un solo archivo");
+        }
+        ByteBuffer datos = ByteBuffer.allocate((int) tamanio);
+        datos.putInt(MAGICO).putInt(VERSION).putInt(ambulancias.size()).putInt(medicos.size());
+        for (Ambulancia ambulancia : ambulancias) {
+            int inicio = datos.position();
+            datos.putDouble(ambulancia.getLatitud());
+            datos.putDouble(ambulancia.getLongitud());
+            datos.put((byte) ambulancia.getTipo().ordinal());
+            escribirTexto(datos, ambulancia.getId(), ID_AMBULANCIA_MAXIMO, inicio + 17, inicio + 18);
+            datos.position(inicio + REGISTRO_AMBULANCIA);
+        }
+        for (MedicoEmergencia medico : medicos) {
+            int inicio = datos.position();
+            datos.put((byte) medico.getTipoEspecialidad().ordinal());
+            escribirTexto(datos, medico.getId(), ID_MEDICO_MAXIMO, inicio + 1, inicio + 4);
+            escribirTexto(datos, medico.getNombre(), NOMBRE_MAXIMO, inicio + 2, inicio + 4 + ID_MEDICO_MAXIMO);
+            datos.position(inicio + REGISTRO_MEDICO);
+        }
+        datos.flip();
+
+        Path temporal = destino.resolveSibling(destino.getFileName() + ".tmp");
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                                                  StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (datos.hasRemaining()) {
+                canal.write(datos);
+            }
+            canal.force(true);
+        }
+        Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void escribirTexto(ByteBuffer datos, String texto, int maximo, int posicionLongitud,
+                                      int posicion) throws IOException {
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maximo) {
+            throw new IOException("\"" + texto + "\" supera " + maximo + " bytes");
+        }
+        datos.put(posicionLongitud, (byte) bytes.length);
+        datos.put(posicion, bytes);
+    }
+
+    public EstadoFlota getEstadoFlota() {
+        return estadoFlota;
+    }
+
+    public List<Ambulancia> getAmbulancias() {
+        return ambulancias;
+    }
+
+    public List<MedicoEmergencia> getMedicos() {
+        return medicos;
+    }
+}
@@ -0,0 +1,684 @@
+package com.emergencias.persistencia;
+
+import com.emergencias.modelos.Emergencia;
+import com.emergencias.modelos.Prioridad;
+import com.emergencias.registro.Registro;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Diario de escritura anticipada (write-ahead log) del ciclo de vida de las emergencias.
+ * <p>
+ * Cada transición se anexa como un registro binario a un segmento mapeado en
+ * memoria, así que anotar cuesta una copia a memoria y no una llamada al sistema.
+ * Un hilo sincronizador fuerza el segmento a disco cada pocos milisegundos
+ * (commit en grupo): todas las transiciones acumuladas en ese intervalo se
+ * persisten con una sola sincronización. Quien necesite durabilidad inmediata
+ * puede esperar con {@link #esperarPersistido(long, long, TimeUnit)}.
+ * <p>
+ * Formato de registro: longitud (int), CRC32 del cuerpo (int) y cuerpo con LSN
+ * (long), tipo (byte) y datos. Al recuperar, la lectura de cada segmento se
+ * detiene en el primer registro vacío o con CRC inválido (escritura incompleta).
+ * <p>
+ * Cuando el segmento se llena se sella y se abre otro. Los segmentos sellados se
+ * acotan con {@link Instantanea instantáneas}: un estado sombra avanza leyendo
+ * solo los segmentos recién sellados, se escribe como instantánea y los
+ * segmentos que cubre se borran. Así ni los escritores ni los despachadores se
+ * detienen, y al reiniciar solo se reproduce el diario posterior a la instantánea.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class DiarioEmergencias {
+    private static final int TAMANIO_SEGMENTO_DEFECTO = 4 << 20; // 4 MB
+    private static final long INTERVALO_COMMIT_DEFECTO_MS = 2;
+    private static final int SELLADOS_PARA_INSTANTANEA = 4;
+    private static final int CABECERA = 8;
+    private static final int MAXIMO_CARACTERES = 256;
+    private static final int MAXIMO_REGISTRO = 64 + 2 * (2 + 4 * MAXIMO_CARACTERES);
+    private static final String PREFIJO = "diario-";
+    private static final String SUFIJO = ".seg";
+
+    private final Path directorio;
+    private final int tamanioSegmento;
+    private final long intervaloCommitNanos;
+    private final EstadoDiario estadoRecuperado;
+    private final RecursosInstantanea recursosRecuperados;
+
+    // Estado de escritura, protegido por lockEscritura
+    private final ReentrantLock lockEscritura;
+    private final ByteBuffer registro;
+    private final CRC32 crc;
+    private final List<Path> sellados;
+    private MappedByteBuffer segmento;
+    private Path rutaSegmento;
+    private long siguienteLsn;
+
+    private volatile long lsnEscrito;
+    private volatile long lsnPersistido;
+    private final ReentrantLock lockPersistencia;
+    private final Condition persistido;
+    private final Thread sincronizador;
+    private volatile boolean abierto;
+
+    // Instantáneas: el estado sombra está protegido por lockInstantanea
+    private final ReentrantLock lockInstantanea;
+    private final EstadoDiario sombra;
+    private volatile Supplier<RecursosInstantanea> fuenteRecursos;
+    private ScheduledExecutorService programador;
+    private volatile long instantaneas;
+    private volatile long lsnUltimaInstantanea;
+    private final long registrosReproducidos;
+
+    /**
+     * Abre el diario con segmentos de 4 MB y commit en grupo cada 2 ms.
+     * @param directorio Directorio de los segmentos (se crea si no existe)
+     */
+    public DiarioEmergencias(Path directorio) throws IOException {
+        this(directorio, TAMANIO_SEGMENTO_DEFECTO, INTERVALO_COMMIT_DEFECTO_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Abre el diario reproduciendo los segmentos existentes y empieza un segmento nuevo.
+     * El estado reconstruido queda disponible en {@link #getEstadoRecuperado()}.
+     * @param directorio Directorio de los segmentos (se crea si no existe)
+     * @param tamanioSegmento Tamaño en bytes de cada segmento
+     * @param intervaloCommit Máximo tiempo entre sincronizaciones a disco
+     * @param unit Unidad de tiempo
+     */
+    public DiarioEmergencias(Path directorio, int tamanioSegmento, long intervaloCommit, TimeUnit unit)
+            throws IOException {
+        this.directorio = directorio;
+        this.tamanioSegmento = Math.max(tamanioSegmento, 4 * MAXIMO_REGISTRO);
+        this.intervaloCommitNanos = unit.toNanos(intervaloCommit);
+        this.lockEscritura = new ReentrantLock();
+        this.registro = ByteBuffer.allocate(MAXIMO_REGISTRO);
+        this.crc = new CRC32();
+        this.sellados = new ArrayList<>();
+        this.lockPersistencia = new ReentrantLock();
+        this.persistido = lockPersistencia.newCondition();
+        this.lockInstantanea = new ReentrantLock();
+
+        Files.createDirectories(directorio);
+        Instantanea base = Instantanea.leerUltima(directorio);
+        long desdeLsn = base == null ? 0L : base.getLsn();
+        this.estadoRecuperado = base == null ? new EstadoDiario() : base.getEstado();
+        this.recursosRecuperados = base == null ? null : base.getRecursos();
+        this.lsnUltimaInstantanea = desdeLsn;
+        long reproducidos = 0;
+        for (Path ruta : listarSegmentos()) {
+            int aplicados = reproducir(ruta, estadoRecuperado, desdeLsn);
+            if (aplicados == 0) {
+                // Vacío (abierto justo antes de una caída) o ya cubierto por la instantánea
+                Files.delete(ruta);
+            } else {
+                sellados.add(ruta);
+                reproducidos += aplicados;
+            }
+        }
+        this.registrosReproducidos = reproducidos;
+        this.sombra = estadoRecuperado.copiar();
+        this.siguienteLsn = estadoRecuperado.getUltimoLsn() + 1;
+        this.lsnEscrito = estadoRecuperado.getUltimoLsn();
+        this.lsnPersistido = lsnEscrito;
+        abrirSegmento(siguienteLsn, this.tamanioSegmento);
+
+        this.abierto = true;
+        this.sincronizador = new Thread(this::sincronizar, "Diario-Sincronizador");
+        sincronizador.setDaemon(true);
+        sincronizador.start();
+        Registro.info("📓 Diario abierto en {}: {} registros reproducidos desde el LSN {}",
+                      directorio, registrosReproducidos, desdeLsn);
+    }
+
+    /**
+     * Anota una emergencia registrada o reencolada.
+     * @param emergencia Emergencia registrada
+     * @return LSN del registro
+     */
+    public long anotarCreada(Emergencia emergencia) {
+        byte[] ubicacion = codificar(emergencia.getUbicacion());
+        byte[] descripcion = codificar(emergencia.getDescripcion());
+        long horaMillis = emergencia.getHoraLlamada().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        lockEscritura.lock();
+        try {
+            long lsn = iniciar(TipoRegistro.CREADA);
+            escribirCreada(registro, emergencia.getId(), emergencia.getPrioridad(), horaMillis,
+                           emergencia.getLatitud(), emergencia.getLongitud(), ubicacion, descripcion);
+            return emitir(lsn);
+        } finally {
+            lockEscritura.unlock();
+        }
+    }
+
+    /**
+     * Anota un lote de emergencias registradas tomando el lock una sola vez.
+     * @param emergencias Emergencias registradas
+     * @return LSN del último registro
+     */
+    public long anotarCreadas(List<Emergencia> emergencias) {
+        int cantidad = emergencias.size();
+        byte[][] ubicaciones = new byte[cantidad][];
+        byte[][] descripciones = new byte[cantidad][];
+        long[] horas = new long[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            Emergencia emergencia = emergencias.get(i);
+            ubicaciones[i] = codificar(emergencia.getUbicacion());
+            descripciones[i] = codificar(emergencia.getDescripcion());
+            horas[i] = emergencia.getHoraLlamada().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+        lockEscritura.lock();
+        try {
+            long lsn = lsnEscrito;
+            for (int i = 0; i < cantidad; i++) {
+                Emergencia emergencia = emergencias.get(i);
+                lsn = iniciar(TipoRegistro.CREADA);
+                escribirCreada(registro, emergencia.getId(), emergencia.getPrioridad(), horas[i],
+                               emergencia.getLatitud(), emergencia.getLongitud(), ubicaciones[i], descripciones[i]);
+                emitir(lsn);
+            }
+            return lsn;
+        } finally {
+            lockEscritura.unlock();
+        }
+    }
+
+    /**
+     * Anota la asignación de recursos a una emergencia.
+     * @param emergencia Emergencia en proceso
+     * @return LSN del registro
+     */
+    public long anotarAsignada(Emergencia emergencia) {
+        byte[] ambulancia = codificar(emergencia.getAmbulanciaAsignada());
+        lockEscritura.lock();
+        try {
+            long lsn = iniciar(TipoRegistro.ASIGNADA);
+            registro.putInt(emergencia.getId());
+            escribirTexto(registro, ambulancia);
+            return emitir(lsn);
+        } finally {
+            lockEscritura.unlock();
+        }
+    }
+
+    public long anotarAtendida(Emergencia emergencia) {
+        return anotarId(TipoRegistro.ATENDIDA, emergencia.getId());
+    }
+
+    public long anotarCancelada(Emergencia emergencia) {
+        return anotarId(TipoRegistro.CANCELADA, emergencia.getId());
+    }
+
+    public long anotarDescartada(Emergencia emergencia) {
+        return anotarId(TipoRegistro.DESCARTADA, emergencia.getId());
+    }
+
+    /**
+     * Anota un cambio de prioridad.
+     * @param emergencia Emergencia escalada
+     * @param nueva Nueva prioridad
+     * @return LSN del registro
+     */
+    public long anotarEscalada(Emergencia emergencia, Prioridad nueva) {
+        lockEscritura.lock();
+        try {
+            long lsn = iniciar(TipoRegistro.ESCALADA);
+            registro.putInt(emergencia.getId());
+            registro.put((byte) nueva.getValor());
+            return emitir(lsn);
+        } finally {
+            lockEscritura.unlock();
+        }
+    }
+
+    private long anotarId(TipoRegistro tipo, int id) {
+        lockEscritura.lock();
+        try {
+            long lsn = iniciar(tipo);
+            registro.putInt(id);
+            return emitir(lsn);
+        } finally {
+            lockEscritura.unlock();
+        }
+    }
+
+    /**
+     * Asigna el LSN y prepara el búfer de registro. Requiere lockEscritura.
+     */
+    private long iniciar(TipoRegistro tipo) {
+        if (!abierto) {
+            throw new IllegalStateException("El diario está cerrado");
+        }
+        long lsn = siguienteLsn++;
+        iniciarRegistro(registro, lsn, tipo);
+        return lsn;
+    }
+
+    /**
+     * Copia el registro preparado al segmento, rotando si no cabe. Requiere lockEscritura.
+     */
+    private long emitir(long lsn) {
+        terminarRegistro(registro, crc);
+        if (segmento.remaining() < registro.remaining()) {
+            try {
+                rodar(lsn);
+            } catch (IOException e) {
+                Registro.error("Error rotando el segmento del diario: {}", e.getMessage());
+                throw new UncheckedIOException(e);
+            }
+        }
+        segmento.put(registro);
+        lsnEscrito = lsn;
+        return lsn;
+    }
+
+    /**
+     * Sella el segmento actual y abre uno nuevo que empieza en el LSN dado.
+     * Requiere lockEscritura.
+     */
+    private void rodar(long primerLsn) throws IOException {
+        segmento.force();
+        marcarPersistido(lsnEscrito);
+        sellados.add(rutaSegmento);
+        abrirSegmento(primerLsn, tamanioSegmento);
+        Registro.depuracion("📓 Diario: nuevo segmento {}", rutaSegmento.getFileName());
+        if (sellados.size() >= SELLADOS_PARA_INSTANTANEA) {
+            LockSupport.unpark(sincronizador);
+        }
+    }
+
+    private void abrirSegmento(long primerLsn, int tamanio) throws IOException {
+        Path ruta = directorio.resolve(String.format("%s%019d%s", PREFIJO, primerLsn, SUFIJO));
+        try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // El mapeo sigue siendo válido después de cerrar el canal
+            segmento = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamanio);
+        }
+        rutaSegmento = ruta;
+    }
+
+    /**
+     * Bucle del hilo sincronizador: commit en grupo e instantáneas por volumen.
+     */
+    private void sincronizar() {
+        while (abierto) {
+            LockSupport.parkNanos(this, intervaloCommitNanos);
+            try {
+                persistirPendiente();
+                if (getSegmentosSellados() >= SELLADOS_PARA_INSTANTANEA && lockInstantanea.tryLock()) {
+                    try {
+                        tomarInstantaneaBloqueado();
+                    } finally {
+                        lockInstantanea.unlock();
+                    }
+                }
+            } catch (IOException | UncheckedIOException e) {
+                Registro.error("Error en el sincronizador del diario: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Fuerza a disco todo lo escrito hasta ahora en el segmento actual.
+     */
+    private void persistirPendiente() {
+        MappedByteBuffer actual;
+        long objetivo;
+        lockEscritura.lock();
+        try {
+            objetivo = lsnEscrito;
+            actual = segmento;
+        } finally {
+            lockEscritura.unlock();
+        }
+        if (objetivo > lsnPersistido) {
+            actual.force(); // Fuera del lock: los escritores siguen anotando
+            marcarPersistido(objetivo);
+        }
+    }
+
+    private void marcarPersistido(long lsn) {
+        lockPersistencia.lock();
+        try {
+            if (lsn > lsnPersistido) {
+                lsnPersistido = lsn;
+            }
+            persistido.signalAll();
+        } finally {
+            lockPersistencia.unlock();
+        }
+    }
+
+    /**
+     * Espera a que un registro esté en disco. Adelanta el próximo commit en grupo.
+     * @param lsn LSN devuelto al anotar
+     * @param timeout Tiempo máximo de espera
+     * @param unit Unidad de tiempo
+     * @return true si el registro ya es durable
+     */
+    public boolean esperarPersistido(long lsn, long timeout, TimeUnit unit) throws InterruptedException {
+        if (lsnPersistido >= lsn) {
+            return true;
+        }
+        LockSupport.unpark(sincronizador);
+        long nanos = unit.toNanos(timeout);
+        lockPersistencia.lockInterruptibly();
+        try {
+            while (lsnPersistido < lsn) {
+                if (nanos <= 0L) {
+                    return false;
+                }
+                nanos = persistido.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lockPersistencia.unlock();
+        }
+    }
+
+    /**
+     * Toma instantáneas periódicas que incluyen el estado de los recursos.
+     * Sin llamar a este método el diario igual toma instantáneas (sin recursos)
+     * cuando se acumulan segmentos sellados.
+     * @param fuente Captura del estado actual de ambulancias y médicos
+     * @param periodo Intervalo entre instantáneas
+     * @param unit Unidad de tiempo
+     */
+    public synchronized void activarInstantaneas(Supplier<RecursosInstantanea> fuente, long periodo, TimeUnit unit) {
+        this.fuenteRecursos = fuente;
+        if (programador != null) {
+            programador.shutdownNow();
+        }
+        programador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "Diario-Instantaneas");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        programador.scheduleWithFixedDelay(() -> {
+            try {
+                tomarInstantanea();
+            } catch (IOException | UncheckedIOException e) {
+                Registro.error("Error tomando instantánea: {}", e.getMessage());
+            }
+        }, periodo, periodo, unit);
+    }
+
+    /**
+     * Escribe una instantánea con todo lo sellado hasta ahora y borra los
+     * segmentos que cubre. Solo lee segmentos sellados, que ya no cambian, así
+     * que los escritores siguen anotando en el segmento activo mientras tanto.
+     * @return LSN de la instantánea escrita
+     */
+    public long tomarInstantanea() throws IOException {
+        lockInstantanea.lock();
+        try {
+            return tomarInstantaneaBloqueado();
+        } finally {
+            lockInstantanea.unlock();
+        }
+    }
+
+    private long tomarInstantaneaBloqueado() throws IOException {
+        long inicio = System.nanoTime();
+        List<Path> cubiertos;
+        lockEscritura.lock();
+        try {
+            cubiertos = new ArrayList<>(sellados);
+        } finally {
+            lockEscritura.unlock();
+        }
+        for (Path ruta : cubiertos) {
+            reproducir(ruta, sombra, sombra.getUltimoLsn());
+        }
+        Supplier<RecursosInstantanea> fuente = fuenteRecursos;
+        RecursosInstantanea recursos = fuente == null ? null : fuente.get();
+        long lsn = sombra.getUltimoLsn();
+        if (lsn > lsnUltimaInstantanea || recursos != null) {
+            new Instantanea(lsn, System.currentTimeMillis(), sombra, recursos).escribir(directorio);
+            lsnUltimaInstantanea = lsn;
+            instantaneas++;
+        }
+        lockEscritura.lock();
+        try {
+            sellados.removeAll(cubiertos);
+        } finally {
+            lockEscritura.unlock();
+        }
+        for (Path ruta : cubiertos) {
+            Files.deleteIfExists(ruta);
+        }
+        Registro.depuracion("📷 Instantánea en LSN {} ({} µs)",
+                            lsn, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - inicio));
+        return lsn;
+    }
+
+    /**
+     * Reproduce sobre un estado los registros de un segmento posteriores a un LSN.
+     * @return número de registros aplicados
+     */
+    private static int reproducir(Path ruta, EstadoDiario estado, long desdeLsn) throws IOException {
+        MappedByteBuffer datos;
+        try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.READ)) {
+            datos = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+        CRC32 crcLectura = new CRC32();
+        int aplicados = 0;
+        while (datos.remaining() >= CABECERA) {
+            int largo = datos.getInt();
+            int suma = datos.getInt();
+            if (largo <= 0 || largo > datos.remaining()) {
+                break;
+            }
+            ByteBuffer cuerpo = datos.slice(datos.position(), largo);
+            crcLectura.reset();
+            crcLectura.update(cuerpo.duplicate());
+            if ((int) crcLectura.getValue() != suma) {
+                Registro.advertencia("📓 Registro corrupto en {}: se ignora el resto del segmento", ruta.getFileName());
+                break;
+            }
+            datos.position(datos.position() + largo);
+            if (cuerpo.getLong(0) <= desdeLsn) {
+                continue;
+            }
+            if (!aplicar(cuerpo, estado)) {
+                Registro.advertencia("📓 Tipo de registro desconocido en {}", ruta.getFileName());
+                break;
+            }
+            aplicados++;
+        }
+        return aplicados;
+    }
+
+    private static boolean aplicar(ByteBuffer cuerpo, EstadoDiario estado) {
+        long lsn = cuerpo.getLong();
+        TipoRegistro tipo = TipoRegistro.desdeCodigo(cuerpo.get());
+        if (tipo == null) {
+            return false;
+        }
+        switch (tipo) {
+            case CREADA -> {
+                int id = cuerpo.getInt();
+                Prioridad prioridad = Prioridad.desdeValor(cuerpo.get());
+                long horaMillis = cuerpo.getLong();
+                double latitud = cuerpo.getDouble();
+                double longitud = cuerpo.getDouble();
+                String ubicacion = leerTexto(cuerpo);
+                String descripcion = leerTexto(cuerpo);
+                estado.crear(lsn, id, prioridad, ubicacion, descripcion, horaMillis, latitud, longitud);
+            }
+            case ASIGNADA -> {
+                int id = cuerpo.getInt();
+                estado.asignar(lsn, id, leerTexto(cuerpo));
+            }
+            case ATENDIDA -> estado.atender(lsn, cuerpo.getInt());
+            case CANCELADA -> estado.cancelar(lsn, cuerpo.getInt());
+            case DESCARTADA -> estado.descartar(lsn, cuerpo.getInt());
+            case ESCALADA -> {
+                int id = cuerpo.getInt();
+                estado.escalar(lsn, id, Prioridad.desdeValor(cuerpo.get()));
+            }
+        }
+        return true;
+    }
+
+    private static void iniciarRegistro(ByteBuffer buffer, long lsn, TipoRegistro tipo) {
+        buffer.clear();
+        buffer.position(CABECERA);
+        buffer.putLong(lsn);
+        buffer.put(tipo.getCodigo());
+    }
+
+    private static void terminarRegistro(ByteBuffer buffer, CRC32 crc) {
+        int largo = buffer.position() - CABECERA;
+        crc.reset();
+        crc.update(buffer.array(), CABECERA, largo);
+        buffer.putInt(0, largo);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+    }
+
+    private static void escribirCreada(ByteBuffer buffer, int id, Prioridad prioridad, long horaMillis,
+                                       double latitud, double longitud, byte[] ubicacion, byte[] descripcion) {
+        buffer.putInt(id);
+        buffer.put((byte) prioridad.getValor());
+        buffer.putLong(horaMillis);
+        buffer.putDouble(latitud);
+        buffer.putDouble(longitud);
+        escribirTexto(buffer, ubicacion);
+        escribirTexto(buffer, descripcion);
+    }
+
+    private static byte[] codificar(String texto) {
+        if (texto == null) {
+            return new byte[0];
+        }
+        if (texto.length() > MAXIMO_CARACTERES) {
+            texto = texto.substring(0, MAXIMO_CARACTERES);
+        }
+        return texto.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void escribirTexto(ByteBuffer buffer, byte[] texto) {
+        buffer.putShort((short) texto.length);
+        buffer.put(texto);
+    }
+
+    private static String leerTexto(ByteBuffer buffer) {
+        byte[] texto = new byte[buffer.getShort()];
+        buffer.get(texto);
+        return new String(texto, StandardCharsets.UTF_8);
+    }
+
+    private List<Path> listarSegmentos() throws IOException {
+        try (Stream<Path> rutas = Files.list(directorio)) {
+            return rutas
+                .filter(r -> {
+                    String nombre = r.getFileName().toString();
+                    return nombre.startsWith(PREFIJO) && nombre.endsWith(SUFIJO);
+                })
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Persiste lo pendiente y detiene el sincronizador. Las anotaciones posteriores fallan.
+     */
+    public void cerrar() {
+        lockEscritura.lock();
+        try {
+            if (!abierto) {
+                return;
+            }
+            abierto = false;
+        } finally {
+            lockEscritura.unlock();
+        }
+        synchronized (this) {
+            if (programador != null) {
+                programador.shutdownNow();
+            }
+        }
+        LockSupport.unpark(sincronizador);
+        try {
+            sincronizador.join(TimeUnit.SECONDS.toMillis(2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        persistirPendiente();
+        Registro.info("📓 Diario cerrado en LSN {}", lsnPersistido);
+    }
+
+    /**
+     * Estado reconstruido al abrir el diario.
+     * @return emergencias vivas y contadores al momento del último registro válido
+     */
+    public EstadoDiario getEstadoRecuperado() {
+        return estadoRecuperado;
+    }
+
+    public long getLsnEscrito() {
+        return lsnEscrito;
+    }
+
+    public long getLsnPersistido() {
+        return lsnPersistido;
+    }
+
+    public int getSegmentosSellados() {
+        lockEscritura.lock();
+        try {
+            return sellados.size();
+        } finally {
+            lockEscritura.unlock();
+        }
+    }
+
+    /**
+     * Estado de los recursos según la instantánea cargada al abrir.
+     * @return recursos, o null si no había instantánea o no los incluía
+     */
+    public RecursosInstantanea getRecursosRecuperados() {
+        return recursosRecuperados;
+    }
+
+    public long getInstantaneas() {
+        return instantaneas;
+    }
+
+    public long getLsnUltimaInstantanea() {
+        return lsnUltimaInstantanea;
+    }
+
+    /**
+     * Registros de los segmentos aplicados al abrir, después del LSN de la
+     * instantánea cargada; no cuenta lo que se cargó de la instantánea.
+     */
+    public long getRegistrosReproducidos() {
+        return registrosReproducidos;
+    }
+
+    public Path getDirectorio() {
+        return directorio;
+    }
+}
@@ -0,0 +1,216 @@
+package com.emergencias.persistencia;
+
+import com.emergencias.modelos.Emergencia;
+import com.emergencias.modelos.Prioridad;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estado reconstruido al reproducir el diario: emergencias vivas (pendientes o
+ * en proceso) y contadores acumulados. No es thread-safe; se construye en un
+ * solo hilo durante la recuperación o al tomar instantáneas.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class EstadoDiario {
+    private final Map<Integer, EmergenciaRegistrada> vivas;
+    private final EnumMap<Prioridad, Integer> registradasPorPrioridad;
+    private int ultimoId;
+    private int atendidas;
+    private int canceladas;
+    private long ultimoLsn;
+    private long registrosAplicados;
+
+    /**
+     * Datos de una emergencia viva según el diario.
+     */
+    public static class EmergenciaRegistrada {
+        private final int id;
+        private final String ubicacion;
+        private final String descripcion;
+        private final long horaLlamadaMillis;
+        private final double latitud;
+        private final double longitud;
+        private Prioridad prioridad;
+        private Emergencia.EstadoEmergencia estado;
+        private String ambulancia;
+
+        EmergenciaRegistrada(int id, Prioridad prioridad, String ubicacion, String descripcion,
+                             long horaLlamadaMillis, double latitud, double longitud) {
+            this.id = id;
+            this.prioridad = prioridad;
+            this.ubicacion = ubicacion;
+            this.descripcion = descripcion;
+            this.horaLlamadaMillis = horaLlamadaMillis;
+            this.latitud = latitud;
+            this.longitud = longitud;
+            this.estado = Emergencia.EstadoEmergencia.PENDIENTE;
+        }
+
+        /**
+         * Crea la emergencia en memoria con su id y hora de llamada originales.
+         * @return emergencia reconstruida, en estado PENDIENTE
+         */
+        public Emergencia reconstruir() {
+            LocalDateTime hora = LocalDateTime.ofInstant(Instant.ofEpochMilli(horaLlamadaMillis), ZoneId.systemDefault());
+            return new Emergencia(id, ubicacion, prioridad, descripcion, hora, latitud, longitud);
+        }
+
+        public int getId() { return id; }
+        public Prioridad getPrioridad() { return prioridad; }
+        public String getUbicacion() { return ubicacion; }
+        public String getDescripcion() { return descripcion; }
+        public long getHoraLlamadaMillis() { return horaLlamadaMillis; }
+        public double getLatitud() { return latitud; }
+        public double getLongitud() { return longitud; }
+        public Emergencia.EstadoEmergencia getEstado() { return estado; }
+        public String getAmbulancia() { return ambulancia; }
+    }
+
+    EstadoDiario() {
+        this.vivas = new LinkedHashMap<>();
+        this.registradasPorPrioridad = new EnumMap<>(Prioridad.class);
+        for (Prioridad p : Prioridad.values()) {
+            registradasPorPrioridad.put(p, 0);
+        }
+    }
+
+    void crear(long lsn, int id, Prioridad prioridad, String ubicacion, String descripcion,
+               long horaLlamadaMillis, double latitud, double longitud) {
+        avanzar(lsn);
+        // Un CREADA repetido (versiones anteriores anotaban así los reencolados)
+        // devuelve la emergencia a PENDIENTE
+        vivas.put(id, new EmergenciaRegistrada(id, prioridad, ubicacion, descripcion,
+                                               horaLlamadaMillis, latitud, longitud));
+        registradasPorPrioridad.merge(prioridad, 1, Integer::sum);
+        ultimoId = Math.max(ultimoId, id);
+    }
+
+    void asignar(long lsn, int id, String ambulancia) {
+        avanzar(lsn);
+        EmergenciaRegistrada registrada = vivas.get(id);
+        if (registrada != null) {
+            registrada.estado = Emergencia.EstadoEmergencia.EN_PROCESO;
+            registrada.ambulancia = ambulancia;
+        }
+    }
+
+    void atender(long lsn, int id) {
+        avanzar(lsn);
+        if (vivas.remove(id) != null) {
+            atendidas++;
+        }
+    }
+
+    void cancelar(long lsn, int id) {
+        avanzar(lsn);
+        if (vivas.remove(id) != null) {
+            canceladas++;
+        }
+    }
+
+    void descartar(long lsn, int id) {
+        avanzar(lsn);
+        vivas.remove(id);
+    }
+
+    void escalar(long lsn, int id, Prioridad nueva) {
+        avanzar(lsn);
+        EmergenciaRegistrada registrada = vivas.get(id);
+        if (registrada != null && registrada.prioridad != nueva) {
+            registradasPorPrioridad.merge(registrada.prioridad, -1, Integer::sum);
+            registradasPorPrioridad.merge(nueva, 1, Integer::sum);
+            registrada.prioridad = nueva;
+        }
+    }
+
+    /**
+     * Aplica los contadores de una instantánea. Las emergencias vivas se cargan
+     * después con {@link #crear}, que vuelve a sumar en las estadísticas por
+     * prioridad, así que el resumen guarda solo la diferencia.
+     */
+    void resumen(long lsn, int ultimoId, int atendidas, int canceladas, int[] porPrioridad) {
+        avanzar(lsn);
+        this.ultimoId = Math.max(this.ultimoId, ultimoId);
+        this.atendidas += atendidas;
+        this.canceladas += canceladas;
+        for (Prioridad p : Prioridad.values()) {
+            registradasPorPrioridad.merge(p, porPrioridad[p.ordinal()], Integer::sum);
+        }
+    }
+
+    /**
+     * Copia independiente del estado, para seguir avanzándola sin alterar el original.
+     */
+    EstadoDiario copiar() {
+        EstadoDiario copia = new EstadoDiario();
+        copia.resumen(ultimoLsn, ultimoId, atendidas, canceladas, registradasSinVivas());
+        for (EmergenciaRegistrada viva : vivas.values()) {
+            copia.crear(ultimoLsn, viva.id, viva.prioridad, viva.ubicacion, viva.descripcion,
+                        viva.horaLlamadaMillis, viva.latitud, viva.longitud);
+            if (viva.estado == Emergencia.EstadoEmergencia.EN_PROCESO) {
+                copia.asignar(ultimoLsn, viva.id, viva.ambulancia);
+            }
+        }
+        return copia;
+    }
+
+    private void avanzar(long lsn) {
+        ultimoLsn = Math.max(ultimoLsn, lsn);
+        registrosAplicados++;
+    }
+
+    /**
+     * Emergencias vivas en orden de registro.
+     * @return copia de la lista
+     */
+    public List<EmergenciaRegistrada> getVivas() {
+        return new ArrayList<>(vivas.values());
+    }
+
+    /**
+     * Registradas por prioridad sin contar las vivas, que se vuelven a sumar al
+     * cargarlas desde una instantánea.
+     */
+    int[] registradasSinVivas() {
+        int[] porPrioridad = new int[Prioridad.values().length];
+        for (Map.Entry<Prioridad, Integer> entry : registradasPorPrioridad.entrySet()) {
+            porPrioridad[entry.getKey().ordinal()] = entry.getValue();
+        }
+        for (EmergenciaRegistrada viva : vivas.values()) {
+            porPrioridad[viva.prioridad.ordinal()]--;
+        }
+        return porPrioridad;
+    }
+
+    public Map<Prioridad, Integer> getRegistradasPorPrioridad() {
+        return new EnumMap<>(registradasPorPrioridad);
+    }
+
+    public int getUltimoId() {
+        return ultimoId;
+    }
+
+    public int getAtendidas() {
+        return atendidas;
+    }
+
+    public int getCanceladas() {
+        return canceladas;
+    }
+
+    public long getUltimoLsn() {
+        return ultimoLsn;
+    }
+
+    public long getRegistrosAplicados() {
+        return registrosAplicados;
+    }
+}
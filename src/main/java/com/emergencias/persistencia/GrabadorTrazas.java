@@ -0,0 +1,211 @@
+package com.emergencias.persistencia;
+
+import com.emergencias.modelos.Emergencia;
+import com.emergencias.registro.Registro;
+import com.emergencias.simulacion.Reloj;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Graba las llamadas recibidas y los eventos de recursos en una traza
+ * binaria compacta, para reproducir después el mismo día contra otra versión
+ * del despacho (ver {@link LectorTrazas}).
+ * <p>
+ * Formato: una cabecera de {@value #CABECERA} bytes (mágico, versión, hora
+ * de inicio en milisegundos UTC, número de registros y posición del
+ * diccionario), registros de tamaño fijo de {@value #REGISTRO} bytes y al
+ * final un diccionario con los textos (ubicaciones, descripciones e ids de
+ * ambulancia) que los registros referencian por número, cada uno con su
+ * largo en bytes como int. Cada registro lleva
+ * el desfase en nanosegundos desde el inicio de la grabación, el tipo, la
+ * prioridad, el id de la emergencia, dos referencias al diccionario y las
+ * coordenadas.
+ * <p>
+ * Los registros se acumulan en un buffer y se escriben en bloques. Como los
+ * anotan varios hilos, su orden en el archivo sigue el de las anotaciones y
+ * los desfases pueden estar levemente desordenados. La cabecera y el
+ * diccionario se completan al {@link #cerrar() cerrar}: una traza sin cerrar
+ * no se puede leer.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class GrabadorTrazas {
+    static final int MAGICO = 0x5452415A; // "TRAZ"
+    static final int VERSION = 2;
+    /** Versión anterior, con el largo de cada texto del diccionario en 2 bytes. */
+    static final int VERSION_LARGOS_CORTOS = 1;
+    static final int CABECERA = 32;
+    static final int REGISTRO = 38;
+    static final int SIN_TEXTO = -1;
+    private static final int TAMANIO_BUFFER = 64 * 1024;
+
+    private final Path archivo;
+    private final FileChannel canal;
+    private final ByteBuffer buffer;
+    private final long inicioNanos;
+    private final LocalDateTime inicio;
+    private final Map<String, Integer> diccionario;
+    private final List<String> textos;
+    private long registros;
+    private boolean cerrado;
+
+    /**
+     * Crea (o reemplaza) una traza. Los desfases se cuentan desde este
+     * momento según el reloj del sistema.
+     * @param archivo Archivo de la traza
+     */
+    public GrabadorTrazas(Path archivo) throws IOException {
+        this.archivo = archivo;
+        this.canal = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                      StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocate(TAMANIO_BUFFER);
+        Reloj reloj = Reloj.actual();
+        this.inicioNanos = reloj.nanos();
+        this.inicio = reloj.ahora();
+        this.diccionario = new HashMap<>();
+        this.textos = new ArrayList<>();
+        canal.write(ByteBuffer.allocate(CABECERA), 0); // Se completa al cerrar
+        canal.position(CABECERA);
+    }
+
+    /**
+     * Anota una llamada en el instante en que se hizo, aunque no se admita.
+     */
+    public void anotarLlamada(Emergencia emergencia) {
+        anotar(TipoTraza.LLAMADA, emergencia.getMarcaLlamadaNanos(), emergencia,
+               emergencia.getUbicacion(), emergencia.getDescripcion());
+    }
+
+    /**
+     * Anota que la emergencia recibió sus recursos.
+     */
+    public void anotarAsignados(Emergencia emergencia) {
+        anotar(TipoTraza.RECURSOS_ASIGNADOS, Reloj.actual().nanos(), emergencia,
+               emergencia.getAmbulanciaAsignada(), null);
+    }
+
+    /**
+     * Anota que la emergencia terminó y liberó sus recursos.
+     */
+    public void anotarLiberados(Emergencia emergencia) {
+        anotar(TipoTraza.RECURSOS_LIBERADOS, Reloj.actual().nanos(), emergencia,
+               emergencia.getAmbulanciaAsignada(), null);
+    }
+
+    /**
+     * Anota que la emergencia se canceló o se descartó por saturación.
+     */
+    public void anotarCancelada(Emergencia emergencia) {
+        anotar(TipoTraza.CANCELADA, Reloj.actual().nanos(), emergencia, null, null);
+    }
+
+    private synchronized void anotar(TipoTraza tipo, long instanteNanos, Emergencia emergencia,
+                                     String texto1, String texto2) {
+        if (cerrado) {
+            return;
+        }
+        try {
+            if (buffer.remaining() < REGISTRO) {
+                vaciar();
+            }
+            buffer.putLong(Math.max(0L, instanteNanos - inicioNanos))
+                  .put(tipo.getCodigo())
+                  .put((byte) emergencia.getPrioridad().ordinal())
+                  .putInt(emergencia.getId())
+                  .putInt(referencia(texto1))
+                  .putInt(referencia(texto2))
+                  .putDouble(emergencia.getLatitud())
+                  .putDouble(emergencia.getLongitud());
+            registros++;
+        } catch (IOException e) {
+            Registro.error("Error grabando la traza {}: {}; se deja de grabar", archivo, e.getMessage());
+            cerrado = true;
+        }
+    }
+
+    private int referencia(String texto) {
+        if (texto == null) {
+            return SIN_TEXTO;
+        }
+        Integer id = diccionario.get(texto);
+        if (id == null) {
+            id = textos.size();
+            diccionario.put(texto, id);
+            textos.add(texto);
+        }
+        return id;
+    }
+
+    private void vaciar() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Escribe lo pendiente, el diccionario y la cabecera, y cierra el
+     * archivo. Las anotaciones posteriores se ignoran.
+     */
+    public synchronized void cerrar() {
+        if (!canal.isOpen()) {
+            return;
+        }
+        cerrado = true;
+        try {
+            vaciar();
+            long posicionDiccionario = canal.position();
+            List<byte[]> codificados = new ArrayList<>(textos.size());
+            long tamanio = Integer.BYTES;
+            for (String texto : textos) {
+                byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+                codificados.add(bytes);
+                tamanio += Integer.BYTES + bytes.length;
+            }
+            if (tamanio > Integer.MAX_VALUE) {
+                throw new IOException("diccionario de " + tamanio + " bytes");
+            }
+            ByteBuffer diccionarioBuffer = ByteBuffer.allocate((int) tamanio);
+            diccionarioBuffer.putInt(codificados.size());
+            for (byte[] bytes : codificados) {
+                diccionarioBuffer.putInt(bytes.length).put(bytes);
+            }
+            diccionarioBuffer.flip();
+            while (diccionarioBuffer.hasRemaining()) {
+                canal.write(diccionarioBuffer);
+            }
+            ByteBuffer cabecera = ByteBuffer.allocate(CABECERA);
+            cabecera.putInt(MAGICO).putInt(VERSION)
+                    .putLong(inicio.toInstant(ZoneOffset.UTC).toEpochMilli())
+                    .putLong(registros).putLong(posicionDiccionario);
+            cabecera.flip();
+            canal.write(cabecera, 0);
+            canal.force(true);
+            Registro.info("Traza {} cerrada: {} registros", archivo, registros);
+        } catch (IOException e) {
+            Registro.error("Error cerrando la traza {}: {}", archivo, e.getMessage());
+        } finally {
+            try {
+                canal.close();
+            } catch (IOException e) {
+                Registro.error("Error cerrando la traza {}: {}", archivo, e.getMessage());
+            }
+        }
+    }
+
+    public synchronized long getRegistros() {
+        return registros;
+    }
+}
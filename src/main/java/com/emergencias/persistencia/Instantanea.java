@@ -0,0 +1,270 @@
+package com.emergencias.persistencia;
+
+import com.emergencias.modelos.Emergencia;
+import com.emergencias.modelos.Prioridad;
+import com.emergencias.registro.Registro;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Instantánea del sistema en un LSN del diario: contadores, emergencias vivas
+ * y, opcionalmente, el estado de los recursos. Al reiniciar se carga la última
+ * instantánea válida y solo se reproducen los registros del diario posteriores
+ * a su LSN, así que el arranque no depende de la longitud del historial.
+ * <p>
+ * El archivo termina con un CRC32 de todo su contenido; se escribe en un
+ * temporal y se renombra de forma atómica, por lo que una caída a mitad de la
+ * escritura deja intacta la instantánea anterior.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class Instantanea {
+    private static final int MAGICO = 0x454D4753; // "EMGS"
+    private static final int VERSION = 1;
+    private static final String PREFIJO = "instantanea-";
+    private static final String SUFIJO = ".snap";
+
+    private final long lsn;
+    private final long marcaMillis;
+    private final EstadoDiario estado;
+    private final RecursosInstantanea recursos;
+
+    /**
+     * @param lsn Último LSN incluido en el estado
+     * @param marcaMillis Momento de la captura
+     * @param estado Estado de emergencias en ese LSN
+     * @param recursos Estado de los recursos, o null si no se capturó
+     */
+    public Instantanea(long lsn, long marcaMillis, EstadoDiario estado, RecursosInstantanea recursos) {
+        this.lsn = lsn;
+        this.marcaMillis = marcaMillis;
+        this.estado = estado;
+        this.recursos = recursos;
+    }
+
+    /**
+     * Escribe la instantánea en el directorio y borra las anteriores.
+     * @param directorio Directorio del diario
+     * @return ruta del archivo escrito
+     */
+    public Path escribir(Path directorio) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        DataOutputStream salida = new DataOutputStream(bytes);
+        salida.writeInt(MAGICO);
+        salida.writeInt(VERSION);
+        salida.writeLong(lsn);
+        salida.writeLong(marcaMillis);
+        escribirEstado(salida);
+        escribirRecursos(salida);
+        salida.flush();
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        salida.writeInt((int) crc.getValue());
+        salida.flush();
+
+        Path destino = directorio.resolve(String.format("%s%019d%s", PREFIJO, lsn, SUFIJO));
+        Path temporal = directorio.resolve(destino.getFileName() + ".tmp");
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer contenido = ByteBuffer.wrap(bytes.toByteArray());
+            while (contenido.hasRemaining()) {
+                canal.write(contenido);
+            }
+            canal.force(true);
+        }
+        Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (Path anterior : listar(directorio)) {
+            if (!anterior.equals(destino)) {
+                Files.deleteIfExists(anterior);
+            }
+        }
+        return destino;
+    }
+
+    private void escribirEstado(DataOutputStream salida) throws IOException {
+        salida.writeInt(estado.getUltimoId());
+        salida.writeInt(estado.getAtendidas());
+        salida.writeInt(estado.getCanceladas());
+        int[] porPrioridad = estado.registradasSinVivas();
+        salida.writeByte(porPrioridad.length);
+        for (int cantidad : porPrioridad) {
+            salida.writeInt(cantidad);
+        }
+        List<EstadoDiario.EmergenciaRegistrada> vivas = estado.getVivas();
+        salida.writeInt(vivas.size());
+        for (EstadoDiario.EmergenciaRegistrada viva : vivas) {
+            salida.writeInt(viva.getId());
+            salida.writeByte(viva.getPrioridad().getValor());
+            salida.writeLong(viva.getHoraLlamadaMillis());
+            salida.writeDouble(viva.getLatitud());
+            salida.writeDouble(viva.getLongitud());
+            salida.writeUTF(viva.getUbicacion());
+            salida.writeUTF(viva.getDescripcion());
+            boolean enProceso = viva.getEstado() == Emergencia.EstadoEmergencia.EN_PROCESO;
+            salida.writeBoolean(enProceso);
+            if (enProceso) {
+                salida.writeUTF(viva.getAmbulancia() == null ? "" : viva.getAmbulancia());
+            }
+        }
+    }
+
+    private void escribirRecursos(DataOutputStream salida) throws IOException {
+        salida.writeBoolean(recursos != null);
+        if (recursos == null) {
+            return;
+        }
+        salida.writeInt(recursos.getAmbulancias().size());
+        for (RecursosInstantanea.AmbulanciaRegistrada ambulancia : recursos.getAmbulancias()) {
+            salida.writeUTF(ambulancia.getId());
+            salida.writeDouble(ambulancia.getLatitud());
+            salida.writeDouble(ambulancia.getLongitud());
+            salida.writeBoolean(ambulancia.isDisponible());
+            salida.writeInt(ambulancia.getEmergenciaId());
+        }
+        salida.writeInt(recursos.getMedicos().size());
+        for (RecursosInstantanea.MedicoRegistrado medico : recursos.getMedicos()) {
+            salida.writeUTF(medico.getId());
+            salida.writeBoolean(medico.isDisponible());
+            salida.writeInt(medico.getEmergenciaId());
+        }
+    }
+
+    /**
+     * Carga la instantánea válida más reciente del directorio. Las dañadas se ignoran.
+     * @param directorio Directorio del diario
+     * @return instantánea o null si no hay ninguna válida
+     */
+    public static Instantanea leerUltima(Path directorio) throws IOException {
+        List<Path> rutas = listar(directorio);
+        rutas.sort(Comparator.reverseOrder());
+        for (Path ruta : rutas) {
+            Instantanea instantanea = leer(ruta);
+            if (instantanea != null) {
+                return instantanea;
+            }
+            Registro.advertencia("📷 Instantánea dañada, se ignora: {}", ruta.getFileName());
+        }
+        return null;
+    }
+
+    private static Instantanea leer(Path ruta) throws IOException {
+        byte[] contenido = Files.readAllBytes(ruta);
+        if (contenido.length < 28) {
+            return null;
+        }
+        int largo = contenido.length - 4;
+        CRC32 crc = new CRC32();
+        crc.update(contenido, 0, largo);
+        if ((int) crc.getValue() != ByteBuffer.wrap(contenido, largo, 4).getInt()) {
+            return null;
+        }
+        DataInputStream entrada = new DataInputStream(new ByteArrayInputStream(contenido, 0, largo));
+        if (entrada.readInt() != MAGICO || entrada.readInt() != VERSION) {
+            return null;
+        }
+        long lsn = entrada.readLong();
+        long marcaMillis = entrada.readLong();
+        EstadoDiario estado = leerEstado(entrada, lsn);
+        RecursosInstantanea recursos = leerRecursos(entrada);
+        return new Instantanea(lsn, marcaMillis, estado, recursos);
+    }
+
+    private static EstadoDiario leerEstado(DataInputStream entrada, long lsn) throws IOException {
+        EstadoDiario estado = new EstadoDiario();
+        int ultimoId = entrada.readInt();
+        int atendidas = entrada.readInt();
+        int canceladas = entrada.readInt();
+        int[] porPrioridad = new int[Prioridad.values().length];
+        int cantidad = entrada.readUnsignedByte();
+        for (int i = 0; i < cantidad; i++) {
+            int valor = entrada.readInt();
+            if (i < porPrioridad.length) {
+                porPrioridad[i] = valor;
+            }
+        }
+        estado.resumen(lsn, ultimoId, atendidas, canceladas, porPrioridad);
+        int vivas = entrada.readInt();
+        for (int i = 0; i < vivas; i++) {
+            int id = entrada.readInt();
+            Prioridad prioridad = Prioridad.desdeValor(entrada.readByte());
+            long horaMillis = entrada.readLong();
+            double latitud = entrada.readDouble();
+            double longitud = entrada.readDouble();
+            String ubicacion = entrada.readUTF();
+            String descripcion = entrada.readUTF();
+            estado.crear(lsn, id, prioridad, ubicacion, descripcion, horaMillis, latitud, longitud);
+            if (entrada.readBoolean()) {
+                estado.asignar(lsn, id, entrada.readUTF());
+            }
+        }
+        return estado;
+    }
+
+    private static RecursosInstantanea leerRecursos(DataInputStream entrada) throws IOException {
+        if (!entrada.readBoolean()) {
+            return null;
+        }
+        int totalAmbulancias = entrada.readInt();
+        List<RecursosInstantanea.AmbulanciaRegistrada> ambulancias = new ArrayList<>(totalAmbulancias);
+        for (int i = 0; i < totalAmbulancias; i++) {
+            ambulancias.add(new RecursosInstantanea.AmbulanciaRegistrada(
+                entrada.readUTF(), entrada.readDouble(), entrada.readDouble(),
+                entrada.readBoolean(), entrada.readInt()));
+        }
+        int totalMedicos = entrada.readInt();
+        List<RecursosInstantanea.MedicoRegistrado> medicos = new ArrayList<>(totalMedicos);
+        for (int i = 0; i < totalMedicos; i++) {
+            medicos.add(new RecursosInstantanea.MedicoRegistrado(
+                entrada.readUTF(), entrada.readBoolean(), entrada.readInt()));
+        }
+        return new RecursosInstantanea(ambulancias, medicos);
+    }
+
+    private static List<Path> listar(Path directorio) throws IOException {
+        try (Stream<Path> rutas = Files.list(directorio)) {
+            return rutas
+                .filter(r -> {
+                    String nombre = r.getFileName().toString();
+                    return nombre.startsWith(PREFIJO) && nombre.endsWith(SUFIJO);
+                })
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    public long getLsn() {
+        return lsn;
+    }
+
+    public long getMarcaMillis() {
+        return marcaMillis;
+    }
+
+    public EstadoDiario getEstado() {
+        return estado;
+    }
+
+    /**
+     * Estado de los recursos al momento de la captura.
+     * @return recursos, o null si la instantánea no los incluye
+     */
+    public RecursosInstantanea getRecursos() {
+        return recursos;
+    }
+}
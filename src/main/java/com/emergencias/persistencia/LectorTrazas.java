@@ -0,0 +1,187 @@
+package com.emergencias.persistencia;
+
+import com.emergencias.modelos.Prioridad;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Lee una traza escrita por {@link GrabadorTrazas}. El archivo se mapea en
+ * memoria y los registros se recorren en orden con {@link #siguiente()}: cada
+ * avance es leer unos bytes contiguos, sin llamadas al sistema ni objetos
+ * nuevos salvo los textos del diccionario, que se decodifican una sola vez al
+ * abrir.
+ * <p>
+ * Un lector no es thread-safe; lo recorre un único reproductor.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class LectorTrazas {
+    private static final Prioridad[] PRIORIDADES = Prioridad.values();
+
+    private final Path archivo;
+    private final MappedByteBuffer datos;
+    private final LocalDateTime inicio;
+    private final long registros;
+    private final String[] textos;
+    private long leidos;
+    private int posicion;
+
+    private LectorTrazas(Path archivo, MappedByteBuffer datos, LocalDateTime inicio, long registros,
+                         String[] textos) {
+        this.archivo = archivo;
+        this.datos = datos;
+        this.inicio = inicio;
+        this.registros = registros;
+        this.textos = textos;
+        this.posicion = GrabadorTrazas.CABECERA - GrabadorTrazas.REGISTRO;
+    }
+
+    /**
+     * Mapea una traza y decodifica su diccionario.
+     * @param archivo Traza cerrada
+     * @return lector posicionado antes del primer registro
+     * @throws IOException si el archivo no es una traza, no se cerró o está truncado
+     */
+    public static LectorTrazas abrir(Path archivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            long tamanio = canal.size();
+            if (tamanio < GrabadorTrazas.CABECERA) {
+                throw new IOException(archivo + ": traza truncada");
+            }
+            if (tamanio > Integer.MAX_VALUE) {
+                throw new IOException(archivo + ": traza demasiado grande para mapearla");
+            }
+            MappedByteBuffer datos = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamanio);
+            int magico = datos.getInt(0);
+            if (magico == 0) {
+                throw new IOException(archivo + ": la traza no se cerró");
+            }
+            int version = datos.getInt(4);
+            if (magico != GrabadorTrazas.MAGICO
+                || (version != GrabadorTrazas.VERSION && version != GrabadorTrazas.VERSION_LARGOS_CORTOS)) {
+                throw new IOException(archivo + ": no es una traza de llamadas");
+            }
+            LocalDateTime inicio = LocalDateTime.ofInstant(Instant.ofEpochMilli(datos.getLong(8)), ZoneOffset.UTC);
+            long registros = datos.getLong(16);
+            long posicionDiccionario = datos.getLong(24);
+            if (registros < 0 || posicionDiccionario != GrabadorTrazas.CABECERA + registros * GrabadorTrazas.REGISTRO
+                || posicionDiccionario + Integer.BYTES > tamanio) {
+                throw new IOException(archivo + ": traza truncada o corrupta");
+            }
+            String[] textos;
+            try {
+                datos.position((int) posicionDiccionario);
+                textos = new String[datos.getInt()];
+                for (int i = 0; i < textos.length; i++) {
+                    int largo = version == GrabadorTrazas.VERSION_LARGOS_CORTOS
+                        ? Short.toUnsignedInt(datos.getShort()) : datos.getInt();
+                    if (largo > datos.remaining()) {
+                        throw new BufferUnderflowException();
+                    }
+                    byte[] bytes = new byte[largo];
+                    datos.get(bytes);
+                    textos[i] = new String(bytes, StandardCharsets.UTF_8);
+                }
+            } catch (BufferUnderflowException | NegativeArraySizeException e) {
+                throw new IOException(archivo + ": diccionario corrupto", e);
+            }
+            return new LectorTrazas(archivo, datos, inicio, registros, textos);
+        }
+    }
+
+    /**
+     * Avanza al registro siguiente.
+     * @return false si no quedan registros
+     */
+    public boolean siguiente() {
+        if (leidos == registros) {
+            return false;
+        }
+        leidos++;
+        posicion += GrabadorTrazas.REGISTRO;
+        return true;
+    }
+
+    /**
+     * Vuelve a antes del primer registro, para reproducir otra vez.
+     */
+    public void reiniciar() {
+        leidos = 0;
+        posicion = GrabadorTrazas.CABECERA - GrabadorTrazas.REGISTRO;
+    }
+
+    /**
+     * Desfase del registro actual desde el inicio de la grabación.
+     */
+    public long getDesfaseNanos() {
+        return datos.getLong(posicion);
+    }
+
+    /**
+     * @return tipo del registro actual, o null si el código es desconocido
+     */
+    public TipoTraza getTipo() {
+        return TipoTraza.desdeCodigo(datos.get(posicion + 8));
+    }
+
+    public Prioridad getPrioridad() {
+        return PRIORIDADES[datos.get(posicion + 9)];
+    }
+
+    /**
+     * Id que tenía la emergencia en la corrida grabada.
+     */
+    public int getEmergenciaId() {
+        return datos.getInt(posicion + 10);
+    }
+
+    /**
+     * Ubicación de una llamada, o ambulancia de un evento de recursos.
+     */
+    public String getTexto1() {
+        return texto(datos.getInt(posicion + 14));
+    }
+
+    /**
+     * Descripción de una llamada; null en los eventos de recursos.
+     */
+    public String getTexto2() {
+        return texto(datos.getInt(posicion + 18));
+    }
+
+    public double getLatitud() {
+        return datos.getDouble(posicion + 22);
+    }
+
+    public double getLongitud() {
+        return datos.getDouble(posicion + 30);
+    }
+
+    private String texto(int referencia) {
+        return referencia == GrabadorTrazas.SIN_TEXTO ? null : textos[referencia];
+    }
+
+    public Path getArchivo() {
+        return archivo;
+    }
+
+    /**
+     * Hora de reloj de pared en que empezó la grabación.
+     */
+    public LocalDateTime getInicio() {
+        return inicio;
+    }
+
+    public long getRegistros() {
+        return registros;
+    }
+}
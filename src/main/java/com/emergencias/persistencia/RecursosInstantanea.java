@@ -0,0 +1,87 @@
+package com.emergencias.persistencia;
+
+import java.util.List;
+
+/**
+ * Estado de ambulancias y médicos capturado para una instantánea: ubicación,
+ * disponibilidad y emergencia asignada de cada recurso. La captura no detiene a
+ * los despachadores, así que cada recurso se lee por separado y el conjunto
+ * puede mezclar instantes cercanos.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class RecursosInstantanea {
+    private final List<AmbulanciaRegistrada> ambulancias;
+    private final List<MedicoRegistrado> medicos;
+
+    /**
+     * Estado de una ambulancia.
+     */
+    public static class AmbulanciaRegistrada {
+        private final String id;
+        private final double latitud;
+        private final double longitud;
+        private final boolean disponible;
+        private final int emergenciaId;
+
+        /**
+         * @param id Id de la ambulancia
+         * @param latitud Última latitud conocida
+         * @param longitud Última longitud conocida
+         * @param disponible Si estaba libre
+         * @param emergenciaId Emergencia que atendía, o 0
+         */
+        public AmbulanciaRegistrada(String id, double latitud, double longitud,
+                                    boolean disponible, int emergenciaId) {
+            this.id = id;
+            this.latitud = latitud;
+            this.longitud = longitud;
+            this.disponible = disponible;
+            this.emergenciaId = emergenciaId;
+        }
+
+        public String getId() { return id; }
+        public double getLatitud() { return latitud; }
+        public double getLongitud() { return longitud; }
+        public boolean isDisponible() { return disponible; }
+        public int getEmergenciaId() { return emergenciaId; }
+    }
+
+    /**
+     * Estado de un médico.
+     */
+    public static class MedicoRegistrado {
+        private final String id;
+        private final boolean disponible;
+        private final int emergenciaId;
+
+        /**
+         * @param id Id del médico
+         * @param disponible Si estaba libre
+         * @param emergenciaId Emergencia que atendía, o 0
+         */
+        public MedicoRegistrado(String id, boolean disponible, int emergenciaId) {
+            this.id = id;
+            this.disponible = disponible;
+            this.emergenciaId = emergenciaId;
+        }
+
+        public String getId() { return id; }
+        public boolean isDisponible() { return disponible; }
+        public int getEmergenciaId() { return emergenciaId; }
+    }
+
+    public RecursosInstantanea(List<AmbulanciaRegistrada> ambulancias, List<MedicoRegistrado> medicos) {
+        this.ambulancias = List.copyOf(ambulancias);
+        this.medicos = List.copyOf(medicos);
+    }
+
+    public List<AmbulanciaRegistrada> getAmbulancias() {
+        return ambulancias;
+    }
+
+    public List<MedicoRegistrado> getMedicos() {
+        return medicos;
+    }
+}
@@ -0,0 +1,47 @@
+package com.emergencias.persistencia;
+
+/**
+ * Tipos de registro del diario de emergencias. El código se escribe en disco,
+ * por lo que no debe cambiar aunque se reordene el enum.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public enum TipoRegistro {
+    /** Emergencia registrada (o reencolada) con todos sus datos. */
+    CREADA(1),
+    /** Recurso asignado: la emergencia pasó a EN_PROCESO. */
+    ASIGNADA(2),
+    /** Emergencia atendida. */
+    ATENDIDA(3),
+    /** Emergencia cancelada por el operador. */
+    CANCELADA(4),
+    /** Emergencia LEVE descartada por saturación (no cuenta como cancelada). */
+    DESCARTADA(5),
+    /** Cambio de prioridad de una emergencia activa. */
+    ESCALADA(6);
+
+    private final byte codigo;
+
+    TipoRegistro(int codigo) {
+        this.codigo = (byte) codigo;
+    }
+
+    public byte getCodigo() {
+        return codigo;
+    }
+
+    /**
+     * Tipo correspondiente a un código leído de disco.
+     * @param codigo Código almacenado
+     * @return tipo de registro, o null si el código no es válido
+     */
+    public static TipoRegistro desdeCodigo(byte codigo) {
+        for (TipoRegistro tipo : values()) {
+            if (tipo.codigo == codigo) {
+                return tipo;
+            }
+        }
+        return null;
+    }
+}
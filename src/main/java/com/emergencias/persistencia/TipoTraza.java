@@ -0,0 +1,43 @@
+package com.emergencias.persistencia;
+
+/**
+ * Tipos de registro de una traza de llamadas. El código se escribe en disco,
+ * por lo que no debe cambiar aunque se reordene el enum.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public enum TipoTraza {
+    /** Llamada recibida, admitida o no, con sus datos. */
+    LLAMADA(1),
+    /** Ambulancia y médicos asignados: la emergencia pasó a EN_PROCESO. */
+    RECURSOS_ASIGNADOS(2),
+    /** Emergencia atendida: sus recursos quedan libres. */
+    RECURSOS_LIBERADOS(3),
+    /** Emergencia cancelada por el operador o descartada por saturación. */
+    CANCELADA(4);
+
+    private final byte codigo;
+
+    TipoTraza(int codigo) {
+        this.codigo = (byte) codigo;
+    }
+
+    public byte getCodigo() {
+        return codigo;
+    }
+
+    /**
+     * Tipo correspondiente a un código leído de disco.
+     * @param codigo Código almacenado
+     * @return tipo de registro, o null si el código no es válido
+     */
+    public static TipoTraza desdeCodigo(byte codigo) {
+        for (TipoTraza tipo : values()) {
+            if (tipo.codigo == codigo) {
+                return tipo;
+            }
+        }
+        return null;
+    }
+}
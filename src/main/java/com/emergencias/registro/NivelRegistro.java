@@ -0,0 +1,11 @@
+package com.emergencias.registro;
+
+/**
+ * Niveles de severidad de los eventos de registro, de menor a mayor.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public enum NivelRegistro {
+    DEPURACION, INFO, ADVERTENCIA, ERROR
+}
@@ -0,0 +1,15 @@
+package com.emergencias.registro;
+
+/**
+ * Comportamiento del registro cuando el buffer de eventos está lleno porque el
+ * hilo escritor no da abasto.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public enum PoliticaDesborde {
+    /** Se descarta el evento nuevo y se contabiliza; el hilo que registra nunca espera. */
+    DESCARTAR,
+    /** El hilo que registra espera a que el escritor libere espacio. */
+    BLOQUEAR
+}
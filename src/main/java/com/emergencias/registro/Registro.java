@@ -0,0 +1,292 @@
+package com.emergencias.registro;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Registro asíncrono de eventos del sistema con niveles.
+ * <p>
+ * Los hilos que registran solo copian la plantilla y sus argumentos a una ranura
+ * de un buffer circular preasignado; el formateo ({@code {}} se reemplaza por cada
+ * argumento) y la escritura en consola los hace un único hilo escritor por lotes.
+ * Así el PrintStream sincronizado deja de ser un punto de contención entre hilos.
+ * <p>
+ * Configuración por propiedades del sistema:
+ * <ul>
+ *   <li>{@code emergencias.registro.silencioso}: desactiva todo el registro. Es una
+ *       constante, así que el JIT elimina las llamadas por completo.</li>
+ *   <li>{@code emergencias.registro.nivel}: nivel mínimo (INFO por defecto).</li>
+ *   <li>{@code emergencias.registro.capacidad}: ranuras del buffer (8192).</li>
+ *   <li>{@code emergencias.registro.politica}: DESCARTAR o BLOQUEAR al llenarse.</li>
+ *   <li>{@code emergencias.registro.detallado}: antepone hora, nivel e hilo.</li>
+ * </ul>
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public final class Registro {
+    private static final boolean SILENCIOSO = Boolean.getBoolean("emergencias.registro.silencioso");
+    private static final boolean DETALLADO = Boolean.getBoolean("emergencias.registro.detallado");
+    private static final PoliticaDesborde POLITICA = PoliticaDesborde.valueOf(
+        System.getProperty("emergencias.registro.politica", PoliticaDesborde.DESCARTAR.name()));
+    private static final int CAPACIDAD = Integer.highestOneBit(
+        Math.max(2, Integer.getInteger("emergencias.registro.capacidad", 8192) - 1)) << 1;
+
+    private static volatile NivelRegistro nivelMinimo = NivelRegistro.valueOf(
+        System.getProperty("emergencias.registro.nivel", NivelRegistro.INFO.name()));
+
+    private static final Evento[] EVENTOS = new Evento[CAPACIDAD];
+    private static final AtomicLongArray SECUENCIAS = new AtomicLongArray(CAPACIDAD);
+    private static final int MASCARA = CAPACIDAD - 1;
+    private static final AtomicLong COLA = new AtomicLong(0);
+    private static final AtomicLong DESCARTADOS = new AtomicLong(0);
+    private static volatile long escritos = 0;
+    private static final Thread ESCRITOR;
+
+    static {
+        for (int i = 0; i < CAPACIDAD; i++) {
+            EVENTOS[i] = new Evento();
+            SECUENCIAS.set(i, i);
+        }
+        ESCRITOR = new Thread(Registro::escribir, "Registro-Escritor");
+        ESCRITOR.setDaemon(true);
+        if (!SILENCIOSO) {
+            ESCRITOR.start();
+        }
+    }
+
+    private Registro() {
+    }
+
+    /**
+     * Indica si un nivel se registraría; útil para evitar calcular argumentos costosos.
+     * @param nivel Nivel a consultar
+     * @return true si los eventos de ese nivel se escriben
+     */
+    public static boolean activo(NivelRegistro nivel) {
+        return !SILENCIOSO && nivel.compareTo(nivelMinimo) >= 0;
+    }
+
+    public static void setNivelMinimo(NivelRegistro nivel) {
+        nivelMinimo = nivel;
+    }
+
+    public static NivelRegistro getNivelMinimo() {
+        return nivelMinimo;
+    }
+
+    public static long getDescartados() {
+        return DESCARTADOS.get();
+    }
+
+    public static void depuracion(String plantilla, Object a) {
+        if (activo(NivelRegistro.DEPURACION)) {
+            publicar(NivelRegistro.DEPURACION, plantilla, a, null, null);
+        }
+    }
+
+    public static void depuracion(String plantilla, Object a, Object b) {
+        if (activo(NivelRegistro.DEPURACION)) {
+            publicar(NivelRegistro.DEPURACION, plantilla, a, b, null);
+        }
+    }
+
+    public static void info(String plantilla) {
+        if (activo(NivelRegistro.INFO)) {
+            publicar(NivelRegistro.INFO, plantilla, null, null, null);
+        }
+    }
+
+    public static void info(String plantilla, Object a) {
+        if (activo(NivelRegistro.INFO)) {
+            publicar(NivelRegistro.INFO, plantilla, a, null, null);
+        }
+    }
+
+    public static void info(String plantilla, Object a, Object b) {
+        if (activo(NivelRegistro.INFO)) {
+            publicar(NivelRegistro.INFO, plantilla, a, b, null);
+        }
+    }
+
+    public static void info(String plantilla, Object a, Object b, Object c) {
+        if (activo(NivelRegistro.INFO)) {
+            publicar(NivelRegistro.INFO, plantilla, a, b, c);
+        }
+    }
+
+    public static void advertencia(String plantilla, Object a) {
+        if (activo(NivelRegistro.ADVERTENCIA)) {
+            publicar(NivelRegistro.ADVERTENCIA, plantilla, a, null, null);
+        }
+    }
+
+    public static void advertencia(String plantilla, Object a, Object b) {
+        if (activo(NivelRegistro.ADVERTENCIA)) {
+            publicar(NivelRegistro.ADVERTENCIA, plantilla, a, b, null);
+        }
+    }
+
+    public static void advertencia(String plantilla, Object a, Object b, Object c) {
+        if (activo(NivelRegistro.ADVERTENCIA)) {
+            publicar(NivelRegistro.ADVERTENCIA, plantilla, a, b, c);
+        }
+    }
+
+    public static void error(String plantilla, Object a) {
+        if (activo(NivelRegistro.ERROR)) {
+            publicar(NivelRegistro.ERROR, plantilla, a, null, null);
+        }
+    }
+
+    public static void error(String plantilla, Object a, Object b) {
+        if (activo(NivelRegistro.ERROR)) {
+            publicar(NivelRegistro.ERROR, plantilla, a, b, null);
+        }
+    }
+
+    /**
+     * Espera a que el escritor haya volcado todo lo registrado hasta ahora.
+     * @param timeout Tiempo máximo de espera
+     * @param unit Unidad de tiempo
+     */
+    public static void vaciar(long timeout, TimeUnit unit) {
+        if (SILENCIOSO) {
+            return;
+        }
+        long objetivo = COLA.get();
+        long limite = System.nanoTime() + unit.toNanos(timeout);
+        while (escritos < objetivo && System.nanoTime() < limite) {
+            LockSupport.parkNanos(1_000_000L);
+        }
+    }
+
+    /**
+     * Reserva una ranura libre (cola acotada de Vyukov) y copia el evento en ella.
+     */
+    private static void publicar(NivelRegistro nivel, String plantilla, Object a, Object b, Object c) {
+        long posicion;
+        int intentos = 0;
+        while (true) {
+            posicion = COLA.get();
+            long secuencia = SECUENCIAS.get((int) posicion & MASCARA);
+            if (secuencia == posicion) {
+                if (COLA.compareAndSet(posicion, posicion + 1)) {
+                    break;
+                }
+            } else if (secuencia < posicion) {
+                // Buffer lleno
+                if (POLITICA == PoliticaDesborde.DESCARTAR) {
+                    DESCARTADOS.incrementAndGet();
+                    return;
+                }
+                if (++intentos < 100) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(50_000L);
+                }
+            }
+        }
+        int indice = (int) posicion & MASCARA;
+        Evento evento = EVENTOS[indice];
+        evento.nivel = nivel;
+        evento.plantilla = plantilla;
+        evento.a = a;
+        evento.b = b;
+        evento.c = c;
+        evento.hilo = Thread.currentThread().getName();
+        evento.milis = System.currentTimeMillis();
+        SECUENCIAS.set(indice, posicion + 1);
+    }
+
+    /**
+     * Bucle del hilo escritor: formatea todos los eventos disponibles y vacía la
+     * salida una vez por lote.
+     */
+    private static void escribir() {
+        StringBuilder salida = new StringBuilder(4096);
+        StringBuilder errores = new StringBuilder(1024);
+        long posicion = 0;
+        int intentos = 0;
+        while (true) {
+            int indice = (int) posicion & MASCARA;
+            if (SECUENCIAS.get(indice) == posicion + 1) {
+                Evento evento = EVENTOS[indice];
+                StringBuilder destino = evento.nivel.compareTo(NivelRegistro.ADVERTENCIA) >= 0 ? errores : salida;
+                formatear(destino, evento);
+                evento.limpiar();
+                SECUENCIAS.set(indice, posicion + CAPACIDAD);
+                posicion++;
+                intentos = 0;
+                if (salida.length() < 64 * 1024 && errores.length() < 64 * 1024) {
+                    continue;
+                }
+            }
+            volcar(System.out, salida);
+            volcar(System.err, errores);
+            escritos = posicion;
+            if (SECUENCIAS.get((int) posicion & MASCARA) != posicion + 1) {
+                if (++intentos < 50) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(1_000_000L);
+                }
+            }
+        }
+    }
+
+    private static void volcar(PrintStream flujo, StringBuilder texto) {
+        if (texto.length() > 0) {
+            flujo.print(texto);
+            flujo.flush();
+            texto.setLength(0);
+        }
+    }
+
+    private static void formatear(StringBuilder destino, Evento evento) {
+        if (DETALLADO) {
+            destino.append(LocalTime.ofInstant(Instant.ofEpochMilli(evento.milis), ZoneId.systemDefault()))
+                .append(' ').append(evento.nivel)
+                .append(" [").append(evento.hilo).append("] ");
+        }
+        String plantilla = evento.plantilla;
+        int argumento = 0;
+        int desde = 0;
+        int marcador;
+        while ((marcador = plantilla.indexOf("{}", desde)) >= 0) {
+            destino.append(plantilla, desde, marcador);
+            destino.append(argumento == 0 ? evento.a : argumento == 1 ? evento.b : evento.c);
+            argumento++;
+            desde = marcador + 2;
+        }
+        destino.append(plantilla, desde, plantilla.length()).append(System.lineSeparator());
+    }
+
+    /**
+     * Ranura preasignada del buffer. La visibilidad la garantiza la escritura
+     * volatile de su secuencia tras copiar los campos.
+     */
+    private static final class Evento {
+        NivelRegistro nivel;
+        String plantilla;
+        Object a;
+        Object b;
+        Object c;
+        String hilo;
+        long milis;
+
+        void limpiar() {
+            plantilla = null;
+            a = null;
+            b = null;
+            c = null;
+            hilo = null;
+        }
+    }
+}
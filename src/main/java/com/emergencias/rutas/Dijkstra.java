@@ -0,0 +1,141 @@
+package com.emergencias.rutas;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Búsqueda de caminos mínimos sobre un {@link GrafoVial}, reutilizable entre
+ * consultas. Los tiempos se validan con una marca por consulta en lugar de
+ * limpiar los arreglos, y el montículo guarda cada entrada en un long (bits del
+ * tiempo en la parte alta, nodo en la baja), así que una consulta no reserva
+ * memoria. No es thread-safe: cada hilo usa la suya.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+final class Dijkstra {
+    private final GrafoVial grafo;
+    private final float[] tiempos;
+    private final int[] alcanzado;
+    private final int[] cerrado;
+    private int marca;
+    private long[] monticulo;
+    private int tamanio;
+
+    Dijkstra(GrafoVial grafo) {
+        this.grafo = grafo;
+        this.tiempos = new float[grafo.getNodos()];
+        this.alcanzado = new int[grafo.getNodos()];
+        this.cerrado = new int[grafo.getNodos()];
+        this.monticulo = new long[64];
+    }
+
+    /**
+     * Calcula tiempos desde varios orígenes a la vez (todos con tiempo 0).
+     * @param origenes Nodos de partida
+     * @param destino Nodo en el que se puede parar, o -1 para recorrer todo
+     * @param limite Máximo de nodos a cerrar
+     * @return nodos cerrados
+     */
+    int recorrer(int[] origenes, int destino, int limite) {
+        return recorrer(origenes, destino, null, 0, limite);
+    }
+
+    /**
+     * Calcula tiempos desde varios orígenes hasta cerrar todos los nodos de
+     * una zona, sin recorrer el resto del grafo.
+     * @param origenes Nodos de partida
+     * @param enZona Si un nodo pertenece a la zona
+     * @param nodosZona Nodos de la zona; se para al cerrar esa cantidad
+     * @param limite Máximo de nodos a cerrar
+     * @return nodos cerrados
+     */
+    int recorrer(int[] origenes, IntPredicate enZona, int nodosZona, int limite) {
+        return recorrer(origenes, -1, enZona, nodosZona, limite);
+    }
+
+    private int recorrer(int[] origenes, int destino, IntPredicate enZona, int nodosZona, int limite) {
+        if (marca == Integer.MAX_VALUE) {
+            Arrays.fill(alcanzado, 0);
+            Arrays.fill(cerrado, 0);
+            marca = 0;
+        }
+        marca++;
+        tamanio = 0;
+        for (int origen : origenes) {
+            alcanzar(origen, 0f);
+        }
+        int cerrados = 0;
+        while (tamanio > 0 && cerrados < limite) {
+            long entrada = sacar();
+            int nodo = (int) entrada;
+            if (cerrado[nodo] == marca) {
+                continue; // Entrada vieja de un nodo que ya se mejoró
+            }
+            cerrado[nodo] = marca;
+            cerrados++;
+            if (nodo == destino || (enZona != null && enZona.test(nodo) && --nodosZona == 0)) {
+                break;
+            }
+            float base = tiempos[nodo];
+            for (int a = grafo.inicioArcos(nodo), fin = grafo.finArcos(nodo); a < fin; a++) {
+                alcanzar(grafo.destino(a), base + grafo.segundos(a));
+            }
+        }
+        return cerrados;
+    }
+
+    /**
+     * Tiempo al nodo en la última consulta.
+     * @return segundos, o infinito si no se alcanzó
+     */
+    float tiempo(int nodo) {
+        return alcanzado[nodo] == marca ? tiempos[nodo] : Float.POSITIVE_INFINITY;
+    }
+
+    private void alcanzar(int nodo, float tiempo) {
+        if (alcanzado[nodo] == marca && tiempos[nodo] <= tiempo) {
+            return;
+        }
+        alcanzado[nodo] = marca;
+        tiempos[nodo] = tiempo;
+        // Los float no negativos conservan el orden como enteros
+        agregar(((long) Float.floatToRawIntBits(tiempo) << 32) | nodo);
+    }
+
+    private void agregar(long entrada) {
+        if (tamanio == monticulo.length) {
+            monticulo = Arrays.copyOf(monticulo, tamanio * 2);
+        }
+        int i = tamanio++;
+        while (i > 0) {
+            int padre = (i - 1) >>> 1;
+            if (monticulo[padre] <= entrada) {
+                break;
+            }
+            monticulo[i] = monticulo[padre];
+            i = padre;
+        }
+        monticulo[i] = entrada;
+    }
+
+    private long sacar() {
+        long raiz = monticulo[0];
+        long ultima = monticulo[--tamanio];
+        int i = 0;
+        int mitad = tamanio >>> 1;
+        while (i < mitad) {
+            int hijo = 2 * i + 1;
+            if (hijo + 1 < tamanio && monticulo[hijo + 1] < monticulo[hijo]) {
+                hijo++;
+            }
+            if (ultima <= monticulo[hijo]) {
+                break;
+            }
+            monticulo[i] = monticulo[hijo];
+            i = hijo;
+        }
+        monticulo[i] = ultima;
+        return raiz;
+    }
+}
@@ -0,0 +1,187 @@
+package com.emergencias.rutas;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Red vial dirigida en formato compacto (CSR): los arcos que salen de cada nodo
+ * están contiguos en arreglos primitivos, sin un objeto por nodo ni por arco.
+ * <p>
+ * Se carga de un archivo de texto con una entrada por línea:
+ * <pre>
+ * # comentario
+ * N &lt;id&gt; &lt;latitud&gt; &lt;longitud&gt;
+ * A &lt;origen&gt; &lt;destino&gt; &lt;segundos&gt;     (sentido único)
+ * C &lt;origen&gt; &lt;destino&gt; &lt;segundos&gt;     (doble sentido)
+ * </pre>
+ * Los nodos deben declararse antes de los arcos que los usan.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class GrafoVial {
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final int[] inicioArcos;
+    private final int[] destinos;
+    private final float[] segundos;
+
+    GrafoVial(double[] latitudes, double[] longitudes, int[] inicioArcos, int[] destinos, float[] segundos) {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.inicioArcos = inicioArcos;
+        this.destinos = destinos;
+        this.segundos = segundos;
+    }
+
+    /**
+     * Lee una red vial de un archivo de texto.
+     * @param archivo Archivo con nodos y arcos
+     * @return grafo cargado
+     * @throws IOException si el archivo no existe o tiene una línea inválida
+     */
+    public static GrafoVial cargar(Path archivo) throws IOException {
+        Map<String, Integer> indices = new HashMap<>();
+        double[] lats = new double[1024];
+        double[] lons = new double[1024];
+        int nodos = 0;
+        int[] origenesArco = new int[4096];
+        int[] destinosArco = new int[4096];
+        float[] tiemposArco = new float[4096];
+        int arcos = 0;
+
+        try (BufferedReader lector = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+            String linea;
+            int numero = 0;
+            while ((linea = lector.readLine()) != null) {
+                numero++;
+                linea = linea.trim();
+                if (linea.isEmpty() || linea.startsWith("#")) {
+                    continue;
+                }
+                String[] partes = linea.split("\\s+");
+                try {
+                    switch (partes[0]) {
+                        case "N" -> {
+                            if (partes.length != 4 || indices.putIfAbsent(partes[1], nodos) != null) {
+                                throw new IOException("nodo repetido o mal formado");
+                            }
+                            if (nodos == lats.length) {
+                                lats = Arrays.copyOf(lats, nodos * 2);
+                                lons = Arrays.copyOf(lons, nodos * 2);
+                            }
+                            lats[nodos] = Double.parseDouble(partes[2]);
+                            lons[nodos] = Double.parseDouble(partes[3]);
+                            nodos++;
+                        }
+                        case "A", "C" -> {
+                            Integer origen = partes.length == 4 ? indices.get(partes[1]) : null;
+                            Integer destino = partes.length == 4 ? indices.get(partes[2]) : null;
+                            float tiempo = partes.length == 4 ? Float.parseFloat(partes[3]) : -1f;
+                            if (origen == null || destino == null || !(tiempo >= 0f)) {
+                                throw new IOException("arco con nodo desconocido o tiempo inválido");
+                            }
+                            int nuevos = partes[0].equals("C") ? 2 : 1;
+                            if (arcos + nuevos > origenesArco.length) {
+                                int capacidad = origenesArco.length * 2;
+                                origenesArco = Arrays.copyOf(origenesArco, capacidad);
+                                destinosArco = Arrays.copyOf(destinosArco, capacidad);
+                                tiemposArco = Arrays.copyOf(tiemposArco, capacidad);
+                            }
+                            origenesArco[arcos] = origen;
+                            destinosArco[arcos] = destino;
+                            tiemposArco[arcos++] = tiempo;
+                            if (nuevos == 2) {
+                                origenesArco[arcos] = destino;
+                                destinosArco[arcos] = origen;
+                                tiemposArco[arcos++] = tiempo;
+                            }
+                        }
+                        default -> throw new IOException("tipo de línea desconocido");
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IOException(archivo + ":" + numero + ": número inválido", e);
+                } catch (IOException e) {
+                    throw new IOException(archivo + ":" + numero + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        if (nodos == 0) {
+            throw new IOException(archivo + ": la red vial no tiene nodos");
+        }
+        return construir(Arrays.copyOf(lats, nodos), Arrays.copyOf(lons, nodos),
+                         origenesArco, destinosArco, tiemposArco, arcos);
+    }
+
+    /**
+     * Ordena los arcos por nodo de origen (conteo por nodo y suma prefija).
+     */
+    static GrafoVial construir(double[] latitudes, double[] longitudes, int[] origenes, int[] destinosArco,
+                               float[] tiemposArco, int arcos) {
+        int nodos = latitudes.length;
+        int[] inicio = new int[nodos + 1];
+        for (int a = 0; a < arcos; a++) {
+            inicio[origenes[a] + 1]++;
+        }
+        for (int n = 0; n < nodos; n++) {
+            inicio[n + 1] += inicio[n];
+        }
+        int[] siguiente = Arrays.copyOf(inicio, nodos);
+        int[] destinos = new int[arcos];
+        float[] segundos = new float[arcos];
+        for (int a = 0; a < arcos; a++) {
+            int posicion = siguiente[origenes[a]]++;
+            destinos[posicion] = destinosArco[a];
+            segundos[posicion] = tiemposArco[a];
+        }
+        return new GrafoVial(latitudes, longitudes, inicio, destinos, segundos);
+    }
+
+    public int getNodos() {
+        return latitudes.length;
+    }
+
+    public int getArcos() {
+        return destinos.length;
+    }
+
+    double latitud(int nodo) {
+        return latitudes[nodo];
+    }
+
+    double longitud(int nodo) {
+        return longitudes[nodo];
+    }
+
+    int inicioArcos(int nodo) {
+        return inicioArcos[nodo];
+    }
+
+    int finArcos(int nodo) {
+        return inicioArcos[nodo + 1];
+    }
+
+    int destino(int arco) {
+        return destinos[arco];
+    }
+
+    float segundos(int arco) {
+        return segundos[arco];
+    }
+
+    /**
+     * Huella del grafo para saber si una matriz guardada en disco le corresponde.
+     */
+    long huella() {
+        long h = 31L * Arrays.hashCode(latitudes) + Arrays.hashCode(longitudes);
+        h = 31L * h + Arrays.hashCode(inicioArcos);
+        h = 31L * h + Arrays.hashCode(destinos);
+        return 31L * h + Arrays.hashCode(segundos);
+    }
+}
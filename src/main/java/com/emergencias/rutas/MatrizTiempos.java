@@ -0,0 +1,296 @@
+package com.emergencias.rutas;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Tiempos de viaje por carretera entre celdas de una cuadrícula sobre la red
+ * vial, precalculados para que una consulta sea una sola lectura.
+ * <p>
+ * Cada fila es un Dijkstra desde el nodo más cercano al centro de la celda
+ * de origen; el tiempo a una celda de destino es el promedio a sus nodos, así
+ * que estima el viaje entre puntos de las dos celdas sin sesgo hacia el par de
+ * nodos más cercano. Las filas se calculan en paralelo. Las celdas sin nodos
+ * usan los de la celda con nodos más cercana.
+ * <p>
+ * La matriz vive fuera del heap, en 2 bytes por par (segundos enteros hasta
+ * unas 18 horas): 4096 celdas ocupan 32 MB sin pesar en el recolector. Si se
+ * indica un archivo, la matriz se mapea en él y se reutiliza en el siguiente
+ * arranque mientras la red vial y la cuadrícula no cambien.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class MatrizTiempos {
+    private static final int MAGICO = 0x4D545645;
+    private static final int CABECERA = 32;
+    private static final int LADO_MAXIMO = 64;
+    private static final char INALCANZABLE = 0xFFFF;
+    private static final char SEGUNDOS_MAXIMOS = 0xFFFE;
+
+    private final GrafoVial grafo;
+    private final int lado;
+    private final int celdas;
+    private final double latitudMin;
+    private final double longitudMin;
+    private final double altoFila;
+    private final double anchoColumna;
+    private final int[] inicioCelda;
+    private final int[] nodosCelda;
+    private final int[][] miembros;
+    private final int[] centros;
+    private final ByteBuffer datos;
+    private final boolean reutilizada;
+
+    private MatrizTiempos(GrafoVial grafo, int lado, ByteBuffer datos) {
+        if (lado < 1 || lado > LADO_MAXIMO) {
+            throw new IllegalArgumentException("El lado de la cuadrícula debe estar entre 1 y " + LADO_MAXIMO);
+        }
+        this.grafo = grafo;
+        this.lado = lado;
+        this.celdas = lado * lado;
+        double latMin = Double.POSITIVE_INFINITY;
+        double latMax = Double.NEGATIVE_INFINITY;
+        double lonMin = Double.POSITIVE_INFINITY;
+        double lonMax = Double.NEGATIVE_INFINITY;
+        for (int n = 0; n < grafo.getNodos(); n++) {
+            latMin = Math.min(latMin, grafo.latitud(n));
+            latMax = Math.max(latMax, grafo.latitud(n));
+            lonMin = Math.min(lonMin, grafo.longitud(n));
+            lonMax = Math.max(lonMax, grafo.longitud(n));
+        }
+        this.latitudMin = latMin;
+        this.longitudMin = lonMin;
+        this.altoFila = Math.max(latMax - latMin, 1e-6) / lado;
+        this.anchoColumna = Math.max(lonMax - lonMin, 1e-6) / lado;
+
+        // Nodos agrupados por celda (conteo y suma prefija)
+        inicioCelda = new int[celdas + 1];
+        int[] celdaNodo = new int[grafo.getNodos()];
+        for (int n = 0; n < celdaNodo.length; n++) {
+            celdaNodo[n] = celdaDe(grafo.latitud(n), grafo.longitud(n));
+            inicioCelda[celdaNodo[n] + 1]++;
+        }
+        for (int c = 0; c < celdas; c++) {
+            inicioCelda[c + 1] += inicioCelda[c];
+        }
+        nodosCelda = new int[celdaNodo.length];
+        int[] siguiente = Arrays.copyOf(inicioCelda, celdas);
+        for (int n = 0; n < celdaNodo.length; n++) {
+            nodosCelda[siguiente[celdaNodo[n]]++] = n;
+        }
+        miembros = new int[celdas][];
+        centros = new int[celdas];
+        for (int c = 0; c < celdas; c++) {
+            miembros[c] = nodosDe(celdaConNodos(c));
+            centros[c] = masCercano(miembros[c], latitudMin + (c / lado + 0.5) * altoFila,
+                                    longitudMin + (c % lado + 0.5) * anchoColumna);
+        }
+
+        this.datos = datos;
+        this.reutilizada = cabeceraValida();
+        if (!reutilizada) {
+            calcular();
+        }
+    }
+
+    /**
+     * Calcula la matriz en memoria fuera del heap.
+     * @param grafo Red vial
+     * @param lado Celdas por lado de la cuadrícula (hasta {@value #LADO_MAXIMO})
+     */
+    public static MatrizTiempos calcular(GrafoVial grafo, int lado) {
+        return new MatrizTiempos(grafo, lado, ByteBuffer.allocateDirect(tamanio(lado)));
+    }
+
+    /**
+     * Mapea la matriz en un archivo: la reutiliza si fue calculada para la misma
+     * red vial y cuadrícula, y si no la calcula y la deja escrita.
+     * @param grafo Red vial
+     * @param lado Celdas por lado de la cuadrícula (hasta {@value #LADO_MAXIMO})
+     * @param archivo Archivo de la matriz (se crea si no existe)
+     */
+    public static MatrizTiempos abrir(GrafoVial grafo, int lado, Path archivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.CREATE,
+                                                  StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamanio(lado));
+            MatrizTiempos matriz = new MatrizTiempos(grafo, lado, mapa);
+            if (!matriz.reutilizada) {
+                mapa.force();
+            }
+            return matriz;
+        }
+    }
+
+    private static int tamanio(int lado) {
+        long celdas = (long) lado * lado;
+        return (int) (CABECERA + celdas * celdas * Character.BYTES);
+    }
+
+    private boolean cabeceraValida() {
+        return datos.getInt(0) == MAGICO && datos.getInt(4) == lado && datos.getInt(8) == grafo.getNodos()
+            && datos.getInt(12) == grafo.getArcos() && datos.getLong(16) == grafo.huella();
+    }
+
+    /**
+     * Un Dijkstra por celda de origen, en paralelo. La cabecera se escribe al
+     * final para que una matriz a medio calcular no parezca válida.
+     */
+    private void calcular() {
+        datos.putInt(0, 0);
+        ThreadLocal<Dijkstra> busquedas = ThreadLocal.withInitial(() -> new Dijkstra(grafo));
+        IntStream.range(0, celdas).parallel().forEach(origen -> {
+            Dijkstra busqueda = busquedas.get();
+            busqueda.recorrer(new int[] {centros[origen]}, -1, Integer.MAX_VALUE);
+            int fila = CABECERA + origen * celdas * Character.BYTES;
+            for (int destino = 0; destino < celdas; destino++) {
+                double suma = 0.0;
+                int alcanzados = 0;
+                for (int nodo : miembros[destino]) {
+                    float tiempo = busqueda.tiempo(nodo);
+                    if (!Float.isInfinite(tiempo)) {
+                        suma += tiempo;
+                        alcanzados++;
+                    }
+                }
+                char codigo = alcanzados == 0
+                    ? INALCANZABLE : (char) Math.min(SEGUNDOS_MAXIMOS, Math.round(suma / alcanzados));
+                datos.putChar(fila + destino * Character.BYTES, codigo);
+            }
+        });
+        datos.putInt(4, lado);
+        datos.putInt(8, grafo.getNodos());
+        datos.putInt(12, grafo.getArcos());
+        datos.putLong(16, grafo.huella());
+        datos.putInt(0, MAGICO);
+    }
+
+    /**
+     * Tiempo de viaje entre dos celdas.
+     * @return segundos, o infinito si no hay camino
+     */
+    public float segundos(int celdaOrigen, int celdaDestino) {
+        char codigo = datos.getChar(CABECERA + (celdaOrigen * celdas + celdaDestino) * Character.BYTES);
+        return codigo == INALCANZABLE ? Float.POSITIVE_INFINITY : codigo;
+    }
+
+    /**
+     * Celda de un punto; los puntos fuera de la red cuentan en la celda del
+     * borde más cercana.
+     */
+    public int celdaDe(double latitud, double longitud) {
+        int fila = Math.max(0, Math.min(lado - 1, (int) Math.floor((latitud - latitudMin) / altoFila)));
+        int columna = Math.max(0, Math.min(lado - 1, (int) Math.floor((longitud - longitudMin) / anchoColumna)));
+        return fila * lado + columna;
+    }
+
+    /**
+     * Nodo de la red más cercano a un punto, buscado en su celda y las vecinas
+     * recorriendo sus tramos de nodos sin copiarlos.
+     */
+    int nodoMasCercano(double latitud, double longitud) {
+        int celda = celdaDe(latitud, longitud);
+        int fila = celda / lado;
+        int columna = celda % lado;
+        int mejor = -1;
+        double mejorDistancia = Double.POSITIVE_INFINITY;
+        for (int f = Math.max(0, fila - 1); f <= Math.min(lado - 1, fila + 1); f++) {
+            for (int c = Math.max(0, columna - 1); c <= Math.min(lado - 1, columna + 1); c++) {
+                for (int i = inicioCelda[f * lado + c], fin = inicioCelda[f * lado + c + 1]; i < fin; i++) {
+                    int nodo = nodosCelda[i];
+                    double distancia = distancia2(nodo, latitud, longitud);
+                    if (distancia < mejorDistancia) {
+                        mejorDistancia = distancia;
+                        mejor = nodo;
+                    }
+                }
+            }
+        }
+        return mejor >= 0 ? mejor : masCercano(miembros[celda], latitud, longitud);
+    }
+
+    private int masCercano(int[] nodos, double latitud, double longitud) {
+        int mejor = nodos[0];
+        double mejorDistancia = distancia2(mejor, latitud, longitud);
+        for (int nodo : nodos) {
+            double distancia = distancia2(nodo, latitud, longitud);
+            if (distancia < mejorDistancia) {
+                mejorDistancia = distancia;
+                mejor = nodo;
+            }
+        }
+        return mejor;
+    }
+
+    private double distancia2(int nodo, double latitud, double longitud) {
+        double deltaLat = grafo.latitud(nodo) - latitud;
+        double deltaLon = grafo.longitud(nodo) - longitud;
+        return deltaLat * deltaLat + deltaLon * deltaLon;
+    }
+
+    private int[] nodosDe(int celda) {
+        return Arrays.copyOfRange(nodosCelda, inicioCelda[celda], inicioCelda[celda + 1]);
+    }
+
+    /**
+     * La celda misma si tiene nodos, o la más cercana con nodos recorriendo
+     * anillos de celdas.
+     */
+    private int celdaConNodos(int celda) {
+        int fila = celda / lado;
+        int columna = celda % lado;
+        for (int r = 0; r < lado; r++) {
+            List<Integer> anillo = new ArrayList<>();
+            for (int f = fila - r; f <= fila + r; f++) {
+                for (int c = columna - r; c <= columna + r; c++) {
+                    boolean borde = Math.abs(f - fila) == r || Math.abs(c - columna) == r;
+                    if (borde && f >= 0 && f < lado && c >= 0 && c < lado) {
+                        anillo.add(f * lado + c);
+                    }
+                }
+            }
+            for (int candidata : anillo) {
+                if (inicioCelda[candidata + 1] > inicioCelda[candidata]) {
+                    return candidata;
+                }
+            }
+        }
+        return celda; // Imposible: el grafo tiene al menos un nodo
+    }
+
+    public int getLado() {
+        return lado;
+    }
+
+    double getLatitudMin() {
+        return latitudMin;
+    }
+
+    double getLongitudMin() {
+        return longitudMin;
+    }
+
+    double getAltoFila() {
+        return altoFila;
+    }
+
+    double getAnchoColumna() {
+        return anchoColumna;
+    }
+
+    /**
+     * Si la matriz se leyó de un archivo de una ejecución anterior en lugar de
+     * calcularse.
+     */
+    public boolean isReutilizada() {
+        return reutilizada;
+    }
+}
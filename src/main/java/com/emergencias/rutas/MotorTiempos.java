@@ -0,0 +1,111 @@
+package com.emergencias.rutas;
+
+import com.emergencias.modelos.Ambulancia;
+import com.emergencias.modelos.Emergencia;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tiempos de viaje por la red vial para elegir ambulancias y estimar llegadas
+ * sin buscar caminos en cada despacho.
+ * <p>
+ * Entre celdas lejanas el tiempo sale de la {@link MatrizTiempos}. Entre puntos
+ * de la misma celda o de celdas vecinas la matriz es demasiado gruesa, así que
+ * se usan los {@link TiemposCercanos}, una tabla más fina que se completa a
+ * medida que se consulta: como las ambulancias vuelven a las mismas zonas, casi
+ * todas las consultas cercanas se responden sin buscar caminos. Si no hay
+ * camino se usa la línea recta a unos 40 km/h.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class MotorTiempos {
+    private static final int SUBDIVISIONES_DEFECTO = 4;
+    private static final double SEGUNDOS_POR_GRADO = 10_000.0; // 111 km a ~40 km/h
+
+    private final MatrizTiempos matriz;
+    private final TiemposCercanos cercanos;
+    private final AtomicLong consultasCercanas;
+    private final AtomicLong aciertosCache;
+
+    /**
+     * @param grafo Red vial
+     * @param matriz Matriz de tiempos calculada sobre la misma red
+     * @param subdivisiones Subceldas por lado de cada celda de la matriz para
+     *                      los tiempos cercanos
+     */
+    public MotorTiempos(GrafoVial grafo, MatrizTiempos matriz, int subdivisiones) {
+        this.matriz = matriz;
+        this.cercanos = new TiemposCercanos(grafo, matriz, subdivisiones);
+        this.consultasCercanas = new AtomicLong(0);
+        this.aciertosCache = new AtomicLong(0);
+    }
+
+    /**
+     * Carga la red vial y su matriz. Si se indica un archivo de matriz, se
+     * reutiliza el de una ejecución anterior cuando corresponde a la misma red.
+     * @param archivoGrafo Red vial (ver {@link GrafoVial#cargar})
+     * @param lado Celdas por lado de la cuadrícula
+     * @param archivoMatriz Archivo donde guardar la matriz, o null para dejarla en memoria
+     */
+    public static MotorTiempos cargar(Path archivoGrafo, int lado, Path archivoMatriz) throws IOException {
+        GrafoVial grafo = GrafoVial.cargar(archivoGrafo);
+        MatrizTiempos matriz = archivoMatriz == null
+            ? MatrizTiempos.calcular(grafo, lado) : MatrizTiempos.abrir(grafo, lado, archivoMatriz);
+        return new MotorTiempos(grafo, matriz, SUBDIVISIONES_DEFECTO);
+    }
+
+    /**
+     * Tiempo de viaje por carretera entre dos puntos.
+     * @return segundos estimados
+     */
+    public double segundos(double latOrigen, double lonOrigen, double latDestino, double lonDestino) {
+        int subceldaOrigen = cercanos.subceldaDe(latOrigen, lonOrigen);
+        int subceldaDestino = cercanos.subceldaDe(latDestino, lonDestino);
+        double tiempo = cercanos.cubre(subceldaOrigen, subceldaDestino)
+            ? segundosCercanos(subceldaOrigen, subceldaDestino)
+            : matriz.segundos(matriz.celdaDe(latOrigen, lonOrigen), matriz.celdaDe(latDestino, lonDestino));
+        if (Double.isInfinite(tiempo)) {
+            double deltaLat = latDestino - latOrigen;
+            double deltaLon = lonDestino - lonOrigen;
+            return Math.sqrt(deltaLat * deltaLat + deltaLon * deltaLon) * SEGUNDOS_POR_GRADO;
+        }
+        return tiempo;
+    }
+
+    /**
+     * Tiempo de viaje de una ambulancia hasta una emergencia.
+     * @return segundos estimados
+     */
+    public double segundos(Ambulancia ambulancia, Emergencia emergencia) {
+        return segundos(ambulancia.getLatitud(), ambulancia.getLongitud(),
+                        emergencia.getLatitud(), emergencia.getLongitud());
+    }
+
+    private double segundosCercanos(int subceldaOrigen, int subceldaDestino) {
+        consultasCercanas.incrementAndGet();
+        if (cercanos.calculada(subceldaOrigen)) {
+            aciertosCache.incrementAndGet();
+        }
+        return cercanos.segundos(subceldaOrigen, subceldaDestino);
+    }
+
+    /**
+     * Consultas entre puntos cercanos, que no se resuelven con la matriz.
+     */
+    public long getConsultasCercanas() {
+        return consultasCercanas.get();
+    }
+
+    /**
+     * Consultas entre puntos cercanos respondidas con una fila ya calculada.
+     */
+    public long getAciertosCache() {
+        return aciertosCache.get();
+    }
+
+    public int getLadoMatriz() {
+        return matriz.getLado();
+    }
+}
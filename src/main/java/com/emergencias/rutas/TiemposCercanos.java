@@ -0,0 +1,189 @@
+package com.emergencias.rutas;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Tiempos de viaje entre puntos cercanos, que la {@link MatrizTiempos} es
+ * demasiado gruesa para distinguir.
+ * <p>
+ * Cada celda de la matriz se divide en subceldas y, para cada subcelda de
+ * origen, se guarda una fila con el tiempo a todas las subceldas de su celda y
+ * de las ocho vecinas: un Dijkstra acotado desde el nodo más cercano al centro
+ * de la subcelda, que para al cerrar los nodos de esas nueve celdas,
+ * promediando como la matriz los tiempos a los nodos de cada
+ * subcelda de destino (o al nodo más cercano a su centro si no tiene). Las
+ * filas se calculan la primera vez que se consultan y no se descartan nunca,
+ * así que cada subcelda cuesta a lo sumo una búsqueda en toda la ejecución y
+ * las consultas siguientes son una lectura sin bloqueos. Dos hilos que piden a
+ * la vez una fila nueva pueden calcularla los dos; el resultado es el mismo.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+final class TiemposCercanos {
+    private static final int NODOS_MAXIMOS = 50_000;
+    private static final char INALCANZABLE = 0xFFFF;
+    private static final char SEGUNDOS_MAXIMOS = 0xFFFE;
+
+    private final MatrizTiempos matriz;
+    private final int subdivisiones;
+    private final int ladoFino;
+    private final int ventana;
+    private final double altoFila;
+    private final double anchoColumna;
+    private final int[] subceldaNodo;
+    private final int[] inicioSubcelda;
+    private final int[] nodosSubcelda;
+    private final AtomicReferenceArray<char[]> filas;
+    private final ThreadLocal<Dijkstra> busquedas;
+
+    /**
+     * @param grafo Red vial
+     * @param matriz Matriz de la misma red, de la que se toma la cuadrícula
+     * @param subdivisiones Subceldas por lado de cada celda de la matriz
+     */
+    TiemposCercanos(GrafoVial grafo, MatrizTiempos matriz, int subdivisiones) {
+        this.matriz = matriz;
+        this.subdivisiones = subdivisiones;
+        this.ladoFino = matriz.getLado() * subdivisiones;
+        this.ventana = 3 * subdivisiones;
+        this.altoFila = matriz.getAltoFila() / subdivisiones;
+        this.anchoColumna = matriz.getAnchoColumna() / subdivisiones;
+        int subceldas = ladoFino * ladoFino;
+
+        // Nodos agrupados por subcelda (conteo y suma prefija)
+        inicioSubcelda = new int[subceldas + 1];
+        subceldaNodo = new int[grafo.getNodos()];
+        for (int n = 0; n < subceldaNodo.length; n++) {
+            subceldaNodo[n] = subceldaDe(grafo.latitud(n), grafo.longitud(n));
+            inicioSubcelda[subceldaNodo[n] + 1]++;
+        }
+        for (int s = 0; s < subceldas; s++) {
+            inicioSubcelda[s + 1] += inicioSubcelda[s];
+        }
+        nodosSubcelda = new int[subceldaNodo.length];
+        int[] siguiente = Arrays.copyOf(inicioSubcelda, subceldas);
+        for (int n = 0; n < subceldaNodo.length; n++) {
+            nodosSubcelda[siguiente[subceldaNodo[n]]++] = n;
+        }
+
+        this.filas = new AtomicReferenceArray<>(subceldas);
+        this.busquedas = ThreadLocal.withInitial(() -> new Dijkstra(grafo));
+    }
+
+    /**
+     * Subcelda de un punto; los puntos fuera de la red cuentan en la del borde
+     * más cercana.
+     */
+    int subceldaDe(double latitud, double longitud) {
+        int fila = Math.max(0, Math.min(ladoFino - 1,
+                                        (int) Math.floor((latitud - matriz.getLatitudMin()) / altoFila)));
+        int columna = Math.max(0, Math.min(ladoFino - 1,
+                                           (int) Math.floor((longitud - matriz.getLongitudMin()) / anchoColumna)));
+        return fila * ladoFino + columna;
+    }
+
+    /**
+     * Si la subcelda de destino cae en la celda de la de origen o en una
+     * vecina, y por lo tanto en su fila.
+     */
+    boolean cubre(int origen, int destino) {
+        return Math.abs(celdaFila(origen) - celdaFila(destino)) <= 1
+            && Math.abs(celdaColumna(origen) - celdaColumna(destino)) <= 1;
+    }
+
+    /**
+     * Tiempo de viaje entre dos subceldas cubiertas por la misma fila (ver
+     * {@link #cubre}). Calcula la fila de origen si todavía no existe.
+     * @return segundos, o infinito si no hay camino cercano
+     */
+    float segundos(int origen, int destino) {
+        char[] fila = filas.get(origen);
+        if (fila == null) {
+            fila = calcularFila(origen);
+            filas.set(origen, fila);
+        }
+        char codigo = fila[posicion(origen, destino)];
+        return codigo == INALCANZABLE ? Float.POSITIVE_INFINITY : codigo;
+    }
+
+    /**
+     * Si la fila de la subcelda ya está calculada.
+     */
+    boolean calculada(int origen) {
+        return filas.get(origen) != null;
+    }
+
+    private char[] calcularFila(int origen) {
+        int filaBase = (celdaFila(origen) - 1) * subdivisiones;
+        int columnaBase = (celdaColumna(origen) - 1) * subdivisiones;
+        int nodosVentana = 0;
+        for (int f = Math.max(0, filaBase); f < Math.min(ladoFino, filaBase + ventana); f++) {
+            int primera = f * ladoFino + Math.max(0, columnaBase);
+            int ultima = f * ladoFino + Math.min(ladoFino, columnaBase + ventana);
+            nodosVentana += inicioSubcelda[ultima] - inicioSubcelda[primera];
+        }
+        Dijkstra busqueda = busquedas.get();
+        busqueda.recorrer(new int[] {nodoCentral(origen)}, nodo -> cubre(origen, subceldaNodo[nodo]),
+                          nodosVentana, NODOS_MAXIMOS);
+        char[] fila = new char[ventana * ventana];
+        for (int f = 0; f < ventana; f++) {
+            for (int c = 0; c < ventana; c++) {
+                int filaFina = filaBase + f;
+                int columnaFina = columnaBase + c;
+                if (filaFina < 0 || filaFina >= ladoFino || columnaFina < 0 || columnaFina >= ladoFino) {
+                    fila[f * ventana + c] = INALCANZABLE;
+                    continue;
+                }
+                fila[f * ventana + c] = tiempoA(busqueda, filaFina * ladoFino + columnaFina);
+            }
+        }
+        return fila;
+    }
+
+    /**
+     * Promedio de los tiempos a los nodos de la subcelda alcanzados, o el
+     * tiempo al nodo más cercano a su centro si no tiene nodos.
+     */
+    private char tiempoA(Dijkstra busqueda, int subcelda) {
+        int inicio = inicioSubcelda[subcelda];
+        int fin = inicioSubcelda[subcelda + 1];
+        double suma = 0.0;
+        int alcanzados = 0;
+        if (inicio == fin) {
+            float tiempo = busqueda.tiempo(nodoCentral(subcelda));
+            if (!Float.isInfinite(tiempo)) {
+                suma = tiempo;
+                alcanzados = 1;
+            }
+        }
+        for (int i = inicio; i < fin; i++) {
+            float tiempo = busqueda.tiempo(nodosSubcelda[i]);
+            if (!Float.isInfinite(tiempo)) {
+                suma += tiempo;
+                alcanzados++;
+            }
+        }
+        return alcanzados == 0 ? INALCANZABLE : (char) Math.min(SEGUNDOS_MAXIMOS, Math.round(suma / alcanzados));
+    }
+
+    private int nodoCentral(int subcelda) {
+        return matriz.nodoMasCercano(matriz.getLatitudMin() + (subcelda / ladoFino + 0.5) * altoFila,
+                                     matriz.getLongitudMin() + (subcelda % ladoFino + 0.5) * anchoColumna);
+    }
+
+    private int posicion(int origen, int destino) {
+        int f = destino / ladoFino - (celdaFila(origen) - 1) * subdivisiones;
+        int c = destino % ladoFino - (celdaColumna(origen) - 1) * subdivisiones;
+        return f * ventana + c;
+    }
+
+    private int celdaFila(int subcelda) {
+        return subcelda / ladoFino / subdivisiones;
+    }
+
+    private int celdaColumna(int subcelda) {
+        return subcelda % ladoFino / subdivisiones;
+    }
+}
@@ -0,0 +1,176 @@
+package com.emergencias.simulacion;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Motor de simulación de eventos discretos con reloj virtual. Cada evento es
+ * una tarea con su instante; el motor los ejecuta en orden de instante y, a
+ * igual instante, en el orden en que se programaron, y antes de cada uno
+ * adelanta el reloj hasta su instante. No se duerme nunca: un día de carga
+ * se simula en lo que tardan sus eventos en ejecutarse.
+ * <p>
+ * Los eventos viven en un montículo binario sobre arreglos primitivos (instante
+ * y número de secuencia) para no crear objetos por evento aparte de la tarea.
+ * Con la misma semilla en los generadores, dos corridas ejecutan los mismos
+ * eventos en el mismo orden.
+ * <p>
+ * No es thread-safe: se programa y se ejecuta desde un solo hilo, y las tareas
+ * que programan otras lo hacen desde ese mismo hilo.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class MotorEventos implements Reloj {
+    private static final long ORIGEN_NANOS = TimeUnit.SECONDS.toNanos(1); // Distinto de 0, ver Reloj#nanos
+    private static final int CAPACIDAD_INICIAL = 1024;
+
+    private final LocalDateTime inicio;
+    private long ahoraNanos;
+    private long secuencia;
+    private long[] instantes;
+    private long[] secuencias;
+    private Runnable[] tareas;
+    private int tamanio;
+    private long ejecutados;
+
+    /**
+     * @param inicio Hora de pared que corresponde al comienzo de la simulación
+     */
+    public MotorEventos(LocalDateTime inicio) {
+        this.inicio = inicio;
+        this.ahoraNanos = ORIGEN_NANOS;
+        this.instantes = new long[CAPACIDAD_INICIAL];
+        this.secuencias = new long[CAPACIDAD_INICIAL];
+        this.tareas = new Runnable[CAPACIDAD_INICIAL];
+    }
+
+    @Override
+    public long nanos() {
+        return ahoraNanos;
+    }
+
+    @Override
+    public LocalDateTime ahora() {
+        return inicio.plusNanos(ahoraNanos - ORIGEN_NANOS);
+    }
+
+    /**
+     * Tiempo virtual transcurrido desde el inicio.
+     */
+    public long getTranscurridoNanos() {
+        return ahoraNanos - ORIGEN_NANOS;
+    }
+
+    @Override
+    public void programar(Runnable tarea, long demora, TimeUnit unidad) {
+        agregar(ahoraNanos + Math.max(0L, unidad.toNanos(demora)), tarea);
+    }
+
+    /**
+     * Ejecuta eventos en orden hasta vaciar la agenda o pasar un límite de
+     * tiempo virtual. Al terminar, el reloj queda en el límite si no se vació
+     * antes.
+     * @param duracion Tiempo virtual a simular desde ahora
+     * @param unidad Unidad de {@code duracion}
+     * @return eventos ejecutados
+     */
+    public long ejecutarDurante(long duracion, TimeUnit unidad) {
+        long limite = ahoraNanos + unidad.toNanos(duracion);
+        long antes = ejecutados;
+        while (tamanio > 0 && instantes[0] <= limite) {
+            ahoraNanos = instantes[0];
+            Runnable tarea = sacarPrimero();
+            ejecutados++;
+            tarea.run();
+        }
+        ahoraNanos = Math.max(ahoraNanos, limite);
+        return ejecutados - antes;
+    }
+
+    /**
+     * Ejecuta eventos hasta vaciar la agenda.
+     * @return eventos ejecutados
+     */
+    public long ejecutar() {
+        long antes = ejecutados;
+        while (tamanio > 0) {
+            ahoraNanos = instantes[0];
+            Runnable tarea = sacarPrimero();
+            ejecutados++;
+            tarea.run();
+        }
+        return ejecutados - antes;
+    }
+
+    public long getEventosEjecutados() {
+        return ejecutados;
+    }
+
+    public int getEventosPendientes() {
+        return tamanio;
+    }
+
+    private void agregar(long instante, Runnable tarea) {
+        if (tamanio == instantes.length) {
+            int capacidad = tamanio * 2;
+            instantes = Arrays.copyOf(instantes, capacidad);
+            secuencias = Arrays.copyOf(secuencias, capacidad);
+            tareas = Arrays.copyOf(tareas, capacidad);
+        }
+        long orden = secuencia++;
+        int i = tamanio++;
+        // Subir el hueco hasta la posición del nuevo evento
+        while (i > 0) {
+            int padre = (i - 1) >>> 1;
+            if (!precede(instante, orden, instantes[padre], secuencias[padre])) {
+                break;
+            }
+            mover(padre, i);
+            i = padre;
+        }
+        instantes[i] = instante;
+        secuencias[i] = orden;
+        tareas[i] = tarea;
+    }
+
+    private Runnable sacarPrimero() {
+        Runnable primera = tareas[0];
+        int ultimo = --tamanio;
+        long instante = instantes[ultimo];
+        long orden = secuencias[ultimo];
+        Runnable tarea = tareas[ultimo];
+        tareas[ultimo] = null;
+        if (ultimo > 0) {
+            // Bajar el hueco de la raíz hasta donde quepa el último evento
+            int i = 0;
+            int hijo;
+            while ((hijo = 2 * i + 1) < ultimo) {
+                if (hijo + 1 < ultimo && precede(instantes[hijo + 1], secuencias[hijo + 1],
+                                                 instantes[hijo], secuencias[hijo])) {
+                    hijo++;
+                }
+                if (!precede(instantes[hijo], secuencias[hijo], instante, orden)) {
+                    break;
+                }
+                mover(hijo, i);
+                i = hijo;
+            }
+            instantes[i] = instante;
+            secuencias[i] = orden;
+            tareas[i] = tarea;
+        }
+        return primera;
+    }
+
+    private void mover(int desde, int hasta) {
+        instantes[hasta] = instantes[desde];
+        secuencias[hasta] = secuencias[desde];
+        tareas[hasta] = tareas[desde];
+    }
+
+    private static boolean precede(long instante, long orden, long otroInstante, long otroOrden) {
+        return instante < otroInstante || (instante == otroInstante && orden < otroOrden);
+    }
+}
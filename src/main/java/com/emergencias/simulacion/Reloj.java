@@ -0,0 +1,57 @@
+package com.emergencias.simulacion;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fuente de tiempo del dominio: hora de las llamadas, envejecimiento de la
+ * prioridad, etapas de atención y pasos programados de una emergencia. Con
+ * {@link RelojSistema} el sistema corre en tiempo real; con
+ * {@link MotorEventos} la misma lógica corre en tiempo virtual, tan rápido
+ * como se procesan los eventos.
+ * <p>
+ * Las esperas de infraestructura (timeouts de colas, del registro, presupuesto
+ * de la subasta) siguen midiéndose en tiempo real.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public interface Reloj {
+
+    /**
+     * Instante monotónico en nanosegundos, con la misma semántica que
+     * System.nanoTime(): solo sirve para restar instantes del mismo reloj.
+     * Nunca es 0, que las marcas de etapa usan como "aún no ocurrió".
+     */
+    long nanos();
+
+    /**
+     * Hora de reloj de pared correspondiente a {@link #nanos()}.
+     */
+    LocalDateTime ahora();
+
+    /**
+     * Ejecuta una tarea cuando haya pasado una demora en este reloj.
+     * @param tarea Paso a ejecutar
+     * @param demora Demora; cero o negativa ejecuta en cuanto se pueda
+     * @param unidad Unidad de {@code demora}
+     */
+    void programar(Runnable tarea, long demora, TimeUnit unidad);
+
+    /**
+     * Reloj vigente para todo el sistema; por defecto, el del sistema.
+     */
+    static Reloj actual() {
+        return RelojVigente.reloj;
+    }
+
+    /**
+     * Cambia el reloj de todo el sistema. Debe llamarse antes de crear
+     * emergencias: las marcas de relojes distintos no se pueden comparar.
+     * @param reloj Nuevo reloj
+     */
+    static void usar(Reloj reloj) {
+        RelojVigente.reloj = Objects.requireNonNull(reloj, "reloj");
+    }
+}
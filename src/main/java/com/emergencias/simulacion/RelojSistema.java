@@ -0,0 +1,66 @@
+package com.emergencias.simulacion;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tiempo real: System.nanoTime(), la hora local y un planificador compartido
+ * de hilos daemon para los pasos programados.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public final class RelojSistema implements Reloj {
+    private static final int HILOS_PLANIFICADOR = 2;
+    private static final RelojSistema INSTANCIA = new RelojSistema();
+
+    private volatile ScheduledExecutorService planificador;
+
+    private RelojSistema() {
+    }
+
+    public static RelojSistema getInstancia() {
+        return INSTANCIA;
+    }
+
+    @Override
+    public long nanos() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public LocalDateTime ahora() {
+        return LocalDateTime.now();
+    }
+
+    @Override
+    public void programar(Runnable tarea, long demora, TimeUnit unidad) {
+        planificador().schedule(tarea, demora, unidad);
+    }
+
+    /**
+     * El planificador se crea con el primer paso programado: en modo de
+     * despacho bloqueante no hace falta.
+     */
+    private ScheduledExecutorService planificador() {
+        ScheduledExecutorService actual = planificador;
+        if (actual == null) {
+            synchronized (this) {
+                actual = planificador;
+                if (actual == null) {
+                    AtomicInteger contador = new AtomicInteger();
+                    actual = Executors.newScheduledThreadPool(HILOS_PLANIFICADOR, r -> {
+                        Thread hilo = new Thread(r, "Reloj-" + contador.incrementAndGet());
+                        hilo.setDaemon(true);
+                        return hilo;
+                    });
+                    planificador = actual;
+                }
+            }
+        }
+        return actual;
+    }
+}
@@ -0,0 +1,12 @@
+package com.emergencias.simulacion;
+
+/**
+ * Reloj elegido con {@link Reloj#usar}. Se lee en cada marca de tiempo, así
+ * que es un campo volátil sin más indirección.
+ */
+final class RelojVigente {
+    static volatile Reloj reloj = RelojSistema.getInstancia();
+
+    private RelojVigente() {
+    }
+}
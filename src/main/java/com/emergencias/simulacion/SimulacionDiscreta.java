@@ -0,0 +1,118 @@
+package com.emergencias.simulacion;
+
+import com.emergencias.carga.FuenteLlamadas;
+import com.emergencias.carga.GeneradorCarga;
+import com.emergencias.carga.MezclaPrioridades;
+import com.emergencias.gestores.GestorEmergencias;
+import com.emergencias.hilos.DespachadorProgramado;
+import com.emergencias.hilos.OperadorLlamadas;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Corre operadores y despachadores sobre un {@link MotorEventos}, en un solo
+ * hilo y en tiempo virtual. Las llamadas, las llegadas, los fines de atención
+ * y los plazos de espera de médicos son eventos del motor; tras cada llamada
+ * admitida se despacha lo que haya en cola, y los recursos liberados pasan a
+ * las emergencias en espera dentro del mismo evento. Con la misma semilla,
+ * dos corridas producen las mismas emergencias y las atienden en el mismo
+ * orden. En lugar de (o además de) los operadores puede recibir la carga de
+ * un {@link GeneradorCarga} o las llamadas de una traza grabada.
+ *
+ * @author Equipo Emergencias
+ * @version 1.0
+ */
+public class SimulacionDiscreta {
+    private final MotorEventos motor;
+    private final List<OperadorLlamadas> operadores;
+    private final List<DespachadorProgramado> despachadores;
+    private FuenteLlamadas carga;
+    private int turno;
+
+    /**
+     * Instala el motor como reloj del sistema y crea operadores y
+     * despachadores sobre él. Debe crearse antes de registrar emergencias.
+     * @param motor Motor de eventos
+     * @param numOperadores Operadores recibiendo llamadas
+     * @param numDespachadores Despachadores, repartidos entre las zonas
+     * @param semilla Semilla de las llamadas; cada operador deriva la suya
+     */
+    public SimulacionDiscreta(MotorEventos motor, int numOperadores, int numDespachadores, long semilla) {
+        this(motor, numOperadores, numDespachadores, semilla, MezclaPrioridades.PREDETERMINADA);
+    }
+
+    /**
+     * @param mezcla Proporción de llamadas de cada prioridad de los operadores
+     */
+    public SimulacionDiscreta(MotorEventos motor, int numOperadores, int numDespachadores, long semilla,
+                              MezclaPrioridades mezcla) {
+        this.motor = motor;
+        Reloj.usar(motor);
+        operadores = new ArrayList<>(numOperadores);
+        for (int i = 1; i <= numOperadores; i++) {
+            operadores.add(new OperadorLlamadas("Operador-" + i, semilla + i, mezcla));
+        }
+        int zonas = GestorEmergencias.getInstancia().getNumeroZonas();
+        despachadores = new ArrayList<>(numDespachadores);
+        for (int i = 1; i <= numDespachadores; i++) {
+            int zona = (int) ((long) (i - 1) * zonas / numDespachadores);
+            despachadores.add(new DespachadorProgramado("Despachador-" + i, zona, motor, Runnable::run));
+        }
+    }
+
+    /**
+     * Recibe llamadas durante un tiempo virtual y luego deja terminar las
+     * atenciones en curso.
+     * @param duracion Tiempo virtual con operadores activos
+     * @param unidad Unidad de {@code duracion}
+     * @return eventos ejecutados
+     */
+    public long ejecutar(long duracion, TimeUnit unidad) {
+        long antes = motor.getEventosEjecutados();
+        for (OperadorLlamadas operador : operadores) {
+            operador.programarEn(motor, this::despachar);
+        }
+        if (carga != null) {
+            carga.programarEn(motor, this::despachar);
+        }
+        motor.ejecutarDurante(duracion, unidad);
+        for (OperadorLlamadas operador : operadores) {
+            operador.detener();
+        }
+        if (carga != null) {
+            carga.detener();
+        }
+        motor.ejecutar();
+        return motor.getEventosEjecutados() - antes;
+    }
+
+    /**
+     * Despacha la cola con un despachador distinto cada vez, para repartir
+     * el trabajo como los despachadores en hilos.
+     */
+    private void despachar() {
+        despachadores.get(turno).despacharPendientes();
+        turno = (turno + 1) % despachadores.size();
+    }
+
+    /**
+     * Agrega una carga de lazo abierto a la próxima ejecución.
+     * @param carga Generador o reproductor, creado con el motor ya instalado como reloj
+     */
+    public void setCarga(FuenteLlamadas carga) {
+        this.carga = carga;
+    }
+
+    public FuenteLlamadas getCarga() {
+        return carga;
+    }
+
+    public List<OperadorLlamadas> getOperadores() {
+        return operadores;
+    }
+
+    public List<DespachadorProgramado> getDespachadores() {
+        return despachadores;
+    }
+}
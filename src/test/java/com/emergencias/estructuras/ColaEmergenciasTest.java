@@ -0,0 +1,137 @@
+package com.emergencias.estructuras;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.emergencias.modelos.Emergencia;
+import com.emergencias.modelos.Prioridad;
+import com.emergencias.simulacion.MotorEventos;
+import com.emergencias.simulacion.Reloj;
+import com.emergencias.simulacion.RelojSistema;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Orden de extracción con envejecimiento, en tiempo virtual para que la edad
+ * de cada llamada no dependa de lo que tarde la prueba.
+ */
+class ColaEmergenciasTest {
+    private MotorEventos motor;
+
+    @BeforeEach
+    void usarTiempoVirtual() {
+        motor = new MotorEventos(LocalDateTime.of(2024, 1, 1, 8, 0));
+        Reloj.usar(motor);
+    }
+
+    @AfterEach
+    void volverAlRelojDelSistema() {
+        Reloj.usar(RelojSistema.getInstancia());
+    }
+
+    @Test
+    void unaLeveQueEsperoLoSuficientePasaDelanteDeUnaCritica() {
+        ColaEmergencias cola = new ColaEmergencias(16);
+        Emergencia leve = crear(Prioridad.LEVE);
+        cola.ofrecer(leve);
+        motor.ejecutarDurante(29, TimeUnit.MINUTES);
+        Emergencia critica = crear(Prioridad.CRITICO);
+        cola.ofrecer(critica);
+
+        // 1 × (1 + 2,9) < 4: todavía gana la crítica
+        assertThat(cola.consultar()).isSameAs(critica);
+
+        motor.ejecutarDurante(2, TimeUnit.MINUTES);
+        Emergencia otraCritica = crear(Prioridad.CRITICO);
+        cola.ofrecer(otraCritica);
+
+        // La primera crítica lleva 2 minutos (4,8) y la leve 31 (4,1), por
+        // delante de la crítica recién llegada (4)
+        assertThat(extraerTodas(cola)).containsExactly(critica, leve, otraCritica);
+    }
+
+    @Test
+    void aIgualPrioridadEfectivaGanaLaMasGraveYLuegoLaMasAntigua() {
+        ColaEmergencias cola = new ColaEmergencias(16);
+        Emergencia moderada = crear(Prioridad.MODERADO);
+        cola.ofrecer(moderada);
+        motor.ejecutarDurante(10, TimeUnit.MINUTES);
+        // Moderada: 2 × (1 + 1) = 4, igual que una crítica recién llegada
+        Emergencia critica = crear(Prioridad.CRITICO);
+        motor.ejecutarDurante(1, TimeUnit.MILLISECONDS);
+        Emergencia critica2 = crear(Prioridad.CRITICO);
+        cola.ofrecer(critica2);
+        cola.ofrecer(critica);
+
+        assertThat(extraerTodas(cola)).containsExactly(critica, critica2, moderada);
+    }
+
+    @Test
+    void extraeEnElMismoOrdenQueUnRecorridoDeFuerzaBruta() {
+        Random aleatorio = new Random(23);
+        ColaEmergencias cola = new ColaEmergencias(64);
+        List<Emergencia> encoladas = new ArrayList<>();
+        for (int paso = 0; paso < 5000; paso++) {
+            motor.ejecutarDurante(1 + aleatorio.nextInt(90_000), TimeUnit.MILLISECONDS);
+            if (aleatorio.nextInt(3) > 0 || encoladas.isEmpty()) {
+                Emergencia emergencia = crear(Prioridad.values()[aleatorio.nextInt(Prioridad.values().length)]);
+                cola.ofrecer(emergencia);
+                encoladas.add(emergencia);
+            } else {
+                Emergencia esperada = primeraSegunFuerzaBruta(encoladas, motor.nanos());
+                assertThat(cola.extraerSiHay()).isSameAs(esperada);
+                encoladas.remove(esperada);
+            }
+            assertThat(cola.tamanio()).isEqualTo(encoladas.size());
+        }
+        long ahora = motor.nanos();
+        List<Emergencia> esperadas = new ArrayList<>(encoladas);
+        esperadas.sort(Comparator.comparingDouble((Emergencia e) -> -e.calcularPrioridadEfectiva(ahora))
+                           .thenComparing(Emergencia::getPrioridad)
+                           .thenComparingLong(Emergencia::getMarcaLlamadaNanos));
+        List<Emergencia> drenadas = new ArrayList<>();
+        assertThat(cola.drenar(Integer.MAX_VALUE, drenadas)).isEqualTo(esperadas.size());
+        assertThat(drenadas).containsExactlyElementsOf(esperadas);
+    }
+
+    private static Emergencia crear(Prioridad prioridad) {
+        return new Emergencia("Centro", prioridad, "Prueba", 0.0, 0.0);
+    }
+
+    private static List<Emergencia> extraerTodas(ColaEmergencias cola) {
+        List<Emergencia> extraidas = new ArrayList<>();
+        Emergencia emergencia;
+        while ((emergencia = cola.extraerSiHay()) != null) {
+            extraidas.add(emergencia);
+        }
+        return extraidas;
+    }
+
+    /**
+     * Mayor prioridad efectiva; a igual valor, la más grave y luego la más antigua.
+     */
+    private static Emergencia primeraSegunFuerzaBruta(List<Emergencia> encoladas, long ahora) {
+        Emergencia mejor = null;
+        for (Emergencia emergencia : encoladas) {
+            if (mejor == null) {
+                mejor = emergencia;
+                continue;
+            }
+            double valor = emergencia.calcularPrioridadEfectiva(ahora);
+            double mejorValor = mejor.calcularPrioridadEfectiva(ahora);
+            if (valor > mejorValor
+                || (valor == mejorValor && emergencia.getPrioridad().compareTo(mejor.getPrioridad()) < 0)
+                || (valor == mejorValor && emergencia.getPrioridad() == mejor.getPrioridad()
+                    && emergencia.getMarcaLlamadaNanos() < mejor.getMarcaLlamadaNanos())) {
+                mejor = emergencia;
+            }
+        }
+        return mejor;
+    }
+}
@@ -0,0 +1,128 @@
+package com.emergencias.estructuras;
+
+import com.emergencias.modelos.Emergencia;
+import com.emergencias.modelos.Prioridad;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Rendimiento de la cola de despacho con 4, 16 y 64 despachadores. Cada
+ * operación extrae una emergencia y vuelve a encolarla en su zona, como un
+ * despachador que la atiende mientras entra otra en el mismo lugar, así que la
+ * cola mantiene su tamaño. El resultado de cada benchmark es el total de
+ * operaciones por segundo de todos los hilos: con escalado lineal, el de 64
+ * despachadores es 16 veces el de 4 (si hay núcleos para todos).
+ * <p>
+ * {@code modo} compara la cola por zonas, donde cada despachador tiene zona
+ * propia ({@code i % zonas}), con la misma cola extrayendo en orden global
+ * estricto ({@link ColaFragmentada#SIN_ZONA}, todos van al lock de la mejor
+ * cabeza) y con una sola {@link ColaEmergencias}.
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main ColaFragmentadaBenchmark"
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColaFragmentadaBenchmark {
+    private static final double LATITUD_MIN = 11.2;
+    private static final double LATITUD_MAX = 11.4;
+    private static final double LONGITUD_MIN = -74.2;
+    private static final double LONGITUD_MAX = -74.0;
+    private static final int LADO = 4;
+    private static final int POR_ZONA = 256;
+
+    public enum Modo { ZONA_PROPIA, ORDEN_GLOBAL, COLA_UNICA }
+
+    /**
+     * Cola compartida por todos los despachadores, llena con
+     * {@value #POR_ZONA} emergencias por zona de gravedad aleatoria.
+     */
+    @State(Scope.Benchmark)
+    public static class Cola {
+        @Param({"ZONA_PROPIA", "ORDEN_GLOBAL", "COLA_UNICA"})
+        public Modo modo;
+
+        ColaFragmentada fragmentada;
+        ColaEmergencias unica;
+
+        @Setup(Level.Trial)
+        public void llenar() {
+            fragmentada = new ColaFragmentada(LATITUD_MIN, LATITUD_MAX, LONGITUD_MIN, LONGITUD_MAX, LADO, LADO);
+            unica = new ColaEmergencias(POR_ZONA * LADO * LADO);
+            Random aleatorio = new Random(5);
+            Prioridad[] prioridades = Prioridad.values();
+            for (int i = 0; i < POR_ZONA * LADO * LADO; i++) {
+                double latitud = LATITUD_MIN + aleatorio.nextDouble() * (LATITUD_MAX - LATITUD_MIN);
+                double longitud = LONGITUD_MIN + aleatorio.nextDouble() * (LONGITUD_MAX - LONGITUD_MIN);
+                Emergencia emergencia = new Emergencia("Zona", prioridades[aleatorio.nextInt(prioridades.length)],
+                                                       "Prueba", latitud, longitud);
+                if (modo == Modo.COLA_UNICA) {
+                    unica.ofrecer(emergencia);
+                } else {
+                    fragmentada.ofrecer(emergencia);
+                }
+            }
+        }
+    }
+
+    /**
+     * Zona propia de cada hilo, repartidas como en {@code Main}.
+     */
+    @State(Scope.Thread)
+    public static class Despachador {
+        int zona;
+
+        @Setup(Level.Trial)
+        public void asignarZona(Cola cola, ThreadParams hilo) {
+            zona = cola.modo == Modo.ORDEN_GLOBAL ? ColaFragmentada.SIN_ZONA
+                                                  : hilo.getThreadIndex() % (LADO * LADO);
+        }
+    }
+
+    private static Emergencia atenderYReponer(Cola cola, Despachador despachador) {
+        if (cola.modo == Modo.COLA_UNICA) {
+            Emergencia emergencia = cola.unica.extraerSiHay();
+            cola.unica.ofrecer(emergencia);
+            return emergencia;
+        }
+        Emergencia emergencia = cola.fragmentada.extraerSiHay(despachador.zona);
+        cola.fragmentada.ofrecer(emergencia);
+        return emergencia;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Emergencia despachadores4(Cola cola, Despachador despachador) {
+        return atenderYReponer(cola, despachador);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Emergencia despachadores16(Cola cola, Despachador despachador) {
+        return atenderYReponer(cola, despachador);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Emergencia despachadores64(Cola cola, Despachador despachador) {
+        return atenderYReponer(cola, despachador);
+    }
+}
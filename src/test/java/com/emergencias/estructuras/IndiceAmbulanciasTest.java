@@ -0,0 +1,127 @@
+package com.emergencias.estructuras;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.emergencias.modelos.Ambulancia;
+import com.emergencias.modelos.EstadoFlota;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Búsqueda de las k más cercanas contra un recorrido de fuerza bruta, después
+ * de altas, bajas, reservas y reubicaciones aleatorias. Las posiciones y los
+ * puntos de consulta salen a veces del rectángulo inicial, donde cuentan en
+ * las celdas del borde.
+ */
+class IndiceAmbulanciasTest {
+    private static final int UNIDADES = 2000;
+    private static final int OPERACIONES = 20_000;
+    private static final double LADO_GRADOS = 0.5;
+
+    private final Random aleatorio = new Random(17);
+
+    @Test
+    void cercanasCoincideConFuerzaBruta() {
+        EstadoFlota estado = new EstadoFlota();
+        List<Ambulancia> flota = new ArrayList<>(UNIDADES);
+        for (int i = 0; i < UNIDADES; i++) {
+            flota.add(new Ambulancia("AMB-" + i, Ambulancia.TipoAmbulancia.values()[i % 3],
+                                     aleatorio.nextDouble() * LADO_GRADOS, aleatorio.nextDouble() * LADO_GRADOS,
+                                     estado));
+        }
+        IndiceAmbulancias indice = IndiceAmbulancias.construir(flota);
+        Set<Ambulancia> indexadas = new HashSet<>(flota);
+
+        for (int operacion = 0; operacion < OPERACIONES; operacion++) {
+            Ambulancia ambulancia = flota.get(aleatorio.nextInt(UNIDADES));
+            boolean estaba = indexadas.contains(ambulancia);
+            switch (aleatorio.nextInt(4)) {
+                case 0 -> {
+                    assertThat(indice.quitar(ambulancia)).isEqualTo(estaba);
+                    indexadas.remove(ambulancia);
+                }
+                case 1 -> {
+                    if (!estaba) {
+                        ambulancia.ubicarEn(posicion(), posicion());
+                    }
+                    assertThat(indice.agregar(ambulancia)).isEqualTo(!estaba);
+                    indexadas.add(ambulancia);
+                }
+                case 2 -> {
+                    // Reserva y liberación en otro lugar, como un servicio completo
+                    assertThat(indice.reservar(ambulancia)).isEqualTo(estaba);
+                    indexadas.remove(ambulancia);
+                    ambulancia.ubicarEn(posicion(), posicion());
+                    indice.agregar(ambulancia);
+                    ambulancia.liberar();
+                    indexadas.add(ambulancia);
+                }
+                default -> {
+                    if (estaba) {
+                        ambulancia.ubicarEn(posicion(), posicion());
+                        assertThat(indice.reubicar(ambulancia)).isTrue();
+                    }
+                }
+            }
+            if (operacion % 20 == 0) {
+                comprobarConsulta(indice, indexadas);
+            }
+        }
+        assertThat(indice.tamanio()).isEqualTo(indexadas.size());
+    }
+
+    @Test
+    void sinAmbulanciasNoDevuelveNada() {
+        EstadoFlota estado = new EstadoFlota();
+        Ambulancia unica = new Ambulancia("AMB-0", Ambulancia.TipoAmbulancia.BASICA, 0.1, 0.1, estado);
+        IndiceAmbulancias indice = IndiceAmbulancias.construir(List.of(unica));
+        assertThat(indice.reservar(unica)).isTrue();
+        assertThat(indice.reservar(unica)).isFalse();
+
+        assertThat(indice.cercanas(0.1, 0.1, 3)).isEmpty();
+        assertThat(indice.masCercana(0.1, 0.1)).isNull();
+    }
+
+    /**
+     * Una coordenada casi siempre dentro del rectángulo inicial y a veces
+     * fuera, para cubrir las celdas del borde.
+     */
+    private double posicion() {
+        return aleatorio.nextInt(10) == 0
+            ? -0.2 + aleatorio.nextDouble() * (LADO_GRADOS + 0.4)
+            : aleatorio.nextDouble() * LADO_GRADOS;
+    }
+
+    private void comprobarConsulta(IndiceAmbulancias indice, Set<Ambulancia> indexadas) {
+        double latitud = posicion();
+        double longitud = posicion();
+        int k = 1 + aleatorio.nextInt(16);
+
+        List<Ambulancia> cercanas = indice.cercanas(latitud, longitud, k);
+
+        List<Double> esperadas = indexadas.stream()
+            .map(a -> distancia2(a, latitud, longitud))
+            .sorted()
+            .limit(k)
+            .toList();
+        assertThat(cercanas).hasSize(esperadas.size()).doesNotHaveDuplicates();
+        assertThat(cercanas).allMatch(indexadas::contains);
+        // Con empates puede elegir otra unidad a la misma distancia
+        assertThat(cercanas.stream().map(a -> distancia2(a, latitud, longitud)).toList())
+            .containsExactlyElementsOf(esperadas);
+        if (!esperadas.isEmpty()) {
+            assertThat(distancia2(indice.masCercana(latitud, longitud), latitud, longitud))
+                .isEqualTo(esperadas.get(0));
+        }
+    }
+
+    private static double distancia2(Ambulancia ambulancia, double latitud, double longitud) {
+        double deltaLat = ambulancia.getLatitud() - latitud;
+        double deltaLon = ambulancia.getLongitud() - longitud;
+        return deltaLat * deltaLat + deltaLon * deltaLon;
+    }
+}
@@ -0,0 +1,194 @@
+package com.emergencias.gestores;
+
+import com.emergencias.modelos.Ambulancia;
+import com.emergencias.modelos.Emergencia;
+import com.emergencias.modelos.EstadoFlota;
+import com.emergencias.modelos.Prioridad;
+import com.emergencias.persistencia.CatalogoRecursos;
+import com.emergencias.registro.NivelRegistro;
+import com.emergencias.registro.Registro;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Subasta por lotes contra despacho voraz sobre el mismo lote: el tiempo de
+ * cada benchmark es lo que tarda en asignar el lote completo, y los contadores
+ * miden la calidad de la asignación. La distancia media de viaje (la respuesta
+ * de la flota) es {@code kilometros / asignadas}, y la de las CRÍTICAS
+ * {@code kilometrosCriticas / criticas}.
+ * <p>
+ * Las emergencias se reparten por toda la ciudad o se concentran en unos pocos
+ * focos, donde compiten por las mismas ambulancias, y llegan en orden
+ * aleatorio de prioridad. El voraz las
+ * atiende en ese orden, como los despachadores por zona, y la subasta ve el
+ * lote entero.
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main AsignadorLotesBenchmark"
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AsignadorLotesBenchmark {
+    private static final double LADO_GRADOS = 0.5;
+    private static final double KM_POR_GRADO = 111.0;
+
+    @Param({"1000", "5000"})
+    public int unidades;
+
+    /** Emergencias del lote por cada ambulancia libre. */
+    @Param({"0.8"})
+    public double carga;
+
+    /** Focos donde se concentran las emergencias; 0 para repartirlas en toda la ciudad. */
+    @Param({"0", "5"})
+    public int focos;
+
+    private GestorRecursos gestor;
+    private AsignadorLotes asignador;
+    private List<Ambulancia> flota;
+    private double[] latitudesBase;
+    private double[] longitudesBase;
+    private Random aleatorio;
+    private List<Emergencia> lote;
+
+    /**
+     * Calidad de la asignación, acumulada en cada iteración.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Respuesta {
+        public long asignadas;
+        public double kilometros;
+        public long criticas;
+        public double kilometrosCriticas;
+        public long sinAmbulancia;
+
+        @Setup(Level.Iteration)
+        public void reiniciar() {
+            asignadas = 0;
+            kilometros = 0;
+            criticas = 0;
+            kilometrosCriticas = 0;
+            sinAmbulancia = 0;
+        }
+
+        void contar(Emergencia emergencia, Ambulancia ambulancia) {
+            double km = ambulancia.calcularDistanciaViaje() * KM_POR_GRADO;
+            asignadas++;
+            kilometros += km;
+            if (emergencia.getPrioridad() == Prioridad.CRITICO) {
+                criticas++;
+                kilometrosCriticas += km;
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void crearFlota() {
+        Registro.setNivelMinimo(NivelRegistro.ADVERTENCIA);
+        Random posiciones = new Random(7);
+        EstadoFlota estado = new EstadoFlota();
+        List<Ambulancia> ambulancias = new ArrayList<>(unidades);
+        Ambulancia.TipoAmbulancia[] tipos = Ambulancia.TipoAmbulancia.values();
+        latitudesBase = new double[unidades];
+        longitudesBase = new double[unidades];
+        for (int i = 0; i < unidades; i++) {
+            latitudesBase[i] = posiciones.nextDouble() * LADO_GRADOS;
+            longitudesBase[i] = posiciones.nextDouble() * LADO_GRADOS;
+            ambulancias.add(new Ambulancia("AMB-" + i, tipos[i % tipos.length], latitudesBase[i], longitudesBase[i],
+                                           estado));
+        }
+        gestor = GestorRecursos.crear(new CatalogoRecursos(estado, ambulancias, new ArrayList<>()));
+        flota = gestor.getAmbulancias();
+        asignador = new AsignadorLotes(gestor, 10.0, 150, TimeUnit.MILLISECONDS);
+        aleatorio = new Random(11);
+    }
+
+    /**
+     * Un lote nuevo en cada invocación: la prioridad efectiva depende de la
+     * edad de la emergencia.
+     */
+    @Setup(Level.Invocation)
+    public void crearLote() {
+        int cantidad = (int) (unidades * carga);
+        double[][] centros = new double[focos][2];
+        for (double[] centro : centros) {
+            centro[0] = aleatorio.nextDouble() * LADO_GRADOS;
+            centro[1] = aleatorio.nextDouble() * LADO_GRADOS;
+        }
+        Prioridad[] prioridades = {Prioridad.CRITICO, Prioridad.GRAVE, Prioridad.GRAVE,
+                                   Prioridad.MODERADO, Prioridad.MODERADO, Prioridad.MODERADO,
+                                   Prioridad.LEVE, Prioridad.LEVE, Prioridad.LEVE, Prioridad.LEVE};
+        lote = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            double latitud;
+            double longitud;
+            if (focos == 0) {
+                latitud = aleatorio.nextDouble() * LADO_GRADOS;
+                longitud = aleatorio.nextDouble() * LADO_GRADOS;
+            } else {
+                double[] centro = centros[aleatorio.nextInt(focos)];
+                latitud = centro[0] + aleatorio.nextGaussian() * 0.03;
+                longitud = centro[1] + aleatorio.nextGaussian() * 0.03;
+            }
+            lote.add(new Emergencia("Foco", prioridades[aleatorio.nextInt(prioridades.length)], "Prueba",
+                                    latitud, longitud));
+        }
+    }
+
+    /**
+     * Devuelve cada ambulancia ocupada a su base y la libera.
+     */
+    @TearDown(Level.Invocation)
+    public void liberarFlota() {
+        for (int i = 0; i < flota.size(); i++) {
+            Ambulancia ambulancia = flota.get(i);
+            if (!ambulancia.isDisponible()) {
+                ambulancia.ubicarEn(latitudesBase[i], longitudesBase[i]);
+                gestor.liberarAmbulancia(ambulancia);
+            }
+        }
+    }
+
+    @Benchmark
+    public void subasta(Respuesta respuesta) {
+        AsignadorLotes.Resultado resultado = asignador.asignar(lote);
+        for (AsignadorLotes.Asignacion asignacion : resultado.getAsignaciones()) {
+            respuesta.contar(asignacion.getEmergencia(), asignacion.getAmbulancia());
+        }
+        respuesta.sinAmbulancia += resultado.getSinAsignar().size();
+    }
+
+    @Benchmark
+    public void voraz(Respuesta respuesta) {
+        for (Emergencia emergencia : lote) {
+            Ambulancia ambulancia = gestor.intentarAsignarAmbulancia(emergencia);
+            if (ambulancia == null) {
+                respuesta.sinAmbulancia++;
+            } else {
+                respuesta.contar(emergencia, ambulancia);
+            }
+        }
+    }
+}
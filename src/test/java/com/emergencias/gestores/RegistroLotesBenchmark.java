@@ -0,0 +1,121 @@
+package com.emergencias.gestores;
+
+import com.emergencias.estructuras.ColaFragmentada;
+import com.emergencias.modelos.Emergencia;
+import com.emergencias.modelos.Prioridad;
+import com.emergencias.persistencia.DiarioEmergencias;
+import com.emergencias.registro.NivelRegistro;
+import com.emergencias.registro.Registro;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Ingreso de una ráfaga de {@value #RAFAGA} llamadas y su salida hacia un
+ * despachador, de a una ({@code registrarEmergencia} y
+ * {@code obtenerSiguienteSiHay}) o en lote ({@code registrarEmergencias} y
+ * {@code drenarHasta}). El tiempo es por emergencia: registrarla y sacarla de
+ * la cola.
+ * <p>
+ * Con {@code diario} cada emergencia además se anota en un diario de
+ * emergencias en un directorio temporal. La ráfaga reutiliza las mismas
+ * emergencias en cada invocación para que el mapa de activas y el estado del
+ * diario no crezcan durante la medición.
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main RegistroLotesBenchmark"
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RegistroLotesBenchmark {
+    private static final int RAFAGA = 1000;
+
+    @Param({"false", "true"})
+    public boolean diario;
+
+    private GestorEmergencias gestor;
+    private List<Emergencia> rafaga;
+    private DiarioEmergencias diarioAbierto;
+    private Path directorio;
+
+    /**
+     * El gestor es único por JVM; cada combinación de parámetros corre en su
+     * propio fork.
+     */
+    @Setup(Level.Trial)
+    public void crearRafaga() throws IOException {
+        Registro.setNivelMinimo(NivelRegistro.ADVERTENCIA);
+        gestor = GestorEmergencias.getInstancia();
+        if (diario) {
+            directorio = Files.createTempDirectory("diario-lotes");
+            diarioAbierto = new DiarioEmergencias(directorio);
+            gestor.configurarDiario(diarioAbierto);
+        }
+        Random aleatorio = new Random(3);
+        Prioridad[] prioridades = Prioridad.values();
+        rafaga = new ArrayList<>(RAFAGA);
+        for (int i = 0; i < RAFAGA; i++) {
+            rafaga.add(new Emergencia("Calle " + i, prioridades[aleatorio.nextInt(prioridades.length)],
+                                      "Ráfaga", 11.2 + aleatorio.nextDouble() * 0.2,
+                                      -74.2 + aleatorio.nextDouble() * 0.2));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void borrarDiario() throws IOException {
+        if (diarioAbierto == null) {
+            return;
+        }
+        diarioAbierto.cerrar();
+        try (Stream<Path> rutas = Files.walk(directorio)) {
+            for (Path ruta : (Iterable<Path>) rutas.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(ruta);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAFAGA)
+    public int deAUna() {
+        for (Emergencia emergencia : rafaga) {
+            gestor.registrarEmergencia(emergencia);
+        }
+        int sacadas = 0;
+        while (gestor.obtenerSiguienteSiHay(ColaFragmentada.SIN_ZONA) != null) {
+            sacadas++;
+        }
+        return sacadas;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAFAGA)
+    public int enLote() throws InterruptedException {
+        gestor.registrarEmergencias(rafaga);
+        return gestor.drenarHasta(RAFAGA, 0, TimeUnit.MILLISECONDS).size();
+    }
+}
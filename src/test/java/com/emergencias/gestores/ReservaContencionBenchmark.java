@@ -0,0 +1,164 @@
+package com.emergencias.gestores;
+
+import com.emergencias.modelos.Ambulancia;
+import com.emergencias.modelos.Emergencia;
+import com.emergencias.modelos.EstadoFlota;
+import com.emergencias.modelos.Prioridad;
+import com.emergencias.persistencia.CatalogoRecursos;
+import com.emergencias.registro.NivelRegistro;
+import com.emergencias.registro.Registro;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Reservas de ambulancia con 4, 8 y 16 despachadores compitiendo por la misma
+ * flota. Cada operación asigna la ambulancia más cercana a una emergencia y la
+ * libera enseguida, así que las reservas chocan en el CAS del índice todo el
+ * tiempo.
+ * <p>
+ * Los contadores miden lo que cuesta la contención: {@code carrerasPerdidas}
+ * son los CAS perdidos contra otro despachador (la tasa es
+ * {@code carrerasPerdidas / asignadas}) y {@code sinAmbulancia} las
+ * asignaciones que fallaron. Con al menos una ambulancia por despachador
+ * siempre hay una libre, así que {@code sinAmbulancia} debe ser 0: una
+ * carrera perdida solo cuesta probar la siguiente candidata.
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main ReservaContencionBenchmark"
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReservaContencionBenchmark {
+    private static final double LADO_GRADOS = 0.5;
+    private static final int EMERGENCIAS_POR_HILO = 1024;
+
+    /**
+     * Flota compartida por todos los despachadores.
+     */
+    @State(Scope.Benchmark)
+    public static class Flota {
+        /** Ambulancias de la flota; 16 es una por despachador en el caso más disputado. */
+        @Param({"16", "1000"})
+        public int unidades;
+
+        GestorRecursos gestor;
+
+        @Setup(Level.Trial)
+        public void crear() {
+            Registro.setNivelMinimo(NivelRegistro.ADVERTENCIA);
+            Random posiciones = new Random(7);
+            EstadoFlota estado = new EstadoFlota();
+            List<Ambulancia> ambulancias = new ArrayList<>(unidades);
+            Ambulancia.TipoAmbulancia[] tipos = Ambulancia.TipoAmbulancia.values();
+            for (int i = 0; i < unidades; i++) {
+                ambulancias.add(new Ambulancia("AMB-" + i, tipos[i % tipos.length],
+                                               posiciones.nextDouble() * LADO_GRADOS,
+                                               posiciones.nextDouble() * LADO_GRADOS, estado));
+            }
+            gestor = GestorRecursos.crear(new CatalogoRecursos(estado, ambulancias, new ArrayList<>()));
+        }
+    }
+
+    /**
+     * Emergencias de cada despachador, en posiciones al azar, y sus contadores.
+     * Las carreras perdidas son un contador global del gestor: solo el primer
+     * hilo publica su diferencia en la iteración, para no sumarla una vez por
+     * hilo.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Despachador {
+        public long asignadas;
+        public long sinAmbulancia;
+        public long carrerasPerdidas;
+
+        private Emergencia[] emergencias;
+        private int siguiente;
+        private boolean publica;
+        private long fallidasAntes;
+
+        @Setup(Level.Trial)
+        public void crearEmergencias(ThreadParams hilo) {
+            Random aleatorio = new Random(11 + hilo.getThreadIndex());
+            emergencias = new Emergencia[EMERGENCIAS_POR_HILO];
+            for (int i = 0; i < emergencias.length; i++) {
+                emergencias[i] = new Emergencia("Despacho", Prioridad.GRAVE, "Prueba",
+                                                aleatorio.nextDouble() * LADO_GRADOS,
+                                                aleatorio.nextDouble() * LADO_GRADOS);
+            }
+            publica = hilo.getThreadIndex() == 0;
+        }
+
+        @Setup(Level.Iteration)
+        public void reiniciar(Flota flota) {
+            asignadas = 0;
+            sinAmbulancia = 0;
+            carrerasPerdidas = 0;
+            fallidasAntes = flota.gestor.getReservasFallidas();
+        }
+
+        @TearDown(Level.Iteration)
+        public void publicarCarreras(Flota flota) {
+            if (publica) {
+                carrerasPerdidas = flota.gestor.getReservasFallidas() - fallidasAntes;
+            }
+        }
+
+        Emergencia proxima() {
+            Emergencia emergencia = emergencias[siguiente];
+            siguiente = (siguiente + 1) % emergencias.length;
+            return emergencia;
+        }
+    }
+
+    private static Ambulancia asignarYLiberar(Flota flota, Despachador despachador) {
+        Ambulancia ambulancia = flota.gestor.intentarAsignarAmbulancia(despachador.proxima());
+        if (ambulancia == null) {
+            despachador.sinAmbulancia++;
+            return null;
+        }
+        despachador.asignadas++;
+        flota.gestor.liberarAmbulancia(ambulancia);
+        return ambulancia;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Ambulancia despachadores4(Flota flota, Despachador despachador) {
+        return asignarYLiberar(flota, despachador);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Ambulancia despachadores8(Flota flota, Despachador despachador) {
+        return asignarYLiberar(flota, despachador);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Ambulancia despachadores16(Flota flota, Despachador despachador) {
+        return asignarYLiberar(flota, despachador);
+    }
+}
@@ -0,0 +1,148 @@
+package com.emergencias.hilos;
+
+import com.emergencias.gestores.GestorEmergencias;
+import com.emergencias.gestores.GestorRecursos;
+import com.emergencias.modelos.Ambulancia;
+import com.emergencias.modelos.Emergencia;
+import com.emergencias.modelos.EstadoFlota;
+import com.emergencias.modelos.MedicoEmergencia;
+import com.emergencias.modelos.Prioridad;
+import com.emergencias.persistencia.CatalogoRecursos;
+import com.emergencias.registro.NivelRegistro;
+import com.emergencias.registro.Registro;
+import com.emergencias.simulacion.MotorEventos;
+import com.emergencias.simulacion.Reloj;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Despacho programado con {@code enCurso} emergencias en viaje o en atención a
+ * la vez. Cada invocación registra el lote de una vez, lo despacha con
+ * {@value #DESPACHADORES} despachadores y corre el reloj hasta que se atiende
+ * la última. El reloj es un {@link MotorEventos}, así que los viajes y las
+ * atenciones no duran nada real: el tiempo medido es el costo de la máquina de
+ * estados (asignar, programar, llegar, liberar y volver a despachar) y
+ * {@code enCurso / tiempo} es el rendimiento del despacho cuando ningún hilo
+ * duerme.
+ * <p>
+ * La flota alcanza para que todo el lote esté en curso a la vez; el contador
+ * {@code maximoEnCurso} lo comprueba con las ambulancias ocupadas después del
+ * despacho, y {@code atendidas} cuenta las que terminaron. JMH suma los
+ * contadores de todas las iteraciones: ambos deben dar {@code enCurso} por
+ * iteración medida.
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main DespachoProgramadoBenchmark"
+ * </pre>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DespachoProgramadoBenchmark {
+    private static final int DESPACHADORES = 4;
+    private static final double LADO_GRADOS = 0.5;
+
+    @Param({"10000"})
+    public int enCurso;
+
+    private MotorEventos motor;
+    private GestorEmergencias gestorEmergencias;
+    private GestorRecursos gestorRecursos;
+    private List<DespachadorProgramado> despachadores;
+    private Random aleatorio;
+    private List<Emergencia> lote;
+
+    /**
+     * Emergencias en curso a la vez y atendidas en cada iteración.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Atencion {
+        public long maximoEnCurso;
+        public long atendidas;
+
+        @Setup(Level.Iteration)
+        public void reiniciar() {
+            maximoEnCurso = 0;
+            atendidas = 0;
+        }
+    }
+
+    /**
+     * Los gestores son únicos por JVM: se crean una vez con una flota de UCI
+     * móviles (3 médicos cada una) y médicos para todas.
+     */
+    @Setup(Level.Trial)
+    public void crearFlota() {
+        Registro.setNivelMinimo(NivelRegistro.ADVERTENCIA);
+        motor = new MotorEventos(LocalDateTime.of(2024, 1, 1, 0, 0));
+        Reloj.usar(motor);
+        Random posiciones = new Random(7);
+        EstadoFlota estado = new EstadoFlota();
+        int unidades = enCurso + enCurso / 5;
+        List<Ambulancia> ambulancias = new ArrayList<>(unidades);
+        for (int i = 0; i < unidades; i++) {
+            ambulancias.add(new Ambulancia("AMB-" + i, Ambulancia.TipoAmbulancia.UCI_MOVIL,
+                                           posiciones.nextDouble() * LADO_GRADOS,
+                                           posiciones.nextDouble() * LADO_GRADOS, estado));
+        }
+        MedicoEmergencia.Especialidad[] especialidades = MedicoEmergencia.Especialidad.values();
+        List<MedicoEmergencia> medicos = new ArrayList<>(enCurso * 4);
+        for (int i = 0; i < enCurso * 4; i++) {
+            medicos.add(new MedicoEmergencia("MED-" + i, "Médico " + i, especialidades[i % especialidades.length]));
+        }
+        gestorRecursos = GestorRecursos.inicializar(new CatalogoRecursos(estado, ambulancias, medicos));
+        gestorEmergencias = GestorEmergencias.getInstancia();
+        despachadores = new ArrayList<>(DESPACHADORES);
+        int zonas = gestorEmergencias.getNumeroZonas();
+        for (int i = 0; i < DESPACHADORES; i++) {
+            despachadores.add(new DespachadorProgramado("Despachador-" + (i + 1), i * zonas / DESPACHADORES,
+                                                        motor, Runnable::run));
+        }
+        aleatorio = new Random(11);
+    }
+
+    @Setup(Level.Invocation)
+    public void crearLote() {
+        Prioridad[] prioridades = Prioridad.values();
+        lote = new ArrayList<>(enCurso);
+        for (int i = 0; i < enCurso; i++) {
+            lote.add(new Emergencia("Lote", prioridades[aleatorio.nextInt(prioridades.length)], "Prueba",
+                                    aleatorio.nextDouble() * LADO_GRADOS, aleatorio.nextDouble() * LADO_GRADOS));
+        }
+    }
+
+    @Benchmark
+    public int despacharYAtender(Atencion atencion) {
+        int antes = gestorEmergencias.getEmergenciasAtendidas();
+        gestorEmergencias.registrarEmergencias(lote);
+        for (DespachadorProgramado despachador : despachadores) {
+            despachador.despacharPendientes();
+        }
+        int ocupadas = gestorRecursos.getAmbulanciasTotales() - gestorRecursos.getAmbulanciasDisponibles();
+        atencion.maximoEnCurso = Math.max(atencion.maximoEnCurso, ocupadas);
+        motor.ejecutar();
+        int atendidas = gestorEmergencias.getEmergenciasAtendidas() - antes;
+        atencion.atendidas += atendidas;
+        return atendidas;
+    }
+}
@@ -0,0 +1,178 @@
+package com.emergencias.modelos;
+
+import com.emergencias.estructuras.IndiceAmbulancias;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Búsqueda de las k ambulancias libres más cercanas con tres organizaciones
+ * de la flota: los bits de disponibilidad del {@link EstadoFlota}, un objeto
+ * por unidad con su propio indicador de disponibilidad (como era
+ * {@link Ambulancia} antes del almacén) y el índice espacial de disponibles.
+ * <p>
+ * {@code libres} es la fracción de la flota disponible. Con pocas libres el
+ * índice recorre muchas celdas vacías y el almacén solo lee una palabra cada
+ * 64 unidades; con muchas, el índice para enseguida.
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main EstadoFlotaBenchmark"
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EstadoFlotaBenchmark {
+    private static final double LADO_GRADOS = 0.5;
+    private static final int PUNTOS = 1024;
+
+    @Param({"10000", "100000"})
+    public int unidades;
+
+    @Param({"0.001", "0.01", "0.1"})
+    public double libres;
+
+    @Param({"4"})
+    public int k;
+
+    private EstadoFlota estado;
+    private List<Unidad> objetos;
+    private IndiceAmbulancias indice;
+    private double[] latitudes;
+    private double[] longitudes;
+    private int siguiente;
+
+    /**
+     * Una unidad como objeto independiente, con los mismos campos que
+     * guardaba la ambulancia.
+     */
+    static final class Unidad {
+        final String id;
+        final Ambulancia.TipoAmbulancia tipo;
+        final AtomicBoolean disponible;
+        double latitud;
+        double longitud;
+        double latitudSalida;
+        double longitudSalida;
+        Emergencia emergenciaActual;
+
+        Unidad(String id, Ambulancia.TipoAmbulancia tipo, double latitud, double longitud) {
+            this.id = id;
+            this.tipo = tipo;
+            this.disponible = new AtomicBoolean(true);
+            this.latitud = latitud;
+            this.longitud = longitud;
+            this.latitudSalida = latitud;
+            this.longitudSalida = longitud;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void crearFlota() {
+        Random aleatorio = new Random(3);
+        Ambulancia.TipoAmbulancia[] tipos = Ambulancia.TipoAmbulancia.values();
+        estado = new EstadoFlota();
+        List<Ambulancia> flota = new ArrayList<>(unidades);
+        objetos = new ArrayList<>(unidades);
+        for (int i = 0; i < unidades; i++) {
+            double latitud = aleatorio.nextDouble() * LADO_GRADOS;
+            double longitud = aleatorio.nextDouble() * LADO_GRADOS;
+            flota.add(new Ambulancia("AMB-" + i, tipos[i % tipos.length], latitud, longitud, estado));
+            objetos.add(new Unidad("AMB-" + i, tipos[i % tipos.length], latitud, longitud));
+        }
+        indice = IndiceAmbulancias.construir(flota);
+        List<Integer> orden = new ArrayList<>(unidades);
+        for (int i = 0; i < unidades; i++) {
+            orden.add(i);
+        }
+        Collections.shuffle(orden, aleatorio);
+        int ocupadas = unidades - Math.max(1, (int) (unidades * libres));
+        for (int i = 0; i < ocupadas; i++) {
+            int posicion = orden.get(i);
+            indice.reservar(flota.get(posicion));
+            objetos.get(posicion).disponible.set(false);
+        }
+        latitudes = new double[PUNTOS];
+        longitudes = new double[PUNTOS];
+        for (int i = 0; i < PUNTOS; i++) {
+            latitudes[i] = aleatorio.nextDouble() * LADO_GRADOS;
+            longitudes[i] = aleatorio.nextDouble() * LADO_GRADOS;
+        }
+    }
+
+    private int punto() {
+        siguiente = (siguiente + 1) & (PUNTOS - 1);
+        return siguiente;
+    }
+
+    @Benchmark
+    public List<Ambulancia> estructuraDeArreglos() {
+        int p = punto();
+        return estado.cercanasDisponibles(latitudes[p], longitudes[p], k);
+    }
+
+    @Benchmark
+    public List<Unidad> objetoPorUnidad() {
+        int p = punto();
+        return cercanasDisponibles(objetos, latitudes[p], longitudes[p], k);
+    }
+
+    @Benchmark
+    public List<Ambulancia> indiceEspacial() {
+        int p = punto();
+        return indice.cercanas(latitudes[p], longitudes[p], k);
+    }
+
+    /**
+     * Recorrido de la lista de objetos con las k mejores en un arreglo
+     * ordenado; k es chico, así que insertar cuesta menos que un montículo.
+     */
+    private static List<Unidad> cercanasDisponibles(List<Unidad> unidades, double latitud, double longitud, int k) {
+        Unidad[] mejores = new Unidad[k];
+        double[] distancias = new double[k];
+        int cantidad = 0;
+        for (int u = 0; u < unidades.size(); u++) {
+            Unidad unidad = unidades.get(u);
+            if (!unidad.disponible.get()) {
+                continue;
+            }
+            double deltaLat = unidad.latitud - latitud;
+            double deltaLon = unidad.longitud - longitud;
+            double distancia = deltaLat * deltaLat + deltaLon * deltaLon;
+            if (cantidad == k && distancia >= distancias[k - 1]) {
+                continue;
+            }
+            int i = cantidad < k ? cantidad++ : k - 1;
+            while (i > 0 && distancias[i - 1] > distancia) {
+                mejores[i] = mejores[i - 1];
+                distancias[i] = distancias[i - 1];
+                i--;
+            }
+            mejores[i] = unidad;
+            distancias[i] = distancia;
+        }
+        List<Unidad> resultado = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            resultado.add(mejores[i]);
+        }
+        return resultado;
+    }
+}
@@ -0,0 +1,178 @@
+package com.emergencias.persistencia;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.emergencias.modelos.Emergencia;
+import com.emergencias.modelos.Prioridad;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Ida y vuelta del diario: se escribe una historia que ocupa varios segmentos
+ * y una instantánea, se daña el último registro como lo dejaría una caída a
+ * mitad de escritura y se comprueba que al reabrir se recupera todo lo
+ * anterior y que el diario sigue anotando a continuación.
+ */
+class DiarioEmergenciasTest {
+    private static final int TAMANIO_SEGMENTO = 16 * 1024;
+    private static final int CANTIDAD = 200;
+    private static final String DESCRIPCION = "Dolor torácico intenso con dificultad respiratoria, "
+                                              + "antecedentes cardíacos, paciente consciente";
+
+    @TempDir
+    Path directorio;
+
+    /**
+     * Historia escrita antes del daño.
+     */
+    private record Historia(List<Emergencia> emergencias, long lsnFinal) {
+        Emergencia get(int i) {
+            return emergencias.get(i);
+        }
+    }
+
+    @Test
+    void recuperaTodoMenosElUltimoRegistroCortado() throws IOException {
+        Historia historia = escribirHistoria();
+        Path segmento = ultimoSegmento();
+        long inicio = inicioRegistro(segmento, historia.lsnFinal());
+        try (FileChannel canal = FileChannel.open(segmento, StandardOpenOption.WRITE)) {
+            canal.truncate(inicio + 11); // Cabecera completa y 3 bytes del cuerpo
+        }
+
+        comprobarRecuperado(historia);
+    }
+
+    @Test
+    void recuperaTodoMenosElUltimoRegistroConCrcInvalido() throws IOException {
+        Historia historia = escribirHistoria();
+        Path segmento = ultimoSegmento();
+        long inicio = inicioRegistro(segmento, historia.lsnFinal());
+        try (FileChannel canal = FileChannel.open(segmento, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer byteCuerpo = ByteBuffer.allocate(1);
+            long posicion = inicio + 8 + 9; // Primer byte después del LSN y el tipo
+            canal.read(byteCuerpo, posicion);
+            byteCuerpo.put(0, (byte) (byteCuerpo.get(0) ^ 0x5A)).rewind();
+            canal.write(byteCuerpo, posicion);
+        }
+
+        comprobarRecuperado(historia);
+    }
+
+    /**
+     * Registra emergencias en lote y de a una, asigna, atiende, escala y
+     * cancela algunas, toma una instantánea a mitad de camino y termina con la
+     * atención de la emergencia 40, que es el registro que se daña.
+     */
+    private Historia escribirHistoria() throws IOException {
+        DiarioEmergencias diario = abrir();
+        List<Emergencia> emergencias = new ArrayList<>();
+        for (int i = 0; i < CANTIDAD; i++) {
+            Prioridad prioridad = Prioridad.values()[i % Prioridad.values().length];
+            emergencias.add(new Emergencia("Calle " + i, prioridad, DESCRIPCION, i * 0.001, -i * 0.001));
+        }
+        diario.anotarCreadas(emergencias.subList(0, CANTIDAD / 2));
+        for (int i = 0; i < 50; i++) {
+            emergencias.get(i).setAmbulanciaAsignada("AMB-" + i);
+            diario.anotarAsignada(emergencias.get(i));
+        }
+        for (int i = 0; i < 30; i++) {
+            diario.anotarAtendida(emergencias.get(i));
+        }
+        diario.tomarInstantanea();
+        for (int i = CANTIDAD / 2; i < CANTIDAD; i++) {
+            diario.anotarCreada(emergencias.get(i));
+        }
+        diario.anotarEscalada(emergencias.get(60), Prioridad.CRITICO);
+        diario.anotarCancelada(emergencias.get(70));
+        long lsnFinal = diario.anotarAtendida(emergencias.get(40));
+        diario.cerrar();
+        assertThat(diario.getInstantaneas()).isEqualTo(1);
+        assertThat(diario.getLsnPersistido()).isEqualTo(lsnFinal);
+        return new Historia(emergencias, lsnFinal);
+    }
+
+    private void comprobarRecuperado(Historia historia) throws IOException {
+        DiarioEmergencias diario = abrir();
+        EstadoDiario estado = diario.getEstadoRecuperado();
+        assertThat(estado.getUltimoLsn()).isEqualTo(historia.lsnFinal() - 1);
+        // Solo se cuenta lo posterior a la instantánea, no lo que se cargó de ella
+        assertThat(diario.getRegistrosReproducidos())
+            .isEqualTo(historia.lsnFinal() - 1 - diario.getLsnUltimaInstantanea());
+        assertThat(estado.getAtendidas()).isEqualTo(30);
+        assertThat(estado.getCanceladas()).isEqualTo(1);
+        assertThat(estado.getUltimoId()).isEqualTo(historia.get(CANTIDAD - 1).getId());
+
+        Map<Integer, EstadoDiario.EmergenciaRegistrada> vivas = porId(estado);
+        assertThat(vivas).hasSize(CANTIDAD - 30 - 1);
+        assertThat(vivas).doesNotContainKeys(historia.get(0).getId(), historia.get(29).getId(),
+                                             historia.get(70).getId());
+        EstadoDiario.EmergenciaRegistrada cuarenta = vivas.get(historia.get(40).getId());
+        assertThat(cuarenta.getEstado()).isEqualTo(Emergencia.EstadoEmergencia.EN_PROCESO);
+        assertThat(cuarenta.getAmbulancia()).isEqualTo("AMB-40");
+        assertThat(vivas.get(historia.get(60).getId()).getPrioridad()).isEqualTo(Prioridad.CRITICO);
+        EstadoDiario.EmergenciaRegistrada ultima = vivas.get(historia.get(CANTIDAD - 1).getId());
+        assertThat(ultima.getEstado()).isEqualTo(Emergencia.EstadoEmergencia.PENDIENTE);
+        assertThat(ultima.getUbicacion()).isEqualTo("Calle " + (CANTIDAD - 1));
+        assertThat(ultima.getDescripcion()).isEqualTo(DESCRIPCION);
+        assertThat(ultima.getLatitud()).isEqualTo((CANTIDAD - 1) * 0.001);
+
+        // El diario sigue en el LSN perdido y la siguiente apertura ve lo nuevo
+        assertThat(diario.anotarAtendida(historia.get(40))).isEqualTo(historia.lsnFinal());
+        diario.cerrar();
+        EstadoDiario reabierto = abrir().getEstadoRecuperado();
+        assertThat(reabierto.getUltimoLsn()).isEqualTo(historia.lsnFinal());
+        assertThat(reabierto.getAtendidas()).isEqualTo(31);
+        assertThat(porId(reabierto)).doesNotContainKey(historia.get(40).getId());
+    }
+
+    private DiarioEmergencias abrir() throws IOException {
+        return new DiarioEmergencias(directorio, TAMANIO_SEGMENTO, 1, TimeUnit.MILLISECONDS);
+    }
+
+    private static Map<Integer, EstadoDiario.EmergenciaRegistrada> porId(EstadoDiario estado) {
+        return estado.getVivas().stream()
+            .collect(Collectors.toMap(EstadoDiario.EmergenciaRegistrada::getId, Function.identity()));
+    }
+
+    private Path ultimoSegmento() throws IOException {
+        try (Stream<Path> rutas = Files.list(directorio)) {
+            return rutas.filter(r -> r.getFileName().toString().endsWith(".seg"))
+                .max(Path::compareTo)
+                .orElseThrow();
+        }
+    }
+
+    /**
+     * Posición del registro con un LSN, recorriendo las cabeceras (longitud y
+     * CRC) del segmento.
+     */
+    private static long inicioRegistro(Path segmento, long lsn) throws IOException {
+        ByteBuffer datos = ByteBuffer.wrap(Files.readAllBytes(segmento));
+        int posicion = 0;
+        while (posicion + 8 <= datos.limit()) {
+            int largo = datos.getInt(posicion);
+            if (largo <= 0) {
+                break;
+            }
+            if (datos.getLong(posicion + 8) == lsn) {
+                return posicion;
+            }
+            posicion += 8 + largo;
+        }
+        throw new AssertionError("No se encontró el LSN " + lsn + " en " + segmento);
+    }
+}
@@ -0,0 +1,44 @@
+package com.emergencias.persistencia;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.emergencias.modelos.Emergencia;
+import com.emergencias.modelos.Prioridad;
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Ida y vuelta de una traza con textos del diccionario de más de 65535 bytes,
+ * que no caben en un largo de 2 bytes.
+ */
+class GrabadorTrazasTest {
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void conservaTextosLargosDelDiccionario() throws IOException {
+        String larga = "Descripción ñandú ".repeat(5000); // ~100 KB en UTF-8
+        Emergencia primera = new Emergencia("Calle 1", Prioridad.GRAVE, larga, 6.2, -75.5);
+        Emergencia segunda = new Emergencia("Calle 2", Prioridad.LEVE, "Corta", 6.3, -75.6);
+        Path archivo = directorio.resolve("llamadas.traza");
+
+        GrabadorTrazas grabador = new GrabadorTrazas(archivo);
+        grabador.anotarLlamada(primera);
+        grabador.anotarLlamada(segunda);
+        grabador.cerrar();
+
+        LectorTrazas lector = LectorTrazas.abrir(archivo);
+        assertThat(lector.getRegistros()).isEqualTo(2);
+        assertThat(lector.siguiente()).isTrue();
+        assertThat(lector.getEmergenciaId()).isEqualTo(primera.getId());
+        assertThat(lector.getTexto1()).isEqualTo("Calle 1");
+        assertThat(lector.getTexto2()).isEqualTo(larga);
+        assertThat(lector.siguiente()).isTrue();
+        assertThat(lector.getTexto1()).isEqualTo("Calle 2");
+        assertThat(lector.getTexto2()).isEqualTo("Corta");
+        assertThat(lector.siguiente()).isFalse();
+    }
+}
@@ -0,0 +1,99 @@
+package com.emergencias.persistencia;
+
+import com.emergencias.modelos.Emergencia;
+import com.emergencias.modelos.Prioridad;
+import com.emergencias.registro.NivelRegistro;
+import com.emergencias.registro.Registro;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reinicio del diario después de registrar {@code emergencias} emergencias:
+ * cada invocación abre el diario (recuperando su estado) y lo cierra. El
+ * diario toma una instantánea cada pocos segmentos sellados, así que al abrir
+ * carga la última y solo reproduce los segmentos posteriores; el resultado de
+ * cada invocación es cuántos registros reprodujo.
+ * <p>
+ * {@code atendidas} es la fracción de la historia que se atendió: con 0.9 la
+ * instantánea tiene una de cada diez emergencias viva, y con 0 las tiene todas.
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main ReinicioDiarioBenchmark"
+ * </pre>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class ReinicioDiarioBenchmark {
+    private static final int LOTE = 10_000;
+
+    @Param({"1000000"})
+    public int emergencias;
+
+    @Param({"0.9", "0"})
+    public double atendidas;
+
+    private Path directorio;
+
+    /**
+     * Escribe la historia por lotes, sin guardar las emergencias en memoria.
+     */
+    @Setup(Level.Trial)
+    public void escribirHistoria() throws IOException {
+        Registro.setNivelMinimo(NivelRegistro.ADVERTENCIA);
+        directorio = Files.createTempDirectory("diario-reinicio");
+        DiarioEmergencias diario = new DiarioEmergencias(directorio);
+        Prioridad[] prioridades = Prioridad.values();
+        for (int escritas = 0; escritas < emergencias; escritas += LOTE) {
+            List<Emergencia> lote = new ArrayList<>(LOTE);
+            for (int i = 0; i < LOTE; i++) {
+                int n = escritas + i;
+                lote.add(new Emergencia("Calle " + n, prioridades[n % prioridades.length], "Llamada " + n,
+                                        6.0 + (n % 1000) * 0.0005, -75.0 + (n / 1000 % 1000) * 0.0005));
+            }
+            diario.anotarCreadas(lote);
+            for (int i = 0; i < LOTE * atendidas; i++) {
+                diario.anotarAtendida(lote.get(i));
+            }
+        }
+        diario.cerrar();
+    }
+
+    @TearDown(Level.Trial)
+    public void borrar() throws IOException {
+        try (Stream<Path> rutas = Files.walk(directorio)) {
+            for (Path ruta : (Iterable<Path>) rutas.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(ruta);
+            }
+        }
+    }
+
+    @Benchmark
+    public long reabrir() throws IOException {
+        DiarioEmergencias diario = new DiarioEmergencias(directorio);
+        diario.cerrar();
+        return diario.getRegistrosReproducidos();
+    }
+}